@@ -18,11 +18,118 @@ public class ClientConfig extends Config {
 
     private int listenerTime = 5000;
 
+    /**
+     * 服务端列表 host[:intranetPort[:httpAcceptPort]]，逗号分隔，为空时只连接 hostName；
+     * 按心跳往返时间选一个作为主连接，其余保持备用注册
+     */
+    private String servers;
+    /**
+     * 心跳间隔（毫秒），连续 heartbeatMissedBeats 个间隔收不到服务端任何数据即切换到备用服务端
+     */
+    private int heartbeatInterval = 200;
+    private int heartbeatMissedBeats = 3;
+    /**
+     * 断开的服务端重连间隔与建连超时（毫秒）
+     */
+    private int reconnectInterval = 1000;
+    private int connectTimeout = 1000;
+
     /**
      * 二级域名 自定义部署时有用
      */
     private String defaultHost = ".bigant.club";
 
+    /**
+     * 抓包文件（为空不抓包），每条记录的槽位大小与槽位数，文件大小固定为两者之积
+     */
+    private String captureFile;
+    private int captureSlotSize = 64 * 1024;
+    private int captureSlots = 1024;
+
+    /**
+     * 与服务端之间的通信连接与数据连接是否使用 TLS，需与服务端的 tunnelSsl 一致；
+     * tunnelSslTrustStore 为空时使用 JDK 默认信任的证书，tunnelSslVerifyHostname 校验证书域名与服务端地址一致
+     */
+    private boolean tunnelSsl;
+    private String tunnelSslTrustStore;
+    private String tunnelSslTrustStorePassword = "changeit";
+    private String tunnelSslTrustStoreType = "PKCS12";
+    private boolean tunnelSslVerifyHostname = true;
+    private int tunnelSslHandshakeTimeout = 10000;
+    /**
+     * 允许的协议，逗号分隔，为空使用 JDK 默认；TLSv1.2 的会话可被多条数据连接同时复用，
+     * TLSv1.3 的 ticket 只能用一次，并发新建数据连接时部分会退回完整握手
+     */
+    private String tunnelSslProtocols;
+    /**
+     * 加解密缓冲池最多保留的空闲缓冲数
+     */
+    private int tunnelSslBufferPoolSize = 256;
+
+    public String getServers() {
+        return servers;
+    }
+
+    public void setServers(String servers) {
+        this.servers = servers;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public int getHeartbeatMissedBeats() {
+        return heartbeatMissedBeats;
+    }
+
+    public void setHeartbeatMissedBeats(int heartbeatMissedBeats) {
+        this.heartbeatMissedBeats = heartbeatMissedBeats;
+    }
+
+    public int getReconnectInterval() {
+        return reconnectInterval;
+    }
+
+    public void setReconnectInterval(int reconnectInterval) {
+        this.reconnectInterval = reconnectInterval;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public String getCaptureFile() {
+        return captureFile;
+    }
+
+    public void setCaptureFile(String captureFile) {
+        this.captureFile = captureFile;
+    }
+
+    public int getCaptureSlotSize() {
+        return captureSlotSize;
+    }
+
+    public void setCaptureSlotSize(int captureSlotSize) {
+        this.captureSlotSize = captureSlotSize;
+    }
+
+    public int getCaptureSlots() {
+        return captureSlots;
+    }
+
+    public void setCaptureSlots(int captureSlots) {
+        this.captureSlots = captureSlots;
+    }
+
     public String getDefaultHost() {
         return defaultHost;
     }
@@ -31,6 +138,70 @@ public class ClientConfig extends Config {
         this.defaultHost = defaultHost;
     }
 
+    public boolean isTunnelSsl() {
+        return tunnelSsl;
+    }
+
+    public void setTunnelSsl(boolean tunnelSsl) {
+        this.tunnelSsl = tunnelSsl;
+    }
+
+    public String getTunnelSslTrustStore() {
+        return tunnelSslTrustStore;
+    }
+
+    public void setTunnelSslTrustStore(String tunnelSslTrustStore) {
+        this.tunnelSslTrustStore = tunnelSslTrustStore;
+    }
+
+    public String getTunnelSslTrustStorePassword() {
+        return tunnelSslTrustStorePassword;
+    }
+
+    public void setTunnelSslTrustStorePassword(String tunnelSslTrustStorePassword) {
+        this.tunnelSslTrustStorePassword = tunnelSslTrustStorePassword;
+    }
+
+    public String getTunnelSslTrustStoreType() {
+        return tunnelSslTrustStoreType;
+    }
+
+    public void setTunnelSslTrustStoreType(String tunnelSslTrustStoreType) {
+        this.tunnelSslTrustStoreType = tunnelSslTrustStoreType;
+    }
+
+    public boolean isTunnelSslVerifyHostname() {
+        return tunnelSslVerifyHostname;
+    }
+
+    public void setTunnelSslVerifyHostname(boolean tunnelSslVerifyHostname) {
+        this.tunnelSslVerifyHostname = tunnelSslVerifyHostname;
+    }
+
+    public int getTunnelSslHandshakeTimeout() {
+        return tunnelSslHandshakeTimeout;
+    }
+
+    public void setTunnelSslHandshakeTimeout(int tunnelSslHandshakeTimeout) {
+        this.tunnelSslHandshakeTimeout = tunnelSslHandshakeTimeout;
+    }
+
+    public String getTunnelSslProtocols() {
+        return tunnelSslProtocols;
+    }
+
+    public void setTunnelSslProtocols(String tunnelSslProtocols) {
+        this.tunnelSslProtocols = tunnelSslProtocols;
+    }
+
+    public int getTunnelSslBufferPoolSize() {
+        return tunnelSslBufferPoolSize;
+    }
+
+    public void setTunnelSslBufferPoolSize(int tunnelSslBufferPoolSize) {
+        this.tunnelSslBufferPoolSize = tunnelSslBufferPoolSize;
+    }
+
     private ClientConfig() {
 
     }
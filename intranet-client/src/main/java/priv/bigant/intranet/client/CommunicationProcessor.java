@@ -7,44 +7,35 @@ import priv.bigant.intrance.common.communication.CommunicationDispose;
 import priv.bigant.intrance.common.communication.CommunicationRequest;
 import priv.bigant.intrance.common.communication.CommunicationRequest.CommunicationRequestHttpReturn;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
+import priv.bigant.intrance.common.util.net.SslTunnel;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 public class CommunicationProcessor extends ProcessBase {
 
-
-    private final Communication clientCommunication;
-
-
-    public CommunicationProcessor(Communication clientCommunication, ConnectorThread serviceConnector) {
-        this.clientCommunication = clientCommunication;
-        //clientCommunication.setCommunicationDispose(new ClientCommunicationDispose(serviceConnector));
-    }
-
-    public CommunicationProcessor(Communication clientCommunication, ClientConfig clientConfig) {
-        this.clientCommunication = clientCommunication;
+    /**
+     * 与各服务端的通信连接注册在同一个线程上，附件为对应的 ServerEndpoint
+     */
+    public CommunicationProcessor() {
     }
 
     public void showdown() {
-        if (!clientCommunication.isClose()) {
-            clientCommunication.close();
-        }
     }
 
 
     @Override
     public void read(ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
-        clientCommunication.disposeRequest();
+        ((ServerEndpoint) selectionKey.attachment()).read();
     }
 
 
     @Override
-    public void accept(ConnectorThread connectorThread, SelectionKey selectionKey) {
+    public void accept(ConnectorThread connectorThread, SocketChannel socketChannel) {
         //不可能有的
     }
 
@@ -61,36 +52,19 @@ public class CommunicationProcessor extends ProcessBase {
         private final ClientConfig clientConfig;
         private static final Logger log = LogUtil.getLog();
         private final ConnectorThread serviceConnector;
-        private Consumer<CommunicationRequestHttpReturn.Status> returnError;
+        private final ServerEndpoint endpoint;
 
-        public ClientCommunicationDispose(ConnectorThread serviceConnector, ClientConfig clientConfig) {
+        public ClientCommunicationDispose(ConnectorThread serviceConnector, ClientConfig clientConfig, ServerEndpoint endpoint) {
             this.serviceConnector = serviceConnector;
             this.clientConfig = clientConfig;
-        }
-
-        public ClientCommunicationDispose(ConnectorThread serviceConnector, ClientConfig clientConfig, Consumer<CommunicationRequestHttpReturn.Status> returnError) {
-            this(serviceConnector, clientConfig);
-            this.returnError = returnError;
+            this.endpoint = endpoint;
         }
 
         @Override
         protected void httpReturn(CommunicationRequest communicationRequest, Communication communication) {
 
             CommunicationRequestHttpReturn communicationRequestHttpReturn = communicationRequest.toJavaObject(CommunicationRequestHttpReturn.class);
-            switch (communicationRequestHttpReturn.getStatus()) {
-                case SUCCESS:
-                    log.info("链接成功 输入   " + clientConfig.getHostName() + " 即可对应地址  " + clientConfig.getLocalHost() + ":" + clientConfig.getLocalPort());
-                    break;
-                case DOMAIN_OCCUPIED:
-                    log.severe(clientConfig.getHostName() + "域名已被占用");
-                    if (returnError != null) returnError.accept(CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED);
-            }
-
-        }
-
-        @Override
-        protected void test(CommunicationRequest communicationRequest, Communication communication) {
-            //测试数据先不管
+            endpoint.onReturn(communicationRequestHttpReturn.getStatus());
         }
 
         @Override
@@ -100,17 +74,33 @@ public class CommunicationProcessor extends ProcessBase {
 
         @Override
         public void httpAdd(CommunicationRequest communicationRequest, Communication communication) {
-            SocketChannel socketChannel;
+            SocketChannel socketChannel = null;
             CommunicationRequest.CommunicationRequestHttpAdd communicationRequestHttpAdd = communicationRequest.toJavaObject(CommunicationRequest.CommunicationRequestHttpAdd.class);
             try {
-                socketChannel = SocketChannel.open(new InetSocketAddress(clientConfig.getHostName(), clientConfig.getHttpAcceptPort()));
-                socketChannel.socket().setKeepAlive(true);
-                Communication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpAdd), socketChannel, clientConfig);
-                socketChannel.configureBlocking(false);
-                serviceConnector.register(socketChannel, SelectionKey.OP_READ);
+                socketChannel = clientConfig.getTunnelSocket().open();
+                socketChannel.connect(new InetSocketAddress(endpoint.getHost(), endpoint.getHttpAcceptPort()));
+                SslTunnel sslTunnel = endpoint.getSslTunnel();
+                if (sslTunnel == null) {
+                    Communication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpAdd), socketChannel, clientConfig);
+                    socketChannel.configureBlocking(false);
+                    serviceConnector.register(socketChannel, SelectionKey.OP_READ);
+                } else {
+                    //客户端 SSLContext 缓存了与该服务端的会话，这里通常是恢复会话的简化握手
+                    socketChannel.configureBlocking(false);
+                    SecureNioChannel channel = sslTunnel.handshake(socketChannel, endpoint.getHost(), endpoint.getHttpAcceptPort());
+                    Communication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpAdd), channel, clientConfig);
+                    serviceConnector.register(socketChannel, SelectionKey.OP_READ, channel);
+                }
             } catch (Exception e) {
                 log.severe("add http socket error" + e.getMessage());
                 e.printStackTrace();
+                if (socketChannel != null) {
+                    try {
+                        socketChannel.close();
+                    } catch (IOException ex) {
+                        log.fine("关闭数据连接失败 " + ex.getMessage());
+                    }
+                }
             }
         }
     }
@@ -3,39 +3,89 @@ package priv.bigant.intranet.client;
 import priv.bigant.intrance.common.Connector;
 import priv.bigant.intrance.common.ServerConnector;
 import priv.bigant.intrance.common.communication.Communication;
-import priv.bigant.intrance.common.communication.CommunicationEnum;
 import priv.bigant.intrance.common.communication.CommunicationRequest;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SslTunnel;
 import priv.bigant.intranet.client.ex.ServerConnectException;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-import static priv.bigant.intrance.common.communication.CommunicationRequest.createCommunicationRequest;
-
+/**
+ * 客户端：连接配置的所有服务端，按心跳往返时间选一个作为主连接，其余保持备用注册；
+ * 主连接心跳超时后立即提升往返时间最短的备用连接
+ */
 public class Domain implements Connector {
 
+    private static final Logger LOG = LogUtil.getLog();
     private static final ClientConfig clientConfig = ClientConfig.getClientConfig();
 
     private ServerConnector.ConnectorThread httpConnect;
     private ServerConnector.ConnectorThread communicationConnect;
-    private CommunicationProcessor communicationProcessor;
-    private Communication communication;
+    private volatile List<ServerEndpoint> endpoints;
     private DomainListener domainListener;
     private Consumer<CommunicationRequest.CommunicationRequestHttpReturn.Status> returnError;
+    /**
+     * 是否曾经注册成功过，之前从未成功时域名被占用按启动失败处理
+     */
+    private volatile boolean everActive;
+    /**
+     * 不为空时与服务端之间的连接使用 TLS
+     */
+    private SslTunnel sslTunnel;
+    /**
+     * 重连线程：建连最长阻塞 connectTimeout，不能放在心跳检查线程里，否则一个宕机的服务端会推迟其他服务端的心跳与切换
+     */
+    private final ThreadPoolExecutor reconnector = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+        Thread thread = new Thread(r, "DomainReconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 正在重连的服务端，每个服务端同时只有一个重连任务
+     */
+    private final Set<ServerEndpoint> reconnecting = ConcurrentHashMap.newKeySet();
 
 
     public void connect() throws ServerConnectException, IOException {
-
+        everActive = false;
+        if (clientConfig.isTunnelSsl() && sslTunnel == null) {
+            try {
+                sslTunnel = TunnelSslFactory.create(clientConfig);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("创建 TLS 失败", e);
+            }
+        }
         startHttpProcessor();
-        try {
-            connectCommunication();
-        } catch (IOException e) {
-            throw new ServerConnectException("服务器链接失败", e);
+        communicationConnect = new ServerConnector.ConnectorThread(new CommunicationProcessor(), "clientCommunication", clientConfig);
+        communicationConnect.start();
+
+        endpoints = ServerEndpoint.parse(clientConfig, this);
+        IOException error = null;
+        int connected = 0;
+        for (ServerEndpoint endpoint : endpoints) {
+            try {
+                endpoint.connect(communicationConnect, httpConnect, clientConfig);
+                connected++;
+            } catch (IOException e) {
+                LOG.warning("服务端 " + endpoint + " 连接失败 " + e.getMessage());
+                error = e;
+            }
+        }
+        if (connected == 0) {
+            communicationConnect.showdown();
+            httpConnect.showdown();
+            throw new ServerConnectException("服务器链接失败", error);
         }
     }
 
@@ -44,38 +94,141 @@ public class Domain implements Connector {
         domainListener.start();
     }
 
+    /**
+     * 配置重新加载后调整本地请求处理线程与队列；心跳、重连间隔等每次使用时读取配置，不需要处理
+     */
+    public void reconfigure() {
+        ServerConnector.ConnectorThread httpConnect = this.httpConnect;
+        if (httpConnect != null) {
+            ((HttpProcessor) httpConnect.getProcess()).reconfigure();
+        }
+    }
+
     public void startHttpProcessor() throws IOException {
         HttpProcessor httpProcessor = new HttpProcessor();
         httpConnect = new ServerConnector.ConnectorThread(httpProcessor, "clientHttpIntranetServiceProcess-thread", clientConfig);
         httpConnect.start();
     }
 
-    public void connectCommunication() throws IOException {
-        SocketChannel channel = SocketChannel.open(new InetSocketAddress(clientConfig.getHostName(), clientConfig.getIntranetPort()));
-        channel.socket().setKeepAlive(true);
-        channel.socket().setOOBInline(false);
-        channel.configureBlocking(false);
+    /**
+     * 一轮检查：发送心跳、下线超时的服务端、必要时提升备用连接、在重连线程中重连已断开的服务端
+     */
+    void check() {
+        List<ServerEndpoint> endpoints = this.endpoints;
+        long now = System.nanoTime();
+        for (ServerEndpoint endpoint : endpoints) {
+            if (!endpoint.isConnected()) {
+                continue;
+            }
+            //第一次心跳回应之前多给一个建连超时，避免刚启动时类加载等原因误判
+            long timeout = (long) clientConfig.getHeartbeatInterval() * clientConfig.getHeartbeatMissedBeats();
+            if (!endpoint.hasRtt()) {
+                timeout += clientConfig.getConnectTimeout();
+            }
+            if (endpoint.getSilentMillis(now) > timeout) {
+                LOG.warning("服务端 " + endpoint + " 心跳超时");
+                endpoint.close();
+            } else {
+                endpoint.ping();
+            }
+        }
 
-        this.communication = new Communication(channel, new CommunicationProcessor.ClientCommunicationDispose(httpConnect, clientConfig, x -> {
-            if (returnError != null) returnError.accept(x);
-        }), clientConfig);
-        this.communicationProcessor = new CommunicationProcessor(communication, clientConfig);
+        promoteIfNeeded();
 
-        communicationConnect = new ServerConnector.ConnectorThread(communicationProcessor, "clientCommunication", clientConfig);
-        communicationConnect.register(channel, SelectionKey.OP_READ);//注册事件
-        communicationConnect.start();
+        long millis = System.currentTimeMillis();
+        for (ServerEndpoint endpoint : endpoints) {
+            if (!endpoint.isConnected() && millis >= endpoint.getRetryAt()) {
+                reconnect(endpoint);
+            }
+        }
+    }
 
-        CommunicationRequest.CommunicationRequestHttpFirst communicationHttpFirst = new CommunicationRequest.CommunicationRequestHttpFirst(CommunicationEnum.HTTP);
-        communicationHttpFirst.setHost(clientConfig.getHostName());
-        communication.writeN(createCommunicationRequest(communicationHttpFirst));
+    /**
+     * 在重连线程中连接，已有重连任务时跳过
+     */
+    private void reconnect(ServerEndpoint endpoint) {
+        if (!reconnecting.add(endpoint)) {
+            return;
+        }
+        try {
+            reconnector.execute(() -> {
+                try {
+                    endpoint.connect(communicationConnect, httpConnect, clientConfig);
+                } catch (IOException e) {
+                    LOG.fine("服务端 " + endpoint + " 重连失败 " + e.getMessage());
+                } finally {
+                    reconnecting.remove(endpoint);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //已关闭
+            reconnecting.remove(endpoint);
+        }
+    }
+
+    /**
+     * 没有主连接时提升往返时间最短的备用连接；启动时等所有已连接的服务端都有往返时间样本后再选
+     */
+    private void promoteIfNeeded() {
+        ServerEndpoint best = null;
+        long millis = System.currentTimeMillis();
+        for (ServerEndpoint endpoint : endpoints) {
+            ServerEndpoint.State state = endpoint.getState();
+            if (state == ServerEndpoint.State.ACTIVE || state == ServerEndpoint.State.PROMOTING) {
+                return;
+            }
+            if (state == ServerEndpoint.State.CONNECTED || (state == ServerEndpoint.State.STANDBY && !endpoint.hasRtt())) {
+                if (!everActive) {
+                    return;
+                }
+                continue;
+            }
+            if (state == ServerEndpoint.State.STANDBY && millis >= endpoint.getRetryAt()
+                    && (best == null || endpoint.getRttMicros() < best.getRttMicros())) {
+                best = endpoint;
+            }
+        }
+        if (best != null) {
+            LOG.info("选择服务端 " + best + " 作为主连接，往返时间 " + best.getRttMicros() + "us");
+            best.promote(clientConfig.getHostName());
+        }
+    }
+
+    void onReturn(ServerEndpoint endpoint, CommunicationRequest.CommunicationRequestHttpReturn.Status status) {
+        switch (status) {
+            case SUCCESS:
+                if (endpoint.getState() == ServerEndpoint.State.ACTIVE) {
+                    everActive = true;
+                    LOG.info("链接成功 输入   " + clientConfig.getHostName() + " 即可对应地址  " + clientConfig.getLocalHost() + ":" + clientConfig.getLocalPort() + "  服务端 " + endpoint);
+                }
+                break;
+            case DOMAIN_OCCUPIED:
+                LOG.severe(clientConfig.getHostName() + "域名已被占用 服务端 " + endpoint);
+                //从未注册成功过说明域名确实被别人占用，按原来的方式结束；故障切换中被拒绝则稍后重试
+                if (!everActive && returnError != null) returnError.accept(CommunicationRequest.CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED);
+        }
+    }
+
+    void onDown(ServerEndpoint endpoint, ServerEndpoint.State previous) {
+        if (previous == ServerEndpoint.State.ACTIVE || previous == ServerEndpoint.State.PROMOTING) {
+            LOG.warning("主连接 " + endpoint + " 已断开，切换备用连接");
+            DomainListener listener = domainListener;
+            if (listener != null) {
+                LockSupport.unpark(listener);
+            }
+        }
     }
 
 
     @Override
     public void showdown() {
+        if (domainListener != null) domainListener.showdown();
+        //中断正在进行的建连
+        reconnector.shutdownNow();
+        List<ServerEndpoint> endpoints = this.endpoints;
+        if (endpoints != null) endpoints.forEach(ServerEndpoint::close);
         if (communicationConnect != null) communicationConnect.showdown();
         if (httpConnect != null) httpConnect.showdown();
-        if (domainListener != null) domainListener.showdown();
     }
 
     @Override
@@ -83,6 +236,10 @@ public class Domain implements Connector {
         return "client domain";
     }
 
+    public SslTunnel getSslTunnel() {
+        return sslTunnel;
+    }
+
     public ServerConnector.ConnectorThread getHttpConnect() {
         return httpConnect;
     }
@@ -95,8 +252,20 @@ public class Domain implements Connector {
         return communicationConnect;
     }
 
+    public List<ServerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * 主连接的通信，没有主连接时返回 null
+     */
     public Communication getCommunication() {
-        return communication;
+        for (ServerEndpoint endpoint : endpoints) {
+            if (endpoint.getState() == ServerEndpoint.State.ACTIVE) {
+                return endpoint.getCommunication();
+            }
+        }
+        return null;
     }
 
     public void setReturnError(Consumer<CommunicationRequest.CommunicationRequestHttpReturn.Status> returnError) {
@@ -108,18 +277,16 @@ public class Domain implements Connector {
     }
 
     /**
-     * 主进程监听器
+     * 主进程监听器：按心跳间隔检查各服务端，主连接断开时被立即唤醒
      */
     public static class DomainListener extends Thread {
-        private static final Logger LOG = LogUtil.getLog();
 
         private ClientConfig clientConfig;
         private Domain domain;
-        private boolean isRun = true;
+        private volatile boolean isRun = true;
 
         public DomainListener(ClientConfig clientConfig, Domain domain) {
             super("DomainListener");
-
             this.clientConfig = clientConfig;
             this.domain = domain;
         }
@@ -127,27 +294,19 @@ public class Domain implements Connector {
         @Override
         public void run() {
             while (isRun) {
-                if (domain.getCommunication().isClose()) {
-                    LOG.info("CommunicationListener 连接已断开");
-                    try {
-                        if (isRun) domain.connect();
-                    } catch (Exception e) {
-                        LOG.severe("连接失败" + e.getMessage());
-                        e.printStackTrace();
-                    }
-                } else {
-                    LOG.info("CommunicationListener 连接正常");
-                }
                 try {
-                    sleep(clientConfig.getListenerTime());
-                } catch (InterruptedException e) {
+                    domain.check();
+                } catch (Exception e) {
+                    LOG.severe("检查服务端连接失败" + e.getMessage());
                     e.printStackTrace();
                 }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(clientConfig.getHeartbeatInterval()));
             }
         }
 
         public void showdown() {
             isRun = false;
+            LockSupport.unpark(this);
         }
     }
 }
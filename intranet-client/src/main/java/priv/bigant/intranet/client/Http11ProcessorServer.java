@@ -1,6 +1,7 @@
 package priv.bigant.intranet.client;
 
 import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.capture.CaptureStore;
 import priv.bigant.intrance.common.coyote.http11.Http11Processor;
 import priv.bigant.intrance.common.log.LogUtil;
 import priv.bigant.intrance.common.util.net.NioSelectorPool;
@@ -14,6 +15,7 @@ public class Http11ProcessorServer extends Http11Processor {
     private static final Logger LOG = LogUtil.getLog();
     private final NioSelectorPool nioSelectorPool = new NioSelectorPool();
     private static final ClientConfig clientConfig = ClientConfig.getClientConfig();
+    private static volatile CaptureStore captureStore;
 
     public Http11ProcessorServer(int maxHttpHeaderSize, String relaxedPathChars, String relaxedQueryChars) {
         super(maxHttpHeaderSize, relaxedPathChars, relaxedQueryChars);
@@ -23,12 +25,31 @@ public class Http11ProcessorServer extends Http11Processor {
     public SocketBean getSocketBean() throws IOException {
         int localPort = clientConfig.getLocalPort();
         String localHost = clientConfig.getLocalHost();
-        return new SocketBean(SocketChannel.open(new InetSocketAddress(localHost, localPort)));
+        SocketChannel socketChannel = clientConfig.getHttpSocket().open();
+        try {
+            socketChannel.connect(new InetSocketAddress(localHost, localPort));
+        } catch (IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+        return new SocketBean(socketChannel);
+    }
+
+    /**
+     * 开启抓包，传 null 关闭
+     */
+    public static void setCaptureStore(CaptureStore store) {
+        captureStore = store;
+    }
+
+    @Override
+    protected CaptureStore getCaptureStore() {
+        return captureStore;
     }
 
     @Override
     public int getMaxHeaderCount() {
-        return 50;
+        return clientConfig.getMaxHeaderCount();
     }
 
     @Override
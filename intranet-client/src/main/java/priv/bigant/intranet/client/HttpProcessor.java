@@ -14,7 +14,7 @@ public class HttpProcessor extends HttpIntranetServiceProcessAbs {
 
     @Override
     public Http11Processor createHttp11Processor() {
-        return new Http11ProcessorServer(8 * 1024, null, null);
+        return new Http11ProcessorServer(ClientConfig.getClientConfig().getMaxHttpHeaderSize(), null, null);
     }
 
     @Override
@@ -0,0 +1,249 @@
+package priv.bigant.intranet.client;
+
+import priv.bigant.intrance.common.capture.CaptureStore;
+import priv.bigant.intrance.common.capture.CapturedExchange;
+import priv.bigant.intrance.common.coyote.http11.TunnelExchange;
+import priv.bigant.intrance.common.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 抓包查看与重放：把抓到的请求原样重新发送到本地服务，也可当作压测工具
+ * <pre>
+ * Replay 抓包文件 --list                  列出抓到的请求
+ * Replay 抓包文件 --show 序号              输出原始请求与响应
+ * Replay 抓包文件 [--seq 1,2] [--target host:port] [--concurrency 1] [--rate 0] [--repeat 1]
+ * </pre>
+ * 未指定 --target 时使用配置文件中的 localHost / localPort；--rate 为每秒请求数，0 不限速
+ */
+public class Replay {
+
+    private static final PrintStream OUT = System.out;
+
+    private final List<CapturedExchange> exchanges;
+    private final InetSocketAddress target;
+    private final int concurrency;
+    private final double rate;
+    private final int repeat;
+
+    private final Histogram latency = new Histogram();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+
+    public Replay(List<CapturedExchange> exchanges, InetSocketAddress target, int concurrency, double rate, int repeat) {
+        this.exchanges = exchanges;
+        this.target = target;
+        this.concurrency = Math.max(1, concurrency);
+        this.rate = rate;
+        this.repeat = Math.max(1, repeat);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        String file = args[0];
+        String targetArg = null;
+        Set<Long> seqs = null;
+        Long show = null;
+        boolean list = false;
+        int concurrency = 1;
+        double rate = 0;
+        int repeat = 1;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--list":
+                    list = true;
+                    break;
+                case "--show":
+                    show = Long.parseLong(args[++i]);
+                    break;
+                case "--seq":
+                    seqs = new HashSet<>();
+                    for (String seq : args[++i].split(",")) {
+                        seqs.add(Long.parseLong(seq.trim()));
+                    }
+                    break;
+                case "--target":
+                    targetArg = args[++i];
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        List<CapturedExchange> exchanges = CaptureStore.read(Paths.get(file));
+        if (list) {
+            list(exchanges);
+            return;
+        }
+        if (show != null) {
+            show(exchanges, show);
+            return;
+        }
+
+        List<CapturedExchange> selected = new ArrayList<>();
+        for (CapturedExchange exchange : exchanges) {
+            if (seqs != null && !seqs.contains(exchange.getSeq())) {
+                continue;
+            }
+            if (exchange.isRequestTruncated()) {
+                OUT.println("跳过 #" + exchange.getSeq() + "，请求超过槽位大小未完整保存");
+                continue;
+            }
+            selected.add(exchange);
+        }
+        if (selected.isEmpty()) {
+            OUT.println("没有可重放的请求");
+            return;
+        }
+        InetSocketAddress target;
+        if (targetArg != null) {
+            int colon = targetArg.lastIndexOf(':');
+            target = new InetSocketAddress(targetArg.substring(0, colon), Integer.parseInt(targetArg.substring(colon + 1)));
+        } else {
+            ClientConfig config = Start.createdConfig();
+            target = new InetSocketAddress(config.getLocalHost(), config.getLocalPort());
+        }
+        new Replay(selected, target, concurrency, rate, repeat).run();
+    }
+
+    private static void usage() {
+        OUT.println("用法: Replay 抓包文件 [--list | --show 序号 | [--seq 1,2] [--target host:port] [--concurrency N] [--rate 每秒请求数] [--repeat N]]");
+    }
+
+    private static void list(List<CapturedExchange> exchanges) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        for (CapturedExchange exchange : exchanges) {
+            OUT.println("#" + exchange.getSeq() + "  " + format.format(new Date(exchange.getTime())) + "  "
+                    + exchange.getRequestLine() + "  ->  " + exchange.getStatusLine()
+                    + "  (" + exchange.getRequest().length + (exchange.isRequestTruncated() ? "+" : "") + " / "
+                    + exchange.getResponse().length + (exchange.isResponseTruncated() ? "+" : "") + " 字节)");
+        }
+        OUT.println("共 " + exchanges.size() + " 条");
+    }
+
+    private static void show(List<CapturedExchange> exchanges, long seq) {
+        for (CapturedExchange exchange : exchanges) {
+            if (exchange.getSeq() == seq) {
+                OUT.println(new String(exchange.getRequest(), StandardCharsets.UTF_8));
+                OUT.println("---------------------------------------- 响应" + (exchange.isResponseTruncated() ? "（已截断）" : ""));
+                OUT.println(new String(exchange.getResponse(), StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        OUT.println("没有 #" + seq);
+    }
+
+    /**
+     * 按并发数与速率重放，结束后输出状态码分布与耗时
+     */
+    public void run() throws InterruptedException {
+        int total = exchanges.size() * repeat;
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        AtomicInteger index = new AtomicInteger();
+        long start = System.nanoTime();
+        AtomicLong nextSlot = new AtomicLong(start);
+        Thread[] workers = new Thread[Math.min(concurrency, total)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                int n;
+                while ((n = index.getAndIncrement()) < total) {
+                    if (interval > 0) {
+                        long slot = nextSlot.getAndAdd(interval);
+                        long wait;
+                        while ((wait = slot - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    send(exchanges.get(n % exchanges.size()));
+                }
+            }, "Replay-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(total, System.nanoTime() - start);
+    }
+
+    private void send(CapturedExchange exchange) {
+        long begin = System.nanoTime();
+        try (SocketChannel channel = SocketChannel.open(target)) {
+            TunnelExchange tunnelExchange = new TunnelExchange(channel, 8192);
+            ByteBuffer request = ByteBuffer.wrap(exchange.getRequest());
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            int status = tunnelExchange.readResponseHead(exchange.getRequestLine().startsWith("HEAD "));
+            byte[] buffer = new byte[8192];
+            while (tunnelExchange.readBody(buffer, 0, buffer.length) >= 0) {
+                // 丢弃响应体
+            }
+            latency.record((System.nanoTime() - begin) / 1000);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        } catch (IOException e) {
+            errors.increment();
+            if (errors.sum() <= 10) {
+                OUT.println("#" + exchange.getSeq() + " 重放失败 " + e);
+            }
+        }
+    }
+
+    private void report(int total, long nanos) {
+        Histogram.Snapshot snapshot = latency.snapshot();
+        double seconds = nanos / 1e9;
+        OUT.println("目标 " + target + "  请求 " + total + "  失败 " + errors.sum() + "  耗时 "
+                + String.format("%.2f", seconds) + "s  " + String.format("%.1f", total / Math.max(seconds, 1e-9)) + " 请求/秒");
+        Map<Integer, Long> sorted = new TreeMap<>();
+        statuses.forEach((status, count) -> sorted.put(status, count.sum()));
+        OUT.println("状态码 " + sorted);
+        OUT.println("耗时(ms) 平均 " + String.format("%.2f", snapshot.getMean() / 1000) + "  p50 " + millis(snapshot, 50)
+                + "  p90 " + millis(snapshot, 90) + "  p99 " + millis(snapshot, 99) + "  最大 " + snapshot.getMax() / 1000.0);
+    }
+
+    private static double millis(Histogram.Snapshot snapshot, double percentile) {
+        return snapshot.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public Map<Integer, Long> getStatuses() {
+        Map<Integer, Long> map = new TreeMap<>();
+        statuses.forEach((status, count) -> map.put(status, count.sum()));
+        return map;
+    }
+}
@@ -0,0 +1,265 @@
+package priv.bigant.intranet.client;
+
+import org.apache.commons.lang3.StringUtils;
+import priv.bigant.intrance.common.ServerConnector.ConnectorThread;
+import priv.bigant.intrance.common.communication.Communication;
+import priv.bigant.intrance.common.communication.CommunicationEnum;
+import priv.bigant.intrance.common.communication.CommunicationRequest;
+import priv.bigant.intrance.common.communication.CommunicationRequest.CommunicationRequestHttpReturn;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SslTunnel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static priv.bigant.intrance.common.communication.CommunicationRequest.createCommunicationRequest;
+
+/**
+ * 一个服务端：通信连接、注册状态与心跳往返时间
+ * <p>
+ * 连上后先做备用注册，只有被选为主连接后才发送正式注册接入流量
+ */
+public class ServerEndpoint {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    public enum State {
+        /**
+         * 未连接
+         */
+        DOWN,
+        /**
+         * 已连接，备用注册未返回
+         */
+        CONNECTED,
+        /**
+         * 备用注册成功
+         */
+        STANDBY,
+        /**
+         * 正式注册未返回
+         */
+        PROMOTING,
+        /**
+         * 主连接
+         */
+        ACTIVE
+    }
+
+    private final String host;
+    private final int intranetPort;
+    private final int httpAcceptPort;
+    private final Domain domain;
+
+    /**
+     * 状态由心跳线程与通信读线程共同修改，用 CAS 而不是加锁：持有锁写数据时会与持有 Communication 锁的读线程互相等待
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(State.DOWN);
+    private volatile Communication communication;
+    /**
+     * 备用注册发出的时间（nanoTime），之前的首次序列化等初始化时间不计入心跳超时
+     */
+    private volatile long connectedAt;
+    /**
+     * 下次允许重连 / 重新提升的时间（毫秒）
+     */
+    private volatile long retryAt;
+
+    public ServerEndpoint(String host, int intranetPort, int httpAcceptPort, Domain domain) {
+        this.host = host;
+        this.intranetPort = intranetPort;
+        this.httpAcceptPort = httpAcceptPort;
+        this.domain = domain;
+    }
+
+    /**
+     * 解析 host[:intranetPort[:httpAcceptPort]] 列表，为空时只有 hostName 一个服务端
+     */
+    public static List<ServerEndpoint> parse(ClientConfig config, Domain domain) {
+        List<ServerEndpoint> endpoints = new ArrayList<>();
+        String servers = StringUtils.isBlank(config.getServers()) ? config.getHostName() : config.getServers();
+        for (String server : servers.split(",")) {
+            server = server.trim();
+            if (server.isEmpty()) {
+                continue;
+            }
+            String[] parts = server.split(":");
+            int intranetPort = parts.length > 1 ? Integer.parseInt(parts[1]) : config.getIntranetPort();
+            int httpAcceptPort = parts.length > 2 ? Integer.parseInt(parts[2]) : config.getHttpAcceptPort();
+            endpoints.add(new ServerEndpoint(parts[0], intranetPort, httpAcceptPort, domain));
+        }
+        return endpoints;
+    }
+
+    /**
+     * 建立通信连接并发送备用注册
+     */
+    public void connect(ConnectorThread communicationConnect, ConnectorThread httpConnect, ClientConfig config) throws IOException {
+        SocketChannel channel = config.getTunnelSocket().open();
+        SslTunnel sslTunnel = domain.getSslTunnel();
+        ByteChannel secure = channel;
+        try {
+            channel.socket().connect(new InetSocketAddress(host, intranetPort), config.getConnectTimeout());
+            channel.configureBlocking(false);
+            if (sslTunnel != null) {
+                secure = sslTunnel.handshake(channel, host, intranetPort);
+            }
+        } catch (IOException e) {
+            channel.close();
+            retryAt = System.currentTimeMillis() + config.getReconnectInterval();
+            throw e;
+        }
+        communication = new Communication(channel, secure, new CommunicationProcessor.ClientCommunicationDispose(httpConnect, config, this), config);
+        state.set(State.CONNECTED);
+        communicationConnect.register(channel, SelectionKey.OP_READ, this);
+        register(config.getHostName(), true);
+        //首次序列化等初始化可能较慢，从注册发出后开始计算心跳超时
+        connectedAt = System.nanoTime();
+        LOG.info("已连接服务端 " + this);
+    }
+
+    /**
+     * 通信连接可读，连接已被对端关闭时立即下线
+     */
+    public void read() throws IOException {
+        Communication communication = this.communication;
+        if (communication == null) {
+            return;
+        }
+        //一次可读事件可能带来多条消息，全部处理完，否则剩余的消息要等到下次有数据才会处理
+        communication.disposeRequests();
+        if (communication.isEndOfStream()) {
+            LOG.info("服务端 " + this + " 关闭了连接");
+            close();
+        }
+    }
+
+    /**
+     * 提升为主连接
+     */
+    public void promote(String hostName) {
+        state.set(State.PROMOTING);
+        register(hostName, false);
+    }
+
+    private void register(String hostName, boolean standby) {
+        CommunicationRequest.CommunicationRequestHttpFirst first = new CommunicationRequest.CommunicationRequestHttpFirst(CommunicationEnum.HTTP);
+        first.setHost(hostName);
+        first.setStandby(standby);
+        try {
+            communication.writeN(createCommunicationRequest(first));
+        } catch (IOException e) {
+            LOG.info("注册失败 " + this + " " + e.getMessage());
+            close();
+        }
+    }
+
+    public void ping() {
+        Communication communication = this.communication;
+        if (communication == null) {
+            return;
+        }
+        communication.heartbeat();
+        if (!communication.isAlive()) {
+            LOG.info("心跳发送失败 " + this);
+            close();
+        }
+    }
+
+    void onReturn(CommunicationRequestHttpReturn.Status status) {
+        if (status == CommunicationRequestHttpReturn.Status.SUCCESS) {
+            if (!state.compareAndSet(State.CONNECTED, State.STANDBY)) {
+                state.compareAndSet(State.PROMOTING, State.ACTIVE);
+            }
+        } else if (status == CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED) {
+            // 备用注册被拒绝时断开重连，提升被拒绝时退回备用，都在 reconnectInterval 后重试
+            retryAt = System.currentTimeMillis() + domain.getClientConfig().getReconnectInterval();
+            if (!state.compareAndSet(State.PROMOTING, State.STANDBY)) {
+                close();
+            }
+        }
+        domain.onReturn(this, status);
+    }
+
+    /**
+     * 距离最后一次收到服务端数据（或连上）的时间
+     */
+    public long getSilentMillis(long now) {
+        Communication communication = this.communication;
+        if (communication == null) {
+            return 0;
+        }
+        long last = communication.getLastReadTime();
+        if (connectedAt - last > 0) {
+            last = connectedAt;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - last);
+    }
+
+    public void close() {
+        State previous = state.getAndSet(State.DOWN);
+        if (previous == State.DOWN) {
+            return;
+        }
+        Communication communication = this.communication;
+        this.communication = null;
+        if (communication != null) {
+            communication.close();
+        }
+        domain.onDown(this, previous);
+    }
+
+    public boolean isConnected() {
+        return state.get() != State.DOWN;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getRttMicros() {
+        Communication communication = this.communication;
+        return communication == null ? -1 : communication.getRttMicros();
+    }
+
+    public boolean hasRtt() {
+        Communication communication = this.communication;
+        return communication != null && communication.hasRtt();
+    }
+
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 不为空时数据连接也使用 TLS
+     */
+    public SslTunnel getSslTunnel() {
+        return domain.getSslTunnel();
+    }
+
+    public int getHttpAcceptPort() {
+        return httpAcceptPort;
+    }
+
+    public Communication getCommunication() {
+        return communication;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + intranetPort;
+    }
+}
@@ -3,11 +3,16 @@ package priv.bigant.intranet.client;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.lang3.StringUtils;
+import priv.bigant.intrance.common.ConfigWatcher;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.capture.CaptureStore;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -16,14 +21,51 @@ import java.util.logging.Logger;
 public class Start {
 
     private final static Logger LOG = Logger.getLogger(Start.class.getName());
+    /**
+     * 注册的域名、服务端地址、TLS 等在启动时使用一次的配置，修改后需要重启
+     */
+    private static final String[] RESTART_REQUIRED = {"hostName", "servers", "tunnelSsl", "capture", "accessLog", "admission", "configFile"};
 
     public static void main(String[] args) throws Exception {
+        //加载配置时会把文件中的配置写入系统属性，重新加载时只有真正的启动参数覆盖文件
+        Properties overrides = (Properties) System.getProperties().clone();
         ClientConfig config = createdConfig();
+        if (StringUtils.isNotBlank(config.getAccessLogDir())) {
+            AccessLog.start(config.getAccessLogDir(), config.getAccessLogSegmentSize(), config.getAccessLogMaxSegments(), config.getAccessLogRingSize());
+        }
+        if (StringUtils.isNotBlank(config.getCaptureFile())) {
+            Http11ProcessorServer.setCaptureStore(CaptureStore.open(Paths.get(config.getCaptureFile()), config.getCaptureSlotSize(), config.getCaptureSlots()));
+        }
         Domain domain = new Domain();
         domain.setReturnError(x -> domain.showdown());
         domain.connect();
         domain.startListener();
         //start(config);
+
+        ConfigWatcher configWatcher = new ConfigWatcher(Paths.get(configFile()), config, overrides);
+        configWatcher.addListener((previous, changed) -> {
+            domain.reconfigure();
+            warnRestartRequired(changed);
+        });
+        configWatcher.start();
+    }
+
+    private static void warnRestartRequired(Set<String> changed) {
+        for (String name : changed) {
+            for (String key : RESTART_REQUIRED) {
+                if (name.startsWith(key)) {
+                    LOG.warning("配置 " + name + " 需要重启后生效");
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String configFile() {
+        String configFile = System.getProperty("configFile");//通过启动参数指定配置文件位置
+        if (StringUtils.isBlank(configFile))
+            configFile = System.getProperty("user.dir") + "/conf.properties";
+        return configFile;
     }
 
     /**
@@ -33,9 +75,7 @@ public class Start {
      */
     public static ClientConfig createdConfig() throws IOException, InvocationTargetException, IllegalAccessException {
         ClientConfig clientConfig = ClientConfig.getClientConfig();
-        String configFile = System.getProperty("configFile");//通过启动参数指定配置文件位置
-        if (StringUtils.isBlank(configFile))
-            configFile = System.getProperty("user.dir") + "/conf.properties";
+        String configFile = configFile();
         Properties properties;
         try (FileInputStream inputStream = new FileInputStream(configFile)) {//properties 文件
             properties = new Properties();
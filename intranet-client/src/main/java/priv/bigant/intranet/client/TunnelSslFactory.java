@@ -0,0 +1,40 @@
+package priv.bigant.intranet.client;
+
+import org.apache.commons.lang3.StringUtils;
+import priv.bigant.intrance.common.util.net.SslTunnel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * 创建与服务端之间穿透连接使用的 TLS：整个客户端共用一个 SSLContext，会话按服务端 host:port 缓存，新建数据连接时复用
+ */
+public class TunnelSslFactory {
+
+    private TunnelSslFactory() {
+    }
+
+    public static SslTunnel create(ClientConfig config) throws GeneralSecurityException, IOException {
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        if (StringUtils.isBlank(config.getTunnelSslTrustStore())) {
+            factory.init((KeyStore) null);
+        } else {
+            KeyStore trustStore = KeyStore.getInstance(config.getTunnelSslTrustStoreType());
+            try (InputStream inputStream = new FileInputStream(config.getTunnelSslTrustStore())) {
+                trustStore.load(inputStream, config.getTunnelSslTrustStorePassword().toCharArray());
+            }
+            factory.init(trustStore);
+        }
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, factory.getTrustManagers(), null);
+        String[] protocols = StringUtils.isBlank(config.getTunnelSslProtocols()) ? null : StringUtils.stripAll(config.getTunnelSslProtocols().split(","));
+        SslTunnel sslTunnel = new SslTunnel(context, true, protocols, config.getTunnelSslHandshakeTimeout(), config.getTunnelSslBufferPoolSize());
+        sslTunnel.setVerifyHostname(config.isTunnelSslVerifyHostname());
+        return sslTunnel;
+    }
+}
@@ -0,0 +1,257 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ChannelStream;
+import priv.bigant.intrance.common.communication.Communication;
+import priv.bigant.intrance.common.communication.CommunicationRequest;
+import priv.bigant.intrance.common.communication.CommunicationRequest.CommunicationRequestHttpReturn;
+import priv.bigant.intranet.client.ClientConfig;
+import priv.bigant.intranet.client.Domain;
+import priv.bigant.intranet.client.ServerEndpoint;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class DomainTest {
+
+    private static final String HOST = "domain.test";
+    /**
+     * 慢服务端的心跳回应延迟（毫秒），远大于刚启动时类加载等带来的抖动
+     */
+    private static final long SLOW_ECHO = 100;
+
+    private final List<FakeServer> servers = new ArrayList<>();
+    private Domain domain;
+    private String previousServers;
+    private String previousHostName;
+    private int previousHeartbeatInterval;
+    private int previousReconnectInterval;
+
+    @Before
+    public void config() {
+        ClientConfig config = ClientConfig.getClientConfig();
+        previousServers = config.getServers();
+        previousHostName = config.getHostName();
+        previousHeartbeatInterval = config.getHeartbeatInterval();
+        previousReconnectInterval = config.getReconnectInterval();
+        config.setHostName(HOST);
+        config.setHeartbeatInterval(200);
+        config.setReconnectInterval(200);
+    }
+
+    @After
+    public void stop() {
+        if (domain != null) {
+            domain.showdown();
+        }
+        servers.forEach(FakeServer::kill);
+        ClientConfig config = ClientConfig.getClientConfig();
+        config.setServers(previousServers);
+        config.setHostName(previousHostName);
+        config.setHeartbeatInterval(previousHeartbeatInterval);
+        config.setReconnectInterval(previousReconnectInterval);
+    }
+
+    @Test
+    public void promotesLowestRttAndFailsOverOnClose() throws Exception {
+        FakeServer slow = server(0, SLOW_ECHO);
+        FakeServer fast = server(0, 0);
+        start(slow, fast);
+        ServerEndpoint slowEndpoint = domain.getEndpoints().get(0);
+        ServerEndpoint fastEndpoint = domain.getEndpoints().get(1);
+
+        await(() -> fastEndpoint.getState() == ServerEndpoint.State.ACTIVE, 5000);
+        Assert.assertEquals(ServerEndpoint.State.STANDBY, slowEndpoint.getState());
+        Assert.assertEquals("[true]", slow.registrations.toString());
+        Assert.assertEquals("[true, false]", fast.registrations.toString());
+
+        fast.kill();
+        await(() -> slowEndpoint.getState() == ServerEndpoint.State.ACTIVE, 1000);
+        Assert.assertEquals("[true, false]", slow.registrations.toString());
+        Assert.assertSame(slowEndpoint.getCommunication(), domain.getCommunication());
+    }
+
+    @Test
+    public void silentPrimaryDemoted() throws Exception {
+        FakeServer slow = server(0, SLOW_ECHO);
+        FakeServer fast = server(0, 0);
+        start(slow, fast);
+        ServerEndpoint slowEndpoint = domain.getEndpoints().get(0);
+        ServerEndpoint fastEndpoint = domain.getEndpoints().get(1);
+        await(() -> fastEndpoint.getState() == ServerEndpoint.State.ACTIVE, 5000);
+
+        //连接保持但不再回应心跳
+        fast.mute = true;
+        ClientConfig config = ClientConfig.getClientConfig();
+        long timeout = (long) config.getHeartbeatInterval() * config.getHeartbeatMissedBeats();
+        await(() -> slowEndpoint.getState() == ServerEndpoint.State.ACTIVE, timeout + 1000);
+        Assert.assertNotEquals(ServerEndpoint.State.ACTIVE, fastEndpoint.getState());
+    }
+
+    @Test
+    public void occupiedPromotionReturnsToStandby() throws Exception {
+        FakeServer slow = server(0, SLOW_ECHO);
+        FakeServer fast = server(0, 0);
+        slow.rejectPromotions.set(1);
+        start(slow, fast);
+        ServerEndpoint slowEndpoint = domain.getEndpoints().get(0);
+        ServerEndpoint fastEndpoint = domain.getEndpoints().get(1);
+        await(() -> fastEndpoint.getState() == ServerEndpoint.State.ACTIVE, 5000);
+
+        fast.kill();
+        //第一次提升被拒绝后保持备用连接，reconnectInterval 后再次提升
+        await(() -> slowEndpoint.getState() == ServerEndpoint.State.ACTIVE, 3000);
+        Assert.assertEquals("[true, false, false]", slow.registrations.toString());
+        Assert.assertEquals(1, slow.accepted.get());
+    }
+
+    @Test
+    public void reconnectsRestartedServer() throws Exception {
+        FakeServer slow = server(0, SLOW_ECHO);
+        FakeServer fast = server(0, 0);
+        start(slow, fast);
+        ServerEndpoint slowEndpoint = domain.getEndpoints().get(0);
+        ServerEndpoint fastEndpoint = domain.getEndpoints().get(1);
+        await(() -> fastEndpoint.getState() == ServerEndpoint.State.ACTIVE, 5000);
+
+        fast.kill();
+        await(() -> slowEndpoint.getState() == ServerEndpoint.State.ACTIVE, 1000);
+        FakeServer restarted = server(fast.port, 0);
+        //重连后只做备用注册，不抢回主连接
+        await(() -> fastEndpoint.getState() == ServerEndpoint.State.STANDBY && fastEndpoint.hasRtt(), 3000);
+        Assert.assertEquals("[true]", restarted.registrations.toString());
+        Assert.assertEquals(ServerEndpoint.State.ACTIVE, slowEndpoint.getState());
+    }
+
+    private void start(FakeServer... servers) throws Exception {
+        StringBuilder list = new StringBuilder();
+        for (FakeServer server : servers) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append("127.0.0.1:").append(server.port);
+        }
+        ClientConfig.getClientConfig().setServers(list.toString());
+        domain = new Domain();
+        domain.connect();
+        domain.startListener();
+    }
+
+    private FakeServer server(int port, long echoDelay) throws IOException {
+        FakeServer server = new FakeServer(port, echoDelay);
+        servers.add(server);
+        return server;
+    }
+
+    private static void await(BooleanSupplier condition, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 只实现注册与心跳的服务端，心跳按 echoDelay 延迟回应以区分往返时间
+     */
+    private static class FakeServer {
+        private final ServerSocketChannel listener;
+        private final int port;
+        private final long echoDelay;
+        private final List<SocketChannel> connections = new CopyOnWriteArrayList<>();
+        /**
+         * 收到的注册，true 为备用注册
+         */
+        private final List<Boolean> registrations = new CopyOnWriteArrayList<>();
+        /**
+         * 以 DOMAIN_OCCUPIED 拒绝的正式注册次数
+         */
+        private final AtomicInteger rejectPromotions = new AtomicInteger();
+        private final AtomicInteger accepted = new AtomicInteger();
+        private volatile boolean mute;
+
+        private FakeServer(int port, long echoDelay) throws IOException {
+            this.listener = ServerSocketChannel.open();
+            listener.socket().setReuseAddress(true);
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            this.port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            this.echoDelay = echoDelay;
+            Thread thread = new Thread(this::accept, "FakeServer-" + this.port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    SocketChannel channel = listener.accept();
+                    accepted.incrementAndGet();
+                    connections.add(channel);
+                    Thread thread = new Thread(() -> serve(channel), "FakeServer-" + port + "-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // 已关闭
+            }
+        }
+
+        private void serve(SocketChannel channel) {
+            ChannelStream stream = new ChannelStream(channel, 1024, "FakeServer");
+            ClientConfig config = ClientConfig.getClientConfig();
+            try {
+                while (channel.isOpen()) {
+                    CommunicationRequest request = Communication.readRequest(stream);
+                    switch (request.getType()) {
+                        case TEST:
+                            CommunicationRequest.CommunicationRequestTest test = request.toJavaObject(CommunicationRequest.CommunicationRequestTest.class);
+                            if (mute || test.isEcho()) {
+                                break;
+                            }
+                            Thread.sleep(echoDelay);
+                            test.setEcho(true);
+                            Communication.writeN(CommunicationRequest.createCommunicationRequest(test), channel, config);
+                            break;
+                        case HTTP:
+                            CommunicationRequest.CommunicationRequestHttpFirst first = request.toJavaObject(CommunicationRequest.CommunicationRequestHttpFirst.class);
+                            registrations.add(first.isStandby());
+                            CommunicationRequestHttpReturn.Status status = !first.isStandby() && rejectPromotions.getAndDecrement() > 0
+                                    ? CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED : CommunicationRequestHttpReturn.Status.SUCCESS;
+                            Communication.writeN(CommunicationRequest.createCommunicationRequest(new CommunicationRequestHttpReturn(status)), channel, config);
+                            break;
+                        default:
+                    }
+                }
+            } catch (Exception e) {
+                // 连接关闭
+            } finally {
+                close(channel);
+            }
+        }
+
+        private void kill() {
+            close(listener);
+            connections.forEach(FakeServer::close);
+        }
+
+        private static void close(Channel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+}
@@ -4,18 +4,32 @@ import priv.bigant.intrance.common.log.LogUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
 
 public class ChannelStream {
 
     private SocketChannel socketChannel;
+    /**
+     * 实际读取的通道，TLS 时为解密后的通道
+     */
+    private ByteChannel channel;
     private ByteBuffer byteBuffer;
     private static final Logger log = LogUtil.getLog();
     private boolean isFirst = true;
+    /**
+     * 最近一次读取时对端已关闭
+     */
+    private boolean endOfStream;
 
     public ChannelStream(SocketChannel socketChannel, int bufferSize, String logName) {
+        this(socketChannel, socketChannel, bufferSize, logName);
+    }
+
+    public ChannelStream(SocketChannel socketChannel, ByteChannel channel, int bufferSize, String logName) {
         this.socketChannel = socketChannel;
+        this.channel = channel;
         this.byteBuffer = ByteBuffer.allocateDirect(bufferSize);
     }
 
@@ -37,8 +51,9 @@ public class ChannelStream {
 
     protected int fill() throws IOException {
         byteBuffer.clear();
-        int read = socketChannel.read(byteBuffer);
+        int read = channel.read(byteBuffer);
         byteBuffer.flip();
+        endOfStream = read < 0;
         log.finer("ChannelStream fill size " + read);
         return read;
     }
@@ -52,15 +67,20 @@ public class ChannelStream {
         return byteBuffer.position() < byteBuffer.limit() || fill() > 0;
     }
 
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
     public SocketChannel getSocketChannel() {
         return socketChannel;
     }
 
     public void setSocketChannel(SocketChannel socketChannel) {
         this.socketChannel = socketChannel;
+        this.channel = socketChannel;
     }
 
     public void close() throws IOException {
-        socketChannel.close();
+        channel.close();
     }
 }
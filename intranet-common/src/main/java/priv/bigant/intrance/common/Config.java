@@ -1,5 +1,8 @@
 package priv.bigant.intrance.common;
 
+import priv.bigant.intrance.common.jmx.ConfigMXBean;
+import priv.bigant.intrance.common.util.net.SocketProfile;
+
 import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -8,8 +11,10 @@ import java.net.SocketException;
 import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 
-public class Config {
+public class Config implements ConfigMXBean {
     protected static Config config;
 
     private String logName;
@@ -29,12 +34,99 @@ public class Config {
     private int httpProcessWaitTime = 5000;
     private int httpProcessCoreSize = 1;
     private int httpProcessMaxSize = 20;
+    /**
+     * http 线程池排队上限（全部租户 / 单个租户）
+     */
+    private int httpProcessQueueSize = 1000;
+    private int httpProcessTenantQueueSize = 200;
+    /**
+     * 公平调度每轮给每个租户的额度（字节），乘以租户权重
+     */
+    private long httpProcessQuantum = 16 * 1024;
+    /**
+     * 过载保护：请求排队时延持续 interval 高于 target 时开始直接回复 503（毫秒，target 为 0 关闭）
+     */
+    private int admissionQueueTarget = 200;
+    private int admissionQueueInterval = 1000;
+    /**
+     * 租户（域名）权重，未配置的为 1
+     */
+    private Map<String, Integer> tenantWeights = new HashMap<>();
 
 
-    private int httpProcessReadBufferSize = 2048;
-    private int httpProcessWriteBufferSize = 2048;
+    private volatile int httpProcessReadBufferSize = 2048;
+    private volatile int httpProcessWriteBufferSize = 2048;
+    /**
+     * 请求 / 响应头的最大字节数与最大个数
+     */
+    private volatile int maxHttpHeaderSize = 8 * 1024;
+    private volatile int maxHeaderCount = 50;
     private int communicationByteBufferSize = 1024;
 
+    /**
+     * 是否启用 h2c（HTTP/2 明文，支持直接连接与 Upgrade 升级）
+     */
+    private volatile boolean http2Enabled = true;
+    /**
+     * 单个 HTTP/2 连接允许的最大并发流
+     */
+    private volatile int http2MaxConcurrentStreams = 100;
+    /**
+     * HTTP/2 流初始接收窗口
+     */
+    private volatile int http2InitialWindowSize = 65535;
+    /**
+     * HTTP/2 流转发线程池
+     */
+    private int http2StreamCoreSize = 1;
+    private int http2StreamMaxSize = 200;
+
+    /**
+     * 单个连接非阻塞写缓冲的低水位、高水位与硬上限（字节）
+     */
+    private volatile long writeBufferLowWatermark = 32 * 1024;
+    private volatile long writeBufferHighWatermark = 128 * 1024;
+    private volatile long writeBufferMaxSize = 512 * 1024;
+    /**
+     * selector 单次循环超过 slow 记入最慢循环列表，超过 stall 时输出线程栈（毫秒，小于等于 0 关闭）
+     */
+    private volatile int loopSlowThreshold = 20;
+    private volatile int loopStallThreshold = 500;
+    /**
+     * 公网 HTTP 连接的超时（毫秒，小于等于 0 关闭）：keep-alive 空闲多久关闭；从连接建立或空闲连接收到第一个字节起
+     * 多久内必须读完请求头，否则回复 408；请求体每个 requestBodyTimeout 内至少要收到 requestBodyMinRate 字节/秒，否则回复 408
+     */
+    private volatile int keepAliveTimeout = 20000;
+    private volatile int requestHeaderTimeout = 20000;
+    private volatile int requestBodyTimeout = 20000;
+    private volatile int requestBodyMinRate = 500;
+    /**
+     * Expect: 100-continue 的请求先只转发请求头，最多等源站答复多久（毫秒），超时或小于等于 0 时由边缘直接回复 100；
+     * 声明的 Content-Length 超过 maxRequestBodySize 时直接回复 413，不占用穿透通道（小于 0 不限制）
+     */
+    private volatile int expectContinueTimeout = 1000;
+    private volatile long maxRequestBodySize = -1;
+    /**
+     * 服务端在获取穿透通道前先读完不超过 spoolMaxBodySize 的请求体（小于等于 0 关闭），每个请求最多占用 spoolMemorySize 内存，
+     * 所有请求合计最多 spoolMemoryTotal，超出的部分写入 spoolDir 下内存映射的临时文件（为空使用 java.io.tmpdir）
+     */
+    private volatile long spoolMaxBodySize = 0;
+    private volatile long spoolMemorySize = 256 * 1024;
+    private volatile long spoolMemoryTotal = 64 * 1024 * 1024;
+    private String spoolDir;
+    /**
+     * 二进制访问日志目录（为空不记录）、单个段文件大小、保留的段文件数、待写入记录的缓冲条数
+     */
+    private String accessLogDir;
+    private int accessLogSegmentSize = 64 * 1024 * 1024;
+    private int accessLogMaxSegments = 32;
+    private int accessLogRingSize = 8192;
+    /**
+     * 穿透连接（客户端与服务端之间的通信连接、数据连接及集群节点之间的连接）与 HTTP 连接（浏览器、源站、管理端口）的 socket 参数
+     */
+    private SocketProfile tunnelSocket = SocketProfile.tunnel();
+    private SocketProfile httpSocket = SocketProfile.http();
+
     protected Config() {
 
     }
@@ -79,6 +171,304 @@ public class Config {
         this.httpProcessWriteBufferSize = httpProcessWriteBufferSize;
     }
 
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+    }
+
+    public int getHttp2InitialWindowSize() {
+        return http2InitialWindowSize;
+    }
+
+    public void setHttp2InitialWindowSize(int http2InitialWindowSize) {
+        this.http2InitialWindowSize = http2InitialWindowSize;
+    }
+
+    public int getHttp2StreamCoreSize() {
+        return http2StreamCoreSize;
+    }
+
+    public void setHttp2StreamCoreSize(int http2StreamCoreSize) {
+        this.http2StreamCoreSize = http2StreamCoreSize;
+    }
+
+    public int getHttp2StreamMaxSize() {
+        return http2StreamMaxSize;
+    }
+
+    public void setHttp2StreamMaxSize(int http2StreamMaxSize) {
+        this.http2StreamMaxSize = http2StreamMaxSize;
+    }
+
+    @Override
+    public int getMaxHttpHeaderSize() {
+        return maxHttpHeaderSize;
+    }
+
+    @Override
+    public void setMaxHttpHeaderSize(int maxHttpHeaderSize) {
+        this.maxHttpHeaderSize = maxHttpHeaderSize;
+    }
+
+    @Override
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    @Override
+    public void setMaxHeaderCount(int maxHeaderCount) {
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    public int getHttpProcessQueueSize() {
+        return httpProcessQueueSize;
+    }
+
+    public void setHttpProcessQueueSize(int httpProcessQueueSize) {
+        this.httpProcessQueueSize = httpProcessQueueSize;
+    }
+
+    public int getHttpProcessTenantQueueSize() {
+        return httpProcessTenantQueueSize;
+    }
+
+    public void setHttpProcessTenantQueueSize(int httpProcessTenantQueueSize) {
+        this.httpProcessTenantQueueSize = httpProcessTenantQueueSize;
+    }
+
+    public long getHttpProcessQuantum() {
+        return httpProcessQuantum;
+    }
+
+    public void setHttpProcessQuantum(long httpProcessQuantum) {
+        this.httpProcessQuantum = httpProcessQuantum;
+    }
+
+    public int getAdmissionQueueTarget() {
+        return admissionQueueTarget;
+    }
+
+    public void setAdmissionQueueTarget(int admissionQueueTarget) {
+        this.admissionQueueTarget = admissionQueueTarget;
+    }
+
+    public int getAdmissionQueueInterval() {
+        return admissionQueueInterval;
+    }
+
+    public void setAdmissionQueueInterval(int admissionQueueInterval) {
+        this.admissionQueueInterval = admissionQueueInterval;
+    }
+
+    public Map<String, Integer> getTenantWeights() {
+        return tenantWeights;
+    }
+
+    public void setTenantWeights(Map<String, Integer> tenantWeights) {
+        this.tenantWeights = tenantWeights;
+    }
+
+    public long getWriteBufferLowWatermark() {
+        return writeBufferLowWatermark;
+    }
+
+    public void setWriteBufferLowWatermark(long writeBufferLowWatermark) {
+        this.writeBufferLowWatermark = writeBufferLowWatermark;
+    }
+
+    public long getWriteBufferHighWatermark() {
+        return writeBufferHighWatermark;
+    }
+
+    public void setWriteBufferHighWatermark(long writeBufferHighWatermark) {
+        this.writeBufferHighWatermark = writeBufferHighWatermark;
+    }
+
+    public long getWriteBufferMaxSize() {
+        return writeBufferMaxSize;
+    }
+
+    public void setWriteBufferMaxSize(long writeBufferMaxSize) {
+        this.writeBufferMaxSize = writeBufferMaxSize;
+    }
+
+    @Override
+    public int getLoopSlowThreshold() {
+        return loopSlowThreshold;
+    }
+
+    @Override
+    public void setLoopSlowThreshold(int loopSlowThreshold) {
+        this.loopSlowThreshold = loopSlowThreshold;
+    }
+
+    @Override
+    public int getLoopStallThreshold() {
+        return loopStallThreshold;
+    }
+
+    @Override
+    public void setLoopStallThreshold(int loopStallThreshold) {
+        this.loopStallThreshold = loopStallThreshold;
+    }
+
+    @Override
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    @Override
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    @Override
+    public int getRequestHeaderTimeout() {
+        return requestHeaderTimeout;
+    }
+
+    @Override
+    public void setRequestHeaderTimeout(int requestHeaderTimeout) {
+        this.requestHeaderTimeout = requestHeaderTimeout;
+    }
+
+    @Override
+    public int getRequestBodyTimeout() {
+        return requestBodyTimeout;
+    }
+
+    @Override
+    public void setRequestBodyTimeout(int requestBodyTimeout) {
+        this.requestBodyTimeout = requestBodyTimeout;
+    }
+
+    @Override
+    public int getRequestBodyMinRate() {
+        return requestBodyMinRate;
+    }
+
+    @Override
+    public void setRequestBodyMinRate(int requestBodyMinRate) {
+        this.requestBodyMinRate = requestBodyMinRate;
+    }
+
+    @Override
+    public int getExpectContinueTimeout() {
+        return expectContinueTimeout;
+    }
+
+    @Override
+    public void setExpectContinueTimeout(int expectContinueTimeout) {
+        this.expectContinueTimeout = expectContinueTimeout;
+    }
+
+    @Override
+    public long getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    @Override
+    public void setMaxRequestBodySize(long maxRequestBodySize) {
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    @Override
+    public long getSpoolMaxBodySize() {
+        return spoolMaxBodySize;
+    }
+
+    @Override
+    public void setSpoolMaxBodySize(long spoolMaxBodySize) {
+        this.spoolMaxBodySize = spoolMaxBodySize;
+    }
+
+    @Override
+    public long getSpoolMemorySize() {
+        return spoolMemorySize;
+    }
+
+    @Override
+    public void setSpoolMemorySize(long spoolMemorySize) {
+        this.spoolMemorySize = spoolMemorySize;
+    }
+
+    @Override
+    public long getSpoolMemoryTotal() {
+        return spoolMemoryTotal;
+    }
+
+    @Override
+    public void setSpoolMemoryTotal(long spoolMemoryTotal) {
+        this.spoolMemoryTotal = spoolMemoryTotal;
+    }
+
+    public String getSpoolDir() {
+        return spoolDir;
+    }
+
+    public void setSpoolDir(String spoolDir) {
+        this.spoolDir = spoolDir;
+    }
+
+    public String getAccessLogDir() {
+        return accessLogDir;
+    }
+
+    public void setAccessLogDir(String accessLogDir) {
+        this.accessLogDir = accessLogDir;
+    }
+
+    public int getAccessLogSegmentSize() {
+        return accessLogSegmentSize;
+    }
+
+    public void setAccessLogSegmentSize(int accessLogSegmentSize) {
+        this.accessLogSegmentSize = accessLogSegmentSize;
+    }
+
+    public int getAccessLogMaxSegments() {
+        return accessLogMaxSegments;
+    }
+
+    public void setAccessLogMaxSegments(int accessLogMaxSegments) {
+        this.accessLogMaxSegments = accessLogMaxSegments;
+    }
+
+    public int getAccessLogRingSize() {
+        return accessLogRingSize;
+    }
+
+    public void setAccessLogRingSize(int accessLogRingSize) {
+        this.accessLogRingSize = accessLogRingSize;
+    }
+
+    public SocketProfile getTunnelSocket() {
+        return tunnelSocket;
+    }
+
+    public void setTunnelSocket(SocketProfile tunnelSocket) {
+        this.tunnelSocket = tunnelSocket;
+    }
+
+    public SocketProfile getHttpSocket() {
+        return httpSocket;
+    }
+
+    public void setHttpSocket(SocketProfile httpSocket) {
+        this.httpSocket = httpSocket;
+    }
+
     public int getHttpProcessCoreSize() {
         return httpProcessCoreSize;
     }
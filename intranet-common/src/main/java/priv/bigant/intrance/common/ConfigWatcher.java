@@ -0,0 +1,211 @@
+package priv.bigant.intrance.common;
+
+import org.apache.commons.beanutils.BeanUtilsBean;
+import org.apache.commons.beanutils.ConvertUtilsBean;
+import org.apache.commons.beanutils.PropertyUtilsBean;
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 监听配置文件，文件修改后重新加载到配置对象并通知监听器
+ * <p>
+ * 与启动时相同，启动参数 -Dxxx 覆盖文件中的同名配置；从文件中删除的配置保持当前值。
+ * 文件中有无法转换的值时整份放弃，不会把错误的值当作 0 生效
+ */
+public class ConfigWatcher extends Thread {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    /**
+     * 编辑器保存文件时常连续触发多次修改事件，收到事件后等待一段时间再加载
+     */
+    private static final long DEBOUNCE = 300;
+
+    private final Path file;
+    private final Object config;
+    private final Properties overrides;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConvertUtilsBean convertUtils = new ConvertUtilsBean();
+    private final BeanUtilsBean beanUtils;
+    private volatile WatchService watchService;
+
+    /**
+     * @param overrides 启动参数，优先于文件中的配置
+     */
+    public ConfigWatcher(Path file, Object config, Properties overrides) {
+        super("config-watcher");
+        setDaemon(true);
+        this.file = file.toAbsolutePath();
+        this.config = config;
+        this.overrides = overrides;
+        convertUtils.register(true, false, 0);
+        this.beanUtils = new BeanUtilsBean(convertUtils, new PropertyUtilsBean());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watchService = file.getFileSystem().newWatchService()) {
+            this.watchService = watchService;
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            LOG.info("监听配置文件 " + file);
+            while (!isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean modified = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.OVERFLOW && file.getFileName().equals(event.context())) {
+                        modified = true;
+                    }
+                }
+                key.reset();
+                if (modified) {
+                    Thread.sleep(DEBOUNCE);
+                    //丢弃等待期间的重复事件
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOG.fine("停止监听配置文件 " + file);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "监听配置文件失败 " + file, e);
+        }
+    }
+
+    public void showdown() {
+        interrupt();
+        WatchService watchService = this.watchService;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.fine("关闭 WatchService 失败 " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 重新加载配置文件
+     *
+     * @return 值有变化的属性名，加载失败时为空
+     */
+    public synchronized Set<String> reload() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        } catch (IOException e) {
+            LOG.warning("重新加载配置文件失败 " + file + " " + e.getMessage());
+            return Collections.emptySet();
+        }
+        properties.putAll(overrides);
+
+        Map<String, Object> values = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        PropertyUtilsBean propertyUtils = beanUtils.getPropertyUtils();
+        for (String name : properties.stringPropertyNames()) {
+            if (!propertyUtils.isWriteable(config, name)) {
+                continue;
+            }
+            try {
+                Class<?> type = propertyUtils.getPropertyType(config, name);
+                values.put(name, convertUtils.convert(properties.getProperty(name).trim(), type));
+            } catch (Exception e) {
+                errors.add(name + "=" + properties.getProperty(name));
+            }
+        }
+        if (!errors.isEmpty()) {
+            LOG.warning("配置文件 " + file + " 中有无法转换的值，本次不生效 " + errors);
+            return Collections.emptySet();
+        }
+
+        Map<String, String> previous;
+        Set<String> changed = new TreeSet<>();
+        try {
+            previous = snapshot();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                beanUtils.copyProperty(config, entry.getKey(), entry.getValue());
+            }
+            Map<String, String> current = snapshot();
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                if (!Objects.equals(entry.getValue(), previous.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.log(Level.WARNING, "重新加载配置文件失败 " + file, e);
+            return Collections.emptySet();
+        }
+        if (changed.isEmpty()) {
+            return changed;
+        }
+        LOG.info("配置文件 " + file + " 已重新加载，变化的配置 " + changed);
+        for (Listener listener : listeners) {
+            try {
+                listener.reloaded(previous, changed);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "应用配置失败", e);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 各属性当前的值；getter 抛出异常的属性（如未设置的包装类型）记为 null
+     */
+    private Map<String, String> snapshot() {
+        Map<String, String> values = new HashMap<>();
+        for (PropertyDescriptor descriptor : beanUtils.getPropertyUtils().getPropertyDescriptors(config)) {
+            if (descriptor.getReadMethod() == null || "class".equals(descriptor.getName())) {
+                continue;
+            }
+            String value;
+            try {
+                value = beanUtils.getProperty(config, descriptor.getName());
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                value = null;
+            }
+            values.put(descriptor.getName(), value);
+        }
+        return values;
+    }
+
+    public interface Listener {
+
+        /**
+         * 新的值已写入配置对象后调用
+         *
+         * @param previous 重新加载之前的各属性值
+         * @param changed  值有变化的属性名
+         */
+        void reloaded(Map<String, String> previous, Set<String> changed);
+    }
+}
@@ -1,21 +1,39 @@
 package priv.bigant.intrance.common;
 
 import priv.bigant.intrance.common.coyote.AbstractProcessor;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
 import priv.bigant.intrance.common.coyote.http11.Http11Processor;
+import priv.bigant.intrance.common.coyote.http11.RequestSniffer;
+import priv.bigant.intrance.common.coyote.http2.Http2Processor;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ThreadPool;
 import priv.bigant.intrance.common.log.LogUtil;
 import priv.bigant.intrance.common.util.collections.SynchronizedStack;
+import priv.bigant.intrance.common.util.net.ByteBufferPool;
 import priv.bigant.intrance.common.util.net.NioChannel;
 import priv.bigant.intrance.common.util.net.NioSelectorPool;
 import priv.bigant.intrance.common.util.net.NioSocketWrapper;
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
 import priv.bigant.intrance.common.util.net.SocketBufferHandler;
+import priv.bigant.intrance.common.util.threads.CoDel;
+import priv.bigant.intrance.common.util.threads.FairScheduler;
+import priv.bigant.intrance.common.util.threads.HashedWheelTimer;
+import priv.bigant.intrance.common.util.threads.Sheddable;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.SynchronousQueue;
+import java.util.Map;
+import java.nio.channels.CancelledKeyException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -27,61 +45,505 @@ public abstract class HttpIntranetServiceProcessAbs extends ProcessBase {
     public static final Logger LOG = LogUtil.getLog();
     ;
     /**
-     * http 线程池
+     * http 线程池，按请求域名公平调度
      */
-    private ThreadPoolExecutor executor;
+    private FairScheduler executor;
 
     private RecycledProcessors recycledProcessors = new RecycledProcessors();
     private NioSelectorPool nioSelectorPool = new NioSelectorPool();
     private static final Config config = Config.getConfig();
+    /**
+     * 过载时直接写回的 503
+     */
+    private static final byte[] SERVICE_UNAVAILABLE = Http11Processor.cannedResponse(HttpResponseStatus.SC_SERVICE_UNAVAILABLE, "服务繁忙，请稍后重试", 1);
+    /**
+     * 请求头超时写回的 408
+     */
+    private static final byte[] REQUEST_TIMEOUT = Http11Processor.cannedResponse(HttpResponseStatus.SC_REQUEST_TIMEOUT, "读取请求超时", 0);
+    /**
+     * 不为空时端口为 HTTPS：连接在 selector 上以非阻塞方式完成 TLS 握手，读到请求后再交给 Http11Processor
+     */
+    private SSLContext sslContext;
+    private String[] sslProtocols;
+    private long sslHandshakeTimeout;
+    private ByteBufferPool sslBufferPool;
+    /**
+     * 握手的委派任务（证书签名等）在这里执行，不占用 selector 线程
+     */
+    private ThreadPoolExecutor sslTaskExecutor;
+    /**
+     * 等待执行的委派任务上限，超出时关闭新握手的连接
+     */
+    private static final int SSL_TASK_QUEUE_SIZE = 1024;
 
     public HttpIntranetServiceProcessAbs() {
-        this.executor = new ThreadPoolExecutor(config.getHttpProcessCoreSize(), config.getHttpProcessMaxSize(), config.getHttpProcessWaitTime(), TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        this.executor = new FairScheduler("http-process", config.getHttpProcessCoreSize(), config.getHttpProcessMaxSize(),
+                config.getHttpProcessWaitTime(), TimeUnit.MILLISECONDS, config.getHttpProcessQueueSize(),
+                config.getHttpProcessTenantQueueSize(), config.getHttpProcessQuantum(),
+                new CoDel(TimeUnit.MILLISECONDS.toNanos(config.getAdmissionQueueTarget()), TimeUnit.MILLISECONDS.toNanos(config.getAdmissionQueueInterval())));
+        for (Map.Entry<String, Integer> entry : config.getTenantWeights().entrySet()) {
+            executor.setWeight(entry.getKey(), entry.getValue());
+        }
+        String name = getClass().getSimpleName();
+        JmxUtil.register("FairScheduler", name, executor);
+        JmxUtil.register("NioSelectorPool", name, nioSelectorPool);
+    }
+
+    public FairScheduler getScheduler() {
+        return executor;
+    }
+
+    /**
+     * 配置重新加载后按新的值调整处理线程、队列与 HTTP/2 流转发线程，排队中的请求不受影响；CoDel 的目标与间隔需重启生效
+     */
+    public void reconfigure() {
+        if (config.getHttpProcessMaxSize() >= executor.getMaxSize()) {
+            executor.setMaxSize(config.getHttpProcessMaxSize());
+            executor.setCoreSize(config.getHttpProcessCoreSize());
+        } else {
+            executor.setCoreSize(config.getHttpProcessCoreSize());
+            executor.setMaxSize(config.getHttpProcessMaxSize());
+        }
+        executor.setMaxQueued(config.getHttpProcessQueueSize());
+        executor.setMaxQueuedPerTenant(config.getHttpProcessTenantQueueSize());
+        executor.setQuantum(config.getHttpProcessQuantum());
+        for (Map.Entry<String, Integer> entry : config.getTenantWeights().entrySet()) {
+            executor.setWeight(entry.getKey(), entry.getValue());
+        }
+        ThreadPool.resize(Http2Processor.getStreamExecutor(), config.getHttp2StreamCoreSize(), config.getHttp2StreamMaxSize());
     }
 
     @Override
     public void showdown() {
         executor.shutdown();
+        if (sslTaskExecutor != null) {
+            sslTaskExecutor.shutdown();
+        }
     }
 
     public abstract Http11Processor createHttp11Processor();
 
+    /**
+     * 启用 TLS，加解密缓冲按引擎需要的最大记录大小从池中借还
+     *
+     * @param protocols 允许的协议，为空使用 JDK 默认
+     */
+    public void setSsl(SSLContext sslContext, String[] protocols, long handshakeTimeout, int maxPooledBuffers) {
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        int bufferSize = Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+        this.sslBufferPool = new ByteBufferPool(bufferSize, maxPooledBuffers, config.getDirectSslBuffer());
+        this.sslProtocols = protocols;
+        this.sslHandshakeTimeout = handshakeTimeout;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.sslTaskExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(SSL_TASK_QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "ssl-handshake-task");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sslTaskExecutor.allowCoreThreadTimeOut(true);
+        this.sslContext = sslContext;
+    }
+
+    public ByteBufferPool getSslBufferPool() {
+        return sslBufferPool;
+    }
+
     @Override
     public void read(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
+        if (selectionKey.attachment() instanceof PendingConnection) {
+            readPending(connectorThread, selectionKey, (PendingConnection) selectionKey.attachment());
+            return;
+        }
+        if (selectionKey.attachment() instanceof NioChannel) {
+            readChannel(selectionKey, (NioChannel) selectionKey.attachment());
+            return;
+        }
+        SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+        if (sslContext != null) {
+            //握手同样在 selector 上完成
+            PendingConnection pending = new PendingConnection(socketChannel, null, false);
+            selectionKey.attach(pending);
+            pending.schedule();
+            readPending(connectorThread, selectionKey, pending);
+            return;
+        }
         //selectionKey.interestOps(selectionKey.interestOps() & (~selectionKey.readyOps()));
         selectionKey.cancel();
+        //先读一次请求头，取出域名作为调度租户
+        SocketBufferHandler bufHandler = new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true);
+        ByteBuffer readBuffer = bufHandler.getReadBuffer();
+        int read = socketChannel.read(readBuffer);
+        if (read < 0) {
+            socketChannel.close();
+            return;
+        }
+        String host = RequestSniffer.host(readBuffer, 0, readBuffer.position());
+        long contentLength = RequestSniffer.contentLength(readBuffer, 0, readBuffer.position());
+        LOG.fine(() -> "HttpIntranetServiceProcessAbs read " + socketChannel + " host=" + host + " read=" + read);
+        try {
+            executor.execute(host, readBuffer.position() + Math.max(0, contentLength), new ReadProcessThread(null, socketChannel, bufHandler));
+        } catch (RejectedExecutionException e) {
+            LOG.warning("http 处理队列已满 host=" + host);
+            rejectOverload(socketChannel);
+        }
+    }
+
+    /**
+     * 注册时已完成 TLS 握手的连接（客户端的穿透数据连接）：读到明文后再调度，
+     * 只收到握手后的会话票据等数据时保持注册继续等待
+     */
+    private void readChannel(SelectionKey selectionKey, NioChannel channel) throws IOException {
+        ByteBuffer readBuffer = channel.getBufHandler().getReadBuffer();
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            LOG.fine("读取 TLS 连接失败 " + e);
+            read = -1;
+        }
+        if (read == 0) {
+            return;
+        }
+        selectionKey.cancel();
+        if (read < 0) {
+            channel.close();
+            return;
+        }
+        String host = RequestSniffer.host(readBuffer, 0, readBuffer.position());
+        long contentLength = RequestSniffer.contentLength(readBuffer, 0, readBuffer.position());
+        try {
+            executor.execute(host, readBuffer.position() + Math.max(0, contentLength), new ReadProcessThread(null, channel));
+        } catch (RejectedExecutionException e) {
+            LOG.warning("http 处理队列已满 host=" + host);
+            channel.close();
+        }
+    }
+
+    /**
+     * 公网连接：请求头读完整后才交给处理线程，慢速发送请求头的连接只占用 selector 上的一个 key
+     */
+    private void readPending(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey, PendingConnection pending) throws IOException {
         SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
-        LOG.fine("HttpIntranetServiceProcessAbs read " + socketChannel + "      " + socketChannel.socket().getInputStream().available());
-        executor.execute(new ReadProcessThread(socketChannel));
+        if (pending.handshaking) {
+            //握手不占用处理线程，停在半个 ClientHello 的连接只占用一个 key，由握手超时关闭
+            if (pending.channel == null) {
+                SocketBufferHandler handler = new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true);
+                pending.channel = new SecureNioChannel(socketChannel, handler, createSslEngine(), sslBufferPool, null);
+            }
+            SecureNioChannel secure = (SecureNioChannel) pending.channel;
+            int ops;
+            try {
+                ops = secure.handshake(false);
+            } catch (IOException e) {
+                LOG.fine("TLS 握手失败 " + socketChannel + " " + e);
+                selectionKey.cancel();
+                pending.close();
+                return;
+            }
+            if (ops == SecureNioChannel.NEED_TASK) {
+                runHandshakeTask(connectorThread, selectionKey, pending, secure);
+                return;
+            }
+            if (ops != 0) {
+                selectionKey.interestOps(ops);
+                return;
+            }
+            selectionKey.interestOps(SelectionKey.OP_READ);
+            pending.handshaken();
+            //请求可能和握手的最后一个消息一起到达，继续读
+        }
+        if (pending.channel == null) {
+            pending.channel = new NioChannel(socketChannel, new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true));
+        }
+        NioChannel channel = pending.channel;
+        ByteBuffer readBuffer = channel.getBufHandler().getReadBuffer();
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            LOG.fine("读取请求失败 " + e);
+            read = -1;
+        }
+        if (read < 0) {
+            selectionKey.cancel();
+            pending.close();
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        pending.requestStarted();
+        //缓冲已满时交给处理器，由它判断请求头是否过大
+        if (readBuffer.hasRemaining() && !RequestSniffer.headerComplete(readBuffer, 0, readBuffer.position())) {
+            return;
+        }
+        if (!pending.dispatch()) {
+            return;
+        }
+        selectionKey.cancel();
+        String host = RequestSniffer.host(readBuffer, 0, readBuffer.position());
+        long contentLength = RequestSniffer.contentLength(readBuffer, 0, readBuffer.position());
+        LOG.fine(() -> "HttpIntranetServiceProcessAbs read " + socketChannel + " host=" + host + " read=" + readBuffer.position());
+        try {
+            executor.execute(host, readBuffer.position() + Math.max(0, contentLength), new ReadProcessThread(connectorThread, channel));
+        } catch (RejectedExecutionException e) {
+            LOG.warning("http 处理队列已满 host=" + host);
+            if (channel instanceof SecureNioChannel) {
+                channel.close();
+            } else {
+                rejectOverload(socketChannel);
+            }
+        }
+    }
+
+    /**
+     * 在任务线程中执行握手的委派任务，期间 key 不关注任何事件；完成后回到 selector 线程继续握手
+     */
+    private void runHandshakeTask(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey, PendingConnection pending, SecureNioChannel channel) throws IOException {
+        selectionKey.interestOps(0);
+        try {
+            sslTaskExecutor.execute(() -> {
+                try {
+                    channel.runDelegatedTasks();
+                } finally {
+                    connectorThread.execute(() -> {
+                        //握手超时已关闭连接
+                        if (!selectionKey.isValid()) {
+                            return;
+                        }
+                        try {
+                            readPending(connectorThread, selectionKey, pending);
+                        } catch (IOException | CancelledKeyException e) {
+                            LOG.fine("TLS 握手失败 " + channel.getIOChannel() + " " + e);
+                            selectionKey.cancel();
+                            closeQuietly(channel);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warning("TLS 握手任务队列已满，关闭连接 " + channel.getIOChannel());
+            selectionKey.cancel();
+            pending.close();
+        }
+    }
+
+    /**
+     * 响应完成的 keep-alive 连接放回 selector 等待下一个请求
+     */
+    private void idle(ServerConnector.ConnectorThread connectorThread, NioChannel channel) {
+        SocketChannel socketChannel = channel.getIOChannel();
+        try {
+            //转发响应时改成了阻塞模式
+            socketChannel.configureBlocking(false);
+            channel.getBufHandler().reset();
+            PendingConnection pending = new PendingConnection(socketChannel, channel, true);
+            connectorThread.register(socketChannel, SelectionKey.OP_READ, pending);
+            pending.schedule();
+        } catch (IOException e) {
+            LOG.fine("keep-alive 连接放回 selector 失败 " + e);
+            closeQuietly(channel);
+        }
+    }
+
+    private SSLEngine createSslEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        if (sslProtocols != null && sslProtocols.length > 0) {
+            engine.setEnabledProtocols(sslProtocols);
+        }
+        return engine;
+    }
+
+    /**
+     * 不解析请求，直接写回 503 并关闭连接（非阻塞，写不完就放弃）
+     */
+    private static void rejectOverload(SocketChannel socketChannel) {
+        reject(socketChannel, SERVICE_UNAVAILABLE);
+    }
+
+    private static void reject(SocketChannel socketChannel, byte[] response) {
+        try {
+            socketChannel.write(ByteBuffer.wrap(response));
+            socketChannel.shutdownOutput();
+            //读掉已到达的请求数据，避免关闭时发送 RST 导致客户端收不到响应
+            ByteBuffer discard = ByteBuffer.allocate(4096);
+            for (int i = 0; i < 16 && socketChannel.read(discard) > 0; i++) {
+                discard.clear();
+            }
+        } catch (IOException e) {
+            LOG.fine("回复失败 " + e.getMessage());
+        } finally {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                LOG.fine("关闭连接失败 " + e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(NioChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.fine("关闭连接失败 " + e.getMessage());
+        }
     }
 
     @Override
-    public void accept(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
-        SocketChannel socketChannel = ((ServerSocketChannel) selectionKey.channel()).accept();
-        LOG.fine("HttpIntranetServiceProcessAbs accept " + socketChannel + "      " + socketChannel.socket().getInputStream().available());
-        socketChannel.configureBlocking(false);
-        connectorThread.register(socketChannel, SelectionKey.OP_READ);
-        //executor.execute(new ReadProcessThread(socketChannel));
+    public void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException {
+        LOG.fine(() -> "HttpIntranetServiceProcessAbs accept " + socketChannel);
+        PendingConnection pending = new PendingConnection(socketChannel, null, false);
+        connectorThread.register(socketChannel, SelectionKey.OP_READ, pending);
+        pending.schedule();
     }
 
-    class ReadProcessThread implements Runnable {
+    /**
+     * 在 selector 上等待请求的公网连接，由时间轮计时：keep-alive 空闲超时直接关闭，请求头超时回复 408 后关闭
+     * <p>
+     * 超时与交给处理线程通过 done 竞争，只有一方生效
+     */
+    private final class PendingConnection implements Runnable {
+        private final SocketChannel socketChannel;
+        /**
+         * 第一次读到数据时创建，TLS 连接与 keep-alive 连接沿用原来的通道；只由 selector 线程访问
+         */
+        private NioChannel channel;
+        private volatile boolean idle;
+        /**
+         * HTTPS 新连接握手完成前为 true，期间按握手超时计时
+         */
+        private volatile boolean handshaking;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        private PendingConnection(SocketChannel socketChannel, NioChannel channel, boolean idle) {
+            this.socketChannel = socketChannel;
+            this.channel = channel;
+            this.idle = idle;
+            this.handshaking = channel == null && sslContext != null;
+        }
+
+        private void schedule() {
+            long millis = idle ? config.getKeepAliveTimeout() : handshaking ? sslHandshakeTimeout : config.getRequestHeaderTimeout();
+            if (millis > 0) {
+                timeout = HashedWheelTimer.getDefault().newTimeout(this, millis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 空闲连接收到下一个请求的数据，改为计算请求头超时
+         */
+        private void requestStarted() {
+            if (idle) {
+                idle = false;
+                cancelTimeout();
+                schedule();
+            }
+        }
+
+        /**
+         * 握手完成，改为计算请求头超时
+         */
+        private void handshaken() {
+            handshaking = false;
+            cancelTimeout();
+            schedule();
+        }
+
+        /**
+         * @return 已超时关闭时返回 false
+         */
+        private boolean dispatch() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            cancelTimeout();
+            return true;
+        }
+
+        private void close() throws IOException {
+            if (done.compareAndSet(false, true)) {
+                cancelTimeout();
+            }
+            if (channel != null) {
+                channel.close();
+            } else {
+                socketChannel.close();
+            }
+        }
+
+        private void cancelTimeout() {
+            HashedWheelTimer.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (idle || sslContext != null) {
+                //TLS 连接无法在这里写回明文响应
+                LOG.fine(() -> (idle ? "keep-alive 空闲超时 " : handshaking ? "TLS 握手超时 " : "读取请求超时 ") + socketChannel);
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    LOG.fine("关闭连接失败 " + e.getMessage());
+                }
+            } else {
+                LOG.fine(() -> "读取请求头超时 " + socketChannel);
+                reject(socketChannel, REQUEST_TIMEOUT);
+            }
+        }
+    }
+
+    class ReadProcessThread implements Sheddable {
 
         private SocketChannel socketChannel;
+        private SocketBufferHandler bufHandler;
+        /**
+         * 已完成握手的通道
+         */
+        private NioChannel channel;
 
-        public ReadProcessThread(SocketChannel socketChannel) {
+        /**
+         * 公网连接所在的 selector 线程，响应完成后空闲的连接放回这里；为 null 时处理完即关闭
+         */
+        private ServerConnector.ConnectorThread connectorThread;
+
+        public ReadProcessThread(ServerConnector.ConnectorThread connectorThread, SocketChannel socketChannel, SocketBufferHandler bufHandler) {
+            this.connectorThread = connectorThread;
             this.socketChannel = socketChannel;
+            this.bufHandler = bufHandler;
+        }
+
+        public ReadProcessThread(ServerConnector.ConnectorThread connectorThread, NioChannel channel) {
+            this.connectorThread = connectorThread;
+            this.socketChannel = channel.getIOChannel();
+            this.channel = channel;
         }
 
         @Override
         public void run() {
             try {
+                NioChannel nioChannel;
+                if (channel != null) {
+                    nioChannel = channel;
+                } else {
+                    nioChannel = new NioChannel(socketChannel, bufHandler);
+                }
+
                 AbstractProcessor pop = recycledProcessors.pop();
                 if (pop == null) {
                     pop = createHttp11Processor();
                 }
-
-                //TODO
-                NioChannel nioChannel = new NioChannel(socketChannel, new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true));
+                if (connectorThread != null && pop instanceof Http11Processor) {
+                    ServerConnector.ConnectorThread thread = connectorThread;
+                    ((Http11Processor) pop).setIdleHandler(channel -> idle(thread, channel));
+                }
                 NioSocketWrapper nioSocketWrapper = new NioSocketWrapper(nioChannel, nioSelectorPool);
                 pop.service(nioSocketWrapper);
 
@@ -90,6 +552,20 @@ public abstract class HttpIntranetServiceProcessAbs extends ProcessBase {
                 e.printStackTrace();
             }
         }
+
+        @Override
+        public void shed() {
+            LOG.fine("排队超时，丢弃请求 " + socketChannel);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOG.fine("关闭连接失败 " + e.getMessage());
+                }
+            } else {
+                rejectOverload(socketChannel);
+            }
+        }
     }
 
     public static class RecycledProcessors extends SynchronizedStack<AbstractProcessor> {
@@ -45,6 +45,15 @@ public class HttpSocketManager {
         return throughMap.remove(host);
     }
 
+    /**
+     * 当前已注册域名的副本
+     */
+    public static Map<String, HttpCommunication> snapshot() {
+        synchronized (throughMap) {
+            return new HashMap<>(throughMap);
+        }
+    }
+
     /**
      * 验证是否存在
      */
@@ -2,6 +2,7 @@ package priv.bigant.intrance.common;
 
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 
 /**
  * Nio 处理中心
@@ -12,5 +13,8 @@ public interface Process extends BigAnt {
 
     void read(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException;
 
-    void accept(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException;
+    /**
+     * acceptor 线程接受的新连接，已应用 socket 参数并设为非阻塞，在分配到的 selector 线程中调用
+     */
+    void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException;
 }
@@ -1,28 +1,72 @@
 package priv.bigant.intrance.common;
 
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ServerConnectorMXBean;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.metrics.Histogram;
+import priv.bigant.intrance.common.metrics.LoopStats;
+import priv.bigant.intrance.common.metrics.LoopWatchdog;
+import priv.bigant.intrance.common.util.net.SocketProfile;
 
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class ServerConnector implements Connector {
+public class ServerConnector implements Connector, ServerConnectorMXBean {
+
+    private static final Logger LOG = LogUtil.getLog();
 
     private String name;
     private Process process;
+    private String host;
     private int port;
-    private ServerSocketChannel server;
-    private ConnectorThread connectorThread;
+    /**
+     * 监听 socket 与对应的 acceptor 线程，开启 SO_REUSEPORT 多 acceptor 时各有多个，下标一一对应
+     */
+    private final List<ServerSocketChannel> servers = new ArrayList<>();
+    private final List<Acceptor> acceptors = new ArrayList<>();
+    /**
+     * 处理已接受连接读写事件的 selector 线程
+     */
+    private final List<ConnectorThread> connectorThreads = new ArrayList<>();
+    private final AtomicInteger nextPoller = new AtomicInteger();
     private Config config;
+    private SocketProfile socketProfile;
+    private ObjectName objectName;
 
     public ServerConnector(String name, Process process, int port, Config config) {
+        this(name, process, null, port, config);
+    }
+
+    /**
+     * @param host 监听地址，为空时监听所有地址
+     */
+    public ServerConnector(String name, Process process, String host, int port, Config config) {
         this.name = name;
         this.process = process;
+        this.host = host;
         this.port = port;
         this.config = config;
+        this.socketProfile = config.getHttpSocket();
+    }
+
+    /**
+     * 监听端口与 accept 得到的连接使用的 socket 参数，默认为 HTTP 连接的参数，需在 start 之前设置
+     */
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
     }
 
     @Override
@@ -34,66 +78,437 @@ public class ServerConnector implements Connector {
     public void start() {
         try {
             connect();
-            connectorThread = new ConnectorThread(process, getName() + "-thread", config);
-            connectorThread.register(server, SelectionKey.OP_ACCEPT);
-            connectorThread.start();
+            int pollers = Math.max(1, socketProfile.getPollers());
+            for (int i = 0; i < pollers; i++) {
+                ConnectorThread connectorThread = new ConnectorThread(process, getName() + "-thread" + (pollers > 1 ? "-" + i : ""), config);
+                //多个线程共用一个 process，只由第一个线程负责关闭
+                connectorThread.ownsProcess = i == 0;
+                connectorThreads.add(connectorThread);
+            }
+            for (int i = 0; i < servers.size(); i++) {
+                acceptors.add(new Acceptor(servers.get(i), getName() + "-acceptor" + (servers.size() > 1 ? "-" + i : "")));
+            }
+            for (ConnectorThread connectorThread : connectorThreads) {
+                connectorThread.start();
+            }
+            for (Acceptor acceptor : acceptors) {
+                acceptor.start();
+            }
+            objectName = JmxUtil.register("Connector", name, this);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     private void connect() throws IOException {
-        this.server = ServerSocketChannel.open();
-        server.configureBlocking(false);
-        server.bind(new InetSocketAddress(port));
+        int acceptors = socketProfile.getAcceptors();
+        if (acceptors > 1 && !SocketProfile.isReusePortSupported()) {
+            LOG.warning(name + " 当前平台不支持 SO_REUSEPORT，只使用一个监听线程");
+            acceptors = 1;
+        }
+        InetSocketAddress address = host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+        try {
+            for (int i = 0; i < acceptors; i++) {
+                //阻塞模式，由 acceptor 线程阻塞在 accept 上
+                ServerSocketChannel server = socketProfile.bind(address, acceptors > 1);
+                servers.add(server);
+                //端口为 0 时其余 socket 绑定到第一个分配到的端口
+                address = (InetSocketAddress) server.getLocalAddress();
+            }
+        } catch (IOException e) {
+            closeServers();
+            throw e;
+        }
+    }
+
+    /**
+     * 轮询选择处理新连接的 selector 线程
+     */
+    private ConnectorThread nextPoller() {
+        return connectorThreads.get(Math.floorMod(nextPoller.getAndIncrement(), connectorThreads.size()));
+    }
+
+    /**
+     * 第一个 selector 线程
+     */
+    public ConnectorThread getConnectorThread() {
+        return connectorThreads.isEmpty() ? null : connectorThreads.get(0);
+    }
+
+    public List<ConnectorThread> getConnectorThreads() {
+        return Collections.unmodifiableList(connectorThreads);
+    }
+
+    public List<Acceptor> getAcceptorThreads() {
+        return Collections.unmodifiableList(acceptors);
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public String getProcessName() {
+        return process.getName();
+    }
+
+    @Override
+    public int getAcceptors() {
+        return acceptors.size();
+    }
+
+    @Override
+    public int getPollers() {
+        return connectorThreads.size();
+    }
+
+    @Override
+    public long getAccepted() {
+        long accepted = 0;
+        for (Acceptor acceptor : acceptors) {
+            accepted += acceptor.getAccepted();
+        }
+        return accepted;
+    }
+
+    @Override
+    public long getLoops() {
+        return sum(thread -> thread.getLoops());
+    }
+
+    @Override
+    public long getEvents() {
+        return sum(thread -> thread.getEvents());
+    }
+
+    /**
+     * 多个线程时取各线程中的最大值，下同
+     */
+    @Override
+    public long getEventMeanMicros() {
+        return max(thread -> Math.round(thread.getEventTime().snapshot().getMean()));
+    }
+
+    @Override
+    public long getEventP99Micros() {
+        return max(thread -> thread.getEventTime().snapshot().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getEventMaxMicros() {
+        return max(thread -> thread.getEventTime().snapshot().getMax());
+    }
+
+    @Override
+    public long getSelectP99Micros() {
+        return max(thread -> thread.getStats().getSelectTime().snapshot().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getIterationP99Micros() {
+        return max(thread -> thread.getStats().getIterationTime().snapshot().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getIterationMaxMicros() {
+        return max(thread -> thread.getStats().getIterationTime().snapshot().getMax());
+    }
+
+    @Override
+    public long getCurrentIterationMicros() {
+        return max(thread -> thread.getStats().getCurrentIterationMicros());
+    }
+
+    @Override
+    public long getStalls() {
+        return sum(thread -> thread.getStats().getStalls());
+    }
+
+    @Override
+    public List<LoopStats.SlowIteration> getSlowestIterations() {
+        if (connectorThreads.size() == 1) {
+            return connectorThreads.get(0).getStats().getSlowest();
+        }
+        List<LoopStats.SlowIteration> slowest = new ArrayList<>();
+        for (ConnectorThread connectorThread : connectorThreads) {
+            slowest.addAll(connectorThread.getStats().getSlowest());
+        }
+        slowest.sort((a, b) -> Long.compare(b.getDurationMicros(), a.getDurationMicros()));
+        return slowest;
+    }
+
+    private long sum(ToLongFunction<ConnectorThread> metric) {
+        long sum = 0;
+        for (ConnectorThread connectorThread : connectorThreads) {
+            sum += metric.applyAsLong(connectorThread);
+        }
+        return sum;
     }
 
+    private long max(ToLongFunction<ConnectorThread> metric) {
+        long max = 0;
+        for (ConnectorThread connectorThread : connectorThreads) {
+            max = Math.max(max, metric.applyAsLong(connectorThread));
+        }
+        return max;
+    }
 
     public void showdown() {
-        try {
-            if (server != null) server.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
+        JmxUtil.unregister(objectName);
+        for (Acceptor acceptor : acceptors) {
+            acceptor.showdown();
+        }
+        //关闭监听 socket 使阻塞在 accept 上的 acceptor 线程退出
+        closeServers();
+        for (ConnectorThread connectorThread : connectorThreads) {
             connectorThread.showdown();
         }
+    }
+
+    private void closeServers() {
+        for (ServerSocketChannel server : servers) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * acceptor 线程：阻塞在监听 socket 的 accept 上，应用 socket 参数后把新连接交给 selector 线程，
+     * selector 线程中较慢的读处理不会推迟 accept
+     */
+    public class Acceptor extends Thread {
+        /**
+         * accept 出错（如文件描述符耗尽）时的等待时间，连续出错时翻倍，避免空转
+         */
+        private static final int INITIAL_ERROR_DELAY = 50;
+        private static final int MAX_ERROR_DELAY = 1600;
+
+        private final ServerSocketChannel server;
+        private volatile boolean stopStatus = false;
+        private volatile long accepted;
+
+        Acceptor(ServerSocketChannel server, String name) {
+            super(name);
+            this.server = server;
+        }
+
+        public void showdown() {
+            stopStatus = true;
+        }
+
+        /**
+         * 已接受的连接数
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public void run() {
+            int errorDelay = 0;
+            while (!stopStatus) {
+                SocketChannel socketChannel;
+                try {
+                    socketChannel = server.accept();
+                    errorDelay = 0;
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (stopStatus) {
+                        break;
+                    }
+                    LOG.log(Level.SEVERE, getName() + " accept 失败", e);
+                    errorDelay = errorDelay == 0 ? INITIAL_ERROR_DELAY : Math.min(errorDelay * 2, MAX_ERROR_DELAY);
+                    try {
+                        Thread.sleep(errorDelay);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                    continue;
+                }
+                accepted++;
+                try {
+                    socketProfile.configure(socketChannel);
+                    socketChannel.configureBlocking(false);
+                    nextPoller().accepted(socketChannel);
+                } catch (IOException e) {
+                    LOG.fine(getName() + " 新连接设置失败 " + socketChannel + " " + e.getMessage());
+                    close(socketChannel);
+                }
+            }
+            LOG.fine(getName() + " 停止");
+        }
+    }
 
+    private static void close(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            LOG.fine("关闭连接失败 " + e.getMessage());
+        }
     }
 
     /**
      * nio process 监控线程
+     * <p>
+     * 其他线程提交的新连接与注册请求放入无锁队列，队列由空变为非空时唤醒 selector；
+     * 没有待处理的提交时阻塞在 select 上，不再空转
      */
     public static class ConnectorThread extends Thread implements Connector {
         private static final Logger LOG = LogUtil.getLog();
+        /**
+         * 阻塞 select 的超时时间，超时后检查是否已关闭
+         */
+        private static final long SELECT_TIMEOUT = 1000;
         private Selector selector;
         private Process process;
-        private Boolean stopStatus = false;
+        private volatile boolean stopStatus = false;
+        /**
+         * 关闭时是否同时关闭 process
+         */
+        private boolean ownsProcess = true;
+        /**
+         * 循环与事件耗时，只由本线程写，读取时允许略有滞后
+         */
+        private final LoopStats stats;
+        /**
+         * 其他线程提交给本线程执行的事件：新连接与注册请求
+         */
+        private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+        /**
+         * -1 表示本线程正阻塞在 select 上，提交事件的线程把它加到 0 时负责唤醒；
+         * 大于 0 表示有提交尚未处理，下一次循环不阻塞
+         */
+        private final AtomicLong wakeupCounter = new AtomicLong();
 
         public ConnectorThread(Process process, String name, Config config) throws IOException {
             super(name);
             this.process = process;
             this.selector = Selector.open();
+            this.stats = new LoopStats(name, config);
         }
 
+        @Override
+        public synchronized void start() {
+            LoopWatchdog.watch(stats, this);
+            super.start();
+        }
+
+        /**
+         * 注册在本线程的循环中执行，可以从任意线程调用；同一 selector 上刚取消的 key 也能重新注册
+         */
         public void register(SelectableChannel selectableChannel, int ops, Object attn) throws ClosedChannelException {
-            selectableChannel.register(selector, ops, attn);
+            if (!selectableChannel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            addEvent(() -> doRegister(selectableChannel, ops, attn));
         }
 
         public void register(SelectableChannel selectableChannel, int ops) throws ClosedChannelException {
-            selectableChannel.register(selector, ops);
+            register(selectableChannel, ops, null);
+        }
+
+        /**
+         * acceptor 线程交来的新连接，在本线程中交给 process 处理
+         */
+        void accepted(SocketChannel socketChannel) {
+            addEvent(() -> {
+                stats.beginHandler(LoopStats.ACCEPT);
+                try {
+                    process.accept(this, socketChannel);
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, process.getName() + " 处理器处理新连接失败 ", e);
+                    close(socketChannel);
+                }
+                stats.endHandler();
+            });
+        }
+
+        /**
+         * 在本线程的循环中执行，可以从任意线程调用，如其它线程完成任务后重新设置 key 的关注事件
+         */
+        public void execute(Runnable event) {
+            addEvent(event);
+        }
+
+        private void addEvent(Runnable event) {
+            events.offer(event);
+            if (wakeupCounter.incrementAndGet() == 0) {
+                selector.wakeup();
+            }
+        }
+
+        private void doRegister(SelectableChannel selectableChannel, int ops, Object attn) {
+            try {
+                try {
+                    selectableChannel.register(selector, ops, attn);
+                } catch (CancelledKeyException e) {
+                    //取消的 key 要到下一次 select 才从 selector 注销，之前不能重新注册
+                    selector.selectNow();
+                    selectableChannel.register(selector, ops, attn);
+                }
+            } catch (ClosedChannelException e) {
+                LOG.fine(getName() + " 注册时连接已关闭 " + selectableChannel);
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.WARNING, getName() + " 注册失败 " + selectableChannel, e);
+            }
+        }
+
+        /**
+         * 执行队列中的事件，返回执行的个数
+         */
+        private int events() {
+            int count = 0;
+            Runnable event;
+            while ((event = events.poll()) != null) {
+                count++;
+                event.run();
+            }
+            return count;
         }
 
         public void showdown() {
+            stopStatus = true;
             try {
                 selector.close();
-                process.showdown();
+                if (ownsProcess) {
+                    process.showdown();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             } finally {
-                stopStatus = true;
+                LoopWatchdog.unwatch(stats);
             }
         }
 
+        public long getLoops() {
+            return stats.getIterations();
+        }
+
+        public long getEvents() {
+            return stats.getEvents();
+        }
+
+        public Histogram getEventTime() {
+            return stats.getHandlerTime();
+        }
+
+        public LoopStats getStats() {
+            return stats;
+        }
+
+        public Process getProcess() {
+            return process;
+        }
+
         private boolean isShowDown() {
             return stopStatus;
         }
@@ -101,9 +516,15 @@ public class ServerConnector implements Connector {
         @Override
         public void run() {
             while (!isShowDown()) {
+                long selectStart = System.nanoTime();
                 int i;
                 try {
-                    i = selector.selectNow();
+                    if (wakeupCounter.getAndSet(-1) > 0) {
+                        i = selector.selectNow();
+                    } else {
+                        i = selector.select(SELECT_TIMEOUT);
+                    }
+                    wakeupCounter.set(0);
                 } catch (IOException e) {
                     i = 0;
                     LOG.severe(process.getName() + " process 监控线程 select error" + e);
@@ -111,21 +532,26 @@ public class ServerConnector implements Connector {
                 } catch (ClosedSelectorException e) {
                     continue;
                 }
-
-                if (i < 1)
+                stats.beginIteration(System.nanoTime() - selectStart);
+                int ready;
+                Iterator<SelectionKey> selectionKeys;
+                try {
+                    ready = i + events();
+                    //注册重试时的 selectNow 也可能选出 key，不按 i 判断
+                    selectionKeys = selector.selectedKeys().iterator();
+                } catch (ClosedSelectorException e) {
                     continue;
-                Iterator<SelectionKey> selectionKeys = selector.selectedKeys().iterator();
+                }
                 while (selectionKeys.hasNext() && !isShowDown()) {
 
                     SelectionKey selectionKey = selectionKeys.next();
                     selectionKeys.remove();
 
                     try {
-                        if (selectionKey.isAcceptable()) {
-                            LOG.finer(getName() + " accept");
-                            process.accept(this, selectionKey);
-                        } else if (selectionKey.isReadable()) {
+                        //TLS 握手等待写出时注册的是 OP_WRITE，同样交给 read 继续推进
+                        if (selectionKey.isReadable() || selectionKey.isWritable()) {
                             LOG.finer(getName() + " read");
+                            stats.beginHandler(LoopStats.READ);
                             process.read(this, selectionKey);
                         }
                     } catch (ClosedSelectorException | CancelledKeyException e) {
@@ -135,11 +561,12 @@ public class ServerConnector implements Connector {
                         LOG.log(Level.SEVERE, process.getName() + " 处理器处理事件失败 ", e);
                         selectionKey.cancel();
                     }
+                    stats.endHandler();
 
                 }
+                stats.endIteration(ready);
             }
         }
 
     }
 }
-
@@ -1,9 +1,12 @@
 package priv.bigant.intrance.common;
 
 
+import priv.bigant.intrance.common.util.net.NioChannel;
+
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.SocketChannel;
 
 /**
@@ -19,6 +22,10 @@ public class SocketBean {
     private String domainName;
     private String id;
     private SocketChannel socketChannel;
+    /**
+     * 穿透连接启用 TLS 时握手完成的通道，明文时为 null
+     */
+    private NioChannel channel;
 
     public SocketBean(SocketChannel socketChannel) throws IOException {
         Socket socket = socketChannel.socket();
@@ -39,6 +46,11 @@ public class SocketBean {
         os = this.socket.getOutputStream();
     }
 
+    public SocketBean(SocketChannel socketChannel, NioChannel channel, String id) throws IOException {
+        this(socketChannel, id);
+        this.channel = channel;
+    }
+
     public SocketBean(Socket socket) throws IOException {
         this.socket = socket;
         this.inetAddress = socket.getInetAddress();
@@ -47,6 +59,13 @@ public class SocketBean {
     }
 
     public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                channel = null;
+            }
+        }
         if (os != null) {
             try {
                 os.close();
@@ -109,6 +128,17 @@ public class SocketBean {
         return socketChannel;
     }
 
+    public NioChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * 读写穿透数据使用的通道：TLS 时为解密后的通道
+     */
+    public ByteChannel getByteChannel() {
+        return channel != null ? channel : socketChannel;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
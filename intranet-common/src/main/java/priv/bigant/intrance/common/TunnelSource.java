@@ -0,0 +1,28 @@
+package priv.bigant.intrance.common;
+
+import java.io.IOException;
+
+/**
+ * 按域名获取 / 归还穿透通道
+ */
+public interface TunnelSource {
+
+    /**
+     * 获取一个到客户端的通道，未注册或已断开返回 null
+     *
+     * @throws priv.bigant.intrance.common.exception.RejectedRequestException 被限流等原因拒绝
+     */
+    SocketBean acquire(String host) throws IOException;
+
+    /**
+     * 使用完毕归还通道（通道已不可复用，由实现方关闭并补充）
+     */
+    void release(String host, SocketBean socketBean);
+
+    /**
+     * 域名是否已注册（可以获取通道），用于决定是否为它单独统计指标
+     */
+    default boolean isRegistered(String host) {
+        return HttpSocketManager.isExist(host);
+    }
+}
@@ -0,0 +1,213 @@
+package priv.bigant.intrance.common.accesslog;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 二进制访问日志
+ * <p>
+ * 请求线程把记录直接编码进预分配的环形缓冲的槽位（一次 CAS，不分配对象），
+ * 单个写线程按顺序把槽位复制到内存映射的段文件，段写满后换新文件并删除超出保留数量的旧文件；
+ * 环形缓冲满时丢弃记录并计数。文件用 {@link AccessLogReader} 转换为文本或 CSV
+ */
+public class AccessLog {
+
+    private static final Logger LOG = LogUtil.getLog();
+    static final String PREFIX = "access-";
+    static final String SUFFIX = ".bal";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static volatile AccessLog instance;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final int mask;
+    private final ByteBuffer slots;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    private AccessLogSegment segment;
+    private int segmentIndex;
+
+    AccessLog(Path dir, int segmentSize, int maxSegments, int ringSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        int size = ringSize <= 2 ? 2 : Integer.highestOneBit(ringSize - 1) << 1;
+        this.mask = size - 1;
+        this.slots = ByteBuffer.allocateDirect(size * AccessLogRecord.SIZE);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        Files.createDirectories(dir);
+        this.writer = new Thread(this::run, "AccessLogWriter");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * 启动访问日志，重复调用会关闭之前的实例
+     */
+    public static synchronized AccessLog start(String dir, int segmentSize, int maxSegments, int ringSize) throws IOException {
+        AccessLog accessLog = new AccessLog(Paths.get(dir), segmentSize, maxSegments, ringSize);
+        accessLog.writer.start();
+        AccessLog previous = instance;
+        instance = accessLog;
+        if (previous != null) {
+            previous.close();
+        }
+        LOG.info("访问日志目录 " + accessLog.dir.toAbsolutePath());
+        return accessLog;
+    }
+
+    public static AccessLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * 记录一次请求，未启动时直接返回
+     */
+    public static void append(AccessLogEntry entry) {
+        AccessLog accessLog = instance;
+        if (accessLog != null) {
+            accessLog.offer(entry);
+        }
+    }
+
+    boolean offer(AccessLogEntry entry) {
+        long end = System.nanoTime();
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequence.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entry.encode(slots, index * AccessLogRecord.SIZE, end);
+                    sequence.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequence.get(index) == head + 1) {
+                write(index);
+                sequence.set(index, head + mask + 1);
+                head++;
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private void write(int index) {
+        try {
+            if (segment == null || segment.isFull()) {
+                rotate();
+            }
+            segment.append(slots, index * AccessLogRecord.SIZE);
+            written.incrementAndGet();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            LOG.log(Level.WARNING, "写访问日志失败", e);
+            segment = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        String name = PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + String.format("-%04d", segmentIndex++ % 10000) + SUFFIX;
+        segment = new AccessLogSegment(dir.resolve(name), segmentSize);
+        LOG.fine(() -> "新的访问日志文件 " + name);
+        if (maxSegments > 0) {
+            List<Path> segments = list(dir);
+            for (int i = 0; i < segments.size() - maxSegments; i++) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * 目录下的段文件，按文件名（创建时间）从旧到新排列
+     */
+    static List<Path> list(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * 停止写线程，已放入环形缓冲的记录会先写完
+     */
+    public void close() {
+        closed = true;
+        if (instance == this) {
+            instance = null;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+}
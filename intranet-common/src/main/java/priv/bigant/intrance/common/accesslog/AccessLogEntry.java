@@ -0,0 +1,130 @@
+package priv.bigant.intrance.common.accesslog;
+
+import priv.bigant.intrance.common.util.buf.ByteChunk;
+import priv.bigant.intrance.common.util.buf.MessageBytes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 一次请求的访问日志字段，由处理线程复用，不分配对象
+ * <p>
+ * 方法与 URI 在解析完请求头后立即复制，之后请求缓冲会被请求体覆盖
+ */
+public class AccessLogEntry {
+
+    private final byte[] host = new byte[AccessLogRecord.MAX_HOST];
+    private final byte[] method = new byte[AccessLogRecord.MAX_METHOD];
+    private final byte[] uri = new byte[AccessLogRecord.MAX_URI];
+    private int hostLength;
+    private int methodLength;
+    private int uriLength;
+
+    private long time;
+    private long startNanos;
+    private int status;
+    private long bytesIn;
+    private long bytesOut;
+    private long tunnelAcquireNanos;
+    private long originFirstByteNanos;
+
+    /**
+     * 开始一次新的请求
+     */
+    public void begin(String host, MessageBytes method, MessageBytes uri) {
+        reset(host);
+        methodLength = copy(method, this.method);
+        uriLength = copy(uri, this.uri);
+    }
+
+    public void begin(String host, String method, String uri) {
+        reset(host);
+        methodLength = copy(method, this.method);
+        uriLength = copy(uri, this.uri);
+    }
+
+    private void reset(String host) {
+        time = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        status = 0;
+        bytesIn = 0;
+        bytesOut = 0;
+        tunnelAcquireNanos = -1;
+        originFirstByteNanos = -1;
+        hostLength = copy(host, this.host);
+    }
+
+    private static int copy(MessageBytes value, byte[] target) {
+        if (value == null) {
+            return 0;
+        }
+        if (value.getType() == MessageBytes.T_BYTES) {
+            ByteChunk chunk = value.getByteChunk();
+            int length = Math.min(chunk.getLength(), target.length);
+            System.arraycopy(chunk.getBuffer(), chunk.getStart(), target, 0, length);
+            return length;
+        }
+        return copy(value.toString(), target);
+    }
+
+    private static int copy(String value, byte[] target) {
+        if (value == null) {
+            return 0;
+        }
+        int length = Math.min(value.length(), target.length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            target[i] = c < 256 ? (byte) c : (byte) '?';
+        }
+        return length;
+    }
+
+    /**
+     * 以 buffer 中 offset 开始的 SIZE 字节写入一条记录（绝对位置写入，不修改 buffer 的 position）
+     */
+    void encode(ByteBuffer buffer, int offset, long endNanos) {
+        buffer.putShort(offset, AccessLogRecord.MAGIC);
+        buffer.putShort(offset + AccessLogRecord.STATUS, (short) status);
+        buffer.putInt(offset + AccessLogRecord.TOTAL, (int) Math.min(0xFFFFFFFFL, (endNanos - startNanos) / 1000));
+        buffer.putLong(offset + AccessLogRecord.TIME, time);
+        buffer.putLong(offset + AccessLogRecord.BYTES_IN, bytesIn);
+        buffer.putLong(offset + AccessLogRecord.BYTES_OUT, bytesOut);
+        buffer.putInt(offset + AccessLogRecord.TUNNEL_ACQUIRE, micros(tunnelAcquireNanos));
+        buffer.putInt(offset + AccessLogRecord.ORIGIN_FIRST_BYTE, micros(originFirstByteNanos));
+        buffer.put(offset + AccessLogRecord.HOST_LENGTH, (byte) hostLength);
+        buffer.put(offset + AccessLogRecord.METHOD_LENGTH, (byte) methodLength);
+        buffer.putShort(offset + AccessLogRecord.URI_LENGTH, (short) uriLength);
+        put(buffer, offset + AccessLogRecord.HOST, host, hostLength);
+        put(buffer, offset + AccessLogRecord.METHOD, method, methodLength);
+        put(buffer, offset + AccessLogRecord.URI, uri, uriLength);
+    }
+
+    private static int micros(long nanos) {
+        return nanos < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, nanos / 1000);
+    }
+
+    private static void put(ByteBuffer buffer, int offset, byte[] value, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + i, value[i]);
+        }
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn += bytes;
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut += bytes;
+    }
+
+    public void setTunnelAcquireNanos(long tunnelAcquireNanos) {
+        this.tunnelAcquireNanos = tunnelAcquireNanos;
+    }
+
+    public void setOriginFirstByteNanos(long originFirstByteNanos) {
+        this.originFirstByteNanos = originFirstByteNanos;
+    }
+}
@@ -0,0 +1,107 @@
+package priv.bigant.intrance.common.accesslog;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 离线读取二进制访问日志
+ * <p>
+ * 用法：java -cp intranet-common.jar priv.bigant.intrance.common.accesslog.AccessLogReader [--csv] 文件或目录...
+ */
+public class AccessLogReader {
+
+    public static void main(String[] args) throws IOException {
+        boolean csv = false;
+        List<Path> paths = new ArrayList<>();
+        for (String arg : args) {
+            if ("--csv".equals(arg)) {
+                csv = true;
+            } else {
+                Path path = Paths.get(arg);
+                if (Files.isDirectory(path)) {
+                    paths.addAll(AccessLog.list(path));
+                } else {
+                    paths.add(path);
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("用法: AccessLogReader [--csv] 文件或目录...");
+            System.exit(1);
+        }
+        PrintStream out = System.out;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        if (csv) {
+            out.println("time,host,method,uri,status,bytesIn,bytesOut,tunnelAcquireMicros,originFirstByteMicros,totalMicros");
+        }
+        for (Path path : paths) {
+            boolean asCsv = csv;
+            read(path, record -> out.println(asCsv ? toCsv(record, format) : toText(record, format)));
+        }
+        out.flush();
+    }
+
+    /**
+     * 按顺序读取一个段文件中的全部记录
+     *
+     * @return 记录数
+     */
+    public static int read(Path path, Consumer<AccessLogRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < AccessLogRecord.SIZE || buffer.getInt(0) != AccessLogRecord.FILE_MAGIC) {
+                throw new IOException("不是访问日志文件 " + path);
+            }
+            int recordSize = buffer.getShort(6);
+            if (recordSize != AccessLogRecord.SIZE) {
+                throw new IOException("不支持的记录长度 " + recordSize + " " + path);
+            }
+            int count = 0;
+            for (int offset = AccessLogRecord.SIZE; offset + AccessLogRecord.SIZE <= buffer.capacity(); offset += AccessLogRecord.SIZE) {
+                AccessLogRecord record = AccessLogRecord.decode(buffer, offset);
+                if (record == null) {
+                    // 之后是未写入的区域
+                    break;
+                }
+                consumer.accept(record);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    static String toText(AccessLogRecord record, SimpleDateFormat format) {
+        return format.format(new Date(record.getTime())) + ' ' + record.getHost() + " \"" + record.getMethod() + ' '
+                + record.getUri() + "\" " + record.getStatus() + " in=" + record.getBytesIn() + " out=" + record.getBytesOut()
+                + " acquire=" + micros(record.getTunnelAcquireMicros()) + " firstByte=" + micros(record.getOriginFirstByteMicros())
+                + " total=" + record.getTotalMicros() + "us";
+    }
+
+    static String toCsv(AccessLogRecord record, SimpleDateFormat format) {
+        return format.format(new Date(record.getTime())) + ',' + csv(record.getHost()) + ',' + csv(record.getMethod()) + ','
+                + csv(record.getUri()) + ',' + record.getStatus() + ',' + record.getBytesIn() + ',' + record.getBytesOut() + ','
+                + record.getTunnelAcquireMicros() + ',' + record.getOriginFirstByteMicros() + ',' + record.getTotalMicros();
+    }
+
+    private static String micros(int value) {
+        return value < 0 ? "-" : value + "us";
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,128 @@
+package priv.bigant.intrance.common.accesslog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 访问日志的二进制记录格式，每条记录固定 256 字节，数值为大端序
+ * <pre>
+ *   0  short  MAGIC
+ *   2  short  状态码（0 表示连接中断）
+ *   4  int    总耗时（微秒）
+ *   8  long   开始时间（毫秒时间戳）
+ *  16  long   请求字节数
+ *  24  long   响应字节数
+ *  32  int    获取穿透通道耗时（微秒，-1 表示没有）
+ *  36  int    客户端响应首字节耗时（微秒，-1 表示没有）
+ *  40  byte   域名长度      41 byte 方法长度      42 short URI 长度
+ *  44  ...    保留
+ *  48  64     域名（ISO-8859-1，超长截断）
+ * 112  16     方法
+ * 128  128    URI（不含查询参数）
+ * </pre>
+ * 段文件的第一条记录位置是文件头：MAGIC、版本、记录长度、创建时间
+ */
+public class AccessLogRecord {
+
+    public static final int SIZE = 256;
+    public static final short MAGIC = (short) 0xA10C;
+    public static final int FILE_MAGIC = 0x42414C47;
+    public static final short VERSION = 1;
+
+    static final int STATUS = 2;
+    static final int TOTAL = 4;
+    static final int TIME = 8;
+    static final int BYTES_IN = 16;
+    static final int BYTES_OUT = 24;
+    static final int TUNNEL_ACQUIRE = 32;
+    static final int ORIGIN_FIRST_BYTE = 36;
+    static final int HOST_LENGTH = 40;
+    static final int METHOD_LENGTH = 41;
+    static final int URI_LENGTH = 42;
+    static final int HOST = 48;
+    static final int METHOD = 112;
+    static final int URI = 128;
+    static final int MAX_HOST = 64;
+    static final int MAX_METHOD = 16;
+    static final int MAX_URI = 128;
+
+    private long time;
+    private int status;
+    private long totalMicros;
+    private long bytesIn;
+    private long bytesOut;
+    private int tunnelAcquireMicros;
+    private int originFirstByteMicros;
+    private String host;
+    private String method;
+    private String uri;
+
+    /**
+     * 从 buffer 的 offset 处解码一条记录，不是有效记录（未写入的区域）返回 null
+     */
+    public static AccessLogRecord decode(ByteBuffer buffer, int offset) {
+        if (buffer.getShort(offset) != MAGIC) {
+            return null;
+        }
+        AccessLogRecord record = new AccessLogRecord();
+        record.status = buffer.getShort(offset + STATUS) & 0xFFFF;
+        record.totalMicros = buffer.getInt(offset + TOTAL) & 0xFFFFFFFFL;
+        record.time = buffer.getLong(offset + TIME);
+        record.bytesIn = buffer.getLong(offset + BYTES_IN);
+        record.bytesOut = buffer.getLong(offset + BYTES_OUT);
+        record.tunnelAcquireMicros = buffer.getInt(offset + TUNNEL_ACQUIRE);
+        record.originFirstByteMicros = buffer.getInt(offset + ORIGIN_FIRST_BYTE);
+        record.host = string(buffer, offset + HOST, Math.min(buffer.get(offset + HOST_LENGTH) & 0xFF, MAX_HOST));
+        record.method = string(buffer, offset + METHOD, Math.min(buffer.get(offset + METHOD_LENGTH) & 0xFF, MAX_METHOD));
+        record.uri = string(buffer, offset + URI, Math.min(buffer.getShort(offset + URI_LENGTH) & 0xFFFF, MAX_URI));
+        return record;
+    }
+
+    private static String string(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public int getTunnelAcquireMicros() {
+        return tunnelAcquireMicros;
+    }
+
+    public int getOriginFirstByteMicros() {
+        return originFirstByteMicros;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+}
@@ -0,0 +1,58 @@
+package priv.bigant.intrance.common.accesslog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 一个内存映射的段文件，只由写线程使用
+ */
+class AccessLogSegment {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position = AccessLogRecord.SIZE;
+
+    AccessLogSegment(Path path, int size) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int records = Math.max(2, size / AccessLogRecord.SIZE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * AccessLogRecord.SIZE);
+        buffer.putInt(0, AccessLogRecord.FILE_MAGIC);
+        buffer.putShort(4, AccessLogRecord.VERSION);
+        buffer.putShort(6, (short) AccessLogRecord.SIZE);
+        buffer.putLong(8, System.currentTimeMillis());
+    }
+
+    boolean isFull() {
+        return position + AccessLogRecord.SIZE > buffer.capacity();
+    }
+
+    /**
+     * 复制 source 中 offset 开始的一条记录
+     */
+    void append(ByteBuffer source, int offset) {
+        ByteBuffer record = source.duplicate();
+        record.limit(offset + AccessLogRecord.SIZE).position(offset);
+        buffer.position(position);
+        buffer.put(record);
+        position += AccessLogRecord.SIZE;
+    }
+
+    void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException ignored) {
+            // 映射的内容仍会由操作系统写回
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,262 @@
+package priv.bigant.intrance.common.cache;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 大文件分片缓存：按 域名+URI 缓存源站 206 响应的固定大小分片，每个对象对应一个稀疏文件，分片按需内存映射读写
+ * <p>
+ * 索引只在内存中，启动时清空目录；对象的 ETag 变化时整个对象作废。超过 maxSize 时按最近使用淘汰整个对象，
+ * 正在读取的对象等读取结束后再关闭删除
+ */
+public class SliceCache {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final String SUFFIX = ".slice";
+
+    private final Path dir;
+    private final int sliceSize;
+    private final long maxSize;
+    private final long ttl;
+    /**
+     * 按访问顺序排列，最久未使用的在前
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long nextId;
+
+    private SliceCache(Path dir, int sliceSize, long maxSize, long ttl) {
+        this.dir = dir;
+        this.sliceSize = sliceSize;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param sliceSize 分片大小（字节）
+     * @param maxSize   缓存占用的磁盘上限（字节）
+     * @param ttl       对象信息的有效期（毫秒），过期后下一次请求向源站校验 ETag
+     */
+    public static SliceCache open(String dir, int sliceSize, long maxSize, long ttl) throws IOException {
+        if (sliceSize <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("无效的分片缓存设置 " + sliceSize + " / " + maxSize);
+        }
+        Path path = Paths.get(dir);
+        Files.createDirectories(path);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        LOG.info("分片缓存 " + path.toAbsolutePath() + " 分片 " + sliceSize + " 上限 " + maxSize);
+        return new SliceCache(path, sliceSize, maxSize, ttl);
+    }
+
+    /**
+     * 查找对象，找到时引用计数加一，用完必须 {@link #release(Entry)}
+     */
+    public synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.refs++;
+        }
+        return entry;
+    }
+
+    /**
+     * 新建对象，替换同名的旧对象；引用计数为一，用完必须 {@link #release(Entry)}
+     *
+     * @param headers 响应头（不含 Content-Range、Content-Length 及逐跳头）
+     */
+    public Entry create(String key, String etag, long length, List<String[]> headers) throws IOException {
+        Path path;
+        synchronized (this) {
+            path = dir.resolve((nextId++) + SUFFIX);
+        }
+        FileChannel channel;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            //稀疏文件，只有写入的分片占用磁盘
+            file.setLength(length);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        Entry entry = new Entry(key, etag, length, new ArrayList<>(headers), path, channel);
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                remove(previous);
+            }
+        }
+        return entry;
+    }
+
+    public synchronized void release(Entry entry) {
+        entry.refs--;
+        if (entry.removed && entry.refs == 0) {
+            entry.close();
+        }
+    }
+
+    /**
+     * 对象已失效（如源站内容变化），不再提供
+     */
+    public synchronized void invalidate(Entry entry) {
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry.removed) {
+            return;
+        }
+        entry.removed = true;
+        size -= entry.cachedBytes;
+        if (entry.refs == 0) {
+            entry.close();
+        }
+    }
+
+    private synchronized void added(Entry entry, int bytes) {
+        if (entry.removed) {
+            return;
+        }
+        entry.cachedBytes += bytes;
+        size += bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            LOG.fine(() -> "淘汰分片缓存 " + eldest.key);
+            remove(eldest);
+        }
+    }
+
+    public int getSliceSize() {
+        return sliceSize;
+    }
+
+    /**
+     * 已缓存的分片总字节数
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * 一个缓存对象，分片的有无由自身锁保护
+     */
+    public final class Entry {
+
+        private final String key;
+        private final String etag;
+        private final long length;
+        private final List<String[]> headers;
+        private final Path path;
+        private final FileChannel channel;
+        private final BitSet present = new BitSet();
+        private volatile long validated = System.currentTimeMillis();
+        /**
+         * 以下由 SliceCache 的锁保护
+         */
+        private long cachedBytes;
+        private int refs = 1;
+        private boolean removed;
+
+        private Entry(String key, String etag, long length, List<String[]> headers, Path path, FileChannel channel) {
+            this.key = key;
+            this.etag = etag;
+            this.length = length;
+            this.headers = headers;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public List<String[]> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * 是否在有效期内，过期后需要向源站校验
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() - validated < ttl;
+        }
+
+        /**
+         * 源站确认 ETag 未变化
+         */
+        public void validated() {
+            validated = System.currentTimeMillis();
+        }
+
+        public synchronized boolean has(int slice) {
+            return present.get(slice);
+        }
+
+        /**
+         * 分片的实际长度，最后一片可能不足 sliceSize
+         */
+        public int sliceLength(int slice) {
+            return (int) Math.min(sliceSize, length - (long) slice * sliceSize);
+        }
+
+        /**
+         * 映射分片所在的文件区域，用完由调用方释放（ByteBufferUtils.cleanDirectBuffer）
+         */
+        public MappedByteBuffer map(int slice, boolean write) throws IOException {
+            return channel.map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    (long) slice * sliceSize, sliceLength(slice));
+        }
+
+        /**
+         * 分片已完整写入
+         */
+        public void complete(int slice) {
+            int bytes = sliceLength(slice);
+            synchronized (this) {
+                if (present.get(slice)) {
+                    return;
+                }
+                present.set(slice);
+            }
+            added(this, bytes);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warning("删除分片缓存失败 " + path + " " + e.getMessage());
+            }
+        }
+    }
+}
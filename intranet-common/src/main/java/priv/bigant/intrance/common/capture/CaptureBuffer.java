@@ -0,0 +1,67 @@
+package priv.bigant.intrance.common.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 一次请求过程中转发的字节副本，由处理线程复用；超出容量的部分丢弃并标记截断
+ */
+public class CaptureBuffer {
+
+    private final CaptureStore store;
+    private final byte[] request;
+    private final byte[] response;
+    private int requestLength;
+    private int responseLength;
+    private boolean requestTruncated;
+    private boolean responseTruncated;
+    private long time;
+
+    public CaptureBuffer(CaptureStore store) {
+        this.store = store;
+        this.request = new byte[store.getPayloadSize()];
+        this.response = new byte[store.getPayloadSize()];
+    }
+
+    public void begin() {
+        requestLength = 0;
+        responseLength = 0;
+        requestTruncated = false;
+        responseTruncated = false;
+        time = System.currentTimeMillis();
+    }
+
+    /**
+     * 复制 buffer 中 position 到 limit 的数据，不修改 buffer
+     */
+    public void request(ByteBuffer buffer) {
+        int n = copy(buffer, request, requestLength);
+        requestTruncated |= n < buffer.remaining();
+        requestLength += n;
+    }
+
+    public void response(ByteBuffer buffer) {
+        int n = copy(buffer, response, responseLength);
+        responseTruncated |= n < buffer.remaining();
+        responseLength += n;
+    }
+
+    private static int copy(ByteBuffer buffer, byte[] target, int offset) {
+        int n = Math.min(buffer.remaining(), target.length - offset);
+        if (n > 0) {
+            ByteBuffer source = buffer.duplicate();
+            source.get(target, offset, n);
+        }
+        return n;
+    }
+
+    /**
+     * 写入抓包文件，没有请求数据时忽略
+     */
+    public void finish() {
+        if (requestLength > 0) {
+            store.append(time, request, requestLength, requestTruncated, response, responseLength, responseTruncated);
+        }
+        requestLength = 0;
+        responseLength = 0;
+    }
+}
@@ -0,0 +1,171 @@
+package priv.bigant.intrance.common.capture;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 抓包文件：内存映射的环形存储，由固定大小的槽位组成，写满后覆盖最旧的记录，文件大小固定
+ * <pre>
+ * 文件头 64 字节：int MAGIC、short 版本、short 保留、int 槽位大小、int 槽位数
+ * 槽位：int SLOT_MAGIC、byte 截断标记（1 请求 2 响应）、3 字节保留、long 序号、long 时间、
+ *       int 请求长度、int 响应长度、请求字节、响应字节（请求与响应各保留一半空间，一方用不完的留给另一方）
+ * </pre>
+ * 写入时先清除槽位标记，写完数据后再写标记，其它进程读取时不会读到写了一半的记录
+ */
+public class CaptureStore {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final int MAGIC = 0x42414350;
+    private static final int SLOT_MAGIC = 0xCA97CA97;
+    private static final short VERSION = 1;
+    private static final int FILE_HEADER = 64;
+    private static final int SLOT_HEADER = 32;
+
+    private final Path path;
+    private final int slotSize;
+    private final int slots;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private long nextSeq;
+
+    private CaptureStore(Path path, int slotSize, int slots, FileChannel channel, MappedByteBuffer buffer, long nextSeq) {
+        this.path = path;
+        this.slotSize = slotSize;
+        this.slots = slots;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.nextSeq = nextSeq;
+    }
+
+    /**
+     * 打开抓包文件，槽位设置与已有文件不同时重新创建
+     */
+    public static CaptureStore open(Path path, int slotSize, int slots) throws IOException {
+        if (slotSize <= SLOT_HEADER || slots <= 0) {
+            throw new IllegalArgumentException("无效的抓包槽位设置 " + slotSize + " x " + slots);
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        long size = FILE_HEADER + (long) slotSize * slots;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("抓包文件不能超过 2G " + slotSize + " x " + slots);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean reuse = channel.size() == size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (reuse && (buffer.getInt(0) != MAGIC || buffer.getInt(8) != slotSize || buffer.getInt(12) != slots)) {
+            reuse = false;
+        }
+        long nextSeq = 0;
+        if (reuse) {
+            for (int i = 0; i < slots; i++) {
+                int base = FILE_HEADER + i * slotSize;
+                if (buffer.getInt(base) == SLOT_MAGIC) {
+                    nextSeq = Math.max(nextSeq, buffer.getLong(base + 8) + 1);
+                }
+            }
+        } else {
+            for (int i = 0; i < slots; i++) {
+                buffer.putInt(FILE_HEADER + i * slotSize, 0);
+            }
+            buffer.putShort(4, VERSION);
+            buffer.putInt(8, slotSize);
+            buffer.putInt(12, slots);
+            buffer.putInt(0, MAGIC);
+        }
+        LOG.info("抓包文件 " + path.toAbsolutePath() + " 槽位 " + slotSize + " x " + slots);
+        return new CaptureStore(path, slotSize, slots, channel, buffer, nextSeq);
+    }
+
+    synchronized void append(long time, byte[] request, int requestLength, boolean requestTruncated,
+                             byte[] response, int responseLength, boolean responseTruncated) {
+        int payload = getPayloadSize();
+        //大请求体不能挤掉响应，响应至少保留一半
+        int requestBytes = Math.min(requestLength, Math.max(payload - payload / 2, payload - responseLength));
+        int responseBytes = Math.min(responseLength, payload - requestBytes);
+        int flags = (requestTruncated || requestBytes < requestLength ? 1 : 0)
+                | (responseTruncated || responseBytes < responseLength ? 2 : 0);
+        long seq = nextSeq++;
+        int base = FILE_HEADER + (int) (seq % slots) * slotSize;
+        buffer.putInt(base, 0);
+        buffer.put(base + 4, (byte) flags);
+        buffer.putLong(base + 8, seq);
+        buffer.putLong(base + 16, time);
+        buffer.putInt(base + 24, requestBytes);
+        buffer.putInt(base + 28, responseBytes);
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(base + SLOT_HEADER);
+        slot.put(request, 0, requestBytes);
+        slot.put(response, 0, responseBytes);
+        buffer.putInt(base, SLOT_MAGIC);
+    }
+
+    /**
+     * 读取抓包文件中的全部记录，按序号从旧到新排列
+     */
+    public static List<CapturedExchange> read(Path path) throws IOException {
+        List<CapturedExchange> exchanges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < FILE_HEADER || buffer.getInt(0) != MAGIC) {
+                throw new IOException("不是抓包文件 " + path);
+            }
+            int slotSize = buffer.getInt(8);
+            int slots = buffer.getInt(12);
+            for (int i = 0; i < slots; i++) {
+                int base = FILE_HEADER + i * slotSize;
+                if (base + slotSize > buffer.capacity() || buffer.getInt(base) != SLOT_MAGIC) {
+                    continue;
+                }
+                int flags = buffer.get(base + 4);
+                int requestLength = buffer.getInt(base + 24);
+                int responseLength = buffer.getInt(base + 28);
+                if (requestLength < 0 || responseLength < 0 || requestLength + responseLength > slotSize - SLOT_HEADER) {
+                    continue;
+                }
+                byte[] request = new byte[requestLength];
+                byte[] response = new byte[responseLength];
+                ByteBuffer slot = buffer.duplicate();
+                slot.position(base + SLOT_HEADER);
+                slot.get(request);
+                slot.get(response);
+                exchanges.add(new CapturedExchange(buffer.getLong(base + 8), buffer.getLong(base + 16), request, response,
+                        (flags & 1) != 0, (flags & 2) != 0));
+            }
+        }
+        exchanges.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+        return exchanges;
+    }
+
+    /**
+     * 单个槽位可存放的请求与响应字节数
+     */
+    public int getPayloadSize() {
+        return slotSize - SLOT_HEADER;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException ignored) {
+            // 映射的内容仍会由操作系统写回
+        }
+    }
+}
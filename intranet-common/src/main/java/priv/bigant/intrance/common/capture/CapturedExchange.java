@@ -0,0 +1,71 @@
+package priv.bigant.intrance.common.capture;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 抓取到的一次请求与响应（原始字节）
+ */
+public class CapturedExchange {
+
+    private final long seq;
+    private final long time;
+    private final byte[] request;
+    private final byte[] response;
+    private final boolean requestTruncated;
+    private final boolean responseTruncated;
+
+    CapturedExchange(long seq, long time, byte[] request, byte[] response, boolean requestTruncated, boolean responseTruncated) {
+        this.seq = seq;
+        this.time = time;
+        this.request = request;
+        this.response = response;
+        this.requestTruncated = requestTruncated;
+        this.responseTruncated = responseTruncated;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public byte[] getRequest() {
+        return request;
+    }
+
+    public byte[] getResponse() {
+        return response;
+    }
+
+    public boolean isRequestTruncated() {
+        return requestTruncated;
+    }
+
+    public boolean isResponseTruncated() {
+        return responseTruncated;
+    }
+
+    /**
+     * 请求行，如 POST /wx/notify HTTP/1.1
+     */
+    public String getRequestLine() {
+        return firstLine(request);
+    }
+
+    /**
+     * 响应行，没有响应时为空字符串
+     */
+    public String getStatusLine() {
+        return firstLine(response);
+    }
+
+    private static String firstLine(byte[] bytes) {
+        int end = 0;
+        while (end < bytes.length && bytes[end] != '\r' && bytes[end] != '\n') {
+            end++;
+        }
+        return new String(bytes, 0, end, StandardCharsets.ISO_8859_1);
+    }
+}
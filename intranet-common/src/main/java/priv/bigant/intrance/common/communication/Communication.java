@@ -3,13 +3,18 @@ package priv.bigant.intrance.common.communication;
 import priv.bigant.intrance.common.ChannelStream;
 import priv.bigant.intrance.common.Config;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.NioChannel;
+import priv.bigant.intrance.common.util.net.NioSelectorPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,9 +27,26 @@ public class Communication {
     protected byte[] bytes = new byte[1024];
     protected ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
     protected SocketChannel socketChannel;
+    /**
+     * 实际读写的通道，穿透连接启用 TLS 时为 SecureNioChannel，否则就是 socketChannel
+     */
+    protected ByteChannel channel;
     protected ChannelStream channelStream;
     private Config config;
     private CommunicationDispose communicationDispose;
+    /**
+     * 心跳维护的存活标记，转发请求只读这个标记，不再每次写探测数据
+     */
+    private volatile boolean alive = true;
+    /**
+     * 最后一次收到对端数据的时间（nanoTime），任何数据都算作心跳
+     */
+    private volatile long lastReadTime = System.nanoTime();
+    /**
+     * 心跳往返时间的指数移动平均（纳秒），没有样本时为 -1
+     */
+    private volatile long rtt = -1;
+    private long heartbeatSeq;
 
     /**
      * 协议开始符号
@@ -34,6 +56,14 @@ public class Communication {
      * 协议结束符号
      */
     private static final byte R = '}';
+    /**
+     * TLS 时等待密文写出的超时（毫秒）
+     */
+    private static final long SECURE_WRITE_TIMEOUT = 10000;
+    /**
+     * TLS 等待密文写出时各线程独占的 Selector，不能 yield 空转
+     */
+    private static final NioSelectorPool SELECTOR_POOL = new NioSelectorPool(false);
 
     public SocketChannel getSocketChannel() {
         return socketChannel;
@@ -45,20 +75,35 @@ public class Communication {
     }
 
     public Communication(SocketChannel socketChannel, Config config) {
+        this(socketChannel, socketChannel, config);
+    }
+
+    /**
+     * @param channel 握手完成的 TLS 通道
+     */
+    public Communication(SocketChannel socketChannel, ByteChannel channel, CommunicationDispose communicationDispose, Config config) {
+        this(socketChannel, channel, config);
+        this.communicationDispose = communicationDispose;
+    }
+
+    public Communication(SocketChannel socketChannel, ByteChannel channel, Config config) {
         this.socketChannel = socketChannel;
-        this.channelStream = new ChannelStream(socketChannel, 1024, config.getLogName());
+        this.channel = channel;
+        this.channelStream = new ChannelStream(socketChannel, channel, 1024, config.getLogName());
         this.config = config;
     }
 
     public synchronized void close() {
+        alive = false;
         try {
-            if (socketChannel != null) socketChannel.close();
+            if (channel != null) channel.close();
             if (channelStream != null) channelStream.close();
         } catch (IOException e) {
             LOG.severe("communication 关闭失败");
             e.printStackTrace();
         }
         socketChannel = null;
+        channel = null;
     }
 
     /**
@@ -68,10 +113,23 @@ public class Communication {
      * @throws IOException
      */
     public synchronized void writeN(CommunicationReturn communicationReturn) throws IOException {
+        writeN(communicationReturn, true);
+    }
+
+    /**
+     * @param wait TLS 时是否等待密文全部写出；不等待时剩余密文留在通道里，由下一次写出
+     */
+    private synchronized void writeN(CommunicationReturn communicationReturn, boolean wait) throws IOException {
         byteBuffer.clear();
         byteBuffer.put(communicationReturn.toByte());
         byteBuffer.flip();
-        int write = socketChannel.write(byteBuffer);
+        int write;
+        try {
+            write = write(channel, byteBuffer, wait);
+        } catch (IOException e) {
+            alive = false;
+            throw e;
+        }
         if (LOG.isLoggable(Level.FINE)) {
             byteBuffer.flip();
             LOG.fine("write {size:" + write + ",value:" + StandardCharsets.UTF_8.decode(byteBuffer).toString() + "}");
@@ -84,7 +142,7 @@ public class Communication {
      * @param communicationReturn
      * @throws IOException
      */
-    public static void writeN(CommunicationReturn communicationReturn, SocketChannel socketChannel, Config config) throws IOException {
+    public static void writeN(CommunicationReturn communicationReturn, ByteChannel channel, Config config) throws IOException {
         ByteBuffer byteBuffer = ByteBuffer.allocateDirect(1024);
         byteBuffer.clear();
         byteBuffer.put(communicationReturn.toByte());
@@ -94,7 +152,38 @@ public class Communication {
             log.fine("write :" + StandardCharsets.UTF_8.decode(byteBuffer).toString());
             byteBuffer.flip();
         }
-        socketChannel.write(byteBuffer);
+        write(channel, byteBuffer, true);
+    }
+
+    /**
+     * TLS 通道非阻塞写时明文可能只被消费一部分、密文可能留在通道里，等它们都写出，保证消息完整
+     * <p>
+     * 明文已全部加密且不要求等待时直接返回，密文由下一次写出
+     */
+    private static int write(ByteChannel channel, ByteBuffer byteBuffer, boolean wait) throws IOException {
+        int write = channel.write(byteBuffer);
+        if (channel instanceof NioChannel) {
+            NioChannel secure = (NioChannel) channel;
+            if (!wait && !byteBuffer.hasRemaining()) {
+                return write;
+            }
+            Selector selector = SELECTOR_POOL.get();
+            if (selector == null) {
+                throw new IOException("没有可用的 Selector 等待 TLS 写出");
+            }
+            try {
+                while (true) {
+                    secure.flush(true, selector, SECURE_WRITE_TIMEOUT);
+                    if (!byteBuffer.hasRemaining()) {
+                        break;
+                    }
+                    write += secure.write(byteBuffer);
+                }
+            } finally {
+                SELECTOR_POOL.put(selector);
+            }
+        }
+        return write;
     }
 
     /**
@@ -103,7 +192,9 @@ public class Communication {
      * @throws IOException
      */
     public synchronized CommunicationRequest readRequest() throws IOException {
-        return readRequest(channelStream);
+        CommunicationRequest request = readRequest(channelStream);
+        lastReadTime = System.nanoTime();
+        return request;
     }
 
     /**
@@ -157,12 +248,23 @@ public class Communication {
         }
     }
 
+    /**
+     * 最近一次读取时对端已关闭连接
+     */
+    public synchronized boolean isEndOfStream() {
+        return channelStream.isEndOfStream();
+    }
+
     /**
      * 读取多个请求并自定处理
      */
     public synchronized void disposeRequest() throws IOException {
-        if (!channelStream.hasNext())
-            throw new NullPointerException("未找到request");
+        if (!channelStream.hasNext()) {
+            //TLS 时可读事件可能只带来握手后的会话票据等，没有消息但连接正常
+            if (channelStream.isEndOfStream())
+                throw new NullPointerException("未找到request");
+            return;
+        }
         CommunicationRequest request = readRequest();
         LOG.fine(request.toString());
         communicationDispose.invoke(request, this);
@@ -170,8 +272,81 @@ public class Communication {
     }
 
 
+    /**
+     * 发送一次心跳，对端带回后由 {@link #onHeartbeatEcho(long)} 计算往返时间；发送失败时标记为断开
+     * <p>
+     * TLS 时不等待密文写出：上一条消息的密文还没写出说明对端没有在读，跳过本次心跳交给超时判定，
+     * 避免心跳线程持有本对象的锁阻塞，拖住其它连接的心跳和选择器线程
+     */
+    public synchronized void heartbeat() {
+        try {
+            if (channel instanceof NioChannel) {
+                NioChannel secure = (NioChannel) channel;
+                secure.flushOutbound();
+                if (secure.getOutboundRemaining() > 0) {
+                    LOG.fine("heartbeat skipped, outbound pending " + secure.getOutboundRemaining());
+                    return;
+                }
+            }
+            writeN(CommunicationRequest.createCommunicationRequest(new CommunicationRequest.CommunicationRequestTest(++heartbeatSeq, System.nanoTime())), false);
+        } catch (Exception e) {
+            alive = false;
+            LOG.fine("heartbeat error " + e);
+        }
+    }
+
+    /**
+     * 收到自己发出的心跳的回应
+     *
+     * @param time 心跳发出时的 nanoTime
+     */
+    public void onHeartbeatEcho(long time) {
+        long sample = System.nanoTime() - time;
+        long rtt = this.rtt;
+        this.rtt = rtt < 0 ? sample : rtt + (sample - rtt) / 4;
+    }
+
+    /**
+     * 距离最后一次收到对端数据的毫秒数
+     */
+    public long getSilentMillis(long now) {
+        return TimeUnit.NANOSECONDS.toMillis(now - lastReadTime);
+    }
+
+    /**
+     * 心跳维护的存活标记，不产生 IO
+     */
+    public boolean isAlive() {
+        return alive;
+    }
+
+    /**
+     * 心跳超时，标记为断开
+     */
+    public void markDead() {
+        alive = false;
+    }
+
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
+
+    /**
+     * 心跳往返时间（微秒），没有样本时为 -1
+     */
+    public long getRttMicros() {
+        long rtt = this.rtt;
+        return rtt < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(rtt);
+    }
+
+    public boolean hasRtt() {
+        return rtt >= 0;
+    }
+
     /**
      * 判断是否断开连接，断开返回true,没有返回false
+     * <p>
+     * 每次调用都会同步写一次探测数据，请求路径上使用 {@link #isAlive()}
      */
     public Boolean isClose() {
         try {
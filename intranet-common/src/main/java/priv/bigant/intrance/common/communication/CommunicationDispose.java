@@ -1,12 +1,17 @@
 package priv.bigant.intrance.common.communication;
 
+import priv.bigant.intrance.common.log.LogUtil;
 
+import java.io.IOException;
+import java.util.logging.Logger;
 
 /**
  * 交换器分配器
  */
 public abstract class CommunicationDispose {
 
+    private static final Logger LOG = LogUtil.getLog();
+
 
     protected CommunicationDispose() {
     }
@@ -36,12 +41,24 @@ public abstract class CommunicationDispose {
     protected abstract void httpReturn(CommunicationRequest communicationRequest, Communication communication);
 
     /**
-     * 发送测试数据
+     * 心跳：对端的心跳原样带回并置 echo，自己心跳的回应用于计算往返时间
      *
      * @param communicationRequest
      * @param communication
      */
-    protected abstract void test(CommunicationRequest communicationRequest, Communication communication);
+    protected void test(CommunicationRequest communicationRequest, Communication communication) {
+        CommunicationRequest.CommunicationRequestTest test = communicationRequest.toJavaObject(CommunicationRequest.CommunicationRequestTest.class);
+        if (test.isEcho()) {
+            communication.onHeartbeatEcho(test.getTime());
+            return;
+        }
+        test.setEcho(true);
+        try {
+            communication.writeN(CommunicationRequest.createCommunicationRequest(test));
+        } catch (IOException e) {
+            LOG.fine("heartbeat echo error " + e);
+        }
+    }
 
     /**
      * http类型
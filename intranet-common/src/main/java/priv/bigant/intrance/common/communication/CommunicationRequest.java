@@ -84,6 +84,10 @@ public class CommunicationRequest extends CommunicationReturn {
         }
 
         private String host;
+        /**
+         * 备用注册：服务端只校验域名可用，不接入流量，之后再发一次非备用注册即可切换为主连接
+         */
+        private boolean standby;
 
         public String getHost() {
             return host;
@@ -92,6 +96,14 @@ public class CommunicationRequest extends CommunicationReturn {
         public void setHost(String host) {
             this.host = host;
         }
+
+        public boolean isStandby() {
+            return standby;
+        }
+
+        public void setStandby(boolean standby) {
+            this.standby = standby;
+        }
     }
 
     public static class CommunicationRequestHttpAdd extends CommunicationRequestP {
@@ -118,10 +130,47 @@ public class CommunicationRequest extends CommunicationReturn {
 
     public static class CommunicationRequestTest extends CommunicationRequestP {
 
+        /**
+         * 心跳序号与发送时间（发送方的 nanoTime），对端原样带回并置 echo，用于计算往返时间
+         */
+        private long seq;
+        private long time;
+        private boolean echo;
+
         public CommunicationRequestTest() {
             super(CommunicationEnum.TEST);
         }
 
+        public CommunicationRequestTest(long seq, long time) {
+            this();
+            this.seq = seq;
+            this.time = time;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public void setSeq(long seq) {
+            this.seq = seq;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public void setTime(long time) {
+            this.time = time;
+        }
+
+        public boolean isEcho() {
+            return echo;
+        }
+
+        public void setEcho(boolean echo) {
+            this.echo = echo;
+        }
+
     }
 
     public static class CommunicationRequestHttpReturn extends CommunicationRequestP {
@@ -4,8 +4,10 @@ import priv.bigant.intrance.common.Config;
 import priv.bigant.intrance.common.HttpSocketManager;
 import priv.bigant.intrance.common.SocketBean;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
 
 import java.io.IOException;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.SocketChannel;
 import java.util.UUID;
 import java.util.logging.Logger;
@@ -32,6 +34,10 @@ public abstract class HttpCommunication extends Communication {
 
     }
 
+    public HttpCommunication(SocketChannel socketChannel, ByteChannel channel, CommunicationDispose communicationDispose, Config config) {
+        super(socketChannel, channel, communicationDispose, config);
+    }
+
     /**
      * 获取socketBean 超时则返回Null
      *
@@ -44,9 +50,22 @@ public abstract class HttpCommunication extends Communication {
      */
     public abstract void putSocketBean(SocketBean socketBean);
 
+    /**
+     * 连接池中空闲的穿透通道数，不使用连接池时为 0
+     */
+    public int getIdleSocketBeans() {
+        return 0;
+    }
+
 
     public String createSocketBean() {
-        String id = UUID.randomUUID().toString();
+        return createSocketBean(UUID.randomUUID().toString());
+    }
+
+    /**
+     * 通知客户端用指定 id 建立一条穿透通道
+     */
+    protected String createSocketBean(String id) {
         CommunicationRequest communicationRequest = null;
         CommunicationRequest.CommunicationRequestP communicationRequestHttpAdd = new CommunicationRequest.CommunicationRequestHttpAdd(id);
         try {
@@ -57,6 +76,7 @@ public abstract class HttpCommunication extends Communication {
         HttpSocketManager.addKey(id, host);
         try {
             super.writeN(communicationRequest);
+            MetricsRegistry.host(host).tunnelCreated();
             LOG.fine(host + "新建http连接");
         } catch (IOException e) {
             e.printStackTrace();
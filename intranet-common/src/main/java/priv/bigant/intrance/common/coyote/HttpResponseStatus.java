@@ -300,6 +300,12 @@ public enum HttpResponseStatus {
      * 在请求头 Expect 中指定的预期内容无法被服务器满足，或者这个服务器是一个代理服务器，它有明显的证据证明在当前路由的下一个节点上，Expect 的内容无法被满足。
      */
     SC_EXPECTATION_FAILED(417, "Expectation Failed"),
+    /**
+     * 429 Too Many Requests
+     * <p>
+     * 用户在给定的时间内发送了太多的请求（限流）。响应中可以包含一个 Retry-After 头用以标明需要等待多久再重新请求。
+     */
+    SC_TOO_MANY_REQUESTS(429, "Too Many Requests"),
     /**
      * 500 - 699
      * （5、6字头）
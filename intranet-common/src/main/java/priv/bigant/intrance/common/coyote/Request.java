@@ -278,6 +278,10 @@ public final class Request {
         return expectation;
     }
 
+    public void setExpectation(boolean expectation) {
+        this.expectation = expectation;
+    }
+
 
     // -------------------- Associated response --------------------
 
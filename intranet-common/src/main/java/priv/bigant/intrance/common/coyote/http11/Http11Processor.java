@@ -20,23 +20,41 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import priv.bigant.intrance.common.Config;
 import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
 import priv.bigant.intrance.common.coyote.AbstractProcessor;
 import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.coyote.http2.Http2Processor;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.accesslog.AccessLogEntry;
+import priv.bigant.intrance.common.cache.SliceCache;
+import priv.bigant.intrance.common.capture.CaptureBuffer;
+import priv.bigant.intrance.common.capture.CaptureStore;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
 import priv.bigant.intrance.common.util.ExceptionUtils;
 import priv.bigant.intrance.common.util.buf.Ascii;
 import priv.bigant.intrance.common.util.buf.ByteChunk;
+import priv.bigant.intrance.common.util.buf.MessageBytes;
+import priv.bigant.intrance.common.util.buf.SpoolBuffer;
 import priv.bigant.intrance.common.util.http.FastHttpDateFormat;
 import priv.bigant.intrance.common.util.http.MimeHeaders;
 import priv.bigant.intrance.common.util.http.parser.HttpParser;
 import priv.bigant.intrance.common.util.net.*;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +69,20 @@ public abstract class Http11Processor extends AbstractProcessor {
      */
     private SocketBean receiver;
 
+    /**
+     * 当前请求的访问日志字段，每次请求复用
+     */
+    private final AccessLogEntry accessLogEntry = new AccessLogEntry();
+    /**
+     * 抓包缓冲，启用抓包时创建；capturing 为当前请求正在使用的缓冲
+     */
+    private CaptureBuffer captureBuffer;
+    private CaptureBuffer capturing;
+    /**
+     * 获取通道前已读完的请求体，为 null 时边读边转发
+     */
+    private SpoolBuffer spool;
+
     /**
      * Input.
      */
@@ -115,6 +147,11 @@ public abstract class Http11Processor extends AbstractProcessor {
 
     private final int maxHttpHeaderSize;
 
+    /**
+     * 不为空时，响应完成后没有后续请求的连接交给它放回 selector 等待，不在处理线程中阻塞读
+     */
+    private Consumer<NioChannel> idleHandler;
+
     public Http11Processor(int maxHttpHeaderSize, String relaxedPathChars, String relaxedQueryChars) {
         super();
         HttpParser httpParser = new HttpParser(relaxedPathChars, relaxedQueryChars);
@@ -187,19 +224,32 @@ public abstract class Http11Processor extends AbstractProcessor {
         boolean keptAlive = false;
         int keepCount = 0;
         SocketWrapperBase<NioChannel> responseSocketWrapper = null;
+        boolean idle = false;
 
         do {
             if (request.isConnection() && response.isConnection()) {
-                LOG.fine("http keep alive" + (keepCount++));
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("http keep alive" + (keepCount++));
+                }
                 responseInputBuffer.nextRequest();
                 inputBuffer.nextRequest();
+                if (keptAlive && canIdle()) {
+                    idle = true;
+                    break;
+                }
             }
 
             // Parsing the request header
             try {
                 if (!inputBuffer.parseRequestLine(keptAlive)) {//解析http请求第一行
                     if (inputBuffer.getParsingRequestLinePhase() == -1) {
-                        //TODO 此处为http协议升级
+                        //HTTP/2 连接前言（prior knowledge）
+                        if (isHttp2Available()) {
+                            ByteBuffer leftover = inputBuffer.getByteBuffer().duplicate();
+                            leftover.position(0);
+                            createHttp2Processor().process(leftover);
+                        }
+                        break;
                     } else if (handleIncompleteRequestLineRead()) {
                         //prepareResponse(HttpResponseStatus.SC_BAD_REQUEST, "解析请求失败");
                         break;
@@ -229,55 +279,177 @@ public abstract class Http11Processor extends AbstractProcessor {
                 LOG.fine("Error parsing HTTP response header" + t);
             }
 
+            request.setExpectation(isExpectContinue());
+            long requestStart = System.nanoTime();
+            String host = request.getHost();
+            HostMetrics metrics = MetricsRegistry.host(host, host != null && getTunnelSource() != null && getTunnelSource().isRegistered(host));
+            accessLogEntry.begin(host, request.method(), request.requestURI());
+            CaptureStore captureStore = getCaptureStore();
+            if (captureStore != null) {
+                if (captureBuffer == null) {
+                    captureBuffer = new CaptureBuffer(captureStore);
+                }
+                capturing = captureBuffer;
+                capturing.begin();
+            }
+
+            if (responseSocketWrapper == null && isH2cUpgrade()) {
+                //升级请求本身按 101 记录，之后的流由 Http2Processor 记录
+                complete(metrics, HttpResponseStatus.SC_SWITCHING_PROTOCOLS.getStatus());
+                try {
+                    upgradeToHttp2();
+                } catch (IOException e) {
+                    LOG.fine("h2c upgrade error " + e);
+                }
+                break;
+            }
+
+
+            long maxRequestBodySize = config.getMaxRequestBodySize();
+            if (maxRequestBodySize >= 0 && request.getContentLengthLong() > maxRequestBodySize) {
+                //在边缘拒绝，请求体不进入穿透通道
+                complete(metrics, HttpResponseStatus.SC_REQUEST_ENTITY_TOO_LARGE.getStatus());
+                prepareResponse(HttpResponseStatus.SC_REQUEST_ENTITY_TOO_LARGE, "请求体过大");
+                break;
+            }
+
+            SliceCache sliceCache = getSliceCache();
+            if (sliceCache != null && getTunnelSource() != null && SliceExchange.accepts(request)) {
+                NioChannel user = (NioChannel) socketWrapper.getSocket();
+                SliceExchange sliceExchange = new SliceExchange(sliceCache, getTunnelSource(), request, user, config.getHttpProcessReadBufferSize());
+                SliceExchange.Result result;
+                try {
+                    user.getIOChannel().configureBlocking(true);
+                    result = sliceExchange.serve();
+                } catch (RejectedRequestException e) {
+                    complete(metrics, e.getStatus().getStatus());
+                    prepareResponse(e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                    break;
+                } catch (IOException e) {
+                    LOG.fine("slice exchange error " + e);
+                    if (sliceExchange.isCommitted()) {
+                        complete(metrics, 0);
+                    } else {
+                        complete(metrics, HttpResponseStatus.SC_BAD_GATEWAY.getStatus());
+                        prepareResponse(HttpResponseStatus.SC_BAD_GATEWAY, "客户端响应失败");
+                    }
+                    break;
+                }
+                if (result != SliceExchange.Result.SKIPPED) {
+                    metrics.bytesOut(sliceExchange.getBytesOut());
+                    metrics.slices(sliceExchange.getHitBytes(), sliceExchange.getFetchedBytes());
+                    accessLogEntry.addBytesOut(sliceExchange.getBytesOut());
+                    complete(metrics, sliceExchange.getStatus());
+                    metrics.latency(System.nanoTime() - requestStart);
+                    if (result == SliceExchange.Result.CLOSE) {
+                        break;
+                    }
+                    //没有经过源站响应解析，按请求的 Connection 继续下一个请求
+                    response.getMimeHeaders().setValue(Constants.CONNECTION).setBytes(Constants.KEEPALIVE_BYTES, 0, Constants.KEEPALIVE_BYTES.length);
+                    continue;
+                }
+            }
+
+            try {
+                spool = spoolRequestBody(metrics);
+            } catch (RejectedRequestException e) {
+                complete(metrics, e.getStatus().getStatus());
+                prepareResponse(e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                break;
+            } catch (IOException e) {
+                LOG.fine("spool request body error " + e);
+                complete(metrics, HttpResponseStatus.SC_BAD_REQUEST.getStatus());
+                break;
+            }
 
             if (responseSocketWrapper == null) {
-                receiver = getSocketBean();
+                try {
+                    receiver = getSocketBean();
+                } catch (RejectedRequestException e) {
+                    LOG.fine("request rejected " + e.getMessage());
+                    complete(metrics, e.getStatus().getStatus());
+                    prepareResponse(e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                    break;
+                }
                 if (receiver == null) {
+                    complete(metrics, HttpResponseStatus.SC_NOT_FOUND.getStatus());
                     prepareResponse(HttpResponseStatus.SC_NOT_FOUND, "未找到客户端");
                     break;
                 }
+                long tunnelAcquire = System.nanoTime() - requestStart;
+                metrics.tunnelAcquire(tunnelAcquire);
+                accessLogEntry.setTunnelAcquireNanos(tunnelAcquire);
 
-                NioChannel nioChannel = new NioChannel(receiver.getSocketChannel(), new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true));
+                NioChannel nioChannel = receiver.getChannel();
+                if (nioChannel == null) {
+                    nioChannel = new NioChannel(receiver.getSocketChannel(), new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true));
+                } else {
+                    //TLS 通道在建连时已创建，只清空缓冲
+                    nioChannel.getBufHandler().reset();
+                }
                 responseSocketWrapper = new NioSocketWrapper(nioChannel, getNioSelectorPool());
                 nioChannel.setSocketWrapper(responseSocketWrapper);
                 responseInputBuffer.init(responseSocketWrapper);
             }
 
+            //源站对 Expect: 100-continue 直接给出最终响应时请求体没有发送，响应后关闭连接
+            boolean bodySkipped = false;
             try {
-                mutual(socketWrapper, inputBuffer.getByteBuffer(), receiver.getSocketChannel(), request.isChunked(), request.getContentLength());
+                NioChannel tunnel = responseSocketWrapper.getSocket();
+                long bytesIn;
+                if (request.hasExpectation()) {
+                    //先只转发请求头
+                    bytesIn = mutual(socketWrapper, inputBuffer.getByteBuffer(), tunnel, false, 0, true);
+                    if (awaitContinue(tunnel)) {
+                        bytesIn += mutual(socketWrapper, ByteBuffer.allocate(0), tunnel, request.isChunked(), request.getContentLength(), true);
+                    } else {
+                        bodySkipped = true;
+                    }
+                } else if (spool != null) {
+                    bytesIn = replay(inputBuffer.getByteBuffer(), tunnel);
+                } else {
+                    bytesIn = mutual(socketWrapper, inputBuffer.getByteBuffer(), tunnel, request.isChunked(), request.getContentLength(), true);
+                }
+                metrics.bytesIn(bytesIn);
+                accessLogEntry.addBytesIn(bytesIn);
+            } catch (RejectedRequestException e) {
+                complete(metrics, e.getStatus().getStatus());
+                prepareResponse(e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                break;
             } catch (IOException e) {
+                complete(metrics, HttpResponseStatus.SC_BAD_REQUEST.getStatus());
                 prepareResponse(HttpResponseStatus.SC_BAD_REQUEST, "发送至客户端请求失败");
                 break;
+            } finally {
+                releaseSpool();
             }
+            long requestSent = System.nanoTime();
 
             try {
-                if (!responseInputBuffer.parseResponseLine(keptAlive)) {//解析http请求第一行
-                    if (responseInputBuffer.getParsingRequestLinePhase() == -1) {
-                        prepareResponse(HttpResponseStatus.SC_BAD_REQUEST, "解析客户端响应失败");
-                        break;
-                    }
-                }
-
-
                 keptAlive = true;
-                // Set this every time in case limit has been changed via JMX
-                response.getMimeHeaders().setLimit(getMaxHeaderCount());
-                if (!responseInputBuffer.parseHeaders()) {//解析http请求头
-                    // We've read part of the request, don't recycle it
-                    // instead associate it with the socket
-                    openSocket = true;
-                    readComplete = false;
-                    prepareResponse(HttpResponseStatus.SC_BAD_REQUEST, "解析客户端响应头失败");
-                    break;
+                if (!bodySkipped) {
+                    //100 Continue 等中间响应不转发，用户需要的 100 已由 awaitContinue 回复
+                    do {
+                        parseResponseHead(keptAlive);
+                    } while (skipInterimResponse());
                 }
+                long originFirstByte = System.nanoTime() - requestSent;
+                metrics.originFirstByte(originFirstByte);
+                accessLogEntry.setOriginFirstByteNanos(originFirstByte);
                 if (!disableUploadTimeout) {
                     socketWrapper.setReadTimeout(connectionUploadTimeout);
                 }
 
+            } catch (RejectedRequestException e) {
+                complete(metrics, e.getStatus().getStatus());
+                prepareResponse(e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                break;
             } catch (SocketTimeoutException e) {
+                complete(metrics, 0);
                 break;
             } catch (IOException e) {
                 LOG.fine("Error parsing HTTP response header"+ e);
+                complete(metrics, 0);
                 break;
             } catch (Throwable t) {
                 ExceptionUtils.handleThrowable(t);
@@ -286,17 +458,54 @@ public abstract class Http11Processor extends AbstractProcessor {
 
             try {
                 NioChannel socket = (NioChannel) socketWrapper.getSocket();
-                mutual(responseSocketWrapper, responseInputBuffer.getByteBuffer(), socket.getIOChannel(), response.isChunked(), response.getContentLength());
+                long bytesOut = mutual(responseSocketWrapper, responseInputBuffer.getByteBuffer(), socket, response.isChunked(), response.getContentLength(), false);
+                metrics.bytesOut(bytesOut);
+                accessLogEntry.addBytesOut(bytesOut);
+                complete(metrics, responseStatus());
+                metrics.latency(System.nanoTime() - requestStart);
             } catch (IOException e) {
+                complete(metrics, 0);
                 LOG.severe("response mutual error"+e);
                 e.printStackTrace();
                 break;
             }
+            if (bodySkipped) {
+                //用户可能仍会发送请求体，连接不能继续使用
+                break;
+            }
         } while (request.isConnection() && response.isConnection() && !isPaused());
+        releaseSpool();
+        if (idle) {
+            LOG.fine("http 连接空闲");
+            releaseTunnel();
+            idleHandler.accept((NioChannel) socketWrapper.getSocket());
+            return;
+        }
         LOG.fine("http 完成");
         close();
     }
 
+    /**
+     * 上一个响应已完成且没有已读到的后续请求（pipelining）时可以交回 selector
+     */
+    private boolean canIdle() {
+        if (idleHandler == null || inputBuffer.available(false) > 0 || !socketWrapper.getSocketBufferHandler().isReadBufferEmpty()) {
+            return false;
+        }
+        Object socket = socketWrapper.getSocket();
+        return !(socket instanceof SecureNioChannel) || !((SecureNioChannel) socket).hasBufferedInput();
+    }
+
+    public void setIdleHandler(Consumer<NioChannel> idleHandler) {
+        this.idleHandler = idleHandler;
+    }
+
+    /**
+     * 连接交回 selector 前释放本次请求占用的穿透通道，公网连接保持打开
+     */
+    protected void releaseTunnel() {
+    }
+
     public abstract SocketBean getSocketBean() throws IOException;
 
     public abstract int getMaxHeaderCount();
@@ -307,19 +516,218 @@ public abstract class Http11Processor extends AbstractProcessor {
 
     public abstract void close() throws IOException;
 
+    /**
+     * HTTP/2 流转发使用的通道来源，返回 null 表示不支持 HTTP/2
+     */
+    protected TunnelSource getTunnelSource() {
+        return null;
+    }
+
+    private boolean isHttp2Available() {
+        //HTTP/2 直接读写底层通道，TLS 连接上不支持（没有 ALPN）
+        return config.isHttp2Enabled() && getTunnelSource() != null && !(socketWrapper.getSocket() instanceof SecureNioChannel);
+    }
+
+    private Http2Processor createHttp2Processor() {
+        return new Http2Processor(socketWrapper, getTunnelSource(), maxHttpHeaderSize, this::createBody);
+    }
+
+    /**
+     * Upgrade: h2c 且没有请求体（有请求体时按 HTTP/1.1 处理，协议允许服务端忽略升级）
+     */
+    private boolean isH2cUpgrade() {
+        if (!isHttp2Available() || request.isChunked() || request.getContentLengthLong() > 0) {
+            return false;
+        }
+        MimeHeaders headers = request.getMimeHeaders();
+        MessageBytes upgrade = headers.getValue("upgrade");
+        return upgrade != null && "h2c".equalsIgnoreCase(upgrade.toString().trim()) && headers.getValue("http2-settings") != null;
+    }
+
+    private static final byte[] SWITCHING_PROTOCOLS = ("HTTP/1.1 101 Switching Protocols\r\n" +
+            "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private void upgradeToHttp2() throws IOException {
+        MimeHeaders headers = request.getMimeHeaders();
+        Http2Processor http2Processor = createHttp2Processor();
+        http2Processor.applyUpgradeSettings(headers.getValue("http2-settings").toString());
+
+        List<String[]> list = new ArrayList<>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            list.add(new String[]{headers.getName(i).toString(), headers.getValue(i).toString()});
+        }
+        String path = request.requestURI().toString();
+        if (!request.queryString().isNull()) {
+            path = path + "?" + request.queryString().toString();
+        }
+        MessageBytes host = headers.getValue("host");
+        http2Processor.setUpgradeStream(request.method().toString(), path, host == null ? null : host.toString(), list);
+
+        socketWrapper.write(true, SWITCHING_PROTOCOLS, 0, SWITCHING_PROTOCOLS.length);
+        socketWrapper.flush(true);
+        // 请求头之后已读到的数据属于 HTTP/2 连接
+        http2Processor.process(inputBuffer.getByteBuffer().slice());
+    }
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * HTTP/1.1 请求带 Expect: 100-continue，并且用户还没有开始发送请求体
+     */
+    private boolean isExpectContinue() {
+        MessageBytes expect = request.getMimeHeaders().getValue("expect");
+        return expect != null && "100-continue".equalsIgnoreCase(expect.toString().trim())
+                && request.protocol().equals(Constants.HTTP_11)
+                && (request.isChunked() || request.getContentLengthLong() > 0)
+                && !inputBuffer.getByteBuffer().hasRemaining();
+    }
+
+    /**
+     * 请求头已转发，等待源站对 Expect: 100-continue 的答复
+     *
+     * @return true 需要转发请求体（源站回复了 100，或等待超时），已向用户回复 100；
+     * false 源站直接给出了最终响应（如 401、413、417），响应头已解析，请求体不再发送
+     */
+    private boolean awaitContinue(NioChannel tunnel) throws IOException {
+        if (awaitResponse(tunnel, config.getExpectContinueTimeout())) {
+            try {
+                parseResponseHead(true);
+            } catch (IllegalArgumentException e) {
+                //与转发普通响应时一样，解析不了的响应原样转发
+                LOG.fine("Error parsing HTTP response header" + e);
+                return false;
+            }
+            if (!skipInterimResponse()) {
+                LOG.fine(() -> "源站拒绝请求体 " + responseStatus());
+                return false;
+            }
+        }
+        socketWrapper.write(true, CONTINUE, 0, CONTINUE.length);
+        socketWrapper.flush(true);
+        return true;
+    }
+
+    /**
+     * 等待穿透通道上出现响应数据，最多等待 timeout 毫秒；读到的数据留在响应缓冲中
+     */
+    private boolean awaitResponse(NioChannel tunnel, long timeout) throws IOException {
+        SocketChannel channel = tunnel.getIOChannel();
+        channel.configureBlocking(false);
+        NioSelectorPool pool = getNioSelectorPool();
+        Selector selector = null;
+        SelectionKey key = null;
+        try {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!responseInputBuffer.fillNow()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (selector == null) {
+                    selector = pool.get();
+                    if (selector == null) {
+                        return false;
+                    }
+                    key = channel.register(selector, SelectionKey.OP_READ);
+                }
+                selector.select(remaining);
+                selector.selectedKeys().remove(key);
+            }
+            return true;
+        } finally {
+            if (key != null) {
+                key.cancel();
+                selector.selectNow();
+            }
+            if (selector != null) {
+                pool.put(selector);
+            }
+            //转发时按阻塞模式读写
+            channel.configureBlocking(true);
+        }
+    }
+
+    /**
+     * 解析源站的响应行与响应头
+     *
+     * @throws RejectedRequestException 响应无法解析
+     */
+    private void parseResponseHead(boolean keptAlive) throws IOException {
+        if (!responseInputBuffer.parseResponseLine(keptAlive)) {//解析http请求第一行
+            if (responseInputBuffer.getParsingRequestLinePhase() == -1) {
+                throw new RejectedRequestException(HttpResponseStatus.SC_BAD_REQUEST, "解析客户端响应失败");
+            }
+        }
+        // Set this every time in case limit has been changed via JMX
+        response.getMimeHeaders().setLimit(getMaxHeaderCount());
+        if (!responseInputBuffer.parseHeaders()) {//解析http请求头
+            // We've read part of the request, don't recycle it
+            // instead associate it with the socket
+            openSocket = true;
+            readComplete = false;
+            throw new RejectedRequestException(HttpResponseStatus.SC_BAD_REQUEST, "解析客户端响应头失败");
+        }
+    }
+
+    /**
+     * 刚解析的是 1xx 中间响应（101 除外）时丢弃它，准备解析下一个响应
+     */
+    private boolean skipInterimResponse() {
+        int status = responseStatus();
+        if (status < 100 || status >= 200 || status == 101) {
+            return false;
+        }
+        responseInputBuffer.nextRequest();
+        return true;
+    }
+
     private static final byte[] chunkedEndByte = "0\r\n\r\n".getBytes(StandardCharsets.UTF_8);
 
     private ByteBuffer thisBuffer = ByteBuffer.allocate(2048);
 
     //数据传输使用
-    private void mutual(SocketWrapperBase socketWrapperBase, ByteBuffer byteBuffer, SocketChannel socketChannel, boolean chunked, int contentLength) throws IOException {
-        boolean blocking = socketChannel.isBlocking();
-        socketChannel.configureBlocking(true);
+    private int responseStatus() {
+        try {
+            return (int) response.status().getLong();
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 写入经过 NioChannel，公网侧是 TLS 时由它加密
+     *
+     * @return 转发的字节数（含头部）
+     */
+    private long mutual(SocketWrapperBase socketWrapperBase, ByteBuffer byteBuffer, NioChannel socketChannel, boolean chunked, int contentLength, boolean isRequest) throws IOException {
+        if (!isRequest || (!chunked && byteBuffer.remaining() >= contentLength)) {
+            return mutual(socketWrapperBase, byteBuffer, socketChannel, chunked, contentLength, isRequest, null);
+        }
+        //请求体还没读完：按最低速率检查上传进度，防止慢速上传长期占用处理线程
+        RequestBodyWatch watch = RequestBodyWatch.start(((NioChannel) socketWrapperBase.getSocket()).getIOChannel(),
+                config.getRequestBodyTimeout(), config.getRequestBodyMinRate());
+        try {
+            return mutual(socketWrapperBase, byteBuffer, socketChannel, chunked, contentLength, isRequest, watch);
+        } catch (IOException e) {
+            if (watch != null && watch.isExpired()) {
+                throw new RejectedRequestException(HttpResponseStatus.SC_REQUEST_TIMEOUT, "请求体上传超时");
+            }
+            throw e;
+        } finally {
+            if (watch != null) {
+                watch.stop();
+            }
+        }
+    }
+
+    private long mutual(SocketWrapperBase socketWrapperBase, ByteBuffer byteBuffer, NioChannel socketChannel, boolean chunked, int contentLength, boolean isRequest, RequestBodyWatch watch) throws IOException {
+        socketChannel.getIOChannel().configureBlocking(true);
         int bodySize = byteBuffer.limit() - byteBuffer.position();
         byteBuffer.position(0);
-        int sum = byteBuffer.limit();
+        long transferred = byteBuffer.limit();
+        capture(isRequest, byteBuffer);
         socketChannel.write(byteBuffer);
-        if (LOG.isLoggable(Level.FINE)) {
+        if (LOG.isLoggable(Level.FINEST)) {
             LOG.finest("write:" + new String(byteBuffer.array(), StandardCharsets.ISO_8859_1));
         }
         if (chunked) {
@@ -328,17 +736,20 @@ public abstract class Http11Processor extends AbstractProcessor {
                 thisBuffer.position(0);
                 thisBuffer.limit(thisBuffer.capacity());//展开内存
                 int read = socketWrapperBase.read(true, thisBuffer);
-                sum += read;
-                LOG.fine("sun: " + sum);
-                if (read < 2048) {
-                    LOG.fine("debug");
-                }
                 if (read < 0) {
                     LOG.fine("read chunked to -1");
+                    if (watch != null && watch.isExpired()) {
+                        throw new EOFException();
+                    }
                     break;
                 }
+                if (watch != null) {
+                    watch.received(read);
+                }
+                transferred += read;
                 thisBuffer.flip();
                 //thisBuffer.limit(read);
+                capture(isRequest, thisBuffer);
                 socketChannel.write(thisBuffer);
                 /*if (log.isDebugEnabled()) {
                     log.debug(Arrays.toString(thisBuffer.array()));
@@ -362,14 +773,141 @@ public abstract class Http11Processor extends AbstractProcessor {
                 thisBuffer.position(0);
                 thisBuffer.limit(thisBuffer.capacity());//展开内存
                 int read = socketWrapperBase.read(true, thisBuffer);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                if (watch != null) {
+                    watch.received(read);
+                }
                 bodySize += read;
+                transferred += read;
                 thisBuffer.flip();
+                capture(isRequest, thisBuffer);
                 socketChannel.write(thisBuffer);
-                if (LOG.isLoggable(Level.FINE)) {
-                    LOG.fine("write:" + new String(thisBuffer.array(), 0, read));
+                if (LOG.isLoggable(Level.FINEST)) {
+                    LOG.finest("write:" + new String(thisBuffer.array(), 0, read));
+                }
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * 开启暂存且请求体长度已知时，在获取穿透通道前把请求体读完，慢速上传不再占用通道
+     * <p>
+     * chunked 和 Expect: 100-continue 的请求仍然边读边转发
+     *
+     * @return 不暂存时返回 null
+     */
+    private SpoolBuffer spoolRequestBody(HostMetrics metrics) throws IOException {
+        long spoolMaxBodySize = config.getSpoolMaxBodySize();
+        long contentLength = request.getContentLengthLong();
+        if (spoolMaxBodySize <= 0 || request.isChunked() || request.hasExpectation() || contentLength <= 0) {
+            return null;
+        }
+        //文件映射的长度不能超过 int
+        if (contentLength > Math.min(spoolMaxBodySize, Integer.MAX_VALUE)) {
+            metrics.spoolSkipped();
+            return null;
+        }
+        ByteBuffer head = inputBuffer.getByteBuffer();
+        long remaining = contentLength - head.remaining();
+        if (remaining <= 0) {
+            return null;
+        }
+        SpoolBuffer spool = new SpoolBuffer(remaining, config.getSpoolMemorySize(), config.getSpoolMemoryTotal(), config.getSpoolDir());
+        RequestBodyWatch watch = RequestBodyWatch.start(((NioChannel) socketWrapper.getSocket()).getIOChannel(),
+                config.getRequestBodyTimeout(), config.getRequestBodyMinRate());
+        try {
+            ByteBuffer buffer;
+            while ((buffer = spool.writeBuffer()) != null) {
+                int read = socketWrapper.read(true, buffer);
+                if (read < 0) {
+                    throw new EOFException();
                 }
+                if (watch != null) {
+                    watch.received(read);
+                }
+                spool.written(read);
+            }
+        } catch (IOException e) {
+            spool.close();
+            if (watch != null && watch.isExpired()) {
+                throw new RejectedRequestException(HttpResponseStatus.SC_REQUEST_TIMEOUT, "请求体上传超时");
+            }
+            throw e;
+        } finally {
+            if (watch != null) {
+                watch.stop();
             }
         }
+        metrics.spooled(spool.size(), spool.isOverflowed());
+        return spool;
+    }
+
+    /**
+     * 把请求头和暂存的请求体一次写入穿透通道
+     *
+     * @return 转发的字节数（含头部）
+     */
+    private long replay(ByteBuffer head, NioChannel tunnel) throws IOException {
+        tunnel.getIOChannel().configureBlocking(true);
+        head.position(0);
+        long transferred = head.limit();
+        capture(true, head);
+        tunnel.write(head);
+        for (ByteBuffer buffer : spool.buffers()) {
+            transferred += buffer.remaining();
+            capture(true, buffer);
+            while (buffer.hasRemaining()) {
+                tunnel.write(buffer);
+            }
+        }
+        return transferred;
+    }
+
+    private void releaseSpool() {
+        if (spool != null) {
+            spool.close();
+            spool = null;
+        }
+    }
+
+    /**
+     * 一次请求结束：记录状态码、访问日志与抓包
+     */
+    private void complete(HostMetrics metrics, int status) {
+        metrics.status(status);
+        accessLogEntry.setStatus(status);
+        AccessLog.append(accessLogEntry);
+        if (capturing != null) {
+            capturing.finish();
+            capturing = null;
+        }
+    }
+
+    private void capture(boolean isRequest, ByteBuffer buffer) {
+        if (capturing != null) {
+            if (isRequest) {
+                capturing.request(buffer);
+            } else {
+                capturing.response(buffer);
+            }
+        }
+    }
+
+    /**
+     * 大文件分片缓存，返回 null 不使用
+     */
+    protected SliceCache getSliceCache() {
+        return null;
+    }
+
+    /**
+     * 抓包文件，返回 null 不抓包
+     */
+    protected CaptureStore getCaptureStore() {
+        return null;
     }
 
     private boolean handleIncompleteRequestLineRead() {
@@ -394,6 +932,13 @@ public abstract class Http11Processor extends AbstractProcessor {
      * When committing the response, we have to validate the set of headers
      */
     protected final void prepareResponse(HttpResponseStatus status, String bodyStr) throws IOException {
+        prepareResponse(status, bodyStr, 0);
+    }
+
+    /**
+     * @param retryAfterSeconds 大于 0 时带上 Retry-After
+     */
+    protected final void prepareResponse(HttpResponseStatus status, String bodyStr, int retryAfterSeconds) throws IOException {
 
         byte[] body = null;
         if (StringUtils.isNotEmpty(bodyStr)) {
@@ -416,6 +961,9 @@ public abstract class Http11Processor extends AbstractProcessor {
         headers.setValue("Vary").setString("Accept-Encoding");
         headers.addValue("Date").setString(FastHttpDateFormat.getCurrentDate());
         headers.addValue(Constants.CONNECTION).setString(Constants.CLOSE);
+        if (retryAfterSeconds > 0) {
+            headers.setValue("Retry-After").setLong(retryAfterSeconds);
+        }
         if (StringUtils.isNotEmpty(server)) {
             headers.setValue("Server").setString(server);
         }
@@ -437,7 +985,7 @@ public abstract class Http11Processor extends AbstractProcessor {
 
     }
 
-    public String bodyTemp = "<div style='text-align:center'>\n" +
+    private static final String BODY_TEMP = "<div style='text-align:center'>\n" +
             "  <div>\n" +
             "  <h1>BigAnt</h1>\n" +
             "  <hr/>\n" +
@@ -454,7 +1002,30 @@ public abstract class Http11Processor extends AbstractProcessor {
             "</div>\n" +
             "</div>";
 
-    private String createBody(HttpResponseStatus status, String bodyStr) {
+    public String bodyTemp = BODY_TEMP;
+
+    /**
+     * 预先生成的完整响应（含 Connection: close），在还没有处理器、不解析请求的情况下直接写回，如过载时的 503
+     */
+    public static byte[] cannedResponse(HttpResponseStatus status, String bodyStr, int retryAfterSeconds) {
+        byte[] body = String.format(BODY_TEMP, status.getStatus(), bodyStr).getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status.getStatus()).append(' ').append(status.getDesc()).append("\r\n");
+        head.append("Content-Type: text/html;charset=UTF-8\r\n");
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        if (retryAfterSeconds > 0) {
+            head.append("Retry-After: ").append(retryAfterSeconds).append("\r\n");
+        }
+        head.append("Connection: close\r\n");
+        head.append("Server: BigAnt\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] response = new byte[headBytes.length + body.length];
+        arraycopy(headBytes, 0, response, 0, headBytes.length);
+        arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    public String createBody(HttpResponseStatus status, String bodyStr) {
         return String.format(bodyTemp, status.getStatus(), bodyStr);
     }
 
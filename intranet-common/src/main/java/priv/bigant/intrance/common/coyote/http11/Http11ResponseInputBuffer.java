@@ -258,7 +258,8 @@ public class Http11ResponseInputBuffer implements InputBuffer, ApplicationBuffer
     void nextRequest() {
         response.recycle();
 
-        if (byteBuffer.position() > 0) {
+        //还没有接入穿透通道时（如上一个请求由分片缓存应答）没有缓冲
+        if (byteBuffer != null && byteBuffer.position() > 0) {
             if (byteBuffer.remaining() > 0) {
                 // Copy leftover bytes to the beginning of the buffer
                 byteBuffer.compact();
@@ -491,7 +492,8 @@ public class Http11ResponseInputBuffer implements InputBuffer, ApplicationBuffer
                         end = pos;
                     }
                     parsingRequestLineEol = true;
-                } else if (!(HttpParser.isAlpha(chr) || HttpParser.isSeparator(chr))) {
+                } else if ((chr >= 0 && chr < Constants.SP && chr != Constants.HT) || chr == 127) {
+                    //reason-phrase = *( HTAB / SP / VCHAR / obs-text )，如 "Unsupported method ('PUT')"
                     byteBuffer.position(byteBuffer.position() - 1);
                     // Avoid unknown protocol triggering an additional error
                     response.protocol().setString(Constants.HTTP_11);
@@ -548,6 +550,16 @@ public class Http11ResponseInputBuffer implements InputBuffer, ApplicationBuffer
     }
 
 
+    /**
+     * 不阻塞地读取已到达的响应数据
+     *
+     * @return 缓冲中有未解析的数据时返回 true
+     */
+    public boolean fillNow() throws IOException {
+        return byteBuffer.position() < byteBuffer.limit() || fill(false);
+    }
+
+
     public int getParsingRequestLinePhase() {
         return parsingRequestLinePhase;
     }
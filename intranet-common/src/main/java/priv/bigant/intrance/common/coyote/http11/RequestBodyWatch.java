@@ -0,0 +1,92 @@
+package priv.bigant.intrance.common.coyote.http11;
+
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.threads.HashedWheelTimer;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 请求体上传速度检查：每个周期检查这段时间收到的字节数，低于最低速率时关闭连接的读方向，
+ * 阻塞中的读取随即返回，由处理器回复 408；写方向保持打开以便发出响应
+ */
+final class RequestBodyWatch implements Runnable {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    private final SocketChannel channel;
+    private final long interval;
+    private final long minBytes;
+    private volatile long received;
+    private long checked;
+    private volatile boolean expired;
+    private volatile boolean stopped;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    /**
+     * @param interval 检查周期（毫秒）
+     * @param minRate  最低速率（字节/秒）
+     */
+    private RequestBodyWatch(SocketChannel channel, long interval, long minRate) {
+        this.channel = channel;
+        this.interval = interval;
+        this.minBytes = minRate * interval / 1000;
+    }
+
+    /**
+     * @return 周期或速率小于等于 0 时不检查，返回 null
+     */
+    static RequestBodyWatch start(SocketChannel channel, int interval, int minRate) {
+        if (interval <= 0 || minRate <= 0) {
+            return null;
+        }
+        RequestBodyWatch watch = new RequestBodyWatch(channel, interval, minRate);
+        watch.schedule();
+        return watch;
+    }
+
+    private void schedule() {
+        timeout = HashedWheelTimer.getDefault().newTimeout(this, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 只由处理线程调用
+     */
+    void received(long bytes) {
+        received += bytes;
+    }
+
+    void stop() {
+        stopped = true;
+        HashedWheelTimer.Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    boolean isExpired() {
+        return expired;
+    }
+
+    @Override
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        long current = received;
+        if (current - checked >= minBytes) {
+            checked = current;
+            schedule();
+            return;
+        }
+        expired = true;
+        LOG.fine(() -> "请求体上传过慢 " + channel + " " + (current - checked) + " 字节/" + interval + "ms");
+        try {
+            channel.shutdownInput();
+        } catch (IOException e) {
+            LOG.fine("关闭读方向失败 " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package priv.bigant.intrance.common.coyote.http11;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 在正式解析前从已读到的字节中粗略提取 Host 与 Content-Length，用于按租户调度
+ * <p>
+ * 只看缓冲区内已有的数据，不移动 position / limit，找不到时返回 null / -1
+ */
+public final class RequestSniffer {
+
+    private static final byte[] HOST = {'h', 'o', 's', 't', ':'};
+    private static final byte[] CONTENT_LENGTH = {'c', 'o', 'n', 't', 'e', 'n', 't', '-', 'l', 'e', 'n', 'g', 't', 'h', ':'};
+
+    private RequestSniffer() {
+    }
+
+    /**
+     * @param end 有效数据的结束位置（不含）
+     * @return 去掉端口号的域名
+     */
+    public static String host(ByteBuffer buffer, int start, int end) {
+        int valueStart = findHeader(buffer, start, end, HOST);
+        if (valueStart < 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = valueStart; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '\r' || b == '\n' || (b == ':' && (sb.length() == 0 || sb.charAt(0) != '[' || sb.charAt(sb.length() - 1) == ']'))) {
+                return sb.length() == 0 ? null : sb.toString().trim().toLowerCase();
+            }
+            sb.append((char) (b & 0xFF));
+        }
+        // 值不完整
+        return null;
+    }
+
+    /**
+     * 是否已读到请求头结尾的空行（容忍只用 LF 换行）
+     */
+    public static boolean headerComplete(ByteBuffer buffer, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            byte prev = buffer.get(i - 1);
+            if (prev == '\n' || (prev == '\r' && i >= start + 2 && buffer.get(i - 2) == '\n')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static long contentLength(ByteBuffer buffer, int start, int end) {
+        int valueStart = findHeader(buffer, start, end, CONTENT_LENGTH);
+        if (valueStart < 0) {
+            return -1;
+        }
+        long value = 0;
+        boolean digit = false;
+        for (int i = valueStart; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (value > Long.MAX_VALUE / 10 - 10) {
+                    return -1;
+                }
+                value = value * 10 + (b - '0');
+                digit = true;
+            } else if (b == ' ' || b == '\t') {
+                if (digit) {
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
+        return digit ? value : -1;
+    }
+
+    /**
+     * 查找行首的头部名称（忽略大小写），返回值的起始位置（跳过前导空白）
+     */
+    private static int findHeader(ByteBuffer buffer, int start, int end, byte[] name) {
+        for (int i = start; i + name.length <= end; i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            if (i + 1 < end && (buffer.get(i + 1) == '\r' || buffer.get(i + 1) == '\n')) {
+                // 头部结束
+                return -1;
+            }
+            int j = 0;
+            while (j < name.length && i + 1 + j < end && toLower(buffer.get(i + 1 + j)) == name[j]) {
+                j++;
+            }
+            if (j == name.length) {
+                int pos = i + 1 + j;
+                while (pos < end && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+                    pos++;
+                }
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
@@ -0,0 +1,532 @@
+package priv.bigant.intrance.common.coyote.http11;
+
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.cache.SliceCache;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.coyote.Request;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.buf.ByteBufferUtils;
+import priv.bigant.intrance.common.util.buf.MessageBytes;
+import priv.bigant.intrance.common.util.http.FastHttpDateFormat;
+import priv.bigant.intrance.common.util.http.MimeHeaders;
+import priv.bigant.intrance.common.util.net.NioChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * 用分片缓存应答单段 Range 请求：已缓存的分片直接从映射文件发送，缺少的连续分片合并成一次 Range 请求经穿透通道取回，边写缓存边发送
+ * <p>
+ * 源站不返回 206 时原样转发其响应并关闭连接；源站响应没有强 ETag 时只转发不缓存；还没有应答时发现 ETag 变化，
+ * 缓存作废并按普通请求转发
+ * <p>
+ * 带 Authorization、Cookie 的请求以及 private、Set-Cookie、Vary 的响应因人而异，不经过缓存
+ */
+class SliceExchange {
+
+    enum Result {
+        /**
+         * 不适用，按普通请求转发
+         */
+        SKIPPED,
+        KEEP_ALIVE,
+        CLOSE
+    }
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * 一次最多向源站请求的分片数
+     */
+    private static final int MAX_RUN = 8;
+    private static final Set<String> SKIP_REQUEST_HEADERS = new HashSet<>(Arrays.asList(
+            "host", "connection", "keep-alive", "proxy-connection", "transfer-encoding", "te", "upgrade", "content-length",
+            "expect", "range", "if-range", "accept-encoding"));
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "content-length"));
+    /**
+     * 缓存的响应头，范围与日期每次重新生成，Set-Cookie 不能给其他用户
+     */
+    private static final Set<String> SKIP_RESPONSE_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "content-length", "content-range", "date",
+            "set-cookie"));
+
+    private final SliceCache cache;
+    private final TunnelSource tunnelSource;
+    private final NioChannel user;
+    private final int bufferSize;
+    private final String host;
+    private final String target;
+    private final String key;
+    private final String rangeHeader;
+    private final String ifRange;
+    private final boolean keepAlive;
+    private final List<String[]> requestHeaders = new ArrayList<>();
+    private final byte[] buffer;
+
+    private SliceCache.Entry entry;
+    private boolean validate;
+    private long length = -1;
+    private List<String[]> responseHeaders;
+    private long start;
+    private long end;
+    /**
+     * 下一个要发送给用户的字节位置
+     */
+    private long position;
+    private boolean committed;
+
+    private int status;
+    private long bytesOut;
+    private long hitBytes;
+    private long fetchedBytes;
+
+    SliceExchange(SliceCache cache, TunnelSource tunnelSource, Request request, NioChannel user, int bufferSize) {
+        this.cache = cache;
+        this.tunnelSource = tunnelSource;
+        this.user = user;
+        this.bufferSize = bufferSize;
+        this.buffer = new byte[bufferSize];
+        this.host = request.getHost();
+        String query = request.queryString().toString();
+        this.target = request.requestURI().toString() + (query == null || query.isEmpty() ? "" : "?" + query);
+        this.key = host + target;
+        this.keepAlive = request.isConnection();
+        MimeHeaders headers = request.getMimeHeaders();
+        this.rangeHeader = header(headers, "range");
+        this.ifRange = header(headers, "if-range");
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.getName(i).toString();
+            if (!SKIP_REQUEST_HEADERS.contains(name.toLowerCase(Locale.ENGLISH))) {
+                requestHeaders.add(new String[]{name, headers.getValue(i).toString()});
+            }
+        }
+    }
+
+    /**
+     * 没有请求体、不带身份信息的 GET，且只请求一段字节范围
+     */
+    static boolean accepts(Request request) {
+        MimeHeaders headers = request.getMimeHeaders();
+        return request.method().equals("GET") && request.getContentLengthLong() <= 0 && !request.isChunked()
+                && headers.getValue("authorization") == null && headers.getValue("cookie") == null
+                && parseRange(header(headers, "range")) != null;
+    }
+
+    private static String header(MimeHeaders headers, String name) {
+        MessageBytes value = headers.getValue(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 解析 bytes=a-b、bytes=a-、bytes=-n
+     *
+     * @return {起始, 结束}，开放结尾的结束为 Long.MAX_VALUE，后缀范围的起始为 -1、结束为长度；不支持时返回 null
+     */
+    static long[] parseRange(String value) {
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6) || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                return suffix > 0 ? new long[]{-1, suffix} : null;
+            }
+            long from = Long.parseLong(first);
+            long to = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            return from >= 0 && to >= from ? new long[]{from, to} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析 Content-Range: bytes a-b/total
+     *
+     * @return {a, b, total}，总长度未知或格式不对时返回 null
+     */
+    static long[] parseContentRange(String value) {
+        if (value == null || !value.regionMatches(true, 0, "bytes ", 0, 6)) {
+            return null;
+        }
+        String spec = value.substring(6).trim();
+        int dash = spec.indexOf('-');
+        int slash = spec.indexOf('/');
+        if (dash < 0 || slash < dash) {
+            return null;
+        }
+        try {
+            long from = Long.parseLong(spec.substring(0, dash).trim());
+            long to = Long.parseLong(spec.substring(dash + 1, slash).trim());
+            long total = Long.parseLong(spec.substring(slash + 1).trim());
+            return from >= 0 && to >= from && total > to ? new long[]{from, to, total} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    Result serve() throws IOException {
+        long[] range = parseRange(rangeHeader);
+        entry = cache.lookup(key);
+        try {
+            if (entry == null && range[0] < 0) {
+                //后缀范围需要先知道长度
+                return Result.SKIPPED;
+            }
+            if (ifRange != null && (entry == null || !ifRange.equals(entry.getEtag()))) {
+                return Result.SKIPPED;
+            }
+            if (entry != null) {
+                validate = !entry.isFresh();
+                length = entry.getLength();
+                responseHeaders = entry.getHeaders();
+                if (!resolve(range)) {
+                    return notSatisfiable();
+                }
+                if (!validate) {
+                    sendHead();
+                }
+            } else {
+                start = range[0];
+                end = range[1];
+            }
+            int sliceSize = cache.getSliceSize();
+            position = start;
+            while (position <= end) {
+                int slice = (int) (position / sliceSize);
+                if (entry != null && !validate && entry.has(slice)) {
+                    sendCached(slice);
+                    continue;
+                }
+                int last = slice + MAX_RUN - 1;
+                if (end != Long.MAX_VALUE) {
+                    last = (int) Math.min(last, end / sliceSize);
+                }
+                if (entry != null) {
+                    for (int i = slice + 1; i <= last; i++) {
+                        if (entry.has(i)) {
+                            last = i - 1;
+                            break;
+                        }
+                    }
+                }
+                Result result = fetch(range, slice, last);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return keepAlive ? Result.KEEP_ALIVE : Result.CLOSE;
+        } finally {
+            if (entry != null) {
+                cache.release(entry);
+                entry = null;
+            }
+        }
+    }
+
+    /**
+     * 按对象长度确定实际范围
+     *
+     * @return 范围不可满足时返回 false
+     */
+    private boolean resolve(long[] range) {
+        if (range[0] < 0) {
+            start = Math.max(0, length - range[1]);
+            end = length - 1;
+        } else {
+            start = range[0];
+            end = Math.min(range[1], length - 1);
+        }
+        return start < length;
+    }
+
+    /**
+     * 从源站取回 [first, last] 分片并转发用户需要的部分
+     *
+     * @return 需要结束本次应答时返回结果，继续时返回 null
+     */
+    private Result fetch(long[] range, int first, int last) throws IOException {
+        int sliceSize = cache.getSliceSize();
+        long from = (long) first * sliceSize;
+        long to = (long) (last + 1) * sliceSize - 1;
+        if (length >= 0) {
+            to = Math.min(to, length - 1);
+        }
+        SocketBean socketBean = tunnelSource.acquire(host);
+        if (socketBean == null) {
+            if (committed) {
+                throw new IOException("未找到客户端 " + host);
+            }
+            throw new RejectedRequestException(HttpResponseStatus.SC_NOT_FOUND, "未找到客户端");
+        }
+        try {
+            TunnelExchange exchange = new TunnelExchange(socketBean, bufferSize);
+            List<String[]> headers = new ArrayList<>(requestHeaders);
+            headers.add(new String[]{"Range", "bytes=" + from + "-" + to});
+            if (entry != null) {
+                headers.add(new String[]{"If-Range", entry.getEtag()});
+            }
+            exchange.writeRequestHead("GET", target, host, headers, false);
+            exchange.endBody();
+            exchange.readResponseHead(false);
+            if (exchange.getStatus() != 206) {
+                //If-Range 不匹配（内容已变化）或源站不支持 Range
+                if (entry != null) {
+                    cache.invalidate(entry);
+                }
+                if (committed) {
+                    throw new IOException("源站分片响应无效 " + exchange.getStatus());
+                }
+                relay(exchange);
+                return Result.CLOSE;
+            }
+            long[] contentRange = parseContentRange(exchange.getHeader("Content-Range"));
+            if (contentRange == null || contentRange[0] != from || contentRange[1] != Math.min(to, contentRange[2] - 1)
+                    || (length >= 0 && contentRange[2] != length)) {
+                if (committed) {
+                    throw new IOException("源站分片范围不符 " + exchange.getHeader("Content-Range"));
+                }
+                return Result.SKIPPED;
+            }
+            if (!shared(exchange)) {
+                //私有响应不能缓存，也不能用已缓存的分片回答
+                if (entry != null) {
+                    cache.invalidate(entry);
+                }
+                if (committed) {
+                    throw new IOException("源站响应不可共享 " + key);
+                }
+                return Result.SKIPPED;
+            }
+            String etag = exchange.getHeader("ETag");
+            if (entry != null) {
+                if (!entry.getEtag().equals(etag)) {
+                    LOG.fine(() -> "分片缓存 ETag 变化 " + key);
+                    cache.invalidate(entry);
+                    if (committed) {
+                        throw new IOException("源站内容已变化 " + key);
+                    }
+                    return Result.SKIPPED;
+                }
+                if (validate) {
+                    entry.validated();
+                    validate = false;
+                }
+            }
+            if (length < 0) {
+                length = contentRange[2];
+                responseHeaders = new ArrayList<>();
+                for (String[] header : exchange.getHeaders()) {
+                    if (!SKIP_RESPONSE_HEADERS.contains(header[0].toLowerCase(Locale.ENGLISH))) {
+                        responseHeaders.add(header);
+                    }
+                }
+                if (cacheable(exchange, etag)) {
+                    entry = cache.create(key, etag, length, responseHeaders);
+                }
+                if (!resolve(range)) {
+                    return notSatisfiable();
+                }
+            }
+            if (!committed) {
+                sendHead();
+            }
+            for (int slice = first; (long) slice * sliceSize <= contentRange[1]; slice++) {
+                receive(exchange, slice);
+            }
+            return null;
+        } finally {
+            tunnelSource.release(host, socketBean);
+        }
+    }
+
+    /**
+     * 响应是否与用户无关：没有 private、Set-Cookie、Vary
+     */
+    private static boolean shared(TunnelExchange exchange) {
+        for (String[] header : exchange.getHeaders()) {
+            String name = header[0].toLowerCase(Locale.ENGLISH);
+            if (name.equals("set-cookie") || name.equals("vary")
+                    || (name.equals("cache-control") && header[1].toLowerCase(Locale.ENGLISH).contains("private"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 强 ETag、未压缩、允许存储的响应才缓存
+     */
+    private static boolean cacheable(TunnelExchange exchange, String etag) {
+        if (etag == null || etag.startsWith("W/") || exchange.getHeader("Content-Encoding") != null) {
+            return false;
+        }
+        String cacheControl = exchange.getHeader("Cache-Control");
+        return cacheControl == null || !cacheControl.toLowerCase(Locale.ENGLISH).contains("no-store");
+    }
+
+    /**
+     * 读取一个分片写入缓存，同时转发落在请求范围内的部分
+     */
+    private void receive(TunnelExchange exchange, int slice) throws IOException {
+        long sliceStart = (long) slice * cache.getSliceSize();
+        int sliceLength = (int) Math.min(cache.getSliceSize(), length - sliceStart);
+        MappedByteBuffer mapped = entry == null ? null : entry.map(slice, true);
+        try {
+            int offset = 0;
+            while (offset < sliceLength) {
+                int n = exchange.readBody(buffer, 0, Math.min(buffer.length, sliceLength - offset));
+                if (n < 0) {
+                    throw new EOFException("分片未读完连接已关闭");
+                }
+                if (mapped != null) {
+                    mapped.position(offset);
+                    mapped.put(buffer, 0, n);
+                }
+                long chunkStart = sliceStart + offset;
+                long from = Math.max(chunkStart, position);
+                long to = Math.min(chunkStart + n, end + 1);
+                if (from < to) {
+                    write(ByteBuffer.wrap(buffer, (int) (from - chunkStart), (int) (to - from)));
+                }
+                offset += n;
+                fetchedBytes += n;
+            }
+            if (entry != null) {
+                entry.complete(slice);
+            }
+        } finally {
+            if (mapped != null) {
+                ByteBufferUtils.cleanDirectBuffer(mapped);
+            }
+        }
+        position = Math.max(position, Math.min(sliceStart + sliceLength, end + 1));
+    }
+
+    /**
+     * 从缓存文件发送一个分片中请求范围内的部分
+     */
+    private void sendCached(int slice) throws IOException {
+        long sliceStart = (long) slice * cache.getSliceSize();
+        MappedByteBuffer mapped = entry.map(slice, false);
+        try {
+            int to = (int) (Math.min(sliceStart + entry.sliceLength(slice), end + 1) - sliceStart);
+            ByteBuffer view = mapped.duplicate();
+            view.limit(to);
+            view.position((int) (position - sliceStart));
+            hitBytes += view.remaining();
+            write(view);
+            position = sliceStart + to;
+        } finally {
+            ByteBufferUtils.cleanDirectBuffer(mapped);
+        }
+    }
+
+    private void sendHead() throws IOException {
+        status = HttpResponseStatus.SC_PARTIAL_CONTENT.getStatus();
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 206 Partial Content\r\n");
+        boolean acceptRanges = false;
+        for (String[] header : responseHeaders) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            acceptRanges |= "accept-ranges".equalsIgnoreCase(header[0]);
+        }
+        if (!acceptRanges) {
+            head.append("Accept-Ranges: bytes\r\n");
+        }
+        head.append("Content-Range: bytes ").append(start).append('-').append(end).append('/').append(length).append("\r\n");
+        head.append("Content-Length: ").append(end - start + 1).append("\r\n");
+        endHead(head);
+    }
+
+    private Result notSatisfiable() throws IOException {
+        status = HttpResponseStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE.getStatus();
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 416 Range Not Satisfiable\r\n");
+        head.append("Content-Range: bytes */").append(length).append("\r\n");
+        head.append("Content-Length: 0\r\n");
+        endHead(head);
+        return keepAlive ? Result.KEEP_ALIVE : Result.CLOSE;
+    }
+
+    private void endHead(StringBuilder head) throws IOException {
+        head.append("Date: ").append(FastHttpDateFormat.getCurrentDate()).append("\r\n");
+        head.append(Constants.CONNECTION).append(": ").append(keepAlive ? Constants.KEEPALIVE : Constants.CLOSE).append("\r\n\r\n");
+        committed = true;
+        write(ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * 源站没有按分片应答，原样转发，以关闭连接结束响应体
+     */
+    private void relay(TunnelExchange exchange) throws IOException {
+        status = exchange.getStatus();
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(exchange.getReason()).append("\r\n");
+        for (String[] header : exchange.getHeaders()) {
+            if (!HOP_BY_HOP.contains(header[0].toLowerCase(Locale.ENGLISH))) {
+                head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            }
+        }
+        head.append(Constants.CONNECTION).append(": ").append(Constants.CLOSE).append("\r\n\r\n");
+        committed = true;
+        write(ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+        int n;
+        while ((n = exchange.readBody(buffer, 0, buffer.length)) >= 0) {
+            fetchedBytes += n;
+            write(ByteBuffer.wrap(buffer, 0, n));
+        }
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        bytesOut += data.remaining();
+        while (data.hasRemaining()) {
+            user.write(data);
+        }
+    }
+
+    /**
+     * 是否已经开始向用户发送响应
+     */
+    boolean isCommitted() {
+        return committed;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    long getBytesOut() {
+        return bytesOut;
+    }
+
+    long getHitBytes() {
+        return hitBytes;
+    }
+
+    long getFetchedBytes() {
+        return fetchedBytes;
+    }
+}
@@ -0,0 +1,284 @@
+package priv.bigant.intrance.common.coyote.http11;
+
+import priv.bigant.intrance.common.SocketBean;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 通过穿透通道发起一次 HTTP/1.1 请求并读取响应（阻塞）
+ * <p>
+ * 用于服务端自行构造请求的场景（如 HTTP/2 流转发），请求统一带 Connection: close，通道用完即关闭
+ */
+public class TunnelExchange {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private enum BodyMode {NONE, LENGTH, CHUNKED, EOF}
+
+    private final ByteChannel channel;
+    private final ByteBuffer in;
+    private boolean chunkedRequest;
+
+    private int status;
+    private String reason;
+    private final List<String[]> headers = new ArrayList<>();
+    private BodyMode bodyMode;
+    private long remaining;
+    private boolean bodyFinished;
+
+    public TunnelExchange(SocketChannel channel, int bufferSize) throws IOException {
+        this(channel, channel, bufferSize);
+    }
+
+    /**
+     * 穿透连接启用 TLS 时经解密后的通道读写
+     */
+    public TunnelExchange(SocketBean socketBean, int bufferSize) throws IOException {
+        this(socketBean.getSocketChannel(), socketBean.getByteChannel(), bufferSize);
+    }
+
+    private TunnelExchange(SocketChannel socketChannel, ByteChannel channel, int bufferSize) throws IOException {
+        this.channel = channel;
+        socketChannel.configureBlocking(true);
+        this.in = ByteBuffer.allocate(bufferSize);
+        in.flip();
+    }
+
+    /**
+     * 发送请求行与请求头，headers 中不应包含 Host / Connection / Transfer-Encoding
+     *
+     * @param chunked 请求体是否使用分块编码发送
+     * @throws IOException 任一字段含有 CR、LF、NUL（会在通道中注入头部或请求）
+     */
+    public void writeRequestHead(String method, String target, String host, List<String[]> headers, boolean chunked) throws IOException {
+        this.chunkedRequest = chunked;
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(checked(method)).append(' ').append(checked(target)).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(checked(host)).append("\r\n");
+        for (String[] header : headers) {
+            sb.append(checked(header[0])).append(": ").append(checked(header[1])).append("\r\n");
+        }
+        if (chunked) {
+            sb.append("Transfer-Encoding: chunked\r\n");
+        }
+        sb.append("Connection: close\r\n\r\n");
+        writeFully(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String checked(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == 0) {
+                throw new IOException("请求头包含非法字符");
+            }
+        }
+        return value;
+    }
+
+    public void writeBody(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (chunkedRequest) {
+            writeFully(ByteBuffer.wrap((Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+            writeFully(ByteBuffer.wrap(b, off, len));
+            writeFully(ByteBuffer.wrap(CRLF));
+        } else {
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    public void endBody() throws IOException {
+        if (chunkedRequest) {
+            writeFully(ByteBuffer.wrap(LAST_CHUNK));
+        }
+    }
+
+    /**
+     * 读取响应行与响应头，跳过 1xx 临时响应
+     *
+     * @param headRequest 是否为 HEAD 请求（无响应体）
+     */
+    public int readResponseHead(boolean headRequest) throws IOException {
+        do {
+            headers.clear();
+            String statusLine = readLine();
+            // HTTP/1.1 200 OK
+            int sp1 = statusLine.indexOf(' ');
+            if (sp1 < 0 || !statusLine.startsWith("HTTP/")) {
+                throw new IOException("无效的响应行 " + statusLine);
+            }
+            int sp2 = statusLine.indexOf(' ', sp1 + 1);
+            String code = sp2 < 0 ? statusLine.substring(sp1 + 1) : statusLine.substring(sp1 + 1, sp2);
+            try {
+                status = Integer.parseInt(code.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("无效的响应状态码 " + statusLine);
+            }
+            reason = sp2 < 0 ? "" : statusLine.substring(sp2 + 1);
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                headers.add(new String[]{line.substring(0, colon).trim(), line.substring(colon + 1).trim()});
+            }
+        } while (status >= 100 && status < 200 && status != 101);
+
+        String transferEncoding = getHeader("transfer-encoding");
+        String contentLength = getHeader("content-length");
+        if (headRequest || status == 204 || status == 304) {
+            bodyMode = BodyMode.NONE;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            bodyMode = BodyMode.CHUNKED;
+            remaining = 0;
+        } else if (contentLength != null) {
+            bodyMode = BodyMode.LENGTH;
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("无效的 Content-Length " + contentLength);
+            }
+        } else {
+            bodyMode = BodyMode.EOF;
+        }
+        bodyFinished = bodyMode == BodyMode.NONE || (bodyMode == BodyMode.LENGTH && remaining == 0);
+        return status;
+    }
+
+    /**
+     * 读取（已解码的）响应体
+     *
+     * @return 读取字节数，结束返回 -1
+     */
+    public int readBody(byte[] b, int off, int len) throws IOException {
+        if (bodyFinished) {
+            return -1;
+        }
+        switch (bodyMode) {
+            case LENGTH: {
+                int n = readRaw(b, off, (int) Math.min(len, remaining));
+                if (n < 0) {
+                    throw new EOFException("响应体未读完连接已关闭");
+                }
+                remaining -= n;
+                bodyFinished = remaining == 0;
+                return n;
+            }
+            case CHUNKED: {
+                if (remaining == 0) {
+                    String sizeLine = readLine();
+                    int semicolon = sizeLine.indexOf(';');
+                    String size = (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim();
+                    try {
+                        remaining = Long.parseLong(size, 16);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("无效的分块长度 " + sizeLine);
+                    }
+                    if (remaining == 0) {
+                        // 跳过 trailer
+                        while (!readLine().isEmpty()) {
+                        }
+                        bodyFinished = true;
+                        return -1;
+                    }
+                }
+                int n = readRaw(b, off, (int) Math.min(len, remaining));
+                if (n < 0) {
+                    throw new EOFException("分块未读完连接已关闭");
+                }
+                remaining -= n;
+                if (remaining == 0) {
+                    readLine();
+                }
+                return n;
+            }
+            case EOF: {
+                int n = readRaw(b, off, len);
+                if (n < 0) {
+                    bodyFinished = true;
+                }
+                return n;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public List<String[]> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * 按名称（忽略大小写）获取第一个响应头
+     */
+    public String getHeader(String name) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    private int readRaw(byte[] b, int off, int len) throws IOException {
+        if (!in.hasRemaining() && fill() < 0) {
+            return -1;
+        }
+        int n = Math.min(len, in.remaining());
+        in.get(b, off, n);
+        return n;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        while (true) {
+            if (!in.hasRemaining() && fill() < 0) {
+                throw new EOFException("读取响应头时连接已关闭");
+            }
+            byte c = in.get();
+            if (c == '\n') {
+                int length = sb.length();
+                if (length > 0 && sb.charAt(length - 1) == '\r') {
+                    sb.setLength(length - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) (c & 0xFF));
+            if (sb.length() > MAX_HEAD_SIZE) {
+                throw new IOException("响应头过大");
+            }
+        }
+    }
+
+    private int fill() throws IOException {
+        in.clear();
+        int read = channel.read(in);
+        in.flip();
+        return read;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
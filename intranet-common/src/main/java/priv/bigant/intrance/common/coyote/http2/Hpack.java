@@ -0,0 +1,212 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HPACK (RFC 7541) 公共部分：静态表、整数编码、Huffman 解码
+ */
+public final class Hpack {
+
+    /**
+     * 静态表，下标从 1 开始
+     */
+    static final String[][] STATIC_TABLE = {
+            null,
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    static final int STATIC_TABLE_LENGTH = STATIC_TABLE.length - 1;
+
+    /**
+     * Huffman 码长（RFC 7541 附录 B），该编码为规范 Huffman 编码，码值可由码长还原
+     */
+    private static final int[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6, 5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5, 6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23, 24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23, 21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25, 19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23, 26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+
+    private static final int MAX_CODE_LENGTH = 30;
+    private static final int EOS = 256;
+
+    /**
+     * 每个码长的首个码值、该码长的码数量、以及该码长第一个符号在 SORTED_SYMBOLS 中的位置
+     */
+    private static final int[] FIRST_CODE = new int[MAX_CODE_LENGTH + 1];
+    private static final int[] CODE_COUNT = new int[MAX_CODE_LENGTH + 1];
+    private static final int[] SYMBOL_OFFSET = new int[MAX_CODE_LENGTH + 1];
+    private static final int[] SORTED_SYMBOLS = new int[HUFFMAN_LENGTHS.length];
+
+    static {
+        int code = 0;
+        int index = 0;
+        for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+            FIRST_CODE[len] = code;
+            SYMBOL_OFFSET[len] = index;
+            for (int symbol = 0; symbol < HUFFMAN_LENGTHS.length; symbol++) {
+                if (HUFFMAN_LENGTHS[symbol] == len) {
+                    SORTED_SYMBOLS[index++] = symbol;
+                    CODE_COUNT[len]++;
+                    code++;
+                }
+            }
+            code <<= 1;
+        }
+    }
+
+    private Hpack() {
+    }
+
+    /**
+     * 解码带前缀的整数，数据不足时返回 -1 且不移动 position
+     */
+    static int decodeInteger(ByteBuffer source, int prefixBits) throws HpackException {
+        if (!source.hasRemaining()) {
+            return -1;
+        }
+        int start = source.position();
+        int mask = (1 << prefixBits) - 1;
+        int value = source.get() & mask;
+        if (value < mask) {
+            return value;
+        }
+        int shift = 0;
+        byte b;
+        do {
+            if (!source.hasRemaining()) {
+                source.position(start);
+                return -1;
+            }
+            b = source.get();
+            value += (b & 0x7F) << shift;
+            shift += 7;
+            if (shift > 28) {
+                throw new HpackException("HPACK 整数溢出");
+            }
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * 编码带前缀的整数，firstByte 为第一个字节中前缀以外的高位
+     */
+    static void encodeInteger(ByteArrayOutputStream out, int firstByte, int prefixBits, int value) {
+        int mask = (1 << prefixBits) - 1;
+        if (value < mask) {
+            out.write(firstByte | value);
+            return;
+        }
+        out.write(firstByte | mask);
+        value -= mask;
+        while (value >= 0x80) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Huffman 解码 length 个字节
+     */
+    static String decodeHuffman(ByteBuffer source, int length) throws HpackException {
+        StringBuilder sb = new StringBuilder(length * 2);
+        int code = 0;
+        int codeLength = 0;
+        for (int i = 0; i < length; i++) {
+            int b = source.get() & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                code = (code << 1) | ((b >>> bit) & 1);
+                codeLength++;
+                int offset = code - FIRST_CODE[codeLength];
+                if (offset >= 0 && offset < CODE_COUNT[codeLength]) {
+                    int symbol = SORTED_SYMBOLS[SYMBOL_OFFSET[codeLength] + offset];
+                    if (symbol == EOS) {
+                        throw new HpackException("Huffman 编码中出现 EOS");
+                    }
+                    sb.append((char) symbol);
+                    code = 0;
+                    codeLength = 0;
+                } else if (codeLength == MAX_CODE_LENGTH) {
+                    throw new HpackException("无效的 Huffman 编码");
+                }
+            }
+        }
+        // 剩余位必须是不超过 7 位的 EOS 前缀（全 1）
+        if (codeLength > 7 || code != (1 << codeLength) - 1) {
+            throw new HpackException("无效的 Huffman 填充");
+        }
+        return sb.toString();
+    }
+
+    static byte[] toBytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,159 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * HPACK 解码器，每个连接一个实例（动态表属于连接状态）
+ * <p>
+ * 只接受完整的头部块（HEADERS + CONTINUATION 已拼接），非线程安全，只在连接读线程中使用
+ */
+public class HpackDecoder {
+
+    /**
+     * 每个动态表条目的额外开销
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private final ArrayDeque<String[]> dynamicTable = new ArrayDeque<>();
+    private int dynamicTableSize = 0;
+    private int maxDynamicTableSize;
+    private final int maxAllowedTableSize;
+    private final int maxHeaderListSize;
+
+    public HpackDecoder(int maxAllowedTableSize, int maxHeaderListSize) {
+        this.maxAllowedTableSize = maxAllowedTableSize;
+        this.maxDynamicTableSize = maxAllowedTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * 解码一个完整的头部块
+     */
+    public void decode(ByteBuffer block, HeaderEmitter emitter) throws HpackException {
+        int headerListSize = 0;
+        boolean headerSeen = false;
+        while (block.hasRemaining()) {
+            int b = block.get(block.position()) & 0xFF;
+            String name;
+            String value;
+            if ((b & 0x80) != 0) {
+                // 索引头部字段
+                String[] field = getEntry(readInteger(block, 7));
+                name = field[0];
+                value = field[1];
+            } else if ((b & 0x40) != 0) {
+                // 带增量索引的字面量
+                name = readName(block, 6);
+                value = readString(block);
+                addEntry(name, value);
+            } else if ((b & 0x20) != 0) {
+                // 动态表大小更新，只允许出现在头部块开头
+                if (headerSeen) {
+                    throw new HpackException("动态表大小更新必须位于头部块开头");
+                }
+                int size = readInteger(block, 5);
+                if (size > maxAllowedTableSize) {
+                    throw new HpackException("动态表大小超过设置值 " + size);
+                }
+                maxDynamicTableSize = size;
+                evict();
+                continue;
+            } else {
+                // 不索引 / 永不索引 的字面量
+                name = readName(block, 4);
+                value = readString(block);
+            }
+            headerSeen = true;
+            headerListSize += name.length() + value.length() + ENTRY_OVERHEAD;
+            if (headerListSize > maxHeaderListSize) {
+                throw new HpackException("请求头过大 " + headerListSize);
+            }
+            emitter.emitHeader(name, value);
+        }
+    }
+
+    private int readInteger(ByteBuffer block, int prefixBits) throws HpackException {
+        int value = Hpack.decodeInteger(block, prefixBits);
+        if (value < 0) {
+            throw new HpackException("头部块被截断");
+        }
+        return value;
+    }
+
+    private String readName(ByteBuffer block, int prefixBits) throws HpackException {
+        int index = readInteger(block, prefixBits);
+        if (index == 0) {
+            return readString(block);
+        }
+        return getEntry(index)[0];
+    }
+
+    private String readString(ByteBuffer block) throws HpackException {
+        if (!block.hasRemaining()) {
+            throw new HpackException("头部块被截断");
+        }
+        boolean huffman = (block.get(block.position()) & 0x80) != 0;
+        int length = readInteger(block, 7);
+        if (length > block.remaining()) {
+            throw new HpackException("头部块被截断");
+        }
+        if (huffman) {
+            return Hpack.decodeHuffman(block, length);
+        }
+        String s = new String(block.array(), block.arrayOffset() + block.position(), length, StandardCharsets.ISO_8859_1);
+        block.position(block.position() + length);
+        return s;
+    }
+
+    private String[] getEntry(int index) throws HpackException {
+        if (index <= 0) {
+            throw new HpackException("无效的头部索引 " + index);
+        }
+        if (index <= Hpack.STATIC_TABLE_LENGTH) {
+            return Hpack.STATIC_TABLE[index];
+        }
+        int dynamicIndex = index - Hpack.STATIC_TABLE_LENGTH - 1;
+        if (dynamicIndex >= dynamicTable.size()) {
+            throw new HpackException("无效的头部索引 " + index);
+        }
+        Iterator<String[]> iterator = dynamicTable.iterator();
+        for (int i = 0; i < dynamicIndex; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+
+    private void addEntry(String name, String value) {
+        int size = name.length() + value.length() + ENTRY_OVERHEAD;
+        if (size > maxDynamicTableSize) {
+            // 条目比整张表还大：清空表，不加入
+            dynamicTable.clear();
+            dynamicTableSize = 0;
+            return;
+        }
+        dynamicTable.addFirst(new String[]{name, value});
+        dynamicTableSize += size;
+        evict();
+    }
+
+    private void evict() {
+        while (dynamicTableSize > maxDynamicTableSize && !dynamicTable.isEmpty()) {
+            String[] last = dynamicTable.removeLast();
+            dynamicTableSize -= last[0].length() + last[1].length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    int getDynamicTableSize() {
+        return dynamicTableSize;
+    }
+
+    /**
+     * 解码出的头部回调
+     */
+    public interface HeaderEmitter {
+        void emitHeader(String name, String value) throws HpackException;
+    }
+}
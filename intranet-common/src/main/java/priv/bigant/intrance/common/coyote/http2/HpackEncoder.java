@@ -0,0 +1,60 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK 编码器
+ * <p>
+ * 只使用静态表 + 不索引字面量，不维护动态表，因此无状态、可被多个流并发使用，也不受对端 HEADER_TABLE_SIZE 影响
+ */
+public final class HpackEncoder {
+
+    /**
+     * 名称 -> 静态表下标（取第一个）
+     */
+    private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+    /**
+     * 名称+值 -> 静态表下标
+     */
+    private static final Map<String, Integer> STATIC_FIELD_INDEX = new HashMap<>();
+
+    static {
+        for (int i = Hpack.STATIC_TABLE_LENGTH; i > 0; i--) {
+            String[] field = Hpack.STATIC_TABLE[i];
+            STATIC_NAME_INDEX.put(field[0], i);
+            if (!field[1].isEmpty()) {
+                STATIC_FIELD_INDEX.put(field[0] + '\0' + field[1], i);
+            }
+        }
+    }
+
+    private HpackEncoder() {
+    }
+
+    /**
+     * 编码一个头部字段，name 必须已是小写
+     */
+    public static void encode(ByteArrayOutputStream out, String name, String value) {
+        Integer fieldIndex = STATIC_FIELD_INDEX.get(name + '\0' + value);
+        if (fieldIndex != null) {
+            Hpack.encodeInteger(out, 0x80, 7, fieldIndex);
+            return;
+        }
+        Integer nameIndex = STATIC_NAME_INDEX.get(name);
+        if (nameIndex != null) {
+            Hpack.encodeInteger(out, 0x00, 4, nameIndex);
+        } else {
+            out.write(0x00);
+            writeString(out, name);
+        }
+        writeString(out, value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = Hpack.toBytes(s);
+        Hpack.encodeInteger(out, 0x00, 7, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
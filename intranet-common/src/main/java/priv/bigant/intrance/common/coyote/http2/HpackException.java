@@ -0,0 +1,13 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+/**
+ * HPACK 头部压缩解析异常，出现即为连接级 COMPRESSION_ERROR
+ */
+public class HpackException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public HpackException(String message) {
+        super(message);
+    }
+}
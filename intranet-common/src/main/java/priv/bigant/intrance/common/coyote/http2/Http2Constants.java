@@ -0,0 +1,58 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP/2 (RFC 7540) 帧类型、标志位、错误码、设置项
+ */
+public final class Http2Constants {
+
+    public static final byte[] CLIENT_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    public static final int FRAME_HEADER_LENGTH = 9;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    public static final int DEFAULT_WINDOW_SIZE = 65535;
+    public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+    // 帧类型
+    public static final int TYPE_DATA = 0x0;
+    public static final int TYPE_HEADERS = 0x1;
+    public static final int TYPE_PRIORITY = 0x2;
+    public static final int TYPE_RST_STREAM = 0x3;
+    public static final int TYPE_SETTINGS = 0x4;
+    public static final int TYPE_PUSH_PROMISE = 0x5;
+    public static final int TYPE_PING = 0x6;
+    public static final int TYPE_GOAWAY = 0x7;
+    public static final int TYPE_WINDOW_UPDATE = 0x8;
+    public static final int TYPE_CONTINUATION = 0x9;
+
+    // 标志位
+    public static final int FLAG_END_STREAM = 0x1;
+    public static final int FLAG_ACK = 0x1;
+    public static final int FLAG_END_HEADERS = 0x4;
+    public static final int FLAG_PADDED = 0x8;
+    public static final int FLAG_PRIORITY = 0x20;
+
+    // 错误码
+    public static final int NO_ERROR = 0x0;
+    public static final int PROTOCOL_ERROR = 0x1;
+    public static final int INTERNAL_ERROR = 0x2;
+    public static final int FLOW_CONTROL_ERROR = 0x3;
+    public static final int STREAM_CLOSED = 0x5;
+    public static final int FRAME_SIZE_ERROR = 0x6;
+    public static final int REFUSED_STREAM = 0x7;
+    public static final int CANCEL = 0x8;
+    public static final int COMPRESSION_ERROR = 0x9;
+
+    // 设置项
+    public static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    public static final int SETTINGS_ENABLE_PUSH = 0x2;
+    public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    public static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    public static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    public static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private Http2Constants() {
+    }
+}
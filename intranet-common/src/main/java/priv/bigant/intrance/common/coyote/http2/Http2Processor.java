@@ -0,0 +1,811 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import priv.bigant.intrance.common.Config;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.coyote.http11.TunnelExchange;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ThreadPool;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.accesslog.AccessLogEntry;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intrance.common.util.net.NioChannel;
+import priv.bigant.intrance.common.util.net.SocketWrapperBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static priv.bigant.intrance.common.coyote.http2.Http2Constants.*;
+
+/**
+ * h2c 连接处理器
+ * <p>
+ * 当前线程负责读帧，每个流在流线程池中独立转发到穿透通道（HTTP/1.1），响应再编码为 HEADERS/DATA 帧写回。
+ * 一个公网连接即可承载多个并发请求
+ */
+public class Http2Processor {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final Config config = Config.getConfig();
+
+    /**
+     * 逐跳头部，不能出现在 HTTP/2 中，也不转发给源站
+     */
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "te", "http2-settings", "host"));
+
+    private static final ThreadPoolExecutor STREAM_EXECUTOR = new ThreadPoolExecutor(config.getHttp2StreamCoreSize(),
+            config.getHttp2StreamMaxSize(), config.getHttpProcessWaitTime(), TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+
+    /**
+     * 所有连接共用的流转发线程池
+     */
+    public static ThreadPoolExecutor getStreamExecutor() {
+        return STREAM_EXECUTOR;
+    }
+
+    static {
+        JmxUtil.register("ThreadPool", "Http2Stream", new ThreadPool(STREAM_EXECUTOR));
+    }
+
+    private final SocketWrapperBase<?> socketWrapper;
+    private final TunnelSource tunnelSource;
+    private final ErrorBodyRenderer errorBodyRenderer;
+
+    private final HpackDecoder decoder;
+    private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+    private final int maxConcurrentStreams;
+    private final int localInitialWindowSize;
+    private final int maxHeaderSize;
+
+    private ByteBuffer input;
+    /**
+     * 读线程独立使用的 Selector，写帧走 socketWrapper 的 Selector，两者互不干扰
+     */
+    private Selector readSelector;
+    private SelectionKey readKey;
+    private int lastStreamId = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * 写帧锁，保证 HEADERS + CONTINUATION 连续
+     */
+    private final Object writeLock = new Object();
+    /**
+     * 发送窗口锁
+     */
+    private final Object windowLock = new Object();
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * 正在接收的头部块（等待 CONTINUATION）
+     */
+    private ByteArrayOutputStream headerBlock;
+    private int headerBlockStreamId;
+    private int headerBlockFlags;
+
+    /**
+     * h2c 升级时由 HTTP/1.1 请求转换成的流 1
+     */
+    private Http2Stream upgradeStream;
+
+    public Http2Processor(SocketWrapperBase<?> socketWrapper, TunnelSource tunnelSource, int maxHeaderSize, ErrorBodyRenderer errorBodyRenderer) {
+        this.socketWrapper = socketWrapper;
+        this.tunnelSource = tunnelSource;
+        this.errorBodyRenderer = errorBodyRenderer;
+        this.maxHeaderSize = maxHeaderSize;
+        this.decoder = new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE, maxHeaderSize);
+        this.maxConcurrentStreams = config.getHttp2MaxConcurrentStreams();
+        this.localInitialWindowSize = config.getHttp2InitialWindowSize();
+    }
+
+    /**
+     * h2c 升级：HTTP2-Settings 头即客户端的 SETTINGS 帧负载（base64url）
+     */
+    public void applyUpgradeSettings(String http2Settings) throws IOException {
+        byte[] payload;
+        try {
+            payload = Base64.getUrlDecoder().decode(http2Settings.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("无效的 HTTP2-Settings " + http2Settings);
+        }
+        applySettings(payload, 0, payload.length);
+    }
+
+    /**
+     * h2c 升级：原 HTTP/1.1 请求作为流 1，请求体已结束
+     */
+    public void setUpgradeStream(String method, String path, String authority, List<String[]> headers) {
+        Http2Stream stream = new Http2Stream(1, localInitialWindowSize, peerInitialWindowSize);
+        stream.setMethod(method);
+        stream.setPath(path);
+        stream.setAuthority(authority);
+        stream.setEndStreamAtHeaders(true);
+        for (String[] header : headers) {
+            String name = header[0].toLowerCase(Locale.ENGLISH);
+            if (!HOP_BY_HOP.contains(name)) {
+                stream.getHeaders().add(new String[]{name, header[1]});
+            }
+        }
+        this.upgradeStream = stream;
+    }
+
+    /**
+     * 处理整个 HTTP/2 连接，直到对端关闭或出现连接错误
+     *
+     * @param leftover HTTP/1.1 解析阶段已读取但未消费的数据（可能包含连接前言）
+     */
+    public void process(ByteBuffer leftover) throws IOException {
+        input = ByteBuffer.allocate(Math.max(FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE, leftover.remaining()));
+        input.put(leftover);
+        input.flip();
+
+        try {
+            readSelector = Selector.open();
+            sendSettings();
+            byte[] preface = new byte[CLIENT_PREFACE.length];
+            readFully(preface, 0, preface.length);
+            if (!Arrays.equals(preface, CLIENT_PREFACE)) {
+                throw new Http2Exception(PROTOCOL_ERROR, "无效的连接前言");
+            }
+            if (upgradeStream != null) {
+                lastStreamId = 1;
+                startStream(upgradeStream);
+            }
+            byte[] header = new byte[FRAME_HEADER_LENGTH];
+            byte[] payload = new byte[DEFAULT_MAX_FRAME_SIZE];
+            while (!closed) {
+                readFully(header, 0, FRAME_HEADER_LENGTH);
+                int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+                int type = header[3] & 0xFF;
+                int flags = header[4] & 0xFF;
+                int streamId = ByteBuffer.wrap(header, 5, 4).getInt() & 0x7FFFFFFF;
+                if (length > DEFAULT_MAX_FRAME_SIZE) {
+                    throw new Http2Exception(FRAME_SIZE_ERROR, "帧过大 " + length);
+                }
+                readFully(payload, 0, length);
+                onFrame(type, flags, streamId, payload, length);
+            }
+        } catch (Http2Exception e) {
+            LOG.fine("h2 连接错误 " + e.getMessage());
+            sendGoAway(e.getErrorCode());
+        } catch (SocketTimeoutException e) {
+            LOG.fine("h2 连接空闲超时");
+            sendGoAway(NO_ERROR);
+        } catch (EOFException e) {
+            LOG.fine("h2 连接已关闭");
+        } finally {
+            closed = true;
+            if (readSelector != null) {
+                readSelector.close();
+            }
+            for (Http2Stream stream : streams.values()) {
+                stream.cancel();
+            }
+            synchronized (windowLock) {
+                windowLock.notifyAll();
+            }
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, byte[] payload, int length) throws IOException {
+        if (headerBlock != null && type != TYPE_CONTINUATION) {
+            throw new Http2Exception(PROTOCOL_ERROR, "CONTINUATION 帧缺失");
+        }
+        switch (type) {
+            case TYPE_DATA:
+                onData(flags, streamId, payload, length);
+                break;
+            case TYPE_HEADERS:
+                onHeaders(flags, streamId, payload, length);
+                break;
+            case TYPE_CONTINUATION:
+                if (headerBlock == null || streamId != headerBlockStreamId) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "意外的 CONTINUATION 帧");
+                }
+                headerBlock.write(payload, 0, length);
+                if (headerBlock.size() > maxHeaderSize) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "请求头过大");
+                }
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    onHeaderBlock(headerBlockStreamId, headerBlockFlags, headerBlock.toByteArray());
+                    headerBlock = null;
+                }
+                break;
+            case TYPE_SETTINGS:
+                if (streamId != 0 || length % 6 != 0) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "无效的 SETTINGS 帧");
+                }
+                if ((flags & FLAG_ACK) == 0) {
+                    applySettings(payload, 0, length);
+                    writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+                }
+                break;
+            case TYPE_PING:
+                if (streamId != 0 || length != 8) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "无效的 PING 帧");
+                }
+                if ((flags & FLAG_ACK) == 0) {
+                    writeFrame(TYPE_PING, FLAG_ACK, 0, payload, 0, 8);
+                }
+                break;
+            case TYPE_WINDOW_UPDATE:
+                onWindowUpdate(streamId, payload, length);
+                break;
+            case TYPE_RST_STREAM: {
+                if (streamId == 0 || length != 4) {
+                    throw new Http2Exception(PROTOCOL_ERROR, "无效的 RST_STREAM 帧");
+                }
+                Http2Stream stream = streams.remove(streamId);
+                if (stream != null) {
+                    stream.cancel();
+                }
+                break;
+            }
+            case TYPE_GOAWAY:
+                LOG.fine("h2 收到 GOAWAY");
+                break;
+            case TYPE_PUSH_PROMISE:
+                throw new Http2Exception(PROTOCOL_ERROR, "客户端不能发送 PUSH_PROMISE");
+            default:
+                // PRIORITY 及未知帧忽略
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, byte[] payload, int length) throws IOException {
+        if (streamId == 0 || (streamId & 1) == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "无效的流 ID " + streamId);
+        }
+        int offset = 0;
+        int padLength = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padLength = payload[0] & 0xFF;
+            offset++;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            offset += 5;
+        }
+        int blockLength = length - offset - padLength;
+        if (blockLength < 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS 填充长度错误");
+        }
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            onHeaderBlock(streamId, flags, Arrays.copyOfRange(payload, offset, offset + blockLength));
+        } else {
+            headerBlock = new ByteArrayOutputStream(blockLength * 2);
+            headerBlock.write(payload, offset, blockLength);
+            headerBlockStreamId = streamId;
+            headerBlockFlags = flags;
+        }
+    }
+
+    private void onHeaderBlock(int streamId, int flags, byte[] block) throws IOException {
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        Http2Stream existing = streams.get(streamId);
+        if (streamId <= lastStreamId) {
+            // trailer 或已关闭的流，仍需解码以保持 HPACK 状态
+            decodeBlock(block, (name, value) -> {
+            });
+            if (existing != null && endStream) {
+                existing.offerBody(Http2Stream.END_OF_BODY);
+            } else if (existing == null) {
+                writeRst(streamId, STREAM_CLOSED);
+            }
+            return;
+        }
+        lastStreamId = streamId;
+        Http2Stream stream = new Http2Stream(streamId, localInitialWindowSize, peerInitialWindowSize);
+        stream.setEndStreamAtHeaders(endStream);
+        try {
+            decodeBlock(block, stream::addHeader);
+        } catch (Http2Exception e) {
+            if (e.getErrorCode() == COMPRESSION_ERROR) {
+                throw e;
+            }
+            writeRst(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        if (stream.getMalformed() != null) {
+            LOG.fine("h2 畸形请求 " + streamId + " " + stream.getMalformed());
+            writeRst(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        if (stream.getMethod() == null || stream.getPath() == null || stream.getHost() == null
+                || (endStream && !stream.isContentLengthMatched())) {
+            writeRst(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        if (streams.size() >= maxConcurrentStreams) {
+            writeRst(streamId, REFUSED_STREAM);
+            return;
+        }
+        startStream(stream);
+    }
+
+    private void decodeBlock(byte[] block, HpackDecoder.HeaderEmitter emitter) throws Http2Exception {
+        try {
+            decoder.decode(ByteBuffer.wrap(block), emitter);
+        } catch (HpackException e) {
+            // 伪头部顺序错误等属于流错误，但解码器状态可能已不一致，统一按连接错误处理更安全
+            throw new Http2Exception(COMPRESSION_ERROR, e.getMessage());
+        }
+    }
+
+    private void startStream(Http2Stream stream) throws IOException {
+        streams.put(stream.getId(), stream);
+        try {
+            STREAM_EXECUTOR.execute(() -> relay(stream));
+        } catch (RejectedExecutionException e) {
+            streams.remove(stream.getId());
+            LOG.warning("h2 流线程池已满，拒绝流 " + stream.getId());
+            writeRst(stream.getId(), REFUSED_STREAM);
+        }
+    }
+
+    private void onData(int flags, int streamId, byte[] payload, int length) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA 帧不能在流 0 上");
+        }
+        // 连接级窗口立即归还，流级窗口在数据被转发后归还
+        if (length > 0) {
+            writeWindowUpdate(0, length);
+        }
+        int offset = 0;
+        int padLength = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padLength = payload[0] & 0xFF;
+            offset = 1;
+        }
+        int dataLength = length - offset - padLength;
+        if (dataLength < 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA 填充长度错误");
+        }
+        Http2Stream stream = streams.get(streamId);
+        if (stream == null || stream.isEndStreamAtHeaders()) {
+            writeRst(streamId, STREAM_CLOSED);
+            return;
+        }
+        if (stream.getReceiveWindow().addAndGet(-length) < 0) {
+            streams.remove(streamId);
+            stream.cancel();
+            writeRst(streamId, FLOW_CONTROL_ERROR);
+            return;
+        }
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        if (!stream.addData(dataLength) || (endStream && !stream.isContentLengthMatched())) {
+            //请求体与 content-length 不符，多出的数据不能进入穿透通道
+            streams.remove(streamId);
+            stream.cancel();
+            writeRst(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        if (offset + padLength > 0) {
+            creditStream(stream, offset + padLength);
+        }
+        if (dataLength > 0) {
+            stream.offerBody(Arrays.copyOfRange(payload, offset, offset + dataLength));
+        }
+        if (endStream) {
+            stream.offerBody(Http2Stream.END_OF_BODY);
+        }
+    }
+
+    private void onWindowUpdate(int streamId, byte[] payload, int length) throws IOException {
+        if (length != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "无效的 WINDOW_UPDATE 帧");
+        }
+        int increment = ByteBuffer.wrap(payload, 0, 4).getInt() & 0x7FFFFFFF;
+        if (increment == 0) {
+            if (streamId == 0) {
+                throw new Http2Exception(PROTOCOL_ERROR, "WINDOW_UPDATE 增量为 0");
+            }
+            writeRst(streamId, PROTOCOL_ERROR);
+            return;
+        }
+        synchronized (windowLock) {
+            if (streamId == 0) {
+                connectionSendWindow += increment;
+                if (connectionSendWindow > MAX_WINDOW_SIZE) {
+                    throw new Http2Exception(FLOW_CONTROL_ERROR, "连接发送窗口溢出");
+                }
+            } else {
+                Http2Stream stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                }
+            }
+            windowLock.notifyAll();
+        }
+    }
+
+    private void applySettings(byte[] payload, int offset, int length) throws IOException {
+        for (int i = offset; i + 6 <= offset + length; i += 6) {
+            int id = ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+            int value = ByteBuffer.wrap(payload, i + 2, 4).getInt();
+            switch (id) {
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw new Http2Exception(FLOW_CONTROL_ERROR, "初始窗口过大");
+                    }
+                    synchronized (windowLock) {
+                        int delta = value - peerInitialWindowSize;
+                        peerInitialWindowSize = value;
+                        for (Http2Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        windowLock.notifyAll();
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xFFFFFF) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "无效的 MAX_FRAME_SIZE " + value);
+                    }
+                    peerMaxFrameSize = value;
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(PROTOCOL_ERROR, "无效的 ENABLE_PUSH " + value);
+                    }
+                    break;
+                default:
+                    // HEADER_TABLE_SIZE: 编码器不使用动态表，无需处理
+            }
+        }
+    }
+
+    // ------------------------------------------------------------ 流转发
+
+    private void relay(Http2Stream stream) {
+        String host = stream.getHost();
+        HostMetrics metrics = MetricsRegistry.host(host, tunnelSource.isRegistered(host));
+        AccessLogEntry accessLogEntry = new AccessLogEntry();
+        accessLogEntry.begin(host, stream.getMethod(), stripQuery(stream.getPath()));
+        long requestStart = System.nanoTime();
+        SocketBean socketBean = null;
+        boolean headersSent = false;
+        try {
+            try {
+                socketBean = tunnelSource.acquire(host);
+            } catch (RejectedRequestException e) {
+                complete(metrics, accessLogEntry, e.getStatus().getStatus());
+                sendSimpleResponse(stream, e.getStatus(), e.getMessage(), e.getRetryAfterSeconds());
+                return;
+            }
+            if (socketBean == null) {
+                complete(metrics, accessLogEntry, HttpResponseStatus.SC_NOT_FOUND.getStatus());
+                sendSimpleResponse(stream, HttpResponseStatus.SC_NOT_FOUND, "未找到客户端");
+                return;
+            }
+            long tunnelAcquire = System.nanoTime() - requestStart;
+            metrics.tunnelAcquire(tunnelAcquire);
+            accessLogEntry.setTunnelAcquireNanos(tunnelAcquire);
+            stream.setSocketBean(socketBean);
+
+            TunnelExchange exchange = new TunnelExchange(socketBean, config.getHttpProcessReadBufferSize());
+            boolean hasBody = !stream.isEndStreamAtHeaders();
+            List<String[]> requestHeaders = new ArrayList<>();
+            StringBuilder cookie = null;
+            for (String[] header : stream.getHeaders()) {
+                if (HOP_BY_HOP.contains(header[0])) {
+                    continue;
+                }
+                if ("cookie".equals(header[0])) {
+                    // HTTP/2 允许拆分 cookie，HTTP/1.1 需要合并
+                    cookie = cookie == null ? new StringBuilder(header[1]) : cookie.append("; ").append(header[1]);
+                    continue;
+                }
+                requestHeaders.add(header);
+            }
+            if (cookie != null) {
+                requestHeaders.add(new String[]{"cookie", cookie.toString()});
+            }
+            exchange.writeRequestHead(stream.getMethod(), stream.getPath(), stream.getAuthority(), requestHeaders,
+                    hasBody && stream.getHeader("content-length") == null);
+            if (hasBody) {
+                byte[] data;
+                while ((data = stream.takeBody()) != Http2Stream.END_OF_BODY) {
+                    if (data == null) {
+                        return;
+                    }
+                    exchange.writeBody(data, 0, data.length);
+                    metrics.bytesIn(data.length);
+                    accessLogEntry.addBytesIn(data.length);
+                    creditStream(stream, data.length);
+                }
+                if (stream.isReset()) {
+                    return;
+                }
+            }
+            exchange.endBody();
+            long requestSent = System.nanoTime();
+
+            exchange.readResponseHead("HEAD".equals(stream.getMethod()));
+            long originFirstByte = System.nanoTime() - requestSent;
+            metrics.originFirstByte(originFirstByte);
+            accessLogEntry.setOriginFirstByteNanos(originFirstByte);
+            ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+            HpackEncoder.encode(block, ":status", String.valueOf(exchange.getStatus()));
+            for (String[] header : exchange.getHeaders()) {
+                String name = header[0].toLowerCase(Locale.ENGLISH);
+                if (!HOP_BY_HOP.contains(name)) {
+                    HpackEncoder.encode(block, name, header[1]);
+                }
+            }
+
+            byte[] buffer = new byte[DEFAULT_MAX_FRAME_SIZE];
+            byte[] next = new byte[DEFAULT_MAX_FRAME_SIZE];
+            int n = exchange.readBody(buffer, 0, buffer.length);
+            writeHeaders(stream.getId(), block.toByteArray(), n < 0);
+            headersSent = true;
+            while (n >= 0) {
+                // 预读下一块，以便在最后一个 DATA 帧上带 END_STREAM
+                int m = exchange.readBody(next, 0, next.length);
+                writeData(stream, buffer, n, m < 0);
+                metrics.bytesOut(n);
+                accessLogEntry.addBytesOut(n);
+                byte[] swap = buffer;
+                buffer = next;
+                next = swap;
+                n = m;
+            }
+            complete(metrics, accessLogEntry, exchange.getStatus());
+            metrics.latency(System.nanoTime() - requestStart);
+        } catch (Exception e) {
+            complete(metrics, accessLogEntry, headersSent ? 0 : HttpResponseStatus.SC_BAD_GATEWAY.getStatus());
+            if (!stream.isReset() && !closed) {
+                LOG.log(Level.FINE, "h2 流转发失败 " + stream.getId(), e);
+                try {
+                    if (headersSent) {
+                        writeRst(stream.getId(), INTERNAL_ERROR);
+                    } else {
+                        sendSimpleResponse(stream, HttpResponseStatus.SC_BAD_GATEWAY, "客户端响应失败");
+                    }
+                } catch (IOException ignored) {
+                    // 连接已不可用
+                }
+            }
+        } finally {
+            streams.remove(stream.getId());
+            if (socketBean != null) {
+                tunnelSource.release(host, socketBean);
+            }
+        }
+    }
+
+    private static void complete(HostMetrics metrics, AccessLogEntry accessLogEntry, int status) {
+        metrics.status(status);
+        accessLogEntry.setStatus(status);
+        AccessLog.append(accessLogEntry);
+    }
+
+    private static String stripQuery(String path) {
+        if (path == null) {
+            return null;
+        }
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    private void sendSimpleResponse(Http2Stream stream, HttpResponseStatus status, String message) throws IOException {
+        sendSimpleResponse(stream, status, message, 0);
+    }
+
+    /**
+     * @param retryAfterSeconds 大于 0 时带上 retry-after
+     */
+    private void sendSimpleResponse(Http2Stream stream, HttpResponseStatus status, String message, int retryAfterSeconds) throws IOException {
+        byte[] body = errorBodyRenderer.render(status, message).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream block = new ByteArrayOutputStream(64);
+        HpackEncoder.encode(block, ":status", String.valueOf(status.getStatus()));
+        HpackEncoder.encode(block, "content-type", "text/html;charset=UTF-8");
+        HpackEncoder.encode(block, "content-length", String.valueOf(body.length));
+        if (retryAfterSeconds > 0) {
+            HpackEncoder.encode(block, "retry-after", String.valueOf(retryAfterSeconds));
+        }
+        writeHeaders(stream.getId(), block.toByteArray(), false);
+        writeData(stream, body, body.length, true);
+    }
+
+    /**
+     * 请求体已被转发，归还流级接收窗口
+     */
+    private void creditStream(Http2Stream stream, int n) throws IOException {
+        stream.getReceiveWindow().addAndGet(n);
+        if (!stream.isEndStreamAtHeaders()) {
+            writeWindowUpdate(stream.getId(), n);
+        }
+    }
+
+    // ------------------------------------------------------------ 写帧
+
+    private void sendSettings() throws IOException {
+        ByteBuffer settings = ByteBuffer.allocate(18);
+        settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(maxConcurrentStreams);
+        settings.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(localInitialWindowSize);
+        settings.putShort((short) SETTINGS_ENABLE_PUSH).putInt(0);
+        writeFrame(TYPE_SETTINGS, 0, 0, settings.array(), 0, settings.position());
+        int connectionIncrement = localInitialWindowSize - DEFAULT_WINDOW_SIZE;
+        if (connectionIncrement > 0) {
+            writeWindowUpdate(0, connectionIncrement);
+        }
+    }
+
+    private void writeHeaders(int streamId, byte[] block, boolean endStream) throws IOException {
+        synchronized (writeLock) {
+            int maxFrame = peerMaxFrameSize;
+            int offset = 0;
+            boolean first = true;
+            do {
+                int length = Math.min(maxFrame, block.length - offset);
+                boolean last = offset + length == block.length;
+                int flags = last ? FLAG_END_HEADERS : 0;
+                if (first && endStream) {
+                    flags |= FLAG_END_STREAM;
+                }
+                writeFrame(first ? TYPE_HEADERS : TYPE_CONTINUATION, flags, streamId, block, offset, length);
+                offset += length;
+                first = false;
+            } while (offset < block.length);
+        }
+    }
+
+    private void writeData(Http2Stream stream, byte[] data, int length, boolean endStream) throws IOException {
+        int offset = 0;
+        do {
+            int chunk;
+            synchronized (windowLock) {
+                while (true) {
+                    if (closed || stream.isReset()) {
+                        throw new IOException("h2 流已关闭 " + stream.getId());
+                    }
+                    int remaining = length - offset;
+                    long available = Math.min(Math.min(connectionSendWindow, stream.sendWindow), peerMaxFrameSize);
+                    if (remaining == 0 || available > 0) {
+                        chunk = (int) Math.min(available, remaining);
+                        break;
+                    }
+                    try {
+                        windowLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("等待发送窗口被中断");
+                    }
+                }
+                connectionSendWindow -= chunk;
+                stream.sendWindow -= chunk;
+            }
+            boolean last = offset + chunk == length;
+            writeFrame(TYPE_DATA, last && endStream ? FLAG_END_STREAM : 0, stream.getId(), data, offset, chunk);
+            offset += chunk;
+        } while (offset < length);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] payload = ByteBuffer.allocate(4).putInt(increment).array();
+        writeFrame(TYPE_WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+    }
+
+    private void writeRst(int streamId, int errorCode) throws IOException {
+        byte[] payload = ByteBuffer.allocate(4).putInt(errorCode).array();
+        writeFrame(TYPE_RST_STREAM, 0, streamId, payload, 0, 4);
+    }
+
+    private void sendGoAway(int errorCode) {
+        byte[] payload = ByteBuffer.allocate(8).putInt(lastStreamId).putInt(errorCode).array();
+        try {
+            writeFrame(TYPE_GOAWAY, 0, 0, payload, 0, 8);
+        } catch (IOException e) {
+            LOG.fine("h2 发送 GOAWAY 失败 " + e);
+        }
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) throws IOException {
+        byte[] header = new byte[FRAME_HEADER_LENGTH];
+        header[0] = (byte) (length >>> 16);
+        header[1] = (byte) (length >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) type;
+        header[4] = (byte) flags;
+        header[5] = (byte) (streamId >>> 24);
+        header[6] = (byte) (streamId >>> 16);
+        header[7] = (byte) (streamId >>> 8);
+        header[8] = (byte) streamId;
+        synchronized (writeLock) {
+            socketWrapper.write(true, header, 0, header.length);
+            if (length > 0) {
+                socketWrapper.write(true, payload, offset, length);
+            }
+            socketWrapper.flush(true);
+        }
+    }
+
+    // ------------------------------------------------------------ 读
+
+    private void readFully(byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!input.hasRemaining()) {
+                input.clear();
+                // 非阻塞读（先取已缓冲的数据，对端关闭抛出 EOFException），无数据时在独立 Selector 上等待
+                int n = socketWrapper.read(false, input);
+                input.flip();
+                if (n == 0) {
+                    awaitReadable();
+                }
+                continue;
+            }
+            int n = Math.min(length, input.remaining());
+            input.get(dst, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void awaitReadable() throws IOException {
+        if (readKey == null) {
+            NioChannel channel = (NioChannel) socketWrapper.getSocket();
+            readKey = channel.getIOChannel().register(readSelector, SelectionKey.OP_READ);
+        }
+        long timeout = socketWrapper.getReadTimeout();
+        int n = timeout > 0 ? readSelector.select(timeout) : readSelector.select();
+        readSelector.selectedKeys().clear();
+        if (n == 0 && timeout > 0) {
+            throw new SocketTimeoutException();
+        }
+    }
+
+    public int getActiveStreams() {
+        return streams.size();
+    }
+
+    /**
+     * 生成错误页内容
+     */
+    public interface ErrorBodyRenderer {
+        String render(HttpResponseStatus status, String message);
+    }
+
+    /**
+     * 连接级错误
+     */
+    static class Http2Exception extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int errorCode;
+
+        Http2Exception(int errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+
+        int getErrorCode() {
+            return errorCode;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package priv.bigant.intrance.common.coyote.http2;
+
+import priv.bigant.intrance.common.SocketBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个 HTTP/2 流，对应一次转发到穿透通道的请求
+ */
+public class Http2Stream {
+
+    /**
+     * 请求体结束标记
+     */
+    static final byte[] END_OF_BODY = new byte[0];
+
+    /**
+     * 连接专用头部，出现即为畸形请求（RFC 9113 8.2.2）
+     */
+    private static final Set<String> CONNECTION_SPECIFIC = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+    private final int id;
+    private final List<String[]> headers = new ArrayList<>();
+    private String method;
+    private String path;
+    private String authority;
+    private String scheme;
+    private boolean endStreamAtHeaders;
+    /**
+     * 畸形请求的原因，为空表示合法
+     */
+    private String malformed;
+    private long contentLength = -1;
+    private long dataLength;
+
+    /**
+     * 读线程放入、转发线程取出的请求体，长度受接收窗口约束
+     */
+    private final LinkedBlockingQueue<byte[]> body = new LinkedBlockingQueue<>();
+    private final AtomicInteger receiveWindow;
+    /**
+     * 发送窗口，由连接的窗口锁保护
+     */
+    int sendWindow;
+
+    private volatile boolean reset = false;
+    private volatile SocketBean socketBean;
+
+    Http2Stream(int id, int receiveWindow, int sendWindow) {
+        this.id = id;
+        this.receiveWindow = new AtomicInteger(receiveWindow);
+        this.sendWindow = sendWindow;
+    }
+
+    /**
+     * 按 RFC 9113 8.2.1 校验后保存；不合法时只记录原因，继续解码以保持 HPACK 状态，由调用方重置该流
+     */
+    void addHeader(String name, String value) {
+        if (malformed != null) {
+            return;
+        }
+        if (!validValue(value)) {
+            malformed = "头部值包含非法字符 " + name;
+            return;
+        }
+        if (name.startsWith(":")) {
+            if (!headers.isEmpty()) {
+                malformed = "伪头部必须位于普通头部之前 " + name;
+                return;
+            }
+            switch (name) {
+                case ":method":
+                    if (method != null || !isToken(value)) {
+                        malformed = "无效的 :method";
+                    }
+                    method = value;
+                    break;
+                case ":path":
+                    if (path != null || !validPath(value)) {
+                        malformed = "无效的 :path";
+                    }
+                    path = value;
+                    break;
+                case ":authority":
+                    if (authority != null || !validAuthority(value)) {
+                        malformed = "无效的 :authority";
+                    }
+                    authority = value;
+                    break;
+                case ":scheme":
+                    if (scheme != null || !isToken(value)) {
+                        malformed = "无效的 :scheme";
+                    }
+                    scheme = value;
+                    break;
+                default:
+                    malformed = "未知的伪头部 " + name;
+            }
+            return;
+        }
+        if (!validName(name)) {
+            malformed = "无效的头部名称 " + name;
+            return;
+        }
+        if (CONNECTION_SPECIFIC.contains(name) || ("te".equals(name) && !"trailers".equals(value))) {
+            malformed = "连接专用头部 " + name;
+            return;
+        }
+        if ("host".equals(name)) {
+            if (!validAuthority(value)) {
+                malformed = "无效的 host";
+                return;
+            }
+            if (authority == null) {
+                authority = value;
+            }
+        } else if ("content-length".equals(name)) {
+            long length = parseContentLength(value);
+            if (length < 0 || (contentLength >= 0 && contentLength != length)) {
+                malformed = "无效的 content-length " + value;
+                return;
+            }
+            contentLength = length;
+        }
+        headers.add(new String[]{name, value});
+    }
+
+    /**
+     * 小写，不含控制字符、空白、冒号及非 ASCII 字符
+     */
+    private static boolean validName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= 0x20 || c >= 0x7f || (c >= 'A' && c <= 'Z') || c == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不含 NUL、CR、LF，首尾不能是空白
+     */
+    private static boolean validValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0 || c == '\r' || c == '\n') {
+                return false;
+            }
+        }
+        return value.isEmpty() || !(isWhitespace(value.charAt(0)) || isWhitespace(value.charAt(value.length() - 1)));
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isToken(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= 0x20 || c >= 0x7f || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 以 / 开头（OPTIONS 可为 *），不含空白与控制字符，否则会破坏 HTTP/1.1 请求行
+     */
+    private static boolean validPath(String path) {
+        if (path.isEmpty() || (path.charAt(0) != '/' && !"*".equals(path))) {
+            return false;
+        }
+        return visible(path);
+    }
+
+    private static boolean validAuthority(String authority) {
+        return !authority.isEmpty() && authority.indexOf('/') < 0 && authority.indexOf('@') < 0 && visible(authority);
+    }
+
+    private static boolean visible(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= 0x20 || c >= 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseContentLength(String value) {
+        if (value.isEmpty() || value.length() > 18) {
+            return -1;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length;
+    }
+
+    /**
+     * 畸形请求的原因，合法时为 null
+     */
+    String getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * 累计收到的 DATA 长度
+     *
+     * @return 超过 content-length 时返回 false
+     */
+    boolean addData(int length) {
+        dataLength += length;
+        return contentLength < 0 || dataLength <= contentLength;
+    }
+
+    /**
+     * 请求体结束时长度是否与 content-length 一致
+     */
+    boolean isContentLengthMatched() {
+        return contentLength < 0 || dataLength == contentLength;
+    }
+
+    /**
+     * 取出请求体数据，阻塞直到有数据；结束返回 END_OF_BODY，流被重置返回 null
+     */
+    byte[] takeBody() throws InterruptedException {
+        byte[] data = body.take();
+        return reset ? null : data;
+    }
+
+    void offerBody(byte[] data) {
+        body.offer(data);
+    }
+
+    /**
+     * 对端重置或连接关闭：中断正在进行的转发
+     */
+    void cancel() {
+        reset = true;
+        body.offer(END_OF_BODY);
+        SocketBean bean = socketBean;
+        if (bean != null) {
+            bean.close();
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getAuthority() {
+        return authority;
+    }
+
+    /**
+     * 去掉端口号的域名
+     */
+    public String getHost() {
+        if (authority == null) {
+            return null;
+        }
+        int n = authority.indexOf(':');
+        return n > 0 ? authority.substring(0, n).trim() : authority.trim();
+    }
+
+    public List<String[]> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        for (String[] header : headers) {
+            if (header[0].equals(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    boolean isEndStreamAtHeaders() {
+        return endStreamAtHeaders;
+    }
+
+    void setEndStreamAtHeaders(boolean endStreamAtHeaders) {
+        this.endStreamAtHeaders = endStreamAtHeaders;
+    }
+
+    void setMethod(String method) {
+        this.method = method;
+    }
+
+    void setPath(String path) {
+        this.path = path;
+    }
+
+    void setAuthority(String authority) {
+        this.authority = authority;
+    }
+
+    AtomicInteger getReceiveWindow() {
+        return receiveWindow;
+    }
+
+    boolean isReset() {
+        return reset;
+    }
+
+    void setSocketBean(SocketBean socketBean) {
+        this.socketBean = socketBean;
+        if (reset && socketBean != null) {
+            socketBean.close();
+        }
+    }
+}
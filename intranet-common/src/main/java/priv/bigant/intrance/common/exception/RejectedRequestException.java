@@ -0,0 +1,45 @@
+package priv.bigant.intrance.common.exception;
+
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+
+import java.io.IOException;
+
+/**
+ * 请求被拒绝（限流、过载等），由处理器直接以对应状态码响应，不再转发给客户端
+ */
+public class RejectedRequestException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpResponseStatus status;
+    /**
+     * 大于 0 时响应带上 Retry-After（秒）
+     */
+    private final int retryAfterSeconds;
+
+    public RejectedRequestException(HttpResponseStatus status, String message) {
+        this(status, message, 0);
+    }
+
+    public RejectedRequestException(HttpResponseStatus status, String message, int retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpResponseStatus getStatus() {
+        return status;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * 拒绝是常态化的流控手段，不需要堆栈
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,103 @@
+package priv.bigant.intrance.common.jmx;
+
+/**
+ * 运行时可调整的配置，修改后对新连接 / 新请求生效
+ */
+public interface ConfigMXBean {
+
+    int getHttpProcessReadBufferSize();
+
+    void setHttpProcessReadBufferSize(int httpProcessReadBufferSize);
+
+    int getHttpProcessWriteBufferSize();
+
+    void setHttpProcessWriteBufferSize(int httpProcessWriteBufferSize);
+
+    int getMaxHttpHeaderSize();
+
+    void setMaxHttpHeaderSize(int maxHttpHeaderSize);
+
+    int getMaxHeaderCount();
+
+    void setMaxHeaderCount(int maxHeaderCount);
+
+    long getWriteBufferLowWatermark();
+
+    void setWriteBufferLowWatermark(long writeBufferLowWatermark);
+
+    long getWriteBufferHighWatermark();
+
+    void setWriteBufferHighWatermark(long writeBufferHighWatermark);
+
+    long getWriteBufferMaxSize();
+
+    void setWriteBufferMaxSize(long writeBufferMaxSize);
+
+    boolean isHttp2Enabled();
+
+    void setHttp2Enabled(boolean http2Enabled);
+
+    int getHttp2MaxConcurrentStreams();
+
+    void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams);
+
+    int getHttp2InitialWindowSize();
+
+    void setHttp2InitialWindowSize(int http2InitialWindowSize);
+
+    /**
+     * selector 慢循环 / 卡顿阈值（毫秒）
+     */
+    int getLoopSlowThreshold();
+
+    void setLoopSlowThreshold(int loopSlowThreshold);
+
+    int getLoopStallThreshold();
+
+    void setLoopStallThreshold(int loopStallThreshold);
+
+    /**
+     * 公网 HTTP 连接的 keep-alive 空闲、请求头、请求体超时（毫秒）与请求体最低速率（字节/秒）
+     */
+    int getKeepAliveTimeout();
+
+    void setKeepAliveTimeout(int keepAliveTimeout);
+
+    int getRequestHeaderTimeout();
+
+    void setRequestHeaderTimeout(int requestHeaderTimeout);
+
+    int getRequestBodyTimeout();
+
+    void setRequestBodyTimeout(int requestBodyTimeout);
+
+    int getRequestBodyMinRate();
+
+    void setRequestBodyMinRate(int requestBodyMinRate);
+
+    /**
+     * Expect: 100-continue 等待源站答复的时间（毫秒）与边缘允许的最大请求体（字节，小于 0 不限制）
+     */
+    int getExpectContinueTimeout();
+
+    void setExpectContinueTimeout(int expectContinueTimeout);
+
+    long getMaxRequestBodySize();
+
+    void setMaxRequestBodySize(long maxRequestBodySize);
+
+    /**
+     * 请求体暂存：暂存的最大请求体、单个请求与全部请求可用的内存（字节）
+     */
+    long getSpoolMaxBodySize();
+
+    void setSpoolMaxBodySize(long spoolMaxBodySize);
+
+    long getSpoolMemorySize();
+
+    void setSpoolMemorySize(long spoolMemorySize);
+
+    long getSpoolMemoryTotal();
+
+    void setSpoolMemoryTotal(long spoolMemoryTotal);
+}
@@ -0,0 +1,42 @@
+package priv.bigant.intrance.common.jmx;
+
+/**
+ * http 处理线程池（按租户公平调度），线程数与队列上限可在运行时修改
+ */
+public interface FairSchedulerMXBean {
+
+    String getName();
+
+    int getCoreSize();
+
+    void setCoreSize(int coreSize);
+
+    int getMaxSize();
+
+    void setMaxSize(int maxSize);
+
+    int getMaxQueued();
+
+    void setMaxQueued(int maxQueued);
+
+    int getMaxQueuedPerTenant();
+
+    void setMaxQueuedPerTenant(int maxQueuedPerTenant);
+
+    long getQuantum();
+
+    void setQuantum(long quantum);
+
+    int getQueued();
+
+    int getWorkers();
+
+    int getActiveWorkers();
+
+    boolean isShedding();
+
+    /**
+     * 设置租户权重
+     */
+    void setWeight(String tenant, int weight);
+}
@@ -0,0 +1,55 @@
+package priv.bigant.intrance.common.jmx;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 注册 / 注销 MBean，失败只记录日志，不影响服务
+ */
+public final class JmxUtil {
+
+    private static final Logger LOG = LogUtil.getLog();
+    public static final String DOMAIN = "priv.bigant.intranet";
+
+    private JmxUtil() {
+    }
+
+    /**
+     * 以 DOMAIN:type=type,name=name 注册，已存在同名 MBean 时替换
+     *
+     * @return 注册的名称，失败返回 null
+     */
+    public static ObjectName register(String type, String name, Object mbean) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(String.valueOf(name)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+            return objectName;
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "注册 MBean 失败 type=" + type + " name=" + name, e);
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "注销 MBean 失败 " + objectName, e);
+        }
+    }
+}
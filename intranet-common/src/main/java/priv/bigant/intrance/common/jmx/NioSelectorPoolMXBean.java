@@ -0,0 +1,21 @@
+package priv.bigant.intrance.common.jmx;
+
+/**
+ * 阻塞读写用的 Selector 池
+ */
+public interface NioSelectorPoolMXBean {
+
+    boolean isShared();
+
+    int getMaxSelectors();
+
+    void setMaxSelectors(int maxSelectors);
+
+    int getMaxSpareSelectors();
+
+    void setMaxSpareSelectors(int maxSpareSelectors);
+
+    int getActiveSelectors();
+
+    int getSpareSelectors();
+}
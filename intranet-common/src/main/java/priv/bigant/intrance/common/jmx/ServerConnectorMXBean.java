@@ -0,0 +1,66 @@
+package priv.bigant.intrance.common.jmx;
+
+import priv.bigant.intrance.common.metrics.LoopStats;
+
+import java.util.List;
+
+/**
+ * 监听端口及其 selector 线程
+ */
+public interface ServerConnectorMXBean {
+
+    String getName();
+
+    int getPort();
+
+    String getProcessName();
+
+    /**
+     * acceptor 线程个数，开启 SO_REUSEPORT 多 acceptor 时大于 1
+     */
+    int getAcceptors();
+
+    /**
+     * 处理读写事件的 selector 线程个数
+     */
+    int getPollers();
+
+    /**
+     * 各 acceptor 线程已接受的连接数之和
+     */
+    long getAccepted();
+
+    long getLoops();
+
+    long getEvents();
+
+    /**
+     * 单个事件处理耗时（微秒）
+     */
+    long getEventMeanMicros();
+
+    long getEventP99Micros();
+
+    long getEventMaxMicros();
+
+    /**
+     * 有就绪事件的循环中 select 与整个循环的耗时（微秒）
+     */
+    long getSelectP99Micros();
+
+    long getIterationP99Micros();
+
+    long getIterationMaxMicros();
+
+    /**
+     * 当前循环已持续的时间（微秒）
+     */
+    long getCurrentIterationMicros();
+
+    /**
+     * 超过 loopStallThreshold 的次数
+     */
+    long getStalls();
+
+    List<LoopStats.SlowIteration> getSlowestIterations();
+}
@@ -0,0 +1,84 @@
+package priv.bigant.intrance.common.jmx;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将 ThreadPoolExecutor 暴露为 MBean
+ */
+public class ThreadPool implements ThreadPoolMXBean {
+
+    private final ThreadPoolExecutor executor;
+
+    public ThreadPool(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 同时调整核心与最大线程数：核心线程数不能超过最大线程数，扩大时先调最大值，缩小时先调核心值
+     */
+    public static void resize(ThreadPoolExecutor executor, int corePoolSize, int maximumPoolSize) {
+        if (maximumPoolSize >= executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maximumPoolSize);
+            executor.setCorePoolSize(corePoolSize);
+        } else {
+            executor.setCorePoolSize(corePoolSize);
+            executor.setMaximumPoolSize(maximumPoolSize);
+        }
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    @Override
+    public void setCorePoolSize(int corePoolSize) {
+        executor.setCorePoolSize(corePoolSize);
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        executor.setMaximumPoolSize(maximumPoolSize);
+    }
+
+    @Override
+    public long getKeepAliveMillis() {
+        return executor.getKeepAliveTime(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        executor.setKeepAliveTime(keepAliveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return executor.getLargestPoolSize();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+}
@@ -0,0 +1,29 @@
+package priv.bigant.intrance.common.jmx;
+
+/**
+ * ThreadPoolExecutor 的运行状态与线程数
+ */
+public interface ThreadPoolMXBean {
+
+    int getCorePoolSize();
+
+    void setCorePoolSize(int corePoolSize);
+
+    int getMaximumPoolSize();
+
+    void setMaximumPoolSize(int maximumPoolSize);
+
+    long getKeepAliveMillis();
+
+    void setKeepAliveMillis(long keepAliveMillis);
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getLargestPoolSize();
+
+    long getCompletedTaskCount();
+
+    int getQueueSize();
+}
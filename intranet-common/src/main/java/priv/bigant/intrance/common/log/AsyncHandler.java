@@ -0,0 +1,219 @@
+package priv.bigant.intrance.common.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * 异步日志：调用线程只把 LogRecord 放入无锁环形队列，由后台线程格式化并交给目标 Handler
+ * <p>
+ * 队列满时丢弃 WARNING 以下的日志并计数，WARNING 及以上在调用线程同步输出；
+ * WARNING 以下的日志不再推断调用位置（需要遍历调用栈），输出时以 logger 名称代替。
+ * 带参数的日志在后台线程格式化，参数应为不可变的值
+ * <p>
+ * 可通过 LogManager 配置：
+ * <pre>
+ * handlers=priv.bigant.intrance.common.log.AsyncHandler
+ * priv.bigant.intrance.common.log.AsyncHandler.target=java.util.logging.ConsoleHandler
+ * priv.bigant.intrance.common.log.AsyncHandler.capacity=8192
+ * </pre>
+ */
+public class AsyncHandler extends Handler {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final AtomicLong TOTAL_DROPPED = new AtomicLong();
+
+    private final Handler[] targets;
+    private final RingBuffer<LogRecord> ring;
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+    private final Thread worker;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    /**
+     * 由 LogManager 按配置创建
+     */
+    public AsyncHandler() {
+        this(configuredTargets(), configuredCapacity());
+    }
+
+    public AsyncHandler(Handler[] targets, int capacity) {
+        this.targets = targets.clone();
+        this.ring = new RingBuffer<>(capacity);
+        this.worker = new Thread(this::drain, "AsyncLog");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 把 logger 上现有的 Handler 换成一个包装它们的 AsyncHandler，已安装过则不处理
+     */
+    public static void install(Logger logger) {
+        synchronized (logger) {
+            Handler[] handlers = logger.getHandlers();
+            for (Handler handler : handlers) {
+                if (handler instanceof AsyncHandler) {
+                    return;
+                }
+            }
+            if (handlers.length == 0) {
+                return;
+            }
+            for (Handler handler : handlers) {
+                logger.removeHandler(handler);
+            }
+            logger.addHandler(new AsyncHandler(handlers, DEFAULT_CAPACITY));
+        }
+    }
+
+    /**
+     * 所有 AsyncHandler 因队列满丢弃的日志数
+     */
+    public static long getTotalDropped() {
+        return TOTAL_DROPPED.get();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        boolean important = record.getLevel().intValue() >= Level.WARNING.intValue();
+        if (important) {
+            // 在调用线程推断调用位置
+            record.getSourceClassName();
+        } else {
+            record.setSourceClassName(null);
+        }
+        if (!ring.offer(record)) {
+            if (important) {
+                publishTargets(record);
+            } else {
+                dropped.incrementAndGet();
+                TOTAL_DROPPED.incrementAndGet();
+            }
+            return;
+        }
+        if (sleeping) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            LogRecord record = ring.poll();
+            if (record != null) {
+                publishTargets(record);
+                continue;
+            }
+            reportDropped();
+            if (closed) {
+                return;
+            }
+            sleeping = true;
+            if (ring.size() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private void reportDropped() {
+        long current = dropped.get();
+        if (current != reportedDropped) {
+            LogRecord record = new LogRecord(Level.WARNING, "日志队列已满，丢弃 " + (current - reportedDropped) + " 条日志");
+            record.setLoggerName(LogUtil.LOG_NAME);
+            record.setSourceClassName(null);
+            reportedDropped = current;
+            publishTargets(record);
+        }
+    }
+
+    private void publishTargets(LogRecord record) {
+        for (Handler target : targets) {
+            try {
+                target.publish(record);
+            } catch (RuntimeException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * 等待队列中已有的日志输出（最多 1 秒）
+     */
+    @Override
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (ring.size() > 0 && worker.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(worker);
+            Thread.yield();
+        }
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws SecurityException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Handler target : targets) {
+            target.close();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getQueued() {
+        return ring.size();
+    }
+
+    private static Handler[] configuredTargets() {
+        String value = LogManager.getLogManager().getProperty(AsyncHandler.class.getName() + ".target");
+        if (value == null || value.trim().isEmpty()) {
+            value = "java.util.logging.ConsoleHandler";
+        }
+        List<Handler> handlers = new ArrayList<>();
+        for (String className : value.split("[,\\s]+")) {
+            if (className.isEmpty()) {
+                continue;
+            }
+            try {
+                handlers.add((Handler) ClassLoader.getSystemClassLoader().loadClass(className).getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                System.err.println("无法创建日志 Handler " + className + " " + e);
+            }
+        }
+        return handlers.toArray(new Handler[0]);
+    }
+
+    private static int configuredCapacity() {
+        String value = LogManager.getLogManager().getProperty(AsyncHandler.class.getName() + ".capacity");
+        try {
+            return value == null ? DEFAULT_CAPACITY : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_CAPACITY;
+        }
+    }
+}
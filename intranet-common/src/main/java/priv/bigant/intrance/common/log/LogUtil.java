@@ -2,12 +2,24 @@ package priv.bigant.intrance.common.log;
 
 import java.util.logging.Logger;
 
+/**
+ * 日志入口
+ * <p>
+ * 根 logger 的 Handler 会被包装成 {@link AsyncHandler}，调用线程不做 IO 与格式化（-Dbigant.log.sync=true 关闭）。
+ * 热点路径不要拼接字符串，使用 {@code LOG.fine(() -> "..." + x)} 或 {@code LOG.log(Level.FINE, "... {0}", x)}
+ */
 public class LogUtil {
 
     public static final String LOG_NAME = "BigAnt-Log";
 
     private static final Logger LOG = Logger.getLogger(LOG_NAME);
 
+    static {
+        if (!Boolean.getBoolean("bigant.log.sync")) {
+            AsyncHandler.install(Logger.getLogger(""));
+        }
+    }
+
     public static Logger getLog() {
         return LOG;
     }
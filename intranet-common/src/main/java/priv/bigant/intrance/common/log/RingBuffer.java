@@ -0,0 +1,81 @@
+package priv.bigant.intrance.common.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列，多生产者单消费者
+ * <p>
+ * 每个槽位带一个序号：序号等于写入位置时可写，等于写入位置 + 1 时可读，生产者之间只竞争一次 CAS
+ */
+class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * 只由消费者写
+     */
+    private volatile long head;
+
+    RingBuffer(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * @return 队列已满返回 false
+     */
+    boolean offer(E e) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequence.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, e);
+                    sequence.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 只能由消费者线程调用
+     *
+     * @return 队列为空返回 null
+     */
+    E poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequence.get(index) != position + 1) {
+            return null;
+        }
+        E e = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequence.set(index, position + mask + 1);
+        head = position + 1;
+        return e;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
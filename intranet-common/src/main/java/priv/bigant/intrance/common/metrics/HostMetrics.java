@@ -0,0 +1,197 @@
+package priv.bigant.intrance.common.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个域名的请求指标，时间单位为微秒
+ */
+public class HostMetrics {
+
+    private final String host;
+    /**
+     * 按状态码计数，下标为状态码，0 表示没有得到响应
+     */
+    private final AtomicReferenceArray<LongAdder> statusCounts = new AtomicReferenceArray<>(600);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    /**
+     * 从连接池获取穿透通道的等待时间
+     */
+    private final Histogram tunnelAcquire = new Histogram();
+    /**
+     * 请求发送完毕到收到客户端响应头
+     */
+    private final Histogram originFirstByte = new Histogram();
+    /**
+     * 请求头解析完成到响应发送完毕
+     */
+    private final Histogram latency = new Histogram();
+    private final LongAdder tunnelTimeouts = new LongAdder();
+    private final LongAdder tunnelDiscarded = new LongAdder();
+    private final LongAdder tunnelCreated = new LongAdder();
+    /**
+     * 获取通道前暂存的请求体：请求数、字节数、写入临时文件的请求数、超过上限未暂存的请求数
+     */
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder spooledBytes = new LongAdder();
+    private final LongAdder spoolOverflows = new LongAdder();
+    private final LongAdder spoolSkipped = new LongAdder();
+    /**
+     * 分片缓存：从缓存发送的字节数、从源站取回的字节数
+     */
+    private final LongAdder sliceHitBytes = new LongAdder();
+    private final LongAdder sliceFetchedBytes = new LongAdder();
+
+    HostMetrics(String host) {
+        this.host = host;
+    }
+
+    public void status(int status) {
+        if (status < 0 || status >= statusCounts.length()) {
+            status = 0;
+        }
+        LongAdder adder = statusCounts.get(status);
+        if (adder == null) {
+            statusCounts.compareAndSet(status, null, new LongAdder());
+            adder = statusCounts.get(status);
+        }
+        adder.increment();
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void tunnelAcquire(long nanos) {
+        tunnelAcquire.record(nanos / 1000);
+    }
+
+    public void originFirstByte(long nanos) {
+        originFirstByte.record(nanos / 1000);
+    }
+
+    public void latency(long nanos) {
+        latency.record(nanos / 1000);
+    }
+
+    public void tunnelTimeout() {
+        tunnelTimeouts.increment();
+    }
+
+    public void tunnelDiscarded() {
+        tunnelDiscarded.increment();
+    }
+
+    public void tunnelCreated() {
+        tunnelCreated.increment();
+    }
+
+    public void spooled(long bytes, boolean overflowed) {
+        spooled.increment();
+        spooledBytes.add(bytes);
+        if (overflowed) {
+            spoolOverflows.increment();
+        }
+    }
+
+    public void spoolSkipped() {
+        spoolSkipped.increment();
+    }
+
+    public void slices(long hitBytes, long fetchedBytes) {
+        sliceHitBytes.add(hitBytes);
+        sliceFetchedBytes.add(fetchedBytes);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 状态码 -> 次数
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < statusCounts.length(); i++) {
+            LongAdder adder = statusCounts.get(i);
+            if (adder != null) {
+                map.put(i, adder.sum());
+            }
+        }
+        return map;
+    }
+
+    public long getRequests() {
+        long sum = 0;
+        for (int i = 0; i < statusCounts.length(); i++) {
+            LongAdder adder = statusCounts.get(i);
+            if (adder != null) {
+                sum += adder.sum();
+            }
+        }
+        return sum;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public Histogram getTunnelAcquire() {
+        return tunnelAcquire;
+    }
+
+    public Histogram getOriginFirstByte() {
+        return originFirstByte;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getTunnelTimeouts() {
+        return tunnelTimeouts.sum();
+    }
+
+    public long getTunnelDiscarded() {
+        return tunnelDiscarded.sum();
+    }
+
+    public long getTunnelCreated() {
+        return tunnelCreated.sum();
+    }
+
+    public long getSpooled() {
+        return spooled.sum();
+    }
+
+    public long getSpooledBytes() {
+        return spooledBytes.sum();
+    }
+
+    public long getSpoolOverflows() {
+        return spoolOverflows.sum();
+    }
+
+    public long getSpoolSkipped() {
+        return spoolSkipped.sum();
+    }
+
+    public long getSliceHitBytes() {
+        return sliceHitBytes.sum();
+    }
+
+    public long getSliceFetchedBytes() {
+        return sliceFetchedBytes.sum();
+    }
+}
@@ -0,0 +1,270 @@
+package priv.bigant.intrance.common.metrics;
+
+import priv.bigant.intrance.common.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * selector 线程每次循环的耗时统计
+ * <p>
+ * 只由 selector 线程写入；当前循环的开始时间与阶段是 volatile，供 {@link LoopWatchdog} 判断是否卡住。
+ * 没有就绪事件且很快返回的空转循环不计入直方图
+ */
+public class LoopStats {
+
+    public static final String SELECT = "select";
+    public static final String ACCEPT = "accept";
+    public static final String READ = "read";
+
+    private static final int SLOWEST_SIZE = 32;
+
+    private final String name;
+    private final Config config;
+
+    /**
+     * select 耗时、单次循环耗时、单个事件处理耗时（微秒），每次循环的就绪事件数
+     */
+    private final Histogram selectTime = new Histogram();
+    private final Histogram iterationTime = new Histogram();
+    private final Histogram handlerTime = new Histogram();
+    private final Histogram readyKeys = new Histogram();
+
+    private volatile long iteration;
+    private long events;
+    /**
+     * 当前循环的开始时间，0 表示不在循环中
+     */
+    private volatile long iterationStart;
+    private volatile String phase = SELECT;
+    private volatile long phaseStart;
+
+    private long selectNanos;
+    private String slowestHandler;
+    private long slowestHandlerNanos;
+
+    private volatile long stalls;
+    private volatile long stalledIteration = -1;
+    private volatile String stalledStack;
+    private volatile long stalledStackIteration = -1;
+
+    private final SlowIteration[] slowest = new SlowIteration[SLOWEST_SIZE];
+    private int slowestIndex;
+
+    public LoopStats(String name, Config config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    public void beginIteration() {
+        long now = System.nanoTime();
+        iteration++;
+        phase = SELECT;
+        phaseStart = now;
+        iterationStart = now;
+    }
+
+    /**
+     * 阻塞 select 返回后开始一次循环：等待事件的时间只计入 select 耗时，不计入循环耗时，看门狗也不会把等待当作卡顿
+     */
+    public void beginIteration(long selectNanos) {
+        long now = System.nanoTime();
+        iteration++;
+        phase = SELECT;
+        phaseStart = now;
+        iterationStart = now;
+        this.selectNanos = selectNanos;
+        slowestHandler = null;
+        slowestHandlerNanos = 0;
+    }
+
+    public void endSelect() {
+        selectNanos = System.nanoTime() - iterationStart;
+        slowestHandler = null;
+        slowestHandlerNanos = 0;
+    }
+
+    public void beginHandler(String handler) {
+        phase = handler;
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * 没有调用 beginHandler（事件既不是 accept 也不是 read，或判断时 key 已取消）时不计入
+     */
+    public void endHandler() {
+        String handler = phase;
+        if (handler == SELECT) {
+            return;
+        }
+        phase = SELECT;
+        long nanos = System.nanoTime() - phaseStart;
+        events++;
+        handlerTime.record(nanos / 1000);
+        if (nanos > slowestHandlerNanos) {
+            slowestHandlerNanos = nanos;
+            slowestHandler = handler;
+        }
+    }
+
+    public void endIteration(int ready) {
+        long start = iterationStart;
+        long nanos = System.nanoTime() - start;
+        iterationStart = 0;
+        long slow = config == null ? 0 : config.getLoopSlowThreshold() * 1_000_000L;
+        boolean isSlow = slow > 0 && nanos >= slow;
+        if (ready < 1 && !isSlow) {
+            return;
+        }
+        selectTime.record(selectNanos / 1000);
+        iterationTime.record(nanos / 1000);
+        readyKeys.record(ready);
+        if (isSlow) {
+            String stack = stalledStackIteration == iteration ? stalledStack : null;
+            addSlowest(new SlowIteration(System.currentTimeMillis(), nanos / 1000, selectNanos / 1000, ready,
+                    slowestHandler, slowestHandlerNanos / 1000, stack));
+        }
+    }
+
+    private void addSlowest(SlowIteration slowIteration) {
+        synchronized (slowest) {
+            slowest[slowestIndex] = slowIteration;
+            slowestIndex = (slowestIndex + 1) % SLOWEST_SIZE;
+        }
+    }
+
+    /**
+     * 由看门狗线程调用：当前循环已持续超过 stallNanos 时返回正在执行的阶段，同一次循环只返回一次
+     */
+    String checkStall(long now, long stallNanos) {
+        long current = iteration;
+        long start = iterationStart;
+        String currentPhase = phase;
+        if (start == 0 || now - start < stallNanos || current != iteration || stalledIteration == current) {
+            return null;
+        }
+        stalledIteration = current;
+        stalls++;
+        return currentPhase;
+    }
+
+    void setStalledStack(String stack) {
+        stalledStack = stack;
+        stalledStackIteration = stalledIteration;
+    }
+
+    /**
+     * 最近的慢循环，按耗时从大到小排列
+     */
+    public List<SlowIteration> getSlowest() {
+        List<SlowIteration> list = new ArrayList<>(SLOWEST_SIZE);
+        synchronized (slowest) {
+            for (SlowIteration slowIteration : slowest) {
+                if (slowIteration != null) {
+                    list.add(slowIteration);
+                }
+            }
+        }
+        list.sort((a, b) -> Long.compare(b.getDurationMicros(), a.getDurationMicros()));
+        return list;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getIterations() {
+        return iteration;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * 当前循环已持续的时间（微秒），不在循环中返回 0
+     */
+    public long getCurrentIterationMicros() {
+        long start = iterationStart;
+        return start == 0 ? 0 : (System.nanoTime() - start) / 1000;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public Histogram getSelectTime() {
+        return selectTime;
+    }
+
+    public Histogram getIterationTime() {
+        return iterationTime;
+    }
+
+    public Histogram getHandlerTime() {
+        return handlerTime;
+    }
+
+    public Histogram getReadyKeys() {
+        return readyKeys;
+    }
+
+    /**
+     * 一次慢循环
+     */
+    public static class SlowIteration {
+        private final long time;
+        private final long durationMicros;
+        private final long selectMicros;
+        private final int readyKeys;
+        private final String slowestHandler;
+        private final long slowestHandlerMicros;
+        private final String stack;
+
+        SlowIteration(long time, long durationMicros, long selectMicros, int readyKeys, String slowestHandler,
+                      long slowestHandlerMicros, String stack) {
+            this.time = time;
+            this.durationMicros = durationMicros;
+            this.selectMicros = selectMicros;
+            this.readyKeys = readyKeys;
+            this.slowestHandler = slowestHandler;
+            this.slowestHandlerMicros = slowestHandlerMicros;
+            this.stack = stack;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getDurationMicros() {
+            return durationMicros;
+        }
+
+        public long getSelectMicros() {
+            return selectMicros;
+        }
+
+        public int getReadyKeys() {
+            return readyKeys;
+        }
+
+        public String getSlowestHandler() {
+            return slowestHandler;
+        }
+
+        public long getSlowestHandlerMicros() {
+            return slowestHandlerMicros;
+        }
+
+        /**
+         * 循环卡顿时看门狗抓取的线程栈，没有卡顿为 null
+         */
+        public String getStack() {
+            return stack;
+        }
+    }
+}
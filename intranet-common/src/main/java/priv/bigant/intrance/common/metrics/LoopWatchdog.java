@@ -0,0 +1,102 @@
+package priv.bigant.intrance.common.metrics;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * selector 线程看门狗：单次循环超过 loopStallThreshold 时记录卡顿并输出线程栈
+ * <p>
+ * 所有 selector 线程共用一个守护线程，第一次 watch 时启动
+ */
+public class LoopWatchdog extends Thread {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final int MAX_STACK_DEPTH = 64;
+    private static volatile LoopWatchdog instance;
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    private LoopWatchdog() {
+        super("LoopWatchdog");
+        setDaemon(true);
+    }
+
+    public static void watch(LoopStats stats, Thread thread) {
+        LoopWatchdog watchdog = getInstance();
+        watchdog.entries.add(new Entry(stats, thread));
+        //没有线程时看门狗按最长间隔休眠，唤醒它按新线程的阈值重新计算间隔
+        LockSupport.unpark(watchdog);
+    }
+
+    public static void unwatch(LoopStats stats) {
+        LoopWatchdog watchdog = instance;
+        if (watchdog != null) {
+            watchdog.entries.removeIf(entry -> entry.stats == stats);
+        }
+    }
+
+    private static LoopWatchdog getInstance() {
+        if (instance == null) {
+            synchronized (LoopWatchdog.class) {
+                if (instance == null) {
+                    LoopWatchdog watchdog = new LoopWatchdog();
+                    watchdog.start();
+                    instance = watchdog;
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long interval = 1000;
+            long now = System.nanoTime();
+            for (Entry entry : entries) {
+                int threshold = entry.stats.getConfig() == null ? 0 : entry.stats.getConfig().getLoopStallThreshold();
+                if (threshold <= 0) {
+                    continue;
+                }
+                interval = Math.min(interval, Math.max(10, threshold / 4));
+                String phase = entry.stats.checkStall(now, threshold * 1_000_000L);
+                if (phase != null) {
+                    stall(entry, phase);
+                }
+            }
+            LockSupport.parkNanos(this, interval * 1_000_000L);
+            if (isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 抓取栈时 selector 线程仍在运行，栈可能已经离开卡住的位置
+     */
+    private void stall(Entry entry, String phase) {
+        StackTraceElement[] stackTrace = entry.thread.getStackTrace();
+        StringBuilder sb = new StringBuilder(1024);
+        for (int i = 0; i < stackTrace.length && i < MAX_STACK_DEPTH; i++) {
+            sb.append("\tat ").append(stackTrace[i]).append('\n');
+        }
+        String stack = sb.toString();
+        entry.stats.setStalledStack(stack);
+        LOG.warning(entry.stats.getName() + " selector 循环已阻塞 " + entry.stats.getCurrentIterationMicros() / 1000
+                + "ms phase=" + phase + "\n" + stack);
+    }
+
+    private static class Entry {
+        private final LoopStats stats;
+        private final Thread thread;
+
+        private Entry(LoopStats stats, Thread thread) {
+            this.stats = stats;
+            this.thread = thread;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package priv.bigant.intrance.common.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按域名汇总的指标
+ * <p>
+ * 域名来自请求头：请求路径上只为已注册的域名建立条目，其余都记入 {@link #UNKNOWN}，扫描器发来的随机 Host 不会占满名额；
+ * 数量仍超过上限时其余记入 {@link #OTHER}
+ */
+public final class MetricsRegistry {
+
+    public static final String OTHER = "_other";
+    public static final String UNKNOWN = "_unknown";
+    private static final int MAX_HOSTS = 1024;
+
+    private static final ConcurrentHashMap<String, HostMetrics> HOSTS = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static HostMetrics host(String host) {
+        if (host == null || host.isEmpty()) {
+            host = UNKNOWN;
+        }
+        HostMetrics metrics = HOSTS.get(host);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (HOSTS.size() >= MAX_HOSTS) {
+            host = OTHER;
+        }
+        return HOSTS.computeIfAbsent(host, HostMetrics::new);
+    }
+
+    /**
+     * 请求路径使用，未注册的域名记入 {@link #UNKNOWN}
+     *
+     * @param registered 域名是否已注册（见 TunnelSource.isRegistered）
+     */
+    public static HostMetrics host(String host, boolean registered) {
+        return host(registered ? host : UNKNOWN);
+    }
+
+    public static List<HostMetrics> all() {
+        return new ArrayList<>(HOSTS.values());
+    }
+}
@@ -0,0 +1,174 @@
+package priv.bigant.intrance.common.util.buf;
+
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.ByteBufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 请求体暂存区：容量在创建时确定，先写入池化的 64K 内存块，超过单个请求或全局的内存上限后，剩余部分写入内存映射的临时文件
+ * <p>
+ * 写满后用 {@link #buffers()} 按顺序回放，用完必须 {@link #close()} 归还内存块并删除临时文件。只由一个线程使用
+ */
+public class SpoolBuffer implements Closeable {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final ByteBufferPool POOL = new ByteBufferPool(CHUNK_SIZE, 256, true);
+    /**
+     * 所有暂存区占用的内存块总字节数
+     */
+    private static final AtomicLong MEMORY = new AtomicLong();
+
+    private final long capacity;
+    private final long memoryLimit;
+    private final long totalMemoryLimit;
+    private final String dir;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long memory;
+    private long size;
+    private Path path;
+    private MappedByteBuffer mapped;
+    /**
+     * 当前写入段及其写入上限，读取方（如 NioSocketWrapper）可能改动 limit，每次取用时恢复
+     */
+    private ByteBuffer current;
+    private int currentLimit;
+
+    /**
+     * @param capacity         要暂存的字节数
+     * @param memoryLimit      单个暂存区最多使用的内存
+     * @param totalMemoryLimit 所有暂存区合计最多使用的内存
+     * @param dir              临时文件目录，为空时使用 java.io.tmpdir
+     */
+    public SpoolBuffer(long capacity, long memoryLimit, long totalMemoryLimit, String dir) {
+        this.capacity = capacity;
+        this.memoryLimit = memoryLimit;
+        this.totalMemoryLimit = totalMemoryLimit;
+        this.dir = dir;
+    }
+
+    /**
+     * 下一段可写入的缓冲（写模式），写入后的 position 即为写入的字节数；已写满时返回 null
+     */
+    public ByteBuffer writeBuffer() throws IOException {
+        if (size >= capacity) {
+            return null;
+        }
+        if (current != null) {
+            current.limit(currentLimit);
+            if (current.hasRemaining()) {
+                return current;
+            }
+        }
+        if (memory + CHUNK_SIZE <= memoryLimit && reserve()) {
+            current = POOL.take();
+            memory += CHUNK_SIZE;
+            chunks.add(current);
+        } else {
+            mapped = map(capacity - size);
+            current = mapped;
+        }
+        currentLimit = (int) Math.min(current.capacity(), capacity - size);
+        current.limit(currentLimit);
+        return current;
+    }
+
+    /**
+     * 记录写入 {@link #writeBuffer()} 的字节数
+     */
+    public void written(int bytes) {
+        size += bytes;
+    }
+
+    private boolean reserve() {
+        long current;
+        do {
+            current = MEMORY.get();
+            if (current + CHUNK_SIZE > totalMemoryLimit) {
+                return false;
+            }
+        } while (!MEMORY.compareAndSet(current, current + CHUNK_SIZE));
+        return true;
+    }
+
+    private MappedByteBuffer map(long length) throws IOException {
+        Path directory = dir == null || dir.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir")) : Paths.get(dir);
+        path = Files.createTempFile(directory, "spool", ".tmp");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //映射建立后关闭文件不影响映射
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    /**
+     * 已写入的数据，按写入顺序返回各段的只读视图（读模式）
+     */
+    public List<ByteBuffer> buffers() {
+        List<ByteBuffer> buffers = new ArrayList<>(chunks.size() + 1);
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer view = chunk.duplicate();
+            view.flip();
+            buffers.add(view);
+        }
+        if (mapped != null) {
+            ByteBuffer view = mapped.duplicate();
+            view.flip();
+            buffers.add(view);
+        }
+        return buffers;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 是否有部分数据写入了临时文件
+     */
+    public boolean isOverflowed() {
+        return path != null;
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : chunks) {
+            POOL.release(chunk);
+        }
+        chunks.clear();
+        current = null;
+        MEMORY.addAndGet(-memory);
+        memory = 0;
+        if (mapped != null) {
+            ByteBufferUtils.cleanDirectBuffer(mapped);
+            mapped = null;
+        }
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warning("删除暂存文件失败 " + path + " " + e.getMessage());
+            }
+            path = null;
+        }
+    }
+
+    /**
+     * 所有暂存区当前占用的内存
+     */
+    public static long getMemoryInUse() {
+        return MEMORY.get();
+    }
+}
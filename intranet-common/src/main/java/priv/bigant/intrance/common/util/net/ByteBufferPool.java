@@ -0,0 +1,59 @@
+package priv.bigant.intrance.common.util.net;
+
+import priv.bigant.intrance.common.util.collections.SynchronizedStack;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定大小的缓冲池，TLS 加解密用的网络缓冲从这里借还，避免每个连接分配 3 个 16K 的直接内存
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final SynchronizedStack<ByteBuffer> stack;
+    private final LongAdder allocated = new LongAdder();
+
+    /**
+     * @param bufferSize 每个缓冲的大小
+     * @param maxPooled  最多缓存的空闲缓冲数，超出的归还后直接丢弃
+     * @param direct     是否使用直接内存
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.stack = new SynchronizedStack<>(Math.min(SynchronizedStack.DEFAULT_SIZE, maxPooled), maxPooled);
+    }
+
+    /**
+     * 借出一个已清空（写模式）的缓冲
+     */
+    public ByteBuffer take() {
+        ByteBuffer buffer = stack.pop();
+        if (buffer == null) {
+            allocated.increment();
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+            buffer.clear();
+            stack.push(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 池中没有空闲缓冲时新分配的次数
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+}
@@ -17,6 +17,8 @@
 package priv.bigant.intrance.common.util.net;
 
 
+import priv.bigant.intrance.common.jmx.NioSelectorPoolMXBean;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
@@ -37,9 +39,17 @@ import java.util.logging.Logger;
  * @since 6.0
  */
 
-public class NioSelectorPool {
+public class NioSelectorPool implements NioSelectorPoolMXBean {
 
     public NioSelectorPool() {
+        this(SHARED);
+    }
+
+    /**
+     * @param shared 为 false 时每次借出独占的 Selector，用于多个线程各自 select 的场景（如 TLS 握手）
+     */
+    public NioSelectorPool(boolean shared) {
+        this.shared = shared;
     }
 
     private static final Logger LOG = Logger.getLogger(NioSelectorPool.class.getName());
@@ -47,17 +57,19 @@ public class NioSelectorPool {
     protected static final boolean SHARED = Boolean.parseBoolean(System.getProperty("org.apache.tomcat.util.net.NioSelectorShared", "true"));
 
 
+    protected final boolean shared;
+
     protected volatile Selector SHARED_SELECTOR;
 
-    protected int maxSelectors = 200;
-    protected int maxSpareSelectors = -1;
+    protected volatile int maxSelectors = 200;
+    protected volatile int maxSpareSelectors = -1;
     protected boolean enabled = true;
     protected AtomicInteger active = new AtomicInteger(0);
     protected AtomicInteger spare = new AtomicInteger(0);
     protected ConcurrentLinkedQueue<Selector> selectors = new ConcurrentLinkedQueue<>();
 
     protected Selector getSharedSelector() throws IOException {
-        if (SHARED && SHARED_SELECTOR == null) {
+        if (shared && SHARED_SELECTOR == null) {
             synchronized (NioSelectorPool.class) {
                 if (SHARED_SELECTOR == null) {
                     SHARED_SELECTOR = Selector.open();
@@ -68,8 +80,43 @@ public class NioSelectorPool {
         return SHARED_SELECTOR;
     }
 
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
+    @Override
+    public int getMaxSelectors() {
+        return maxSelectors;
+    }
+
+    @Override
+    public void setMaxSelectors(int maxSelectors) {
+        this.maxSelectors = maxSelectors;
+    }
+
+    @Override
+    public int getMaxSpareSelectors() {
+        return maxSpareSelectors;
+    }
+
+    @Override
+    public void setMaxSpareSelectors(int maxSpareSelectors) {
+        this.maxSpareSelectors = maxSpareSelectors;
+    }
+
+    @Override
+    public int getActiveSelectors() {
+        return active.get();
+    }
+
+    @Override
+    public int getSpareSelectors() {
+        return spare.get();
+    }
+
     public Selector get() throws IOException {
-        if (SHARED) {
+        if (shared) {
             return getSharedSelector();
         }
         if ((!enabled) || active.incrementAndGet() >= maxSelectors) {
@@ -99,7 +146,7 @@ public class NioSelectorPool {
 
 
     public void put(Selector s) throws IOException {
-        if (SHARED) return;
+        if (shared) return;
         if (enabled) active.decrementAndGet();
         if (enabled && (maxSpareSelectors == -1 || spare.get() < Math.min(maxSpareSelectors, maxSelectors))) {
             spare.incrementAndGet();
@@ -115,7 +162,7 @@ public class NioSelectorPool {
             s.close();
         spare.set(0);
         active.set(0);
-        if (SHARED && getSharedSelector() != null) {
+        if (shared && getSharedSelector() != null) {
             getSharedSelector().close();
             SHARED_SELECTOR = null;
         }
@@ -85,6 +85,7 @@ public class NioSocketWrapper extends SocketWrapperBase<NioChannel> {
 
     @Override
     public void close() throws IOException {
+        nonBlockingWriteBuffer.clear();
         getSocket().close();
     }
 
@@ -0,0 +1,357 @@
+package priv.bigant.intrance.common.util.net;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 基于 SSLEngine 的 NioChannel：上层照常按明文读写，这里负责加解密
+ * <p>
+ * 密文缓冲 netIn / netOut 与解密缓冲 appIn 从 {@link ByteBufferPool} 借出，关闭时归还。
+ * 通道可以是阻塞的（转发响应时）也可以是非阻塞的：非阻塞时 read 可能返回 0，write 可能只消费部分明文，
+ * 未写出的密文由 {@link #flush(boolean, Selector, long)} 写出
+ */
+public class SecureNioChannel extends NioChannel {
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * {@link #handshake(boolean)} 的返回值：需要执行委派任务（如证书签名），调用方在其它线程执行 {@link #runDelegatedTasks()} 后再继续
+     */
+    public static final int NEED_TASK = -1;
+
+    private final SSLEngine engine;
+    private final ByteBufferPool pool;
+    /**
+     * 收到的密文，写模式
+     */
+    private ByteBuffer netIn;
+    /**
+     * 待发送的密文，读模式
+     */
+    private ByteBuffer netOut;
+    /**
+     * 已解密未被读走的明文，读模式
+     */
+    private ByteBuffer appIn;
+    private boolean closed;
+    private boolean handshakeComplete;
+    /**
+     * 第一次推进握手的时间，用于握手耗时与会话复用的统计
+     */
+    private long handshakeStart;
+    private long handshakeStartMillis;
+
+    /**
+     * @param netIn 调度前已读到的密文（写模式，从 pool 借出），没有时传 null
+     */
+    public SecureNioChannel(SocketChannel channel, SocketBufferHandler bufHandler, SSLEngine engine, ByteBufferPool pool, ByteBuffer netIn) {
+        super(channel, bufHandler);
+        this.engine = engine;
+        this.pool = pool;
+        this.netIn = netIn == null ? pool.take() : netIn;
+        this.netOut = pool.take();
+        this.netOut.limit(0);
+        this.appIn = pool.take();
+        this.appIn.limit(0);
+    }
+
+    /**
+     * 完成握手，通道必须是非阻塞的；等待读写时使用 selector
+     *
+     * @param timeout 整个握手的超时（毫秒）
+     */
+    public void handshake(Selector selector, long timeout) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        int ops;
+        while ((ops = handshake(true)) != 0) {
+            try {
+                await(selector, ops, deadline);
+            } catch (IOException e) {
+                SslMetrics.handshakeFailed();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 非阻塞地推进握手，不等待读写，由调用方在 selector 上等到就绪后再次调用
+     *
+     * @param runTasks 是否在当前线程执行委派任务，为 false 时遇到任务返回 {@link #NEED_TASK}
+     * @return 握手完成返回 0，否则返回需要等待的事件 {@link SelectionKey#OP_READ} / {@link SelectionKey#OP_WRITE} 或 {@link #NEED_TASK}
+     */
+    public int handshake(boolean runTasks) throws IOException {
+        if (handshakeComplete) {
+            return 0;
+        }
+        try {
+            if (handshakeStart == 0) {
+                handshakeStart = System.nanoTime();
+                handshakeStartMillis = System.currentTimeMillis();
+                engine.beginHandshake();
+            }
+            if (!flushNetOut()) {
+                return SelectionKey.OP_WRITE;
+            }
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+            while (status != SSLEngineResult.HandshakeStatus.FINISHED && status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                switch (status) {
+                    case NEED_WRAP:
+                        status = wrap(emptyBuf).getHandshakeStatus();
+                        if (!flushNetOut()) {
+                            return SelectionKey.OP_WRITE;
+                        }
+                        break;
+                    case NEED_TASK:
+                        if (!runTasks) {
+                            return NEED_TASK;
+                        }
+                        runDelegatedTasks();
+                        status = engine.getHandshakeStatus();
+                        break;
+                    default:
+                        //NEED_UNWRAP，以及 Java 9 之后的 NEED_UNWRAP_AGAIN
+                        SSLEngineResult result = unwrap();
+                        status = result.getHandshakeStatus();
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            int read = sc.read(netIn);
+                            if (read < 0) {
+                                throw new EOFException("握手中对端关闭");
+                            }
+                            if (read == 0) {
+                                return SelectionKey.OP_READ;
+                            }
+                        } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new EOFException("握手中对端关闭");
+                        }
+                }
+            }
+            if (!flushNetOut()) {
+                return SelectionKey.OP_WRITE;
+            }
+        } catch (IOException e) {
+            SslMetrics.handshakeFailed();
+            throw e;
+        }
+        handshakeComplete = true;
+        //复用的会话创建时间早于本次握手
+        boolean resumed = engine.getSession().getCreationTime() < handshakeStartMillis;
+        SslMetrics.handshake(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - handshakeStart), resumed);
+        return 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        while (true) {
+            if (appIn.hasRemaining()) {
+                return transfer(appIn, dst);
+            }
+            if (netIn.position() > 0) {
+                SSLEngineResult result = unwrap();
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    return -1;
+                }
+                handlePostHandshake(result.getHandshakeStatus());
+                if (result.getStatus() == SSLEngineResult.Status.OK) {
+                    continue;
+                }
+            }
+            int read = sc.read(netIn);
+            if (read <= 0) {
+                return read;
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkInterruptStatus();
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!flushNetOut()) {
+            return 0;
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            SSLEngineResult result = wrap(src);
+            written += result.bytesConsumed();
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new IOException("TLS 连接已关闭");
+            }
+            handlePostHandshake(result.getHandshakeStatus());
+            if (!flushNetOut()) {
+                break;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean flush(boolean block, Selector s, long timeout) throws IOException {
+        if (flushNetOut()) {
+            return true;
+        }
+        if (!block) {
+            return false;
+        }
+        flushFully(s, timeout <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout);
+        return true;
+    }
+
+    @Override
+    public int getOutboundRemaining() {
+        return closed ? 0 : netOut.remaining();
+    }
+
+    @Override
+    public boolean flushOutbound() throws IOException {
+        int remaining = netOut.remaining();
+        flushNetOut();
+        return netOut.remaining() < remaining;
+    }
+
+    /**
+     * 发送 close_notify 后关闭，归还缓冲
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                engine.closeOutbound();
+                if (sc.isOpen()) {
+                    wrap(emptyBuf);
+                    flushNetOut();
+                }
+            } catch (IOException e) {
+                LOG.fine("发送 close_notify 失败 " + e.getMessage());
+            }
+            pool.release(netIn);
+            pool.release(netOut);
+            pool.release(appIn);
+        }
+        super.close();
+    }
+
+    public SSLEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * 是否有已从 socket 读出但还没被上层读走的数据：这部分数据不会再触发可读事件
+     */
+    public boolean hasBufferedInput() {
+        return !closed && (appIn.hasRemaining() || netIn.position() > 0);
+    }
+
+    /**
+     * TLS 1.3 握手后仍可能收到 KeyUpdate 等消息，需要回写或执行任务
+     */
+    private void handlePostHandshake(SSLEngineResult.HandshakeStatus status) throws IOException {
+        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+        } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            if (flushNetOut()) {
+                wrap(emptyBuf);
+                flushNetOut();
+            }
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer src) throws SSLException {
+        netOut.compact();
+        long start = System.nanoTime();
+        try {
+            SSLEngineResult result = engine.wrap(src, netOut);
+            SslMetrics.wrap(System.nanoTime() - start, result.bytesProduced());
+            return result;
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    private SSLEngineResult unwrap() throws SSLException {
+        netIn.flip();
+        appIn.compact();
+        long start = System.nanoTime();
+        try {
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            SslMetrics.unwrap(System.nanoTime() - start, result.bytesProduced());
+            return result;
+        } finally {
+            netIn.compact();
+            appIn.flip();
+        }
+    }
+
+    /**
+     * 执行引擎的委派任务，可以在任意线程调用，期间不能再推进握手
+     */
+    public void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private boolean flushNetOut() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (sc.write(netOut) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flushFully(Selector selector, long deadline) throws IOException {
+        while (!flushNetOut()) {
+            await(selector, SelectionKey.OP_WRITE, deadline);
+        }
+    }
+
+    void await(Selector selector, int ops, long deadline) throws IOException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("TLS 连接等待超时");
+        }
+        if (selector == null) {
+            Thread.yield();
+            return;
+        }
+        SelectionKey key = sc.register(selector, ops);
+        try {
+            selector.select(remaining);
+        } finally {
+            key.cancel();
+            selector.selectNow();
+        }
+    }
+
+    private static int transfer(ByteBuffer from, ByteBuffer to) {
+        int n = Math.min(from.remaining(), to.remaining());
+        if (n == from.remaining()) {
+            to.put(from);
+        } else {
+            ByteBuffer slice = from.duplicate();
+            slice.limit(slice.position() + n);
+            to.put(slice);
+            from.position(from.position() + n);
+        }
+        return n;
+    }
+}
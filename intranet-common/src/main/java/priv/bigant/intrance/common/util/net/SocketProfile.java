@@ -0,0 +1,222 @@
+package priv.bigant.intrance.common.util.net;
+
+import priv.bigant.intrance.common.Config;
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Logger;
+
+/**
+ * 一类连接使用的 socket 参数：先应用 {@link Config} 中的全局参数，再用这里设置了的值覆盖
+ * <p>
+ * 配置文件中以 profile 名为前缀设置，如 tunnelSocket.rxBufSize=1048576、httpSocket.backlog=1024
+ */
+public class SocketProfile {
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * JDK 9 起 Linux 等平台支持 SO_REUSEPORT，按名字查找以兼容 Java 8，不支持时为 null
+     */
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+    /**
+     * SO_RCVBUF / SO_SNDBUF，为空时使用全局配置；都没有设置时 Linux 按连接自动调整，设置后自动调整关闭
+     */
+    private Integer rxBufSize;
+    private Integer txBufSize;
+    private Boolean tcpNoDelay;
+    private Boolean soKeepAlive;
+    /**
+     * SO_LINGER 秒数，小于 0 关闭
+     */
+    private Integer soLingerTime;
+    /**
+     * 监听端口的连接排队长度，0 使用 JDK 默认值（50），实际上限还受内核 somaxconn 限制
+     */
+    private int backlog;
+    /**
+     * 同一端口的监听 socket 个数，大于 1 时通过 SO_REUSEPORT 打开多个监听 socket，各由一个线程 accept，
+     * 内核按连接的四元组分配；平台不支持 SO_REUSEPORT 时退回 1 个
+     */
+    private int acceptors = 1;
+    /**
+     * 处理已接受连接读写事件的 selector 线程个数，acceptor 按轮询把新连接分给各线程
+     */
+    private int pollers = 1;
+
+    /**
+     * 客户端与服务端之间的穿透连接：跨公网、长连接，开启 keepalive 以便发现 NAT 等中间设备丢弃的连接
+     */
+    public static SocketProfile tunnel() {
+        SocketProfile profile = new SocketProfile();
+        profile.setTcpNoDelay(true);
+        profile.setSoKeepAlive(true);
+        profile.setBacklog(128);
+        return profile;
+    }
+
+    /**
+     * 浏览器与源站的 HTTP 连接：交互式的小请求，关闭 Nagle 避免与延迟确认叠加出 40ms 的停顿
+     */
+    public static SocketProfile http() {
+        SocketProfile profile = new SocketProfile();
+        profile.setTcpNoDelay(true);
+        profile.setBacklog(1024);
+        return profile;
+    }
+
+    /**
+     * 对新建立的连接（accept 得到或主动连接）应用参数，设置失败只记录日志，不影响连接使用
+     */
+    public void configure(SocketChannel channel) {
+        try {
+            Config.getConfig().setProperties(channel.socket());
+            if (rxBufSize != null)
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, rxBufSize);
+            if (txBufSize != null)
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, txBufSize);
+            if (tcpNoDelay != null)
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+            if (soKeepAlive != null)
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, soKeepAlive);
+            if (soLingerTime != null)
+                channel.setOption(StandardSocketOptions.SO_LINGER, soLingerTime);
+        } catch (IOException e) {
+            LOG.fine("设置 socket 参数失败 " + channel + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * 主动连接前调用：接收缓冲大于 64K 时需要在建立连接前设置才能协商窗口扩大因子
+     */
+    public SocketChannel open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        configure(channel);
+        return channel;
+    }
+
+    /**
+     * 打开监听端口：接收缓冲在 bind 之前设置，accept 得到的连接继承
+     */
+    public ServerSocketChannel bind(InetSocketAddress address) throws IOException {
+        return bind(address, false);
+    }
+
+    /**
+     * @param reusePort 是否设置 SO_REUSEPORT，与其他设置了该选项的 socket 共用端口
+     */
+    public ServerSocketChannel bind(InetSocketAddress address, boolean reusePort) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            Config.getConfig().setProperties(server.socket());
+            if (rxBufSize != null)
+                server.setOption(StandardSocketOptions.SO_RCVBUF, rxBufSize);
+            if (reusePort) {
+                if (SO_REUSEPORT == null) {
+                    throw new SocketException("当前平台不支持 SO_REUSEPORT");
+                }
+                server.setOption(SO_REUSEPORT, true);
+            }
+            server.bind(address, backlog);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    public static boolean isReusePortSupported() {
+        return SO_REUSEPORT != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            for (SocketOption<?> option : channel.supportedOptions()) {
+                if ("SO_REUSEPORT".equals(option.name())) {
+                    return (SocketOption<Boolean>) option;
+                }
+            }
+        } catch (IOException e) {
+            LOG.fine("检查 SO_REUSEPORT 失败 " + e.getMessage());
+        }
+        return null;
+    }
+
+    public Integer getRxBufSize() {
+        return rxBufSize;
+    }
+
+    public void setRxBufSize(Integer rxBufSize) {
+        this.rxBufSize = rxBufSize;
+    }
+
+    public Integer getTxBufSize() {
+        return txBufSize;
+    }
+
+    public void setTxBufSize(Integer txBufSize) {
+        this.txBufSize = txBufSize;
+    }
+
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(Boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public Boolean getSoKeepAlive() {
+        return soKeepAlive;
+    }
+
+    public void setSoKeepAlive(Boolean soKeepAlive) {
+        this.soKeepAlive = soKeepAlive;
+    }
+
+    public Integer getSoLingerTime() {
+        return soLingerTime;
+    }
+
+    public void setSoLingerTime(Integer soLingerTime) {
+        this.soLingerTime = soLingerTime;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public int getPollers() {
+        return pollers;
+    }
+
+    public void setPollers(int pollers) {
+        this.pollers = pollers;
+    }
+
+    @Override
+    public String toString() {
+        return "SocketProfile{rxBufSize=" + rxBufSize + ", txBufSize=" + txBufSize + ", tcpNoDelay=" + tcpNoDelay
+                + ", soKeepAlive=" + soKeepAlive + ", soLingerTime=" + soLingerTime + ", backlog=" + backlog + ", acceptors=" + acceptors
+                + ", pollers=" + pollers + '}';
+    }
+}
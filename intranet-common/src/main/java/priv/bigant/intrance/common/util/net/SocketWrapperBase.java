@@ -16,6 +16,7 @@
  */
 package priv.bigant.intrance.common.util.net;
 
+import priv.bigant.intrance.common.Config;
 import priv.bigant.intrance.common.util.res.StringManager;
 
 import java.io.IOException;
@@ -62,7 +63,9 @@ public abstract class SocketWrapperBase<E> {
      * only allows one non-blocking write at a time, due to buffering and the possible need to write HTTP headers, this
      * layer may see multiple writes.
      */
-    protected final WriteBuffer nonBlockingWriteBuffer = new WriteBuffer(bufferedWriteSize);
+    protected final WriteBuffer nonBlockingWriteBuffer = new WriteBuffer(bufferedWriteSize,
+            Config.getConfig().getWriteBufferLowWatermark(), Config.getConfig().getWriteBufferHighWatermark(),
+            Config.getConfig().getWriteBufferMaxSize());
 
     public SocketWrapperBase(E socket) {
         this.socket = socket;
@@ -0,0 +1,101 @@
+package priv.bigant.intrance.common.util.net;
+
+import priv.bigant.intrance.common.metrics.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有 TLS 连接的全局统计：握手耗时与记录加解密开销
+ */
+public final class SslMetrics {
+
+    private static final Histogram HANDSHAKE = new Histogram();
+    private static final LongAdder HANDSHAKES = new LongAdder();
+    private static final LongAdder RESUMED = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder WRAPS = new LongAdder();
+    private static final LongAdder WRAP_NANOS = new LongAdder();
+    private static final LongAdder WRAP_BYTES = new LongAdder();
+    private static final LongAdder UNWRAPS = new LongAdder();
+    private static final LongAdder UNWRAP_NANOS = new LongAdder();
+    private static final LongAdder UNWRAP_BYTES = new LongAdder();
+
+    private SslMetrics() {
+    }
+
+    static void handshake(long micros, boolean resumed) {
+        HANDSHAKE.record(micros);
+        HANDSHAKES.increment();
+        if (resumed) {
+            RESUMED.increment();
+        }
+    }
+
+    static void handshakeFailed() {
+        FAILED.increment();
+    }
+
+    static void wrap(long nanos, int bytes) {
+        WRAPS.increment();
+        WRAP_NANOS.add(nanos);
+        WRAP_BYTES.add(bytes);
+    }
+
+    static void unwrap(long nanos, int bytes) {
+        UNWRAPS.increment();
+        UNWRAP_NANOS.add(nanos);
+        UNWRAP_BYTES.add(bytes);
+    }
+
+    /**
+     * 握手耗时（微秒）
+     */
+    public static Histogram getHandshake() {
+        return HANDSHAKE;
+    }
+
+    public static long getHandshakes() {
+        return HANDSHAKES.sum();
+    }
+
+    /**
+     * 复用会话（缓存或 ticket）完成的握手数
+     */
+    public static long getResumed() {
+        return RESUMED.sum();
+    }
+
+    public static long getFailed() {
+        return FAILED.sum();
+    }
+
+    public static long getWraps() {
+        return WRAPS.sum();
+    }
+
+    public static long getWrapNanos() {
+        return WRAP_NANOS.sum();
+    }
+
+    /**
+     * 加密输出的密文字节数
+     */
+    public static long getWrapBytes() {
+        return WRAP_BYTES.sum();
+    }
+
+    public static long getUnwraps() {
+        return UNWRAPS.sum();
+    }
+
+    public static long getUnwrapNanos() {
+        return UNWRAP_NANOS.sum();
+    }
+
+    /**
+     * 解密得到的明文字节数
+     */
+    public static long getUnwrapBytes() {
+        return UNWRAP_BYTES.sum();
+    }
+}
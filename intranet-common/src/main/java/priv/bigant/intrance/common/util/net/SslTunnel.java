@@ -0,0 +1,114 @@
+package priv.bigant.intrance.common.util.net;
+
+import priv.bigant.intrance.common.Config;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 客户端与服务端之间穿透连接（通信连接与数据连接）的 TLS
+ * <p>
+ * 数据连接每个请求新建一条，客户端的 SSLContext 按 host:port 缓存会话，新连接恢复会话只做简化握手
+ */
+public class SslTunnel {
+
+    private final SSLContext sslContext;
+    private final boolean clientMode;
+    private final String[] protocols;
+    private final long handshakeTimeout;
+    private final ByteBufferPool bufferPool;
+    /**
+     * 握手的线程各自 select，不能使用共享的 Selector
+     */
+    private final NioSelectorPool selectorPool = new NioSelectorPool(false);
+    /**
+     * 客户端是否校验证书中的域名与连接的服务端地址一致
+     */
+    private boolean verifyHostname;
+
+    /**
+     * @param protocols 允许的协议，为空使用 JDK 默认
+     */
+    public SslTunnel(SSLContext sslContext, boolean clientMode, String[] protocols, long handshakeTimeout, int maxPooledBuffers) {
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        this.bufferPool = new ByteBufferPool(Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize()), maxPooledBuffers, Config.getConfig().getDirectSslBuffer());
+        this.sslContext = sslContext;
+        this.clientMode = clientMode;
+        this.protocols = protocols;
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    /**
+     * 在非阻塞的 channel 上完成握手，失败时关闭连接
+     *
+     * @param host 客户端连接的服务端地址，用于 SNI 与会话缓存，服务端忽略
+     */
+    public SecureNioChannel handshake(SocketChannel channel, String host, int port) throws IOException {
+        SSLEngine engine = clientMode ? sslContext.createSSLEngine(host, port) : sslContext.createSSLEngine();
+        engine.setUseClientMode(clientMode);
+        if (protocols != null && protocols.length > 0) {
+            engine.setEnabledProtocols(protocols);
+        }
+        if (clientMode && verifyHostname) {
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            engine.setSSLParameters(parameters);
+        }
+        Config config = Config.getConfig();
+        SocketBufferHandler handler = new SocketBufferHandler(config.getHttpProcessReadBufferSize(), config.getHttpProcessWriteBufferSize(), true);
+        SecureNioChannel secure = new SecureNioChannel(channel, handler, engine, bufferPool, null);
+        Selector selector = selectorPool.get();
+        try {
+            secure.handshake(selector, handshakeTimeout);
+            return secure;
+        } catch (IOException e) {
+            secure.close();
+            throw e;
+        } finally {
+            if (selector != null) {
+                selectorPool.put(selector);
+            }
+        }
+    }
+
+    /**
+     * 握手后读取对端的第一条消息：至少读到一个字节才返回，超过握手超时时抛出 SocketTimeoutException
+     */
+    public int read(SecureNioChannel channel, ByteBuffer dst) throws IOException {
+        int read = channel.read(dst);
+        if (read != 0 || !dst.hasRemaining()) {
+            return read;
+        }
+        long deadline = System.currentTimeMillis() + handshakeTimeout;
+        Selector selector = selectorPool.get();
+        try {
+            while ((read = channel.read(dst)) == 0) {
+                channel.await(selector, SelectionKey.OP_READ, deadline);
+            }
+            return read;
+        } finally {
+            if (selector != null) {
+                selectorPool.put(selector);
+            }
+        }
+    }
+
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public boolean isVerifyHostname() {
+        return verifyHostname;
+    }
+
+    public void setVerifyHostname(boolean verifyHostname) {
+        this.verifyHostname = verifyHostname;
+    }
+}
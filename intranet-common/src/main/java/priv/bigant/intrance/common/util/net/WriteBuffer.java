@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -33,26 +34,52 @@ import java.util.concurrent.LinkedBlockingDeque;
  * provides a buffering capability to allow such writes to return immediately
  * and also allows for the user provided buffers to be re-used / recycled as
  * required.
+ * <p>
+ * 缓冲的字节数受 maxSize 硬上限约束，超过 highWatermark 后变为不可写，直到回落到 lowWatermark 以下才恢复；
+ * 缓冲字节数与超过上限的次数计入 {@link WriteBufferMetrics}
  */
 public class WriteBuffer {
 
     private final int bufferSize;
+    private final long lowWatermark;
+    private final long highWatermark;
+    private final long maxSize;
 
     private final LinkedBlockingDeque<ByteBufferHolder> buffers = new LinkedBlockingDeque<>();
 
+    /**
+     * 当前缓冲的未写出字节数
+     */
+    private final AtomicLong size = new AtomicLong();
+    private volatile boolean writable = true;
+
     public WriteBuffer(int bufferSize) {
+        this(bufferSize, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+
+    public WriteBuffer(int bufferSize, long lowWatermark, long highWatermark, long maxSize) {
+        if (lowWatermark > highWatermark || highWatermark > maxSize) {
+            throw new IllegalArgumentException("require lowWatermark <= highWatermark <= maxSize");
+        }
         this.bufferSize = bufferSize;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxSize = maxSize;
     }
 
 
-    void add(byte[] buf, int offset, int length) {
+    void add(byte[] buf, int offset, int length) throws IOException {
+        reserve(length);
         ByteBufferHolder holder = getByteBufferHolder(length);
         holder.getBuf().put(buf, offset, length);
     }
 
 
-    public void add(ByteBuffer from) {
-        ByteBufferHolder holder = getByteBufferHolder(from.remaining());
+    public void add(ByteBuffer from) throws IOException {
+        int length = from.remaining();
+        reserve(length);
+        ByteBufferHolder holder = getByteBufferHolder(length);
         holder.getBuf().put(from);
     }
 
@@ -73,17 +100,72 @@ public class WriteBuffer {
     }
 
 
+    /**
+     * @return 是否低于高水位（可继续写入）
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+
+    public long getSize() {
+        return size.get();
+    }
+
+
+    private void reserve(int length) throws IOException {
+        long newSize = size.addAndGet(length);
+        if (newSize > maxSize) {
+            size.addAndGet(-length);
+            WriteBufferMetrics.overflow();
+            throw new IOException("write buffer overflow, buffered " + (newSize - length) + " + " + length + " > " + maxSize);
+        }
+        WriteBufferMetrics.buffered(length);
+        if (writable && newSize > highWatermark) {
+            writable = false;
+        }
+    }
+
+
+    private void release(int length) {
+        if (length <= 0) {
+            return;
+        }
+        long newSize = size.addAndGet(-length);
+        WriteBufferMetrics.buffered(-length);
+        if (!writable && newSize <= lowWatermark) {
+            writable = true;
+        }
+    }
+
+
+    /**
+     * 丢弃所有未写出的数据（连接关闭时调用），归还全局统计
+     */
+    public void clear() {
+        long length = 0;
+        ByteBufferHolder holder;
+        while ((holder = buffers.poll()) != null) {
+            ByteBuffer buf = holder.getBuf();
+            length += holder.isFlipped() ? buf.remaining() : buf.position();
+        }
+        release((int) Math.min(length, size.get()));
+    }
+
+
     boolean write(SocketWrapperBase<?> socketWrapper, boolean blocking) throws IOException {
         Iterator<ByteBufferHolder> bufIter = buffers.iterator();
         boolean dataLeft = false;
         while (!dataLeft && bufIter.hasNext()) {
             ByteBufferHolder buffer = bufIter.next();
             buffer.flip();
+            int before = buffer.getBuf().remaining();
             if (blocking) {
                 socketWrapper.writeBlocking(buffer.getBuf());
             } else {
                 socketWrapper.writeNonBlockingInternal(buffer.getBuf());
             }
+            release(before - buffer.getBuf().remaining());
             if (buffer.getBuf().remaining() == 0) {
                 bufIter.remove();
             } else {
@@ -100,7 +182,9 @@ public class WriteBuffer {
         while (!dataLeft && bufIter.hasNext()) {
             ByteBufferHolder buffer = bufIter.next();
             buffer.flip();
+            int before = buffer.getBuf().remaining();
             dataLeft = sink.writeFromBuffer(buffer.getBuf(), blocking);
+            release(before - buffer.getBuf().remaining());
             if (!dataLeft) {
                 bufIter.remove();
             }
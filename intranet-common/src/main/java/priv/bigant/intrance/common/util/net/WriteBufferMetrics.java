@@ -0,0 +1,51 @@
+package priv.bigant.intrance.common.util.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有连接非阻塞写缓冲的全局统计
+ */
+public final class WriteBufferMetrics {
+
+    private static final AtomicLong BUFFERED_BYTES = new AtomicLong();
+    private static final AtomicLong PEAK_BUFFERED_BYTES = new AtomicLong();
+    private static final LongAdder OVERFLOWS = new LongAdder();
+
+    private WriteBufferMetrics() {
+    }
+
+    static void buffered(long delta) {
+        long current = BUFFERED_BYTES.addAndGet(delta);
+        if (delta > 0) {
+            long peak;
+            while (current > (peak = PEAK_BUFFERED_BYTES.get())) {
+                if (PEAK_BUFFERED_BYTES.compareAndSet(peak, current)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    static void overflow() {
+        OVERFLOWS.increment();
+    }
+
+    /**
+     * 当前所有连接缓冲的未写出字节数
+     */
+    public static long getBufferedBytes() {
+        return BUFFERED_BYTES.get();
+    }
+
+    public static long getPeakBufferedBytes() {
+        return PEAK_BUFFERED_BYTES.get();
+    }
+
+    /**
+     * 超过硬上限被拒绝写入的次数
+     */
+    public static long getOverflowCount() {
+        return OVERFLOWS.sum();
+    }
+}
@@ -0,0 +1,88 @@
+package priv.bigant.intrance.common.util.threads;
+
+/**
+ * CoDel（Controlled Delay）排队时延控制
+ * <p>
+ * 任务出队时传入它在队列中等待的时间：持续一个 interval 都高于 target 时进入丢弃状态，丢弃间隔按 interval / sqrt(count) 缩短，
+ * 等待时间回落到 target 以下即退出。只看时延不看队列长度，突发流量不会被误伤，持续过载时尽早拒绝
+ * <p>
+ * 非线程安全，由调用方加锁
+ */
+public class CoDel {
+
+    private final long targetNanos;
+    private final long intervalNanos;
+
+    private long firstAboveTime = 0;
+    private long dropNext = 0;
+    private int count = 0;
+    private int lastCount = 0;
+    private boolean dropping = false;
+    private long dropped = 0;
+
+    /**
+     * @param targetNanos 可接受的排队时延，小于等于 0 时不丢弃
+     */
+    public CoDel(long targetNanos, long intervalNanos) {
+        this.targetNanos = targetNanos;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * 任务出队时调用
+     *
+     * @param sojournNanos 任务排队时间
+     * @param now          当前时间 System.nanoTime()
+     * @return 是否丢弃该任务
+     */
+    public boolean onDequeue(long sojournNanos, long now) {
+        if (targetNanos <= 0) {
+            return false;
+        }
+        boolean okToDrop = false;
+        if (sojournNanos < targetNanos) {
+            firstAboveTime = 0;
+        } else if (firstAboveTime == 0) {
+            firstAboveTime = now + intervalNanos;
+        } else if (now - firstAboveTime >= 0) {
+            okToDrop = true;
+        }
+
+        if (dropping) {
+            if (!okToDrop) {
+                dropping = false;
+                return false;
+            }
+            if (now - dropNext >= 0) {
+                count++;
+                dropNext = controlLaw(dropNext);
+                dropped++;
+                return true;
+            }
+            return false;
+        }
+        if (okToDrop) {
+            dropping = true;
+            // 距上次丢弃不久，沿用上次的丢弃频率
+            int delta = count - lastCount;
+            count = delta > 1 && now - dropNext < 16 * intervalNanos ? delta : 1;
+            lastCount = count;
+            dropNext = controlLaw(now);
+            dropped++;
+            return true;
+        }
+        return false;
+    }
+
+    private long controlLaw(long t) {
+        return t + (long) (intervalNanos / Math.sqrt(count));
+    }
+
+    public boolean isDropping() {
+        return dropping;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,545 @@
+package priv.bigant.intrance.common.util.threads;
+
+import priv.bigant.intrance.common.jmx.FairSchedulerMXBean;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 按租户（域名）公平调度的线程池
+ * <p>
+ * 每个租户一个队列，工作线程按差额轮询（Deficit Round Robin）取任务：每轮给租户 weight * quantum 的额度，
+ * 任务按预估字节数扣减额度，大上传不会拖慢其它租户的小请求
+ * <p>
+ * 出队时用 {@link CoDel} 检查排队时延，持续过载时 {@link Sheddable} 任务被丢弃（调用 shed），不再占用后端
+ */
+public class FairScheduler implements FairSchedulerMXBean {
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * 单个任务最多占用的轮数，开销来自客户端的 Content-Length，不封顶时一个巨大的值会让取任务的循环在锁内空转
+     */
+    private static final int MAX_ROUNDS = 16;
+
+    private final String name;
+    /**
+     * 以下参数可通过 JMX 修改，读写都在 lock 内
+     */
+    private int coreSize;
+    private int maxSize;
+    private final long keepAliveNanos;
+    private int maxQueued;
+    private int maxQueuedPerTenant;
+    private final int maxTenants;
+    private long quantum;
+    private final CoDel coDel;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    /**
+     * 总队列已满时被拒绝的新租户记在这里，不为它们建队列
+     */
+    private final TenantQueue other = new TenantQueue(MetricsRegistry.OTHER);
+    /**
+     * 有待执行任务的租户，队首为当前轮到的租户
+     */
+    private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private int queued = 0;
+    private int workers = 0;
+    private int idleWorkers = 0;
+    private boolean shutdown = false;
+
+    public FairScheduler(String name, int coreSize, int maxSize, long keepAlive, TimeUnit unit, int maxQueued,
+                         int maxQueuedPerTenant, long quantum) {
+        this(name, coreSize, maxSize, keepAlive, unit, maxQueued, maxQueuedPerTenant, quantum, new CoDel(0, 0));
+    }
+
+    public FairScheduler(String name, int coreSize, int maxSize, long keepAlive, TimeUnit unit, int maxQueued,
+                         int maxQueuedPerTenant, long quantum, CoDel coDel) {
+        this.name = name;
+        this.coreSize = coreSize;
+        this.maxSize = Math.max(1, maxSize);
+        this.keepAliveNanos = unit.toNanos(keepAlive);
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.maxTenants = 1024;
+        this.quantum = quantum;
+        this.coDel = coDel;
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param tenant 租户，一般为请求域名，未知时为空串
+     * @param cost   预估开销（字节），用于扣减额度，最多按 {@value #MAX_ROUNDS} 轮额度计算
+     * @throws RejectedExecutionException 总队列或该租户队列已满
+     */
+    public void execute(String tenant, long cost, Runnable task) {
+        if (tenant == null) {
+            tenant = "";
+        }
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(name + " 已关闭");
+            }
+            TenantQueue tenantQueue = tenants.get(tenant);
+            if (queued >= maxQueued || tenantQueue != null && tenantQueue.tasks.size() >= maxQueuedPerTenant) {
+                //租户来自客户端的 Host 头，被拒绝的新租户不能留在 tenants 中
+                (tenantQueue == null ? other : tenantQueue).rejected++;
+                throw new RejectedExecutionException(name + " 队列已满 tenant=" + tenant);
+            }
+            if (tenantQueue == null) {
+                tenantQueue = new TenantQueue(tenant);
+                tenants.put(tenant, tenantQueue);
+            }
+            if (tenantQueue.tasks.isEmpty()) {
+                active.addLast(tenantQueue);
+            }
+            tenantQueue.tasks.addLast(new Task(task, Math.max(1, cost), System.nanoTime()));
+            tenantQueue.submitted++;
+            queued++;
+            if (idleWorkers > 0) {
+                notEmpty.signal();
+            } else if (workers < maxSize) {
+                startWorker();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startWorker() {
+        workers++;
+        Thread thread = new Thread(this::runWorker, name + "-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task task = take();
+            if (task == null) {
+                return;
+            }
+            try {
+                if (task.shed) {
+                    ((Sheddable) task.runnable).shed();
+                } else {
+                    task.runnable.run();
+                }
+            } catch (Throwable t) {
+                LOG.log(Level.SEVERE, name + " 任务执行失败", t);
+            }
+        }
+    }
+
+    /**
+     * 按 DRR 取下一个任务，空闲超时且超过核心线程数时返回 null 使线程退出
+     */
+    private Task take() {
+        lock.lock();
+        try {
+            long nanos = keepAliveNanos;
+            if (workers > maxSize) {
+                // 线程上限被调小
+                workers--;
+                return null;
+            }
+            while (active.isEmpty()) {
+                if (shutdown) {
+                    workers--;
+                    return null;
+                }
+                idleWorkers++;
+                try {
+                    if (workers > coreSize) {
+                        if (nanos <= 0) {
+                            workers--;
+                            return null;
+                        }
+                        nanos = notEmpty.awaitNanos(nanos);
+                    } else {
+                        notEmpty.await();
+                    }
+                } catch (InterruptedException e) {
+                    // 关闭时中断，重新检查状态
+                } finally {
+                    idleWorkers--;
+                }
+            }
+            while (true) {
+                TenantQueue tenantQueue = active.peekFirst();
+                if (!tenantQueue.inTurn) {
+                    tenantQueue.deficit += quantum * tenantQueue.weight;
+                    tenantQueue.inTurn = true;
+                }
+                Task task = tenantQueue.tasks.peekFirst();
+                long cost = Math.min(task.cost, quantum * tenantQueue.weight * MAX_ROUNDS);
+                if (cost <= tenantQueue.deficit) {
+                    tenantQueue.tasks.pollFirst();
+                    tenantQueue.deficit -= cost;
+                    queued--;
+                    if (tenantQueue.tasks.isEmpty()) {
+                        active.pollFirst();
+                        tenantQueue.deficit = 0;
+                        tenantQueue.inTurn = false;
+                        if (tenants.size() > maxTenants && tenantQueue.weight == 1) {
+                            tenants.remove(tenantQueue.tenant);
+                        }
+                    }
+                    long now = System.nanoTime();
+                    long wait = now - task.enqueueTime;
+                    if (coDel.onDequeue(wait, now) && task.runnable instanceof Sheddable) {
+                        task.shed = true;
+                        tenantQueue.shed++;
+                        return task;
+                    }
+                    tenantQueue.completedWaitNanos += wait;
+                    tenantQueue.dispatched++;
+                    if (wait > tenantQueue.maxWaitNanos) {
+                        tenantQueue.maxWaitNanos = wait;
+                    }
+                    return task;
+                }
+                // 额度不足，本轮结束，留到下一轮累积
+                tenantQueue.inTurn = false;
+                active.addLast(active.pollFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 设置租户权重（默认 1），权重越大每轮可处理的字节数越多
+     */
+    @Override
+    public void setWeight(String tenant, int weight) {
+        lock.lock();
+        try {
+            TenantQueue tenantQueue = tenants.get(tenant);
+            if (tenantQueue == null) {
+                tenantQueue = new TenantQueue(tenant);
+                tenants.put(tenant, tenantQueue);
+            }
+            tenantQueue.weight = Math.max(1, weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getCoreSize() {
+        lock.lock();
+        try {
+            return coreSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setCoreSize(int coreSize) {
+        lock.lock();
+        try {
+            this.coreSize = Math.max(0, coreSize);
+            // 唤醒空闲线程重新判断是否需要退出
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxSize() {
+        lock.lock();
+        try {
+            return maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调小时多出的线程在当前任务结束后退出
+     */
+    @Override
+    public void setMaxSize(int maxSize) {
+        lock.lock();
+        try {
+            this.maxSize = Math.max(1, maxSize);
+            while (workers < this.maxSize && queued > idleWorkers) {
+                startWorker();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxQueued() {
+        lock.lock();
+        try {
+            return maxQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMaxQueued(int maxQueued) {
+        lock.lock();
+        try {
+            this.maxQueued = maxQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxQueuedPerTenant() {
+        lock.lock();
+        try {
+            return maxQueuedPerTenant;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMaxQueuedPerTenant(int maxQueuedPerTenant) {
+        lock.lock();
+        try {
+            this.maxQueuedPerTenant = maxQueuedPerTenant;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getQuantum() {
+        lock.lock();
+        try {
+            return quantum;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setQuantum(long quantum) {
+        lock.lock();
+        try {
+            this.quantum = Math.max(1, quantum);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getWorkers() {
+        lock.lock();
+        try {
+            return workers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否处于过载丢弃状态
+     */
+    @Override
+    public boolean isShedding() {
+        lock.lock();
+        try {
+            return coDel.isDropping();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        lock.lock();
+        try {
+            return workers - idleWorkers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 各租户的队列深度与等待时间快照
+     */
+    public List<TenantStats> getTenantStats() {
+        lock.lock();
+        try {
+            List<TenantStats> list = new ArrayList<>(tenants.size() + 1);
+            long now = System.nanoTime();
+            List<TenantQueue> queues = new ArrayList<>(tenants.values());
+            if (other.rejected > 0) {
+                queues.add(other);
+            }
+            for (TenantQueue tenantQueue : queues) {
+                Task head = tenantQueue.tasks.peekFirst();
+                list.add(new TenantStats(tenantQueue.tenant, tenantQueue.weight, tenantQueue.tasks.size(),
+                        tenantQueue.submitted, tenantQueue.dispatched, tenantQueue.rejected, tenantQueue.shed,
+                        tenantQueue.dispatched == 0 ? 0 : tenantQueue.completedWaitNanos / tenantQueue.dispatched,
+                        tenantQueue.maxWaitNanos, head == null ? 0 : now - head.enqueueTime));
+            }
+            return list;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final long cost;
+        private final long enqueueTime;
+        private boolean shed;
+
+        private Task(Runnable runnable, long cost, long enqueueTime) {
+            this.runnable = runnable;
+            this.cost = cost;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private static class TenantQueue {
+        private final String tenant;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private int weight = 1;
+        private long deficit;
+        private boolean inTurn;
+
+        private long submitted;
+        private long dispatched;
+        private long rejected;
+        private long shed;
+        private long completedWaitNanos;
+        private long maxWaitNanos;
+
+        private TenantQueue(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    /**
+     * 租户统计（时间单位纳秒）
+     */
+    public static class TenantStats {
+        private final String tenant;
+        private final int weight;
+        private final int depth;
+        private final long submitted;
+        private final long dispatched;
+        private final long rejected;
+        private final long shed;
+        private final long avgWaitNanos;
+        private final long maxWaitNanos;
+        private final long headWaitNanos;
+
+        TenantStats(String tenant, int weight, int depth, long submitted, long dispatched, long rejected, long shed,
+                    long avgWaitNanos, long maxWaitNanos, long headWaitNanos) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.depth = depth;
+            this.submitted = submitted;
+            this.dispatched = dispatched;
+            this.rejected = rejected;
+            this.shed = shed;
+            this.avgWaitNanos = avgWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.headWaitNanos = headWaitNanos;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getDispatched() {
+            return dispatched;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 排队过久被丢弃的任务数
+         */
+        public long getShed() {
+            return shed;
+        }
+
+        public long getAvgWaitNanos() {
+            return avgWaitNanos;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        /**
+         * 队首任务已等待的时间
+         */
+        public long getHeadWaitNanos() {
+            return headWaitNanos;
+        }
+    }
+}
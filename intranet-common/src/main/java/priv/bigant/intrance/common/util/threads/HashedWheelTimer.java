@@ -0,0 +1,288 @@
+package priv.bigant.intrance.common.util.threads;
+
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 时间轮定时器：大量连接的超时共用一个线程，添加与取消都是 O(1)
+ * <p>
+ * 轮上每格对应一个 tick，超时按到期的 tick 放入对应格子的双向链表，超过一圈的记录剩余圈数。
+ * 添加与取消先放入无锁队列，由时间轮线程在每个 tick 开始时处理，精度为一个 tick。
+ * 任务在时间轮线程中执行，必须很快返回（关闭连接、唤醒等待的线程），耗时的处理交给其他线程池
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * 每个 tick 最多转入轮中的新超时，避免添加过快时一直处理队列而不推进时间
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+    private static volatile HashedWheelTimer defaultTimer;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean stopped;
+    /**
+     * 只由时间轮线程读写
+     */
+    private long tick;
+
+    /**
+     * @param ticksPerWheel 格子数，向上取整为 2 的幂
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("tickDuration 与 ticksPerWheel 必须大于 0");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 连接超时共用的时间轮：100ms 一格，512 格一圈
+     */
+    public static HashedWheelTimer getDefault() {
+        if (defaultTimer == null) {
+            synchronized (HashedWheelTimer.class) {
+                if (defaultTimer == null) {
+                    defaultTimer = new HashedWheelTimer("timeout-wheel", 100, TimeUnit.MILLISECONDS, 512);
+                }
+            }
+        }
+        return defaultTimer;
+    }
+
+    /**
+     * @param task 到期后在时间轮线程中执行，到期前取消则不执行
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("时间轮已停止");
+        }
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        added.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * 停止时间轮，尚未到期的任务不再执行
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * 尚未到期也未取消的超时个数
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * 已到期执行的超时个数
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    private void run() {
+        while (!stopped) {
+            waitForNextTick();
+            if (stopped) {
+                break;
+            }
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * 等到当前 tick 结束
+     */
+    private void waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        long sleep;
+        while (!stopped && (sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+            LockSupport.parkNanos(this, sleep);
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.ST_INIT) {
+                //添加后还没进入轮中就已取消
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            //已经过期的放到当前格子，本次 tick 执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 一个待执行的超时
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        /**
+         * 以下只由时间轮线程读写
+         */
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消超时，从轮中移除由时间轮线程在下一个 tick 完成
+         *
+         * @return 已到期执行或已取消时返回 false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            timer.cancelled.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            timer.pending.decrementAndGet();
+            timer.expired.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.log(Level.WARNING, "超时任务执行失败 " + task, t);
+            }
+        }
+    }
+
+    /**
+     * 轮上的一格：双向链表，只由时间轮线程访问
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    //格子按 deadline / tickNanos 向下取整，处理该格时 deadline 一定已到
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package priv.bigant.intrance.common.util.threads;
+
+/**
+ * 可被过载保护丢弃的任务，丢弃时调用 {@link #shed()} 代替 {@link #run()}
+ */
+public interface Sheddable extends Runnable {
+
+    /**
+     * 任务被丢弃，应尽快释放资源（如回复 503 并关闭连接），不要阻塞
+     */
+    void shed();
+}
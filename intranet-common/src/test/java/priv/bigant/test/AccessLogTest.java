@@ -0,0 +1,94 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.accesslog.AccessLogEntry;
+import priv.bigant.intrance.common.accesslog.AccessLogReader;
+import priv.bigant.intrance.common.accesslog.AccessLogRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class AccessLogTest {
+
+    @Test
+    public void writeRotateAndRead() throws IOException {
+        Path dir = Files.createTempDirectory("access-log");
+        // 每个段文件 1 个文件头 + 3 条记录，最多保留 2 个文件
+        AccessLog accessLog = AccessLog.start(dir.toString(), 4 * AccessLogRecord.SIZE, 2, 64);
+        AccessLogEntry entry = new AccessLogEntry();
+        for (int i = 0; i < 7; i++) {
+            entry.begin("a.bigant.club", "GET", "/index/" + i);
+            entry.setTunnelAcquireNanos(2_000);
+            entry.addBytesIn(100);
+            entry.addBytesOut(1000 + i);
+            entry.setStatus(200);
+            AccessLog.append(entry);
+        }
+        accessLog.close();
+        Assert.assertEquals(7, accessLog.getWritten());
+        Assert.assertNull(AccessLog.getInstance());
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+        Assert.assertEquals(2, files.size());
+        List<AccessLogRecord> records = new ArrayList<>();
+        for (Path file : files) {
+            AccessLogReader.read(file, records::add);
+        }
+        // 第一个文件（/index/0 ~ 2）已被删除
+        Assert.assertEquals(4, records.size());
+        AccessLogRecord first = records.get(0);
+        Assert.assertEquals("/index/3", first.getUri());
+        Assert.assertEquals("a.bigant.club", first.getHost());
+        Assert.assertEquals("GET", first.getMethod());
+        Assert.assertEquals(200, first.getStatus());
+        Assert.assertEquals(100, first.getBytesIn());
+        Assert.assertEquals(1003, first.getBytesOut());
+        Assert.assertEquals(2, first.getTunnelAcquireMicros());
+        Assert.assertEquals(-1, first.getOriginFirstByteMicros());
+        Assert.assertEquals("/index/6", records.get(3).getUri());
+
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        new File(dir.toString()).delete();
+    }
+
+    @Test
+    public void truncatesLongValues() throws IOException {
+        Path dir = Files.createTempDirectory("access-log");
+        AccessLog accessLog = AccessLog.start(dir.toString(), 1024 * 1024, 1, 64);
+        StringBuilder uri = new StringBuilder("/");
+        for (int i = 0; i < 300; i++) {
+            uri.append('x');
+        }
+        AccessLogEntry entry = new AccessLogEntry();
+        entry.begin("中文.club", "POST", uri.toString());
+        entry.setStatus(502);
+        AccessLog.append(entry);
+        accessLog.close();
+
+        List<AccessLogRecord> records = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path file : stream.collect(Collectors.toList())) {
+                AccessLogReader.read(file, records::add);
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(128, records.get(0).getUri().length());
+        Assert.assertEquals("??.club", records.get(0).getHost());
+        Assert.assertEquals(502, records.get(0).getStatus());
+    }
+}
@@ -0,0 +1,99 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.log.AsyncHandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+public class AsyncHandlerTest {
+
+    @Test
+    public void keepsOrder() throws InterruptedException {
+        CollectHandler target = new CollectHandler(null);
+        AsyncHandler handler = new AsyncHandler(new Handler[]{target}, 1024);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    handler.publish(new LogRecord(Level.INFO, id + ":" + i));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        handler.flush();
+        handler.close();
+
+        Assert.assertEquals(800, target.messages.size() + handler.getDropped());
+        int[] last = {-1, -1, -1, -1};
+        for (String message : target.messages) {
+            String[] parts = message.split(":");
+            int id = Integer.parseInt(parts[0]);
+            int i = Integer.parseInt(parts[1]);
+            Assert.assertTrue(i > last[id]);
+            last[id] = i;
+        }
+    }
+
+    @Test
+    public void dropsWhenFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectHandler target = new CollectHandler(release);
+        AsyncHandler handler = new AsyncHandler(new Handler[]{target}, 4);
+        handler.publish(new LogRecord(Level.INFO, "block"));
+        target.blocked.await();
+        for (int i = 0; i < 10; i++) {
+            handler.publish(new LogRecord(Level.FINE, "fine" + i));
+        }
+        // 队列满时 WARNING 在调用线程直接输出
+        handler.publish(new LogRecord(Level.WARNING, "warning"));
+        Assert.assertEquals("warning", target.messages.get(target.messages.size() - 1));
+        Assert.assertEquals(6, handler.getDropped());
+
+        release.countDown();
+        handler.flush();
+        handler.close();
+        Assert.assertEquals("block", target.messages.get(0));
+        Assert.assertTrue(target.messages.get(target.messages.size() - 1).contains("丢弃 6 条"));
+    }
+
+    private static class CollectHandler extends Handler {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        private CollectHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            messages.add(record.getMessage());
+            if (release != null && "block".equals(record.getMessage())) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.capture.CaptureBuffer;
+import priv.bigant.intrance.common.capture.CaptureStore;
+import priv.bigant.intrance.common.capture.CapturedExchange;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class CaptureStoreTest {
+
+    @Test
+    public void ringOverwritesOldest() throws IOException {
+        Path file = Files.createTempFile("capture", ".cap");
+        try {
+            CaptureStore store = CaptureStore.open(file, 256, 3);
+            CaptureBuffer buffer = new CaptureBuffer(store);
+            for (int i = 0; i < 5; i++) {
+                buffer.begin();
+                buffer.request(bytes("POST /notify/" + i + " HTTP/1.1\r\nHost: a\r\n\r\n"));
+                buffer.request(bytes("body" + i));
+                buffer.response(bytes("HTTP/1.1 200 OK\r\n\r\n"));
+                buffer.finish();
+            }
+            List<CapturedExchange> exchanges = CaptureStore.read(file);
+            Assert.assertEquals(3, exchanges.size());
+            Assert.assertEquals(2, exchanges.get(0).getSeq());
+            Assert.assertEquals("POST /notify/2 HTTP/1.1", exchanges.get(0).getRequestLine());
+            Assert.assertTrue(new String(exchanges.get(0).getRequest(), StandardCharsets.ISO_8859_1).endsWith("body2"));
+            Assert.assertEquals("HTTP/1.1 200 OK", exchanges.get(2).getStatusLine());
+            store.close();
+
+            // 重新打开后序号继续增长
+            store = CaptureStore.open(file, 256, 3);
+            buffer = new CaptureBuffer(store);
+            buffer.begin();
+            buffer.request(bytes("GET /again HTTP/1.1\r\n\r\n"));
+            buffer.finish();
+            store.close();
+            exchanges = CaptureStore.read(file);
+            Assert.assertEquals(5, exchanges.get(2).getSeq());
+            Assert.assertEquals("GET /again HTTP/1.1", exchanges.get(2).getRequestLine());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void truncatesLargeExchange() throws IOException {
+        Path file = Files.createTempFile("capture", ".cap");
+        try {
+            CaptureStore store = CaptureStore.open(file, 128, 2);
+            CaptureBuffer buffer = new CaptureBuffer(store);
+            buffer.begin();
+            buffer.request(bytes("GET / HTTP/1.1\r\n\r\n"));
+            buffer.response(ByteBuffer.wrap(new byte[500]));
+            buffer.finish();
+            store.close();
+            CapturedExchange exchange = CaptureStore.read(file).get(0);
+            Assert.assertFalse(exchange.isRequestTruncated());
+            Assert.assertTrue(exchange.isResponseTruncated());
+            Assert.assertEquals(128 - 32, exchange.getRequest().length + exchange.getResponse().length);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void reservesHalfForEachDirection() throws IOException {
+        Path file = Files.createTempFile("capture", ".cap");
+        try {
+            CaptureStore store = CaptureStore.open(file, 128, 2);
+            CaptureBuffer buffer = new CaptureBuffer(store);
+            buffer.begin();
+            buffer.request(ByteBuffer.wrap(new byte[500]));
+            buffer.response(bytes("HTTP/1.1 413 Payload Too Large\r\n\r\n"));
+            buffer.finish();
+            buffer.begin();
+            buffer.request(ByteBuffer.wrap(new byte[500]));
+            buffer.response(ByteBuffer.wrap(new byte[500]));
+            buffer.finish();
+            store.close();
+            List<CapturedExchange> exchanges = CaptureStore.read(file);
+            //响应较短时请求可以使用剩余空间
+            Assert.assertEquals("HTTP/1.1 413 Payload Too Large", exchanges.get(0).getStatusLine());
+            Assert.assertEquals(96 - exchanges.get(0).getResponse().length, exchanges.get(0).getRequest().length);
+            Assert.assertTrue(exchanges.get(0).isRequestTruncated());
+            Assert.assertFalse(exchanges.get(0).isResponseTruncated());
+            Assert.assertEquals(48, exchanges.get(1).getRequest().length);
+            Assert.assertEquals(48, exchanges.get(1).getResponse().length);
+            Assert.assertTrue(exchanges.get(1).isRequestTruncated());
+            Assert.assertTrue(exchanges.get(1).isResponseTruncated());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,156 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.coyote.http11.RequestSniffer;
+import priv.bigant.intrance.common.util.threads.CoDel;
+import priv.bigant.intrance.common.util.threads.FairScheduler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class FairSchedulerTest {
+
+    @Test
+    public void smallTenantNotStarved() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler("test", 1, 1, 1, TimeUnit.SECONDS, 100, 100, 16 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(9);
+        List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.execute("x", 1, () -> {
+            started.countDown();
+            try {
+                block.await();
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            String name = "a" + i;
+            scheduler.execute("a", 16 * 1024, () -> {
+                order.add(name);
+                done.countDown();
+            });
+        }
+        for (int i = 0; i < 4; i++) {
+            String name = "b" + i;
+            scheduler.execute("b", 1024, () -> {
+                order.add(name);
+                done.countDown();
+            });
+        }
+        Assert.assertEquals(8, scheduler.getQueued());
+        block.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(order.toString(), order.indexOf("b3") < order.indexOf("a1"));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void rejectedTenantsNotRetained() {
+        FairScheduler scheduler = new FairScheduler("test", 0, 1, 1, TimeUnit.SECONDS, 1, 1, 1024);
+        CountDownLatch block = new CountDownLatch(1);
+        try {
+            scheduler.execute("a", 1, () -> {
+                try {
+                    block.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            while (scheduler.getQueued() > 0) {
+                Thread.yield();
+            }
+            scheduler.execute("a", 1, () -> {
+            });
+            for (int i = 0; i < 100; i++) {
+                try {
+                    scheduler.execute("host" + i + ".test", 1, () -> {
+                    });
+                    Assert.fail();
+                } catch (RejectedExecutionException expected) {
+                }
+            }
+            List<FairScheduler.TenantStats> stats = scheduler.getTenantStats();
+            Assert.assertEquals(2, stats.size());
+            Assert.assertEquals("a", stats.get(0).getTenant());
+            Assert.assertEquals("_other", stats.get(1).getTenant());
+            Assert.assertEquals(100, stats.get(1).getRejected());
+        } finally {
+            block.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void tenantQueueBound() {
+        FairScheduler scheduler = new FairScheduler("test", 0, 1, 1, TimeUnit.SECONDS, 100, 2, 1024);
+        CountDownLatch block = new CountDownLatch(1);
+        try {
+            scheduler.execute("a", 1, () -> {
+                try {
+                    block.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            while (scheduler.getQueued() > 0) {
+                Thread.yield();
+            }
+            scheduler.execute("a", 1, () -> {
+            });
+            scheduler.execute("a", 1, () -> {
+            });
+            scheduler.execute("a", 1, () -> {
+            });
+        } finally {
+            block.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void hugeCostIsCapped() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler("test", 1, 1, 1, TimeUnit.SECONDS, 100, 100, 16 * 1024);
+        CountDownLatch done = new CountDownLatch(2);
+        //开销来自客户端的 Content-Length，不能让取任务的循环空转
+        scheduler.execute("a", 100_000_000_000_000L, done::countDown);
+        scheduler.execute("b", 1, done::countDown);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void coDelDropsOnlyStandingQueue() {
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        CoDel coDel = new CoDel(10 * ms, 100 * ms);
+        // 短暂突发不丢
+        Assert.assertFalse(coDel.onDequeue(50 * ms, 0));
+        Assert.assertFalse(coDel.onDequeue(50 * ms, 50 * ms));
+        Assert.assertFalse(coDel.onDequeue(1 * ms, 60 * ms));
+        // 持续一个 interval 高于 target 开始丢
+        Assert.assertFalse(coDel.onDequeue(50 * ms, 200 * ms));
+        Assert.assertTrue(coDel.onDequeue(50 * ms, 300 * ms));
+        Assert.assertTrue(coDel.isDropping());
+        Assert.assertFalse(coDel.onDequeue(50 * ms, 310 * ms));
+        Assert.assertTrue(coDel.onDequeue(50 * ms, 400 * ms));
+        // 时延回落即退出
+        Assert.assertFalse(coDel.onDequeue(1 * ms, 410 * ms));
+        Assert.assertFalse(coDel.isDropping());
+        Assert.assertEquals(2, coDel.getDropped());
+    }
+
+    @Test
+    public void sniffHost() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put("POST / HTTP/1.1\r\nHOST: A.bigant.club:8080\r\nContent-Length: 42\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        Assert.assertEquals("a.bigant.club", RequestSniffer.host(buffer, 0, buffer.position()));
+        Assert.assertEquals(42, RequestSniffer.contentLength(buffer, 0, buffer.position()));
+        Assert.assertNull(RequestSniffer.host(buffer, 0, 20));
+    }
+}
@@ -0,0 +1,68 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.Histogram;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+
+public class HistogramTest {
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1000, snapshot.getMax());
+        Assert.assertEquals(500.5, snapshot.getMean(), 0.001);
+        // 分桶相对误差不超过 1/16
+        assertClose(500, snapshot.getValueAtPercentile(50));
+        assertClose(990, snapshot.getValueAtPercentile(99));
+        Assert.assertEquals(1000, snapshot.getValueAtPercentile(100));
+        Assert.assertEquals(15, snapshot.getCountAtOrBelow(15));
+    }
+
+    @Test
+    public void largeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(2, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getValueAtPercentile(50));
+        Assert.assertEquals(Long.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void statusCounts() {
+        HostMetrics metrics = MetricsRegistry.host("metrics.bigant.club");
+        metrics.status(200);
+        metrics.status(200);
+        metrics.status(503);
+        metrics.status(9999);
+        Assert.assertEquals(Long.valueOf(2), metrics.getStatusCounts().get(200));
+        Assert.assertEquals(Long.valueOf(1), metrics.getStatusCounts().get(0));
+        Assert.assertEquals(4, metrics.getRequests());
+        Assert.assertSame(metrics, MetricsRegistry.host("metrics.bigant.club"));
+    }
+
+    @Test
+    public void unregisteredHostsShareOneEntry() {
+        HostMetrics unknown = MetricsRegistry.host(null);
+        Assert.assertEquals(MetricsRegistry.UNKNOWN, unknown.getHost());
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertSame(unknown, MetricsRegistry.host("scan" + i + ".example", false));
+        }
+        for (HostMetrics metrics : MetricsRegistry.all()) {
+            Assert.assertFalse(metrics.getHost(), metrics.getHost().startsWith("scan"));
+        }
+        Assert.assertNotSame(unknown, MetricsRegistry.host("registered.bigant.club", true));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 16 + 1);
+    }
+}
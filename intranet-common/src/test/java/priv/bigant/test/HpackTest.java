@@ -0,0 +1,58 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.coyote.http2.HpackDecoder;
+import priv.bigant.intrance.common.coyote.http2.HpackEncoder;
+import priv.bigant.intrance.common.coyote.http2.HpackException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HpackTest {
+
+    private static byte[] hex(String s) {
+        s = s.replace(" ", "");
+        byte[] bytes = new byte[s.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static List<String> decode(HpackDecoder decoder, byte[] block) throws HpackException {
+        List<String> headers = new ArrayList<>();
+        decoder.decode(ByteBuffer.wrap(block), (name, value) -> headers.add(name + ": " + value));
+        return headers;
+    }
+
+    /**
+     * RFC 7541 C.4 带 Huffman 编码的请求，第二个请求引用动态表
+     */
+    @Test
+    public void decodeHuffmanRequests() throws HpackException {
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        List<String> first = decode(decoder, hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"));
+        Assert.assertEquals("[:method: GET, :scheme: http, :path: /, :authority: www.example.com]", first.toString());
+
+        List<String> second = decode(decoder, hex("8286 84be 5886 a8eb 1064 9cbf"));
+        Assert.assertEquals("[:method: GET, :scheme: http, :path: /, :authority: www.example.com, cache-control: no-cache]", second.toString());
+    }
+
+    @Test
+    public void encodeRoundTrip() throws HpackException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HpackEncoder.encode(out, ":status", "200");
+        HpackEncoder.encode(out, "content-type", "text/html;charset=UTF-8");
+        HpackEncoder.encode(out, "x-bigant", "1");
+        List<String> headers = decode(new HpackDecoder(4096, 8192), out.toByteArray());
+        Assert.assertEquals("[:status: 200, content-type: text/html;charset=UTF-8, x-bigant: 1]", headers.toString());
+    }
+
+    @Test(expected = HpackException.class)
+    public void rejectInvalidIndex() throws HpackException {
+        decode(new HpackDecoder(4096, 8192), hex("ff00"));
+    }
+}
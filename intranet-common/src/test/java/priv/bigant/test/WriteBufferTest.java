@@ -0,0 +1,43 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.util.net.WriteBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class WriteBufferTest {
+
+    @Test
+    public void watermarks() throws IOException {
+        WriteBuffer writeBuffer = new WriteBuffer(16, 32, 64, 128);
+        writeBuffer.add(ByteBuffer.wrap(new byte[60]));
+        Assert.assertTrue(writeBuffer.isWritable());
+        writeBuffer.add(ByteBuffer.wrap(new byte[10]));
+        Assert.assertFalse(writeBuffer.isWritable());
+        Assert.assertEquals(70, writeBuffer.getSize());
+
+        // 每次只写出 20 字节，回落到低水位以下才恢复可写
+        writeBuffer.write((buffer, block) -> {
+            buffer.position(buffer.position() + Math.min(20, buffer.remaining()));
+            return buffer.hasRemaining();
+        }, false);
+        Assert.assertEquals(50, writeBuffer.getSize());
+        Assert.assertFalse(writeBuffer.isWritable());
+
+        writeBuffer.write((buffer, block) -> {
+            buffer.position(buffer.limit());
+            return false;
+        }, false);
+        Assert.assertEquals(0, writeBuffer.getSize());
+        Assert.assertTrue(writeBuffer.isWritable());
+    }
+
+    @Test(expected = IOException.class)
+    public void overflow() throws IOException {
+        WriteBuffer writeBuffer = new WriteBuffer(16, 32, 64, 128);
+        writeBuffer.add(ByteBuffer.wrap(new byte[100]));
+        writeBuffer.add(ByteBuffer.wrap(new byte[29]));
+    }
+}
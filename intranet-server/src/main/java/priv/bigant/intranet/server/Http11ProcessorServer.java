@@ -1,9 +1,8 @@
 package priv.bigant.intranet.server;
 
-import priv.bigant.intrance.common.Config;
-import priv.bigant.intrance.common.HttpSocketManager;
 import priv.bigant.intrance.common.SocketBean;
-import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.cache.SliceCache;
 import priv.bigant.intrance.common.coyote.http11.Http11Processor;
 import priv.bigant.intrance.common.log.LogUtil;
 import priv.bigant.intrance.common.util.net.NioSelectorPool;
@@ -12,37 +11,52 @@ import java.io.IOException;
 import java.util.logging.Logger;
 
 public class Http11ProcessorServer extends Http11Processor {
-    private HttpCommunication httpCommunication;
+    private String host;
     private SocketBean receiver;
     private static final Logger LOG = LogUtil.getLog();
     private final NioSelectorPool nioSelectorPool = new NioSelectorPool();
+    /**
+     * 集群模式下替换为 ClusterTunnelSource
+     */
+    private static volatile TunnelSource tunnelSource = HttpTunnelSource.INSTANCE;
+    private static volatile SliceCache sliceCache;
 
     public Http11ProcessorServer(int maxHttpHeaderSize, String relaxedPathChars, String relaxedQueryChars) {
         super(maxHttpHeaderSize, relaxedPathChars, relaxedQueryChars);
     }
 
     @Override
-    public SocketBean getSocketBean() {
+    public SocketBean getSocketBean() throws IOException {
 
-        String host = super.request.getHost();
+        host = super.request.getHost();
+        receiver = tunnelSource.acquire(host);
+        return receiver;
+    }
 
-        LOG.fine("获取socketBean host=" + host);
+    @Override
+    protected TunnelSource getTunnelSource() {
+        return tunnelSource;
+    }
 
-        httpCommunication = HttpSocketManager.get(host);
-        if (httpCommunication == null)
-            return null;
-        if (httpCommunication.isClose()) {
-            LOG.info("客户端已关闭。。。。。。。。。。。。。。。。。。。。。。。。");
-            httpCommunication.close();
-            return null;
-        }
-        receiver = httpCommunication.getSocketBean();
-        return receiver;
+    public static void setTunnelSource(TunnelSource tunnelSource) {
+        Http11ProcessorServer.tunnelSource = tunnelSource;
+    }
+
+    /**
+     * 开启大文件分片缓存，传 null 关闭
+     */
+    public static void setSliceCache(SliceCache cache) {
+        sliceCache = cache;
+    }
+
+    @Override
+    protected SliceCache getSliceCache() {
+        return sliceCache;
     }
 
     @Override
     public int getMaxHeaderCount() {
-        return 50;
+        return ServerConfig.getSeverConfig().getMaxHeaderCount();
     }
 
     @Override
@@ -58,16 +72,16 @@ public class Http11ProcessorServer extends Http11Processor {
 
     @Override
     public void close() throws IOException {
-        LOG.fine("server close.............." + httpCommunication);
+        LOG.fine("server close.............." + host);
         socketWrapper.close();
+        releaseTunnel();
+    }
 
+    @Override
+    protected void releaseTunnel() {
         if (receiver != null) {
-            receiver.skip();
-            receiver.close();
-            if (httpCommunication != null) {
-                LOG.fine("server close add client socket..............");
-                httpCommunication.createSocketBean();
-            }
+            tunnelSource.release(host, receiver);
+            receiver = null;
         }
     }
 }
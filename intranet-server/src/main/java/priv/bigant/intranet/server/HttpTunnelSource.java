@@ -0,0 +1,67 @@
+package priv.bigant.intranet.server;
+
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intranet.server.limit.HostLimiter;
+import priv.bigant.intranet.server.limit.HostLimiters;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * 从已注册的客户端获取穿透通道，用完后关闭并通知客户端补充新连接
+ * <p>
+ * 获取前按域名限流，超过速率返回 429，超过并发上限返回 503，等待客户端连上来超时返回 504
+ */
+public class HttpTunnelSource implements TunnelSource {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    public static final HttpTunnelSource INSTANCE = new HttpTunnelSource();
+
+    @Override
+    public SocketBean acquire(String host) throws RejectedRequestException {
+        LOG.fine("获取socketBean host=" + host);
+
+        HttpCommunication httpCommunication = HttpSocketManager.get(host);
+        if (httpCommunication == null)
+            return null;
+        //存活状态由心跳维护，这里只读标记
+        if (!httpCommunication.isAlive()) {
+            LOG.info("客户端已关闭。。。。。。。。。。。。。。。。。。。。。。。。");
+            httpCommunication.close();
+            return null;
+        }
+
+        //域名已注册才限流，避免任意 Host 头占用限流器
+        HostLimiter limiter = HostLimiters.get(host);
+        limiter.acquire();
+        SocketBean socketBean = httpCommunication.getSocketBean();
+        if (socketBean == null) {
+            limiter.release();
+            throw new RejectedRequestException(HttpResponseStatus.SC_GATEWAY_TIMEOUT, host + " 等待客户端连接超时");
+        }
+        return socketBean;
+    }
+
+    @Override
+    public void release(String host, SocketBean socketBean) {
+        HostLimiters.get(host).release();
+        try {
+            socketBean.skip();
+        } catch (IOException e) {
+            LOG.fine("skip socketBean error " + e);
+        }
+        socketBean.close();
+        HttpCommunication httpCommunication = HttpSocketManager.get(host);
+        if (httpCommunication != null) {
+            LOG.fine("server close add client socket..............");
+            httpCommunication.createSocketBean();
+        }
+    }
+}
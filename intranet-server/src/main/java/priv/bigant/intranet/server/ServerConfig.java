@@ -1,41 +1,415 @@
 package priv.bigant.intranet.server;
 
 import priv.bigant.intrance.common.Config;
+import priv.bigant.intranet.server.admin.ServerConfigMXBean;
 
-public class ServerConfig extends Config {
+public class ServerConfig extends Config implements ServerConfigMXBean {
     private int socketTimeOut = 5000;
     private int httpPort = 80;
 
     private int corePoolSize = 5;
     private int maximumPoolSize = 30;
     private int keepAliveTime = 1000;
-    private int waitSocketTime = 200000;
+    private volatile int waitSocketTime = 200000;
 
-    private ServerConfig() {
+    /**
+     * 单个域名每秒允许的请求数与突发量，小于等于 0 不限速
+     */
+    private volatile double hostRateLimit = 100;
+    private volatile int hostRateBurst = 200;
+    /**
+     * 单个域名同时转发中的最大请求数，小于等于 0 不限制
+     */
+    private volatile int hostMaxInFlight = 10;
+
+    /**
+     * 管理端口（状态与指标），默认只监听本机，端口小于等于 0 不启用
+     */
+    private String adminHost = "127.0.0.1";
+    private int adminPort = 55680;
+    /**
+     * 管理端口数据的刷新间隔（毫秒），请求只读取最近一次生成的快照
+     */
+    private int adminSnapshotInterval = 1000;
+
+    /**
+     * 集群端口，小于等于 0 不启用集群；clusterHost 既是监听地址也是通告给其他节点的地址
+     */
+    private String clusterHost = "127.0.0.1";
+    private int clusterPort = 0;
+    /**
+     * 种子节点 host:port,host:port，启动时通过它们加入集群
+     */
+    private String clusterSeeds;
+    private int clusterGossipInterval = 1000;
+    /**
+     * 超过该时间（毫秒）没有心跳变化的节点视为下线
+     */
+    private int clusterNodeTimeout = 5000;
+    /**
+     * 到每个节点预建的转发连接数
+     */
+    private int clusterPoolSize = 4;
+    private int clusterConnectTimeout = 2000;
+
+    /**
+     * 向客户端发送心跳的间隔（毫秒），连续 heartbeatMissedBeats 个间隔收不到客户端任何数据视为断开
+     */
+    private int heartbeatInterval = 1000;
+    private int heartbeatMissedBeats = 3;
+    /**
+     * 还没回应过心跳的客户端的超时（毫秒）：旧版本客户端不回应心跳，只按 listenerTime（默认 5 秒）发送探测
+     */
+    private int heartbeatLegacyTimeout = 15000;
+
+    /**
+     * HTTPS 端口，小于等于 0 不启用；sslKeyStore 为默认证书，sslCertDir 下的 域名.p12 / 域名.jks 按 SNI 选用
+     */
+    private int sslPort = 0;
+    private String sslKeyStore;
+    private String sslKeyStorePassword = "changeit";
+    private String sslKeyStoreType = "PKCS12";
+    private String sslCertDir;
+    /**
+     * 允许的协议，逗号分隔，为空使用 JDK 默认
+     */
+    private String sslProtocols;
+    private int sslHandshakeTimeout = 10000;
+    /**
+     * 会话缓存的条数与有效期（秒），用于会话复用
+     */
+    private int sslSessionCacheSize = 20480;
+    private int sslSessionTimeout = 86400;
+    /**
+     * 是否启用无状态的 session ticket（需要在创建 SSLContext 之前设置）
+     */
+    private boolean sslSessionTickets = true;
+    /**
+     * 加解密缓冲池最多保留的空闲缓冲数
+     */
+    private int sslBufferPoolSize = 1024;
+    /**
+     * 与客户端之间的通信连接与数据连接是否使用 TLS（证书同 sslKeyStore / sslCertDir），需与客户端的 tunnelSsl 一致
+     */
+    private boolean tunnelSsl;
+    /**
+     * 大文件分片缓存目录，为空不启用；按 sliceSize 切分源站的 206 响应缓存到磁盘，最多占用 sliceCacheSize，
+     * 对象信息超过 sliceCacheTtl（毫秒）后下一次请求向源站校验 ETag
+     */
+    private String sliceCacheDir;
+    private long sliceCacheSize = 1024L * 1024 * 1024;
+    private int sliceSize = 1024 * 1024;
+    private int sliceCacheTtl = 60000;
 
+    private ServerConfig() {
+        setAccessLogDir("logs/access");
     }
 
+    @Override
     public int getWaitSocketTime() {
         return waitSocketTime;
     }
 
+    @Override
+    public void setWaitSocketTime(int waitSocketTime) {
+        this.waitSocketTime = waitSocketTime;
+    }
+
+
+    @Override
+    public double getHostRateLimit() {
+        return hostRateLimit;
+    }
+
+    @Override
+    public void setHostRateLimit(double hostRateLimit) {
+        this.hostRateLimit = hostRateLimit;
+    }
+
+    @Override
+    public int getHostRateBurst() {
+        return hostRateBurst;
+    }
+
+    @Override
+    public void setHostRateBurst(int hostRateBurst) {
+        this.hostRateBurst = hostRateBurst;
+    }
+
+    @Override
+    public int getHostMaxInFlight() {
+        return hostMaxInFlight;
+    }
+
+    @Override
+    public void setHostMaxInFlight(int hostMaxInFlight) {
+        this.hostMaxInFlight = hostMaxInFlight;
+    }
+
+    public String getAdminHost() {
+        return adminHost;
+    }
+
+    public void setAdminHost(String adminHost) {
+        this.adminHost = adminHost;
+    }
+
+    public int getAdminPort() {
+        return adminPort;
+    }
+
+    public void setAdminPort(int adminPort) {
+        this.adminPort = adminPort;
+    }
+
+    public int getAdminSnapshotInterval() {
+        return adminSnapshotInterval;
+    }
+
+    public void setAdminSnapshotInterval(int adminSnapshotInterval) {
+        this.adminSnapshotInterval = adminSnapshotInterval;
+    }
+
+    public String getClusterHost() {
+        return clusterHost;
+    }
+
+    public void setClusterHost(String clusterHost) {
+        this.clusterHost = clusterHost;
+    }
+
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    public void setClusterPort(int clusterPort) {
+        this.clusterPort = clusterPort;
+    }
+
+    public String getClusterSeeds() {
+        return clusterSeeds;
+    }
+
+    public void setClusterSeeds(String clusterSeeds) {
+        this.clusterSeeds = clusterSeeds;
+    }
+
+    public int getClusterGossipInterval() {
+        return clusterGossipInterval;
+    }
+
+    public void setClusterGossipInterval(int clusterGossipInterval) {
+        this.clusterGossipInterval = clusterGossipInterval;
+    }
+
+    public int getClusterNodeTimeout() {
+        return clusterNodeTimeout;
+    }
+
+    public void setClusterNodeTimeout(int clusterNodeTimeout) {
+        this.clusterNodeTimeout = clusterNodeTimeout;
+    }
+
+    public int getClusterPoolSize() {
+        return clusterPoolSize;
+    }
+
+    public void setClusterPoolSize(int clusterPoolSize) {
+        this.clusterPoolSize = clusterPoolSize;
+    }
+
+    public int getClusterConnectTimeout() {
+        return clusterConnectTimeout;
+    }
+
+    public void setClusterConnectTimeout(int clusterConnectTimeout) {
+        this.clusterConnectTimeout = clusterConnectTimeout;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public int getHeartbeatMissedBeats() {
+        return heartbeatMissedBeats;
+    }
+
+    public void setHeartbeatMissedBeats(int heartbeatMissedBeats) {
+        this.heartbeatMissedBeats = heartbeatMissedBeats;
+    }
+
+    public int getHeartbeatLegacyTimeout() {
+        return heartbeatLegacyTimeout;
+    }
+
+    public void setHeartbeatLegacyTimeout(int heartbeatLegacyTimeout) {
+        this.heartbeatLegacyTimeout = heartbeatLegacyTimeout;
+    }
+
+    public int getSslPort() {
+        return sslPort;
+    }
+
+    public void setSslPort(int sslPort) {
+        this.sslPort = sslPort;
+    }
+
+    public String getSslKeyStore() {
+        return sslKeyStore;
+    }
+
+    public void setSslKeyStore(String sslKeyStore) {
+        this.sslKeyStore = sslKeyStore;
+    }
+
+    public String getSslKeyStorePassword() {
+        return sslKeyStorePassword;
+    }
+
+    public void setSslKeyStorePassword(String sslKeyStorePassword) {
+        this.sslKeyStorePassword = sslKeyStorePassword;
+    }
+
+    public String getSslKeyStoreType() {
+        return sslKeyStoreType;
+    }
+
+    public void setSslKeyStoreType(String sslKeyStoreType) {
+        this.sslKeyStoreType = sslKeyStoreType;
+    }
+
+    public String getSslCertDir() {
+        return sslCertDir;
+    }
+
+    public void setSslCertDir(String sslCertDir) {
+        this.sslCertDir = sslCertDir;
+    }
+
+    public String getSslProtocols() {
+        return sslProtocols;
+    }
+
+    public void setSslProtocols(String sslProtocols) {
+        this.sslProtocols = sslProtocols;
+    }
+
+    public int getSslHandshakeTimeout() {
+        return sslHandshakeTimeout;
+    }
+
+    public void setSslHandshakeTimeout(int sslHandshakeTimeout) {
+        this.sslHandshakeTimeout = sslHandshakeTimeout;
+    }
+
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public void setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
+    public boolean isSslSessionTickets() {
+        return sslSessionTickets;
+    }
+
+    public void setSslSessionTickets(boolean sslSessionTickets) {
+        this.sslSessionTickets = sslSessionTickets;
+    }
+
+    public int getSslBufferPoolSize() {
+        return sslBufferPoolSize;
+    }
+
+    public void setSslBufferPoolSize(int sslBufferPoolSize) {
+        this.sslBufferPoolSize = sslBufferPoolSize;
+    }
+
+    public boolean isTunnelSsl() {
+        return tunnelSsl;
+    }
+
+    public void setTunnelSsl(boolean tunnelSsl) {
+        this.tunnelSsl = tunnelSsl;
+    }
+
+    public String getSliceCacheDir() {
+        return sliceCacheDir;
+    }
+
+    public void setSliceCacheDir(String sliceCacheDir) {
+        this.sliceCacheDir = sliceCacheDir;
+    }
+
+    public long getSliceCacheSize() {
+        return sliceCacheSize;
+    }
+
+    public void setSliceCacheSize(long sliceCacheSize) {
+        this.sliceCacheSize = sliceCacheSize;
+    }
+
+    public int getSliceSize() {
+        return sliceSize;
+    }
+
+    public void setSliceSize(int sliceSize) {
+        this.sliceSize = sliceSize;
+    }
+
+    public int getSliceCacheTtl() {
+        return sliceCacheTtl;
+    }
+
+    public void setSliceCacheTtl(int sliceCacheTtl) {
+        this.sliceCacheTtl = sliceCacheTtl;
+    }
 
     public int getHttpPort() {
         return httpPort;
     }
 
+    public void setHttpPort(int httpPort) {
+        this.httpPort = httpPort;
+    }
+
     public int getCorePoolSize() {
         return corePoolSize;
     }
 
+    public void setCorePoolSize(int corePoolSize) {
+        this.corePoolSize = corePoolSize;
+    }
+
     public int getMaximumPoolSize() {
         return maximumPoolSize;
     }
 
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
     public int getKeepAliveTime() {
         return keepAliveTime;
     }
 
+    public void setKeepAliveTime(int keepAliveTime) {
+        this.keepAliveTime = keepAliveTime;
+    }
+
     public static ServerConfig getSeverConfig() {
         if (!(config instanceof ServerConfig)) {
             synchronized (Config.class) {
@@ -1,26 +1,175 @@
 package priv.bigant.intranet.server;
 
 
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.lang3.StringUtils;
+import priv.bigant.intrance.common.ConfigWatcher;
+import priv.bigant.intrance.common.HttpIntranetServiceProcessAbs;
+import priv.bigant.intrance.common.HttpSocketManager;
 import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.cache.SliceCache;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ThreadPool;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SslTunnel;
+import priv.bigant.intranet.server.admin.AdminProcessor;
+import priv.bigant.intranet.server.admin.AdminSnapshot;
+import priv.bigant.intranet.server.cluster.ClusterNode;
+import priv.bigant.intranet.server.cluster.ClusterTunnelSource;
+import priv.bigant.intranet.server.limit.HostLimiters;
 import priv.bigant.intranet.server.process.CommunicationProcessor;
 import priv.bigant.intranet.server.process.HttpProcessor;
+import priv.bigant.intranet.server.process.HttpsProcessor;
 import priv.bigant.intranet.server.process.IntranetProcessor;
+import priv.bigant.intranet.server.ssl.SslContextFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 
 
 public class Start {
-    public static void main(String[] args) {
-        ServerConfig config = ServerConfig.getSeverConfig();
+
+    private static final Logger LOG = LogUtil.getLog();
+    /**
+     * 端口、证书、集群等在启动时使用一次的配置，修改后需要重启
+     */
+    private static final String[] RESTART_REQUIRED = {"Port", "Host", "ssl", "tunnelSsl", "cluster", "accessLog", "admission", "slice", "configFile"};
+
+    public static void main(String[] args) throws Exception {
+        ServerConfig config = createdConfig();
+        JmxUtil.register("Config", "server", config);
+        if (StringUtils.isNotBlank(config.getAccessLogDir())) {
+            AccessLog.start(config.getAccessLogDir(), config.getAccessLogSegmentSize(), config.getAccessLogMaxSegments(), config.getAccessLogRingSize());
+        }
+        if (StringUtils.isNotBlank(config.getSliceCacheDir())) {
+            Http11ProcessorServer.setSliceCache(SliceCache.open(config.getSliceCacheDir(), config.getSliceSize(), config.getSliceCacheSize(), config.getSliceCacheTtl()));
+        }
+        if (config.getClusterPort() > 0) {
+            ClusterNode clusterNode = new ClusterNode(config.getClusterHost(), config.getClusterPort(), HttpTunnelSource.INSTANCE, () -> HttpSocketManager.snapshot().keySet());
+            clusterNode.setSeeds(config.getClusterSeeds());
+            clusterNode.setGossipInterval(config.getClusterGossipInterval());
+            clusterNode.setNodeTimeout(config.getClusterNodeTimeout());
+            clusterNode.setPoolSize(config.getClusterPoolSize());
+            clusterNode.setConnectTimeout(config.getClusterConnectTimeout());
+            clusterNode.setSocketProfile(config.getTunnelSocket());
+            clusterNode.setReplyTimeout(config.getWaitSocketTime() + config.getClusterConnectTimeout());
+            clusterNode.start();
+            ClusterNode.setInstance(clusterNode);
+            JmxUtil.register("ThreadPool", "Cluster", new ThreadPool(clusterNode.getExecutor()));
+            Http11ProcessorServer.setTunnelSource(new ClusterTunnelSource(clusterNode, HttpTunnelSource.INSTANCE));
+        }
+        //HTTPS 与穿透连接共用一个 SSLContext（同一份证书与会话缓存）
+        SSLContext sslContext = config.getSslPort() > 0 || config.isTunnelSsl() ? SslContextFactory.create(config) : null;
+        SslTunnel sslTunnel = null;
+        if (config.isTunnelSsl()) {
+            sslTunnel = new SslTunnel(sslContext, false, SslContextFactory.protocols(config), config.getSslHandshakeTimeout(), config.getSslBufferPoolSize());
+        }
+
         CommunicationProcessor httpIntranetConnectorProcess = new CommunicationProcessor(config);
+        httpIntranetConnectorProcess.setSslTunnel(sslTunnel);
         ServerConnector testHttpIntranetConnectorProcess = new ServerConnector("CommunicationProcessor", httpIntranetConnectorProcess, config.getIntranetPort(), config);
+        testHttpIntranetConnectorProcess.setSocketProfile(config.getTunnelSocket());
         testHttpIntranetConnectorProcess.start();
 
         IntranetProcessor intranetProcessor = new IntranetProcessor(config);
+        intranetProcessor.setSslTunnel(sslTunnel);
         ServerConnector testHttpIntranetAcceptProcess = new ServerConnector("IntranetProcessor", intranetProcessor, config.getHttpAcceptPort(), config);
+        testHttpIntranetAcceptProcess.setSocketProfile(config.getTunnelSocket());
         testHttpIntranetAcceptProcess.start();
 
+        List<HttpIntranetServiceProcessAbs> httpProcessors = new ArrayList<>();
         HttpProcessor httpProcessor = new HttpProcessor(config);
+        httpProcessors.add(httpProcessor);
         ServerConnector testHttpIntranetServiceProcess = new ServerConnector("HttpProcessor", httpProcessor, config.getHttpPort(), config);
         testHttpIntranetServiceProcess.start();
+
+        ServerConnector httpsConnector = null;
+        if (config.getSslPort() > 0) {
+            HttpsProcessor httpsProcessor = new HttpsProcessor(config, sslContext);
+            httpProcessors.add(httpsProcessor);
+            httpsConnector = new ServerConnector("HttpsProcessor", httpsProcessor, config.getSslPort(), config);
+            httpsConnector.start();
+        }
+
+        if (config.getAdminPort() > 0) {
+            AdminSnapshot adminSnapshot = new AdminSnapshot();
+            adminSnapshot.addConnector(testHttpIntranetConnectorProcess);
+            adminSnapshot.addConnector(testHttpIntranetAcceptProcess);
+            adminSnapshot.addConnector(testHttpIntranetServiceProcess);
+            if (httpsConnector != null) {
+                adminSnapshot.addConnector(httpsConnector);
+            }
+            AdminProcessor adminProcessor = new AdminProcessor(adminSnapshot, config.getAdminSnapshotInterval());
+            ServerConnector adminConnector = new ServerConnector("AdminProcessor", adminProcessor, config.getAdminHost(), config.getAdminPort(), config);
+            adminSnapshot.addConnector(adminConnector);
+            adminConnector.start();
+        }
+
+        ConfigWatcher configWatcher = new ConfigWatcher(Paths.get(configFile()), config, System.getProperties());
+        configWatcher.addListener((previous, changed) -> {
+            for (HttpIntranetServiceProcessAbs process : httpProcessors) {
+                process.reconfigure();
+            }
+            for (ThreadPoolExecutor executor : new ThreadPoolExecutor[]{httpIntranetConnectorProcess.getExecutor(), intranetProcessor.getExecutor()}) {
+                ThreadPool.resize(executor, config.getCorePoolSize(), config.getMaximumPoolSize());
+                executor.setKeepAliveTime(config.getKeepAliveTime(), TimeUnit.MILLISECONDS);
+            }
+            HostLimiters.applyDefaults();
+            warnRestartRequired(changed);
+        });
+        configWatcher.start();
+    }
+
+    /**
+     * 心跳、等待数据连接超时、缓冲大小等每次使用时读取配置，重新加载后对新连接直接生效；这里只提示不能在运行中生效的配置
+     */
+    private static void warnRestartRequired(Set<String> changed) {
+        for (String name : changed) {
+            for (String key : RESTART_REQUIRED) {
+                if (name.startsWith(key) || name.endsWith(key)) {
+                    LOG.warning("配置 " + name + " 需要重启后生效");
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String configFile() {
+        String configFile = System.getProperty("configFile");//通过启动参数指定配置文件位置
+        if (StringUtils.isBlank(configFile))
+            configFile = System.getProperty("user.dir") + "/server.properties";
+        return configFile;
+    }
+
+    /**
+     * 加载配置文件，文件不存在时使用默认配置；启动参数 -Dxxx 覆盖文件中的同名配置
+     */
+    public static ServerConfig createdConfig() throws IOException, InvocationTargetException, IllegalAccessException {
+        ServerConfig serverConfig = ServerConfig.getSeverConfig();
+        String configFile = configFile();
+        Properties properties = new Properties();
+        if (new File(configFile).isFile()) {
+            try (FileInputStream inputStream = new FileInputStream(configFile)) {
+                properties.load(inputStream);
+            }
+        } else {
+            LOG.info("未找到配置文件 " + configFile + "，使用默认配置");
+        }
+        properties.putAll(System.getProperties());
+        BeanUtils.copyProperties(serverConfig, properties);
+        return serverConfig;
     }
 }
@@ -0,0 +1,187 @@
+package priv.bigant.intranet.server.admin;
+
+import priv.bigant.intrance.common.ProcessBase;
+import priv.bigant.intrance.common.ServerConnector.ConnectorThread;
+import priv.bigant.intrance.common.log.LogUtil;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 管理端口处理器
+ * <p>
+ * GET /metrics 返回 Prometheus 文本，GET /status 返回 JSON；内容来自 {@link AdminSnapshot} 定时生成的快照
+ */
+public class AdminProcessor extends ProcessBase {
+
+    private static final Logger LOG = LogUtil.getLog();
+    private static final int MAX_REQUEST_SIZE = 4096;
+    private static final long WRITE_TIMEOUT = 5000;
+
+    private final AdminSnapshot snapshot;
+    private final ScheduledExecutorService refresher;
+    /**
+     * 写响应的线程，只有一个，抓取方多时排队
+     */
+    private final ThreadPoolExecutor writer;
+
+    public AdminProcessor(AdminSnapshot snapshot, int snapshotInterval) {
+        this.snapshot = snapshot;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "admin-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64), r -> {
+            Thread thread = new Thread(r, "admin-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshot.refresh();
+        refresher.scheduleWithFixedDelay(snapshot::refresh, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "AdminProcess";
+    }
+
+    @Override
+    public void showdown() {
+        refresher.shutdown();
+        writer.shutdown();
+    }
+
+    @Override
+    public void accept(ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException {
+        connectorThread.register(socketChannel, SelectionKey.OP_READ, ByteBuffer.allocate(MAX_REQUEST_SIZE));
+    }
+
+    @Override
+    public void read(ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+        ByteBuffer buffer = (ByteBuffer) selectionKey.attachment();
+        int read = socketChannel.read(buffer);
+        if (read < 0) {
+            selectionKey.cancel();
+            socketChannel.close();
+            return;
+        }
+        int end = headerEnd(buffer);
+        if (end < 0) {
+            if (!buffer.hasRemaining()) {
+                selectionKey.cancel();
+                socketChannel.close();
+            }
+            return;
+        }
+        selectionKey.cancel();
+        byte[] response = response(new String(buffer.array(), 0, end, StandardCharsets.ISO_8859_1));
+        try {
+            writer.execute(() -> write(socketChannel, ByteBuffer.wrap(response)));
+        } catch (RejectedExecutionException e) {
+            LOG.fine("admin 请求过多");
+            socketChannel.close();
+        }
+    }
+
+    /**
+     * 根据请求行选择快照
+     */
+    private byte[] response(String request) {
+        int lineEnd = request.indexOf('\r');
+        String[] requestLine = (lineEnd < 0 ? request : request.substring(0, lineEnd)).split(" ");
+        if (requestLine.length < 2) {
+            return response(400, "Bad Request", "text/plain", "bad request\n".getBytes(StandardCharsets.UTF_8), false);
+        }
+        boolean head = "HEAD".equals(requestLine[0]);
+        if (!head && !"GET".equals(requestLine[0])) {
+            return response(405, "Method Not Allowed", "text/plain", "method not allowed\n".getBytes(StandardCharsets.UTF_8), false);
+        }
+        String path = requestLine[1];
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        switch (path) {
+            case "/metrics":
+                return response(200, "OK", "text/plain; version=0.0.4; charset=utf-8", snapshot.getPrometheus(), head);
+            case "/status":
+            case "/status.json":
+                return response(200, "OK", "application/json; charset=utf-8", snapshot.getJson(), head);
+            default:
+                return response(404, "Not Found", "text/plain", "try /metrics or /status\n".getBytes(StandardCharsets.UTF_8), head);
+        }
+    }
+
+    private byte[] response(int status, String reason, String contentType, byte[] body, boolean head) {
+        String headers = "HTTP/1.1 " + status + " " + reason + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "X-Snapshot-Time: " + snapshot.getGeneratedAt() + "\r\n" +
+                "Cache-Control: no-cache\r\n" +
+                "Connection: close\r\n\r\n";
+        byte[] headBytes = headers.getBytes(StandardCharsets.ISO_8859_1);
+        if (head) {
+            return headBytes;
+        }
+        byte[] response = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    /**
+     * 非阻塞写出，写不动时用临时 Selector 等待，超时关闭
+     */
+    private void write(SocketChannel socketChannel, ByteBuffer buffer) {
+        try (Selector selector = Selector.open()) {
+            SelectionKey key = null;
+            while (buffer.hasRemaining()) {
+                if (socketChannel.write(buffer) > 0) {
+                    continue;
+                }
+                if (key == null) {
+                    key = socketChannel.register(selector, SelectionKey.OP_WRITE);
+                }
+                if (selector.select(WRITE_TIMEOUT) == 0) {
+                    throw new SocketTimeoutException("admin 响应写超时");
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            LOG.fine("admin 响应写出失败 " + e);
+        } finally {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                LOG.fine("admin 关闭连接失败 " + e);
+            }
+        }
+    }
+
+    /**
+     * 请求头结束位置（\r\n\r\n 之后），未结束返回 -1
+     */
+    private static int headerEnd(ByteBuffer buffer) {
+        byte[] array = buffer.array();
+        for (int i = 3; i < buffer.position(); i++) {
+            if (array[i] == '\n' && array[i - 1] == '\r' && array[i - 2] == '\n' && array[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
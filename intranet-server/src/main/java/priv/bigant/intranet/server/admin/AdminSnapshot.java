@@ -0,0 +1,488 @@
+package priv.bigant.intranet.server.admin;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import priv.bigant.intrance.common.HttpIntranetServiceProcessAbs;
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.accesslog.AccessLog;
+import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.coyote.http2.Http2Processor;
+import priv.bigant.intrance.common.log.AsyncHandler;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.metrics.Histogram;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.LoopStats;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intrance.common.util.net.SslMetrics;
+import priv.bigant.intrance.common.util.net.WriteBufferMetrics;
+import priv.bigant.intrance.common.util.threads.FairScheduler;
+import priv.bigant.intranet.server.cluster.ClusterDirectory;
+import priv.bigant.intranet.server.cluster.ClusterNode;
+import priv.bigant.intranet.server.cluster.NodeState;
+import priv.bigant.intranet.server.cluster.PeerPool;
+import priv.bigant.intranet.server.limit.HostLimiter;
+import priv.bigant.intranet.server.limit.HostLimiters;
+import priv.bigant.intranet.server.process.CommunicationProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 定时生成管理端口的输出（Prometheus 文本与 JSON），请求只返回最近一次的结果，抓取不会触及转发路径上的锁
+ */
+public class AdminSnapshot {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    /**
+     * Prometheus 直方图的分桶上界（秒）
+     */
+    private static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+
+    private final List<ServerConnector> connectors = new CopyOnWriteArrayList<>();
+
+    private volatile byte[] prometheus = new byte[0];
+    private volatile byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+    private volatile long generatedAt;
+
+    public void addConnector(ServerConnector connector) {
+        connectors.add(connector);
+    }
+
+    public byte[] getPrometheus() {
+        return prometheus;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public long getGeneratedAt() {
+        return generatedAt;
+    }
+
+    /**
+     * 重新生成快照，由管理线程定时调用
+     */
+    public void refresh() {
+        try {
+            Map<String, HttpCommunication> routes = new TreeMap<>(HttpSocketManager.snapshot());
+            List<HostMetrics> hosts = MetricsRegistry.all();
+            StringBuilder text = new StringBuilder(4096);
+            JSONObject root = new JSONObject(true);
+            root.put("time", System.currentTimeMillis());
+            root.put("routes", routes(routes, text));
+            root.put("hosts", hosts(hosts, text));
+            root.put("executors", executors(text));
+            root.put("connectors", connectors(text));
+            root.put("writeBuffer", writeBuffer(text));
+            if (SslMetrics.getHandshakes() + SslMetrics.getFailed() > 0) {
+                root.put("tls", tls(text));
+            }
+            type(text, "intranet_log_dropped_total", "counter");
+            text.append("intranet_log_dropped_total ").append(AsyncHandler.getTotalDropped()).append('\n');
+            root.put("logDropped", AsyncHandler.getTotalDropped());
+            AccessLog accessLog = AccessLog.getInstance();
+            if (accessLog != null) {
+                type(text, "intranet_access_log_written_total", "counter");
+                text.append("intranet_access_log_written_total ").append(accessLog.getWritten()).append('\n');
+                type(text, "intranet_access_log_dropped_total", "counter");
+                text.append("intranet_access_log_dropped_total ").append(accessLog.getDropped()).append('\n');
+                JSONObject object = new JSONObject(true);
+                object.put("dir", accessLog.getDir().toAbsolutePath().toString());
+                object.put("written", accessLog.getWritten());
+                object.put("dropped", accessLog.getDropped());
+                root.put("accessLog", object);
+            }
+            ClusterNode clusterNode = ClusterNode.getInstance();
+            if (clusterNode != null) {
+                root.put("cluster", cluster(clusterNode, text));
+            }
+            prometheus = text.toString().getBytes(StandardCharsets.UTF_8);
+            json = JSON.toJSONString(root).getBytes(StandardCharsets.UTF_8);
+            generatedAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "生成管理快照失败", e);
+        }
+    }
+
+    private JSONArray routes(Map<String, HttpCommunication> routes, StringBuilder text) {
+        JSONArray array = new JSONArray();
+        type(text, "intranet_route_registered", "gauge");
+        text.append("intranet_route_registered ").append(routes.size()).append('\n');
+        StringBuilder inFlight = new StringBuilder();
+        type(text, "intranet_tunnel_idle", "gauge");
+        type(inFlight, "intranet_host_in_flight", "gauge");
+        for (Map.Entry<String, HttpCommunication> entry : routes.entrySet()) {
+            HttpCommunication communication = entry.getValue();
+            String host = entry.getKey();
+            int idle = communication.getIdleSocketBeans();
+            HostLimiter limiter = HostLimiters.get(host);
+            JSONObject route = new JSONObject(true);
+            route.put("host", host);
+            route.put("closed", !communication.isAlive());
+            route.put("rttMicros", communication.getRttMicros());
+            route.put("idleTunnels", idle);
+            route.put("inFlight", limiter.getInFlight());
+            route.put("maxInFlight", limiter.getMaxInFlight());
+            route.put("accepted", limiter.getAccepted());
+            route.put("rateRejected", limiter.getRateRejected());
+            route.put("concurrencyRejected", limiter.getConcurrencyRejected());
+            array.add(route);
+            text.append("intranet_tunnel_idle{host=\"").append(escape(host)).append("\"} ").append(idle).append('\n');
+            inFlight.append("intranet_host_in_flight{host=\"").append(escape(host)).append("\"} ").append(limiter.getInFlight()).append('\n');
+        }
+        text.append(inFlight);
+        return array;
+    }
+
+    private JSONObject cluster(ClusterNode clusterNode, StringBuilder text) {
+        JSONObject object = new JSONObject(true);
+        object.put("id", clusterNode.getId());
+        ClusterDirectory directory = clusterNode.getDirectory();
+        long now = System.currentTimeMillis();
+        JSONArray nodes = new JSONArray();
+        int alive = 0;
+        for (NodeState state : directory.digest()) {
+            boolean up = state.getAge() <= directory.getNodeTimeout() || clusterNode.getId().equals(state.getId());
+            if (up) {
+                alive++;
+            }
+            JSONObject node = new JSONObject(true);
+            node.put("id", state.getId());
+            node.put("alive", up);
+            node.put("lastSeen", now - state.getAge());
+            node.put("heartbeat", state.getHeartbeat());
+            node.put("hosts", state.getHosts());
+            PeerPool pool = clusterNode.getPools().get(state.getId());
+            node.put("idleConnections", pool == null ? 0 : pool.getIdle());
+            nodes.add(node);
+        }
+        object.put("nodes", nodes);
+        object.put("forwarded", clusterNode.getForwarded());
+        object.put("forwardFailed", clusterNode.getForwardFailed());
+        object.put("served", clusterNode.getServed());
+        object.put("gossipFailed", clusterNode.getGossipFailed());
+        type(text, "intranet_cluster_nodes_alive", "gauge");
+        text.append("intranet_cluster_nodes_alive ").append(alive).append('\n');
+        type(text, "intranet_cluster_forwarded_total", "counter");
+        text.append("intranet_cluster_forwarded_total ").append(clusterNode.getForwarded()).append('\n');
+        type(text, "intranet_cluster_forward_failed_total", "counter");
+        text.append("intranet_cluster_forward_failed_total ").append(clusterNode.getForwardFailed()).append('\n');
+        type(text, "intranet_cluster_served_total", "counter");
+        text.append("intranet_cluster_served_total ").append(clusterNode.getServed()).append('\n');
+        return object;
+    }
+
+    private JSONArray hosts(List<HostMetrics> hosts, StringBuilder text) {
+        JSONArray array = new JSONArray();
+        type(text, "intranet_requests_total", "counter");
+        for (HostMetrics metrics : hosts) {
+            for (Map.Entry<Integer, Long> entry : metrics.getStatusCounts().entrySet()) {
+                text.append("intranet_requests_total{host=\"").append(escape(metrics.getHost())).append("\",status=\"")
+                        .append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+            }
+        }
+        counter(text, hosts, "intranet_bytes_in_total", "in");
+        counter(text, hosts, "intranet_bytes_out_total", "out");
+        counter(text, hosts, "intranet_tunnel_timeouts_total", "timeouts");
+        counter(text, hosts, "intranet_tunnel_discarded_total", "discarded");
+        counter(text, hosts, "intranet_tunnel_created_total", "created");
+
+        Histogram.Snapshot[][] snapshots = new Histogram.Snapshot[hosts.size()][];
+        for (int i = 0; i < hosts.size(); i++) {
+            HostMetrics metrics = hosts.get(i);
+            snapshots[i] = new Histogram.Snapshot[]{metrics.getLatency().snapshot(), metrics.getTunnelAcquire().snapshot(),
+                    metrics.getOriginFirstByte().snapshot()};
+        }
+        // 同一指标的所有样本需要连续输出
+        String[] names = {"intranet_request_duration_seconds", "intranet_tunnel_acquire_seconds", "intranet_origin_first_byte_seconds"};
+        for (int n = 0; n < names.length; n++) {
+            type(text, names[n], "histogram");
+            for (int i = 0; i < hosts.size(); i++) {
+                histogram(text, names[n], "host=\"" + escape(hosts.get(i).getHost()) + "\"", snapshots[i][n]);
+            }
+        }
+
+        for (int i = 0; i < hosts.size(); i++) {
+            HostMetrics metrics = hosts.get(i);
+            JSONObject host = new JSONObject(true);
+            host.put("host", metrics.getHost());
+            host.put("requests", metrics.getRequests());
+            JSONObject status = new JSONObject(true);
+            for (Map.Entry<Integer, Long> entry : metrics.getStatusCounts().entrySet()) {
+                status.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            host.put("status", status);
+            host.put("bytesIn", metrics.getBytesIn());
+            host.put("bytesOut", metrics.getBytesOut());
+            host.put("tunnelTimeouts", metrics.getTunnelTimeouts());
+            host.put("tunnelDiscarded", metrics.getTunnelDiscarded());
+            host.put("tunnelCreated", metrics.getTunnelCreated());
+            host.put("latencyMicros", summary(snapshots[i][0]));
+            host.put("tunnelAcquireMicros", summary(snapshots[i][1]));
+            host.put("originFirstByteMicros", summary(snapshots[i][2]));
+            array.add(host);
+        }
+        return array;
+    }
+
+    private JSONArray executors(StringBuilder text) {
+        JSONArray array = new JSONArray();
+        // 每个指标一个缓冲，保证同一指标的样本连续输出
+        StringBuilder[] families = new StringBuilder[6];
+        for (int i = 0; i < families.length; i++) {
+            families[i] = new StringBuilder();
+        }
+        type(families[0], "intranet_executor_threads", "gauge");
+        type(families[1], "intranet_executor_active", "gauge");
+        type(families[2], "intranet_executor_queued", "gauge");
+        type(families[3], "intranet_tenant_queue_depth", "gauge");
+        type(families[4], "intranet_tenant_wait_seconds_max", "gauge");
+        type(families[5], "intranet_tenant_shed_total", "counter");
+        for (ServerConnector connector : connectors) {
+            if (connector.getProcess() instanceof HttpIntranetServiceProcessAbs) {
+                FairScheduler scheduler = ((HttpIntranetServiceProcessAbs) connector.getProcess()).getScheduler();
+                String name = connector.getName();
+                String labels = "executor=\"" + escape(name) + "\"";
+                executorText(families, labels, scheduler.getWorkers(), scheduler.getActiveWorkers(), scheduler.getQueued());
+                JSONObject executor = new JSONObject(true);
+                executor.put("name", name);
+                executor.put("threads", scheduler.getWorkers());
+                executor.put("active", scheduler.getActiveWorkers());
+                executor.put("queued", scheduler.getQueued());
+                executor.put("shedding", scheduler.isShedding());
+                JSONArray tenants = new JSONArray();
+                for (FairScheduler.TenantStats stats : scheduler.getTenantStats()) {
+                    String tenantLabels = labels + ",tenant=\"" + escape(stats.getTenant()) + "\"";
+                    families[3].append("intranet_tenant_queue_depth{").append(tenantLabels).append("} ").append(stats.getDepth()).append('\n');
+                    families[4].append("intranet_tenant_wait_seconds_max{").append(tenantLabels).append("} ").append(stats.getMaxWaitNanos() / 1e9).append('\n');
+                    families[5].append("intranet_tenant_shed_total{").append(tenantLabels).append("} ").append(stats.getShed()).append('\n');
+                    JSONObject tenant = new JSONObject(true);
+                    tenant.put("tenant", stats.getTenant());
+                    tenant.put("weight", stats.getWeight());
+                    tenant.put("depth", stats.getDepth());
+                    tenant.put("submitted", stats.getSubmitted());
+                    tenant.put("dispatched", stats.getDispatched());
+                    tenant.put("rejected", stats.getRejected());
+                    tenant.put("shed", stats.getShed());
+                    tenant.put("avgWaitMicros", stats.getAvgWaitNanos() / 1000);
+                    tenant.put("maxWaitMicros", stats.getMaxWaitNanos() / 1000);
+                    tenant.put("headWaitMicros", stats.getHeadWaitNanos() / 1000);
+                    tenants.add(tenant);
+                }
+                executor.put("tenants", tenants);
+                array.add(executor);
+            } else if (connector.getProcess() instanceof CommunicationProcessor) {
+                array.add(threadPool(families, connector.getName(), ((CommunicationProcessor) connector.getProcess()).getExecutor()));
+            }
+        }
+        array.add(threadPool(families, "Http2Stream", Http2Processor.getStreamExecutor()));
+        for (StringBuilder family : families) {
+            text.append(family);
+        }
+        return array;
+    }
+
+    private JSONObject threadPool(StringBuilder[] families, String name, ThreadPoolExecutor pool) {
+        executorText(families, "executor=\"" + escape(name) + "\"", pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size());
+        JSONObject executor = new JSONObject(true);
+        executor.put("name", name);
+        executor.put("threads", pool.getPoolSize());
+        executor.put("active", pool.getActiveCount());
+        executor.put("queued", pool.getQueue().size());
+        executor.put("largest", pool.getLargestPoolSize());
+        executor.put("completed", pool.getCompletedTaskCount());
+        return executor;
+    }
+
+    private JSONArray connectors(StringBuilder text) {
+        JSONArray array = new JSONArray();
+        // 每个指标一个缓冲，保证同一指标的样本连续输出
+        StringBuilder[] families = new StringBuilder[6];
+        for (int i = 0; i < families.length; i++) {
+            families[i] = new StringBuilder();
+        }
+        type(families[0], "intranet_selector_loops_total", "counter");
+        type(families[1], "intranet_selector_events_total", "counter");
+        type(families[2], "intranet_selector_stalls_total", "counter");
+        type(families[3], "intranet_selector_event_seconds", "histogram");
+        type(families[4], "intranet_selector_select_seconds", "histogram");
+        type(families[5], "intranet_selector_iteration_seconds", "histogram");
+        for (ServerConnector connector : connectors) {
+            List<ServerConnector.ConnectorThread> threads = connector.getConnectorThreads();
+            for (ServerConnector.ConnectorThread thread : threads) {
+                LoopStats stats = thread.getStats();
+                String labels = "connector=\"" + escape(connector.getName()) + "\"";
+                if (threads.size() > 1) {
+                    labels += ",thread=\"" + escape(thread.getName()) + "\"";
+                }
+                Histogram.Snapshot eventTime = stats.getHandlerTime().snapshot();
+                Histogram.Snapshot selectTime = stats.getSelectTime().snapshot();
+                Histogram.Snapshot iterationTime = stats.getIterationTime().snapshot();
+                families[0].append("intranet_selector_loops_total{").append(labels).append("} ").append(stats.getIterations()).append('\n');
+                families[1].append("intranet_selector_events_total{").append(labels).append("} ").append(stats.getEvents()).append('\n');
+                families[2].append("intranet_selector_stalls_total{").append(labels).append("} ").append(stats.getStalls()).append('\n');
+                histogram(families[3], "intranet_selector_event_seconds", labels, eventTime);
+                histogram(families[4], "intranet_selector_select_seconds", labels, selectTime);
+                histogram(families[5], "intranet_selector_iteration_seconds", labels, iterationTime);
+                JSONObject object = new JSONObject(true);
+                object.put("name", connector.getName());
+                if (threads.size() > 1) {
+                    object.put("thread", thread.getName());
+                }
+                object.put("port", connector.getPort());
+                object.put("loops", stats.getIterations());
+                object.put("events", stats.getEvents());
+                object.put("stalls", stats.getStalls());
+                object.put("currentIterationMicros", stats.getCurrentIterationMicros());
+                object.put("eventMicros", summary(eventTime));
+                object.put("selectMicros", summary(selectTime));
+                object.put("iterationMicros", summary(iterationTime));
+                object.put("readyKeys", summary(stats.getReadyKeys().snapshot()));
+                JSONArray slowest = new JSONArray();
+                for (LoopStats.SlowIteration slowIteration : stats.getSlowest()) {
+                    JSONObject slow = new JSONObject(true);
+                    slow.put("time", slowIteration.getTime());
+                    slow.put("durationMicros", slowIteration.getDurationMicros());
+                    slow.put("selectMicros", slowIteration.getSelectMicros());
+                    slow.put("readyKeys", slowIteration.getReadyKeys());
+                    slow.put("slowestHandler", slowIteration.getSlowestHandler());
+                    slow.put("slowestHandlerMicros", slowIteration.getSlowestHandlerMicros());
+                    slow.put("stack", slowIteration.getStack());
+                    slowest.add(slow);
+                }
+                object.put("slowest", slowest);
+                array.add(object);
+            }
+        }
+        for (StringBuilder family : families) {
+            text.append(family);
+        }
+        return array;
+    }
+
+    private JSONObject writeBuffer(StringBuilder text) {
+        type(text, "intranet_write_buffer_bytes", "gauge");
+        text.append("intranet_write_buffer_bytes ").append(WriteBufferMetrics.getBufferedBytes()).append('\n');
+        type(text, "intranet_write_buffer_overflows_total", "counter");
+        text.append("intranet_write_buffer_overflows_total ").append(WriteBufferMetrics.getOverflowCount()).append('\n');
+        JSONObject object = new JSONObject(true);
+        object.put("bufferedBytes", WriteBufferMetrics.getBufferedBytes());
+        object.put("peakBufferedBytes", WriteBufferMetrics.getPeakBufferedBytes());
+        object.put("overflows", WriteBufferMetrics.getOverflowCount());
+        return object;
+    }
+
+    private JSONObject tls(StringBuilder text) {
+        Histogram.Snapshot handshake = SslMetrics.getHandshake().snapshot();
+        type(text, "intranet_tls_handshake_seconds", "histogram");
+        histogram(text, "intranet_tls_handshake_seconds", "side=\"server\"", handshake);
+        type(text, "intranet_tls_handshakes_resumed_total", "counter");
+        text.append("intranet_tls_handshakes_resumed_total ").append(SslMetrics.getResumed()).append('\n');
+        type(text, "intranet_tls_handshakes_failed_total", "counter");
+        text.append("intranet_tls_handshakes_failed_total ").append(SslMetrics.getFailed()).append('\n');
+        type(text, "intranet_tls_records_total", "counter");
+        text.append("intranet_tls_records_total{op=\"wrap\"} ").append(SslMetrics.getWraps()).append('\n');
+        text.append("intranet_tls_records_total{op=\"unwrap\"} ").append(SslMetrics.getUnwraps()).append('\n');
+        type(text, "intranet_tls_record_seconds_total", "counter");
+        text.append("intranet_tls_record_seconds_total{op=\"wrap\"} ").append(SslMetrics.getWrapNanos() / 1e9).append('\n');
+        text.append("intranet_tls_record_seconds_total{op=\"unwrap\"} ").append(SslMetrics.getUnwrapNanos() / 1e9).append('\n');
+        JSONObject object = new JSONObject(true);
+        object.put("handshakes", SslMetrics.getHandshakes());
+        object.put("resumed", SslMetrics.getResumed());
+        object.put("failed", SslMetrics.getFailed());
+        object.put("handshakeP50Micros", handshake.getValueAtPercentile(50));
+        object.put("handshakeP99Micros", handshake.getValueAtPercentile(99));
+        object.put("wraps", SslMetrics.getWraps());
+        object.put("wrapNanosPerRecord", SslMetrics.getWraps() == 0 ? 0 : SslMetrics.getWrapNanos() / SslMetrics.getWraps());
+        object.put("wrapBytes", SslMetrics.getWrapBytes());
+        object.put("unwraps", SslMetrics.getUnwraps());
+        object.put("unwrapNanosPerRecord", SslMetrics.getUnwraps() == 0 ? 0 : SslMetrics.getUnwrapNanos() / SslMetrics.getUnwraps());
+        object.put("unwrapBytes", SslMetrics.getUnwrapBytes());
+        return object;
+    }
+
+    private static void executorText(StringBuilder[] families, String labels, long threads, long active, long queued) {
+        families[0].append("intranet_executor_threads{").append(labels).append("} ").append(threads).append('\n');
+        families[1].append("intranet_executor_active{").append(labels).append("} ").append(active).append('\n');
+        families[2].append("intranet_executor_queued{").append(labels).append("} ").append(queued).append('\n');
+    }
+
+    private static void counter(StringBuilder text, List<HostMetrics> hosts, String name, String field) {
+        type(text, name, "counter");
+        for (HostMetrics metrics : hosts) {
+            long value;
+            switch (field) {
+                case "in":
+                    value = metrics.getBytesIn();
+                    break;
+                case "out":
+                    value = metrics.getBytesOut();
+                    break;
+                case "timeouts":
+                    value = metrics.getTunnelTimeouts();
+                    break;
+                case "discarded":
+                    value = metrics.getTunnelDiscarded();
+                    break;
+                default:
+                    value = metrics.getTunnelCreated();
+            }
+            text.append(name).append("{host=\"").append(escape(metrics.getHost())).append("\"} ").append(value).append('\n');
+        }
+    }
+
+    /**
+     * 微秒直方图按秒输出
+     */
+    private static void histogram(StringBuilder text, String name, String labels, Histogram.Snapshot snapshot) {
+        for (double bucket : BUCKETS) {
+            text.append(name).append("_bucket{").append(labels).append(",le=\"").append(bucket).append("\"} ")
+                    .append(snapshot.getCountAtOrBelow((long) (bucket * 1_000_000))).append('\n');
+        }
+        text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(snapshot.getCount()).append('\n');
+        text.append(name).append("_sum{").append(labels).append("} ").append(snapshot.getSum() / 1e6).append('\n');
+        text.append(name).append("_count{").append(labels).append("} ").append(snapshot.getCount()).append('\n');
+    }
+
+    private static JSONObject summary(Histogram.Snapshot snapshot) {
+        JSONObject object = new JSONObject(true);
+        object.put("count", snapshot.getCount());
+        object.put("mean", Math.round(snapshot.getMean()));
+        for (double quantile : QUANTILES) {
+            object.put("p" + (quantile == Math.floor(quantile) ? String.valueOf((long) quantile) : String.valueOf(quantile)),
+                    snapshot.getValueAtPercentile(quantile));
+        }
+        object.put("max", snapshot.getMax());
+        return object;
+    }
+
+    private static void type(StringBuilder text, String name, String type) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package priv.bigant.intranet.server.admin;
+
+import priv.bigant.intrance.common.jmx.ConfigMXBean;
+
+/**
+ * 服务端运行时可调整的配置
+ */
+public interface ServerConfigMXBean extends ConfigMXBean {
+
+    /**
+     * 等待穿透通道的超时时间（毫秒）
+     */
+    int getWaitSocketTime();
+
+    void setWaitSocketTime(int waitSocketTime);
+
+    /**
+     * 新注册域名的默认限流，已注册域名通过各自的 TunnelPool 修改
+     */
+    double getHostRateLimit();
+
+    void setHostRateLimit(double hostRateLimit);
+
+    int getHostRateBurst();
+
+    void setHostRateBurst(int hostRateBurst);
+
+    int getHostMaxInFlight();
+
+    void setHostMaxInFlight(int hostMaxInFlight);
+}
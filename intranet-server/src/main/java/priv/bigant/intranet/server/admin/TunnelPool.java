@@ -0,0 +1,153 @@
+package priv.bigant.intranet.server.admin;
+
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intranet.server.limit.HostLimiter;
+import priv.bigant.intranet.server.limit.HostLimiters;
+
+/**
+ * 按域名查询当前注册的通信对象，客户端重连后同一个 MBean 仍然有效
+ */
+public class TunnelPool implements TunnelPoolMXBean {
+
+    private final String host;
+
+    public TunnelPool(String host) {
+        this.host = host;
+    }
+
+    private HostLimiter limiter() {
+        return HostLimiters.get(host);
+    }
+
+    private HostMetrics metrics() {
+        return MetricsRegistry.host(host);
+    }
+
+    @Override
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public boolean isRegistered() {
+        return HttpSocketManager.isExist(host);
+    }
+
+    @Override
+    public boolean isClosed() {
+        HttpCommunication communication = HttpSocketManager.get(host);
+        return communication == null || !communication.isAlive();
+    }
+
+    @Override
+    public int getIdleTunnels() {
+        HttpCommunication communication = HttpSocketManager.get(host);
+        return communication == null ? 0 : communication.getIdleSocketBeans();
+    }
+
+    @Override
+    public int getInFlight() {
+        return limiter().getInFlight();
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return limiter().getMaxInFlight();
+    }
+
+    @Override
+    public void setMaxInFlight(int maxInFlight) {
+        HostLimiter limiter = limiter();
+        HostLimiters.set(host, limiter.getPermitsPerSecond(), limiter.getBurst(), maxInFlight);
+    }
+
+    @Override
+    public double getRateLimit() {
+        return limiter().getPermitsPerSecond();
+    }
+
+    @Override
+    public void setRateLimit(double rateLimit) {
+        HostLimiter limiter = limiter();
+        HostLimiters.set(host, rateLimit, limiter.getBurst(), limiter.getMaxInFlight());
+    }
+
+    @Override
+    public int getRateBurst() {
+        return limiter().getBurst();
+    }
+
+    @Override
+    public void setRateBurst(int rateBurst) {
+        HostLimiter limiter = limiter();
+        HostLimiters.set(host, limiter.getPermitsPerSecond(), rateBurst, limiter.getMaxInFlight());
+    }
+
+    @Override
+    public long getAccepted() {
+        return limiter().getAccepted();
+    }
+
+    @Override
+    public long getRateRejected() {
+        return limiter().getRateRejected();
+    }
+
+    @Override
+    public long getConcurrencyRejected() {
+        return limiter().getConcurrencyRejected();
+    }
+
+    @Override
+    public long getRequests() {
+        return metrics().getRequests();
+    }
+
+    @Override
+    public long getTunnelTimeouts() {
+        return metrics().getTunnelTimeouts();
+    }
+
+    @Override
+    public long getTunnelCreated() {
+        return metrics().getTunnelCreated();
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return metrics().getLatency().snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getSpooled() {
+        return metrics().getSpooled();
+    }
+
+    @Override
+    public long getSpooledBytes() {
+        return metrics().getSpooledBytes();
+    }
+
+    @Override
+    public long getSpoolOverflows() {
+        return metrics().getSpoolOverflows();
+    }
+
+    @Override
+    public long getSpoolSkipped() {
+        return metrics().getSpoolSkipped();
+    }
+
+    @Override
+    public long getSliceHitBytes() {
+        return metrics().getSliceHitBytes();
+    }
+
+    @Override
+    public long getSliceFetchedBytes() {
+        return metrics().getSliceFetchedBytes();
+    }
+}
@@ -0,0 +1,55 @@
+package priv.bigant.intranet.server.admin;
+
+/**
+ * 单个已注册域名的穿透通道池与限流
+ */
+public interface TunnelPoolMXBean {
+
+    String getHost();
+
+    boolean isRegistered();
+
+    boolean isClosed();
+
+    int getIdleTunnels();
+
+    int getInFlight();
+
+    int getMaxInFlight();
+
+    void setMaxInFlight(int maxInFlight);
+
+    double getRateLimit();
+
+    void setRateLimit(double rateLimit);
+
+    int getRateBurst();
+
+    void setRateBurst(int rateBurst);
+
+    long getAccepted();
+
+    long getRateRejected();
+
+    long getConcurrencyRejected();
+
+    long getRequests();
+
+    long getTunnelTimeouts();
+
+    long getTunnelCreated();
+
+    long getLatencyP99Micros();
+
+    long getSpooled();
+
+    long getSpooledBytes();
+
+    long getSpoolOverflows();
+
+    long getSpoolSkipped();
+
+    long getSliceHitBytes();
+
+    long getSliceFetchedBytes();
+}
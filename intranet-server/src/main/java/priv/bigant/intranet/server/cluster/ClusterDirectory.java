@@ -0,0 +1,160 @@
+package priv.bigant.intranet.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 集群共享的 域名 -> 节点 目录
+ * <p>
+ * 每个节点只写自己的 NodeState，合并时按版本取新，不存在写冲突；
+ * 超过 nodeTimeout 没有看到心跳变化的节点视为下线，其域名不再参与查找
+ */
+public class ClusterDirectory {
+
+    private final String localId;
+    private final Map<String, NodeState> nodes = new TreeMap<>();
+    /**
+     * 域名 -> 注册了该域名的节点（按节点 id 排序），节点变化时整体替换
+     */
+    private volatile Map<String, List<NodeState>> index = Collections.emptyMap();
+    private volatile long nodeTimeout;
+
+    public ClusterDirectory(String localId, long nodeTimeout) {
+        this.localId = localId;
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    /**
+     * 更新本节点的状态
+     */
+    public synchronized void updateLocal(NodeState local) {
+        local.setLastUpdate(System.currentTimeMillis());
+        nodes.put(localId, local);
+        reindex();
+    }
+
+    /**
+     * 合并收到的节点状态
+     *
+     * @return 是否有变化
+     */
+    public synchronized boolean merge(Collection<NodeState> states) {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (NodeState remote : states) {
+            if (remote.getId() == null || localId.equals(remote.getId())) {
+                continue;
+            }
+            long seen = now - remote.getAge();
+            NodeState known = nodes.get(remote.getId());
+            if (known == null) {
+                // 很久以前就已下线的节点不再引入，避免被其他节点反复传回来
+                if (remote.getAge() > nodeTimeout * 10) {
+                    continue;
+                }
+                remote.setLastUpdate(seen);
+                nodes.put(remote.getId(), remote);
+                changed = true;
+            } else if (remote.isNewerThan(known)) {
+                remote.setLastUpdate(Math.max(seen, known.getLastUpdate()));
+                nodes.put(remote.getId(), remote);
+                changed = true;
+            } else if (seen > known.getLastUpdate() && !known.isNewerThan(remote)) {
+                // 同一版本，其他节点更晚看到过，说明它仍然在线
+                known.setLastUpdate(seen);
+            }
+        }
+        if (changed) {
+            reindex();
+        }
+        return changed;
+    }
+
+    /**
+     * 删除长时间下线的节点
+     */
+    public synchronized void expire() {
+        long deadline = System.currentTimeMillis() - nodeTimeout * 10;
+        if (nodes.values().removeIf(state -> !localId.equals(state.getId()) && state.getLastUpdate() < deadline)) {
+            reindex();
+        }
+    }
+
+    /**
+     * 查找注册了该域名的其他在线节点，多个节点同时注册时取 id 最小的
+     */
+    public NodeState locate(String host) {
+        List<NodeState> owners = index.get(host);
+        if (owners == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        for (NodeState owner : owners) {
+            if (!localId.equals(owner.getId()) && isAlive(owner, now)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    public boolean isAlive(NodeState state, long now) {
+        return localId.equals(state.getId()) || now - state.getLastUpdate() <= nodeTimeout;
+    }
+
+    /**
+     * 其他在线节点
+     */
+    public synchronized List<NodeState> alivePeers() {
+        long now = System.currentTimeMillis();
+        List<NodeState> peers = new ArrayList<>();
+        for (NodeState state : nodes.values()) {
+            if (!localId.equals(state.getId()) && isAlive(state, now)) {
+                peers.add(state);
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * 用于 gossip 发送的全部节点状态
+     */
+    public synchronized List<NodeState> digest() {
+        long now = System.currentTimeMillis();
+        List<NodeState> states = new ArrayList<>(nodes.size());
+        for (NodeState state : nodes.values()) {
+            states.add(state.copy(now));
+        }
+        return states;
+    }
+
+    public synchronized NodeState get(String id) {
+        return nodes.get(id);
+    }
+
+    public String getLocalId() {
+        return localId;
+    }
+
+    public long getNodeTimeout() {
+        return nodeTimeout;
+    }
+
+    public void setNodeTimeout(long nodeTimeout) {
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    private void reindex() {
+        Map<String, List<NodeState>> index = new HashMap<>();
+        for (NodeState state : nodes.values()) {
+            for (String host : state.getHosts()) {
+                index.computeIfAbsent(host, k -> new ArrayList<>(1)).add(state);
+            }
+        }
+        this.index = index;
+    }
+}
@@ -0,0 +1,59 @@
+package priv.bigant.intranet.server.cluster;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 节点间消息：4 字节长度 + UTF-8 JSON
+ * <p>
+ * 不用客户端协议的括号匹配分帧，gossip 的域名列表可能超过其 1024 字节缓冲
+ */
+public class ClusterMessage {
+
+    public static final String TYPE = "type";
+    public static final String GOSSIP = "GOSSIP";
+    public static final String TUNNEL = "TUNNEL";
+
+    private static final int MAX_LENGTH = 4 * 1024 * 1024;
+
+    private ClusterMessage() {
+    }
+
+    public static void write(OutputStream os, JSONObject message) throws IOException {
+        byte[] body = JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + body.length);
+        buffer.putInt(body.length).put(body);
+        os.write(buffer.array());
+        os.flush();
+    }
+
+    /**
+     * 读取一条消息，连接在消息开始前关闭返回 null
+     */
+    public static JSONObject read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("集群消息长度错误 " + length);
+        }
+        byte[] body = new byte[length];
+        try {
+            in.readFully(body);
+        } catch (EOFException e) {
+            throw new EOFException("集群消息未读完连接已关闭");
+        }
+        return JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+    }
+}
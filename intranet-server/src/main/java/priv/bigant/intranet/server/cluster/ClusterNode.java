@@ -0,0 +1,548 @@
+package priv.bigant.intranet.server.cluster;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SocketProfile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 集群节点
+ * <p>
+ * 节点之间通过 gossip（每轮随机选一个在线节点，互换全部节点状态）维护共享的域名目录，不依赖外部协调服务；
+ * 请求的域名注册在其他节点上时，通过到该节点的预建连接转发，对端从本地取穿透通道后双向转发字节
+ */
+public class ClusterNode {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    /**
+     * 预建连接在池中的最长空闲时间，对端读取首条消息的超时是它的两倍
+     */
+    private static final long MAX_IDLE_TIME = 30000;
+
+    private static volatile ClusterNode instance;
+
+    private final String host;
+    private final int port;
+    private final TunnelSource localSource;
+    private final Supplier<Collection<String>> localHosts;
+    private final long incarnation = System.currentTimeMillis();
+
+    private volatile List<InetSocketAddress> seeds = Collections.emptyList();
+    private volatile int gossipInterval = 1000;
+    private volatile int nodeTimeout = 5000;
+    private volatile int poolSize = 4;
+    private volatile int connectTimeout = 2000;
+    private volatile int replyTimeout = 60000;
+    private int maxThreads = 256;
+    private SocketProfile socketProfile = SocketProfile.tunnel();
+
+    private String id;
+    private ClusterDirectory directory;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor executor;
+    private Thread gossipThread;
+    private volatile boolean running;
+    private long heartbeat;
+    private final Map<String, PeerPool> pools = new ConcurrentHashMap<>();
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardFailed = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder gossipFailed = new LongAdder();
+
+    /**
+     * @param host        监听并通告给其他节点的地址
+     * @param port        监听端口，0 表示随机端口
+     * @param localSource 本节点的穿透通道来源
+     * @param localHosts  本节点已注册的域名
+     */
+    public ClusterNode(String host, int port, TunnelSource localSource, Supplier<Collection<String>> localHosts) {
+        this.host = host;
+        this.port = port;
+        this.localSource = localSource;
+        this.localHosts = localHosts;
+    }
+
+    public static ClusterNode getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(ClusterNode instance) {
+        ClusterNode.instance = instance;
+    }
+
+    public synchronized void start() throws IOException {
+        serverChannel = socketProfile.bind(new InetSocketAddress(host, port));
+        id = host + ":" + serverChannel.socket().getLocalPort();
+        directory = new ClusterDirectory(id, nodeTimeout);
+        executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "cluster-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        updateLocal();
+
+        Thread acceptThread = new Thread(this::acceptLoop, "cluster-accept-" + id);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        gossipThread = new Thread(this::gossipLoop, "cluster-gossip-" + id);
+        gossipThread.setDaemon(true);
+        gossipThread.start();
+        LOG.info("集群节点 " + id + " 已启动，种子节点 " + seeds);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOG.fine("close cluster server error " + e);
+        }
+        LockSupport.unpark(gossipThread);
+        pools.values().forEach(PeerPool::close);
+        pools.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 本地注册的域名变化后立即发起一轮 gossip，不必等到下一个周期
+     */
+    public void announce() {
+        Thread thread = gossipThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 注册在其他在线节点上的域名返回该节点，否则返回 null
+     */
+    public NodeState locate(String host) {
+        return directory.locate(host);
+    }
+
+    /**
+     * 通过集群转发获取到注册节点的通道
+     *
+     * @return 目录中没有该域名或对端未找到客户端时返回 null
+     * @throws RejectedRequestException 对端限流（429/503）或无法连接对端（502）
+     */
+    public SocketBean forward(String host) throws IOException {
+        NodeState owner = directory.locate(host);
+        if (owner == null) {
+            return null;
+        }
+        PeerPool pool = pool(owner);
+        JSONObject request = new JSONObject();
+        request.put(ClusterMessage.TYPE, ClusterMessage.TUNNEL);
+        request.put("host", host);
+        SocketChannel channel = null;
+        JSONObject reply = null;
+        for (int attempt = 0; reply == null; attempt++) {
+            try {
+                channel = attempt == 0 ? pool.take() : pool.connect();
+                channel.socket().setSoTimeout(replyTimeout);
+                ClusterMessage.write(channel.socket().getOutputStream(), request);
+                reply = ClusterMessage.read(channel.socket().getInputStream());
+                if (reply == null) {
+                    throw new IOException("节点关闭了连接");
+                }
+            } catch (IOException e) {
+                close(channel);
+                // 池中的连接可能已被对端关闭，换新连接重试一次
+                if (attempt > 0) {
+                    forwardFailed.increment();
+                    LOG.fine(() -> "转发到节点 " + owner.getId() + " 失败 " + e);
+                    throw new RejectedRequestException(HttpResponseStatus.SC_BAD_GATEWAY, "转发到节点 " + owner.getId() + " 失败");
+                }
+            }
+        }
+
+        int status = reply.getIntValue("status");
+        if (status == HttpResponseStatus.SC_OK.getStatus()) {
+            channel.configureBlocking(false);
+            forwarded.increment();
+            return new ForwardedSocketBean(channel, owner.getId());
+        }
+        close(channel);
+        if (status == HttpResponseStatus.SC_NOT_FOUND.getStatus()) {
+            return null;
+        }
+        throw new RejectedRequestException(toStatus(status), reply.getString("message"), reply.getIntValue("retryAfter"));
+    }
+
+    private PeerPool pool(NodeState owner) {
+        return pools.computeIfAbsent(owner.getId(), k -> new PeerPool(new InetSocketAddress(owner.getHost(), owner.getPort()), executor, poolSize, connectTimeout, MAX_IDLE_TIME, socketProfile));
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+                socketProfile.configure(channel);
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING, "集群端口 accept 失败", e);
+                }
+                continue;
+            }
+            try {
+                executor.execute(() -> handle(channel));
+            } catch (RejectedExecutionException e) {
+                LOG.warning("集群连接过多，关闭 " + channel);
+                close(channel);
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        boolean keep = false;
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSoTimeout((int) (MAX_IDLE_TIME * 2));
+            JSONObject message = ClusterMessage.read(channel.socket().getInputStream());
+            if (message == null) {
+                return;
+            }
+            String type = message.getString(ClusterMessage.TYPE);
+            if (ClusterMessage.GOSSIP.equals(type)) {
+                merge(message);
+                ClusterMessage.write(channel.socket().getOutputStream(), digest());
+            } else if (ClusterMessage.TUNNEL.equals(type)) {
+                keep = true;
+                tunnel(channel, message.getString("host"));
+            } else {
+                LOG.warning("未知的集群消息 " + type);
+            }
+        } catch (IOException e) {
+            LOG.fine(() -> "集群连接处理失败 " + e);
+        } finally {
+            if (!keep) {
+                close(channel);
+            }
+        }
+    }
+
+    /**
+     * 为其他节点转发的请求取本地通道，之后在两个连接间双向复制字节
+     */
+    private void tunnel(SocketChannel peer, String host) throws IOException {
+        SocketBean socketBean;
+        JSONObject reply = new JSONObject();
+        try {
+            socketBean = localSource.acquire(host);
+        } catch (RejectedRequestException e) {
+            reply.put("status", e.getStatus().getStatus());
+            reply.put("message", e.getMessage());
+            reply.put("retryAfter", e.getRetryAfterSeconds());
+            ClusterMessage.write(peer.socket().getOutputStream(), reply);
+            close(peer);
+            return;
+        } catch (IOException e) {
+            close(peer);
+            throw e;
+        }
+        if (socketBean == null) {
+            reply.put("status", HttpResponseStatus.SC_NOT_FOUND.getStatus());
+            ClusterMessage.write(peer.socket().getOutputStream(), reply);
+            close(peer);
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable finish = () -> {
+            if (released.compareAndSet(false, true)) {
+                close(peer);
+                localSource.release(host, socketBean);
+            }
+        };
+        try {
+            reply.put("status", HttpResponseStatus.SC_OK.getStatus());
+            ClusterMessage.write(peer.socket().getOutputStream(), reply);
+            served.increment();
+            socketBean.getSocketChannel().configureBlocking(true);
+            //穿透连接启用 TLS 时转发解密后的数据，节点之间仍是明文
+            ByteChannel tunnel = socketBean.getByteChannel();
+            executor.execute(() -> {
+                try {
+                    copy(peer, tunnel);
+                } finally {
+                    finish.run();
+                }
+            });
+            copy(tunnel, peer);
+        } catch (IOException | RejectedExecutionException e) {
+            LOG.fine(() -> "集群转发失败 " + host + " " + e);
+        } finally {
+            finish.run();
+        }
+    }
+
+    private static void copy(ByteChannel from, ByteChannel to) {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try {
+            while (from.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    to.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            LOG.finer(() -> "cluster copy end " + e);
+        }
+    }
+
+    private void gossipLoop() {
+        while (running) {
+            try {
+                gossip();
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "集群 gossip 失败", e);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(gossipInterval));
+        }
+    }
+
+    /**
+     * 一轮 gossip：更新本节点状态，随机选一个在线节点互换状态；没有在线节点时联系种子节点
+     */
+    private void gossip() {
+        updateLocal();
+        directory.setNodeTimeout(nodeTimeout);
+        directory.expire();
+        List<NodeState> peers = directory.alivePeers();
+        pools.keySet().removeIf(peerId -> {
+            for (NodeState peer : peers) {
+                if (peer.getId().equals(peerId)) {
+                    return false;
+                }
+            }
+            PeerPool pool = pools.get(peerId);
+            if (pool != null) {
+                pool.close();
+            }
+            return true;
+        });
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<InetSocketAddress> seeds = new ArrayList<>(this.seeds);
+        seeds.removeIf(seed -> seed.getPort() == serverChannel.socket().getLocalPort() && host.equals(seed.getHostString()));
+        if (!peers.isEmpty()) {
+            NodeState peer = peers.get(random.nextInt(peers.size()));
+            exchange(new InetSocketAddress(peer.getHost(), peer.getPort()));
+            // 偶尔也联系种子节点，让分区后的两部分重新合并
+            if (!seeds.isEmpty() && random.nextInt(10) == 0) {
+                exchange(seeds.get(random.nextInt(seeds.size())));
+            }
+        } else if (!seeds.isEmpty()) {
+            exchange(seeds.get(random.nextInt(seeds.size())));
+        }
+    }
+
+    private void exchange(InetSocketAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = socketProfile.open();
+            channel.socket().connect(address, connectTimeout);
+            channel.socket().setSoTimeout(Math.max(connectTimeout, gossipInterval));
+            JSONObject message = digest();
+            message.put(ClusterMessage.TYPE, ClusterMessage.GOSSIP);
+            ClusterMessage.write(channel.socket().getOutputStream(), message);
+            JSONObject reply = ClusterMessage.read(channel.socket().getInputStream());
+            if (reply != null) {
+                merge(reply);
+            }
+        } catch (IOException e) {
+            gossipFailed.increment();
+            LOG.fine(() -> "gossip " + address + " 失败 " + e);
+        } finally {
+            close(channel);
+        }
+    }
+
+    private synchronized void updateLocal() {
+        NodeState local = new NodeState(id, host, serverChannel.socket().getLocalPort(), incarnation);
+        local.setHeartbeat(++heartbeat);
+        local.setHosts(new ArrayList<>(localHosts.get()));
+        directory.updateLocal(local);
+    }
+
+    private JSONObject digest() {
+        JSONObject message = new JSONObject();
+        message.put("nodes", directory.digest());
+        return message;
+    }
+
+    private void merge(JSONObject message) {
+        JSONArray nodes = message.getJSONArray("nodes");
+        if (nodes != null && directory.merge(nodes.toJavaList(NodeState.class))) {
+            LOG.fine(() -> "集群目录已更新 " + directory.digest());
+        }
+    }
+
+    private static HttpResponseStatus toStatus(int status) {
+        for (HttpResponseStatus value : HttpResponseStatus.values()) {
+            if (value.getStatus() == status) {
+                return value;
+            }
+        }
+        return HttpResponseStatus.SC_BAD_GATEWAY;
+    }
+
+    private static void close(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.fine("close cluster channel error " + e);
+        }
+    }
+
+    /**
+     * 种子节点，格式 host:port,host:port
+     */
+    public void setSeeds(String seeds) {
+        List<InetSocketAddress> list = new ArrayList<>();
+        if (seeds != null) {
+            for (String seed : seeds.split(",")) {
+                seed = seed.trim();
+                int colon = seed.lastIndexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                list.add(new InetSocketAddress(seed.substring(0, colon), Integer.parseInt(seed.substring(colon + 1))));
+            }
+        }
+        this.seeds = list;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public ClusterDirectory getDirectory() {
+        return directory;
+    }
+
+    public Map<String, PeerPool> getPools() {
+        return pools;
+    }
+
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    public long getForwardFailed() {
+        return forwardFailed.sum();
+    }
+
+    public long getServed() {
+        return served.sum();
+    }
+
+    public long getGossipFailed() {
+        return gossipFailed.sum();
+    }
+
+    public void setGossipInterval(int gossipInterval) {
+        this.gossipInterval = gossipInterval;
+    }
+
+    public void setNodeTimeout(int nodeTimeout) {
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        pools.values().forEach(pool -> pool.setSize(poolSize));
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReplyTimeout(int replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * 集群端口与节点之间连接的 socket 参数，需在 start 之前设置
+     */
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
+
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 转发到其他节点的通道，关闭时只关闭到节点的连接
+     */
+    public static class ForwardedSocketBean extends SocketBean {
+
+        private final SocketChannel channel;
+        private final String node;
+
+        ForwardedSocketBean(SocketChannel channel, String node) throws IOException {
+            super(channel, node);
+            this.channel = channel;
+            this.node = node;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        @Override
+        public void skip() {
+        }
+
+        @Override
+        public void close() {
+            ClusterNode.close(channel);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package priv.bigant.intranet.server.cluster;
+
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+
+import java.io.IOException;
+
+/**
+ * 集群模式下的通道来源：域名注册在本节点时取本地通道，否则转发到注册该域名的节点
+ */
+public class ClusterTunnelSource implements TunnelSource {
+
+    private final ClusterNode node;
+    private final TunnelSource localSource;
+
+    public ClusterTunnelSource(ClusterNode node, TunnelSource localSource) {
+        this.node = node;
+        this.localSource = localSource;
+    }
+
+    @Override
+    public SocketBean acquire(String host) throws IOException {
+        if (HttpSocketManager.isExist(host)) {
+            return localSource.acquire(host);
+        }
+        return node.forward(host);
+    }
+
+    /**
+     * 本节点或集群目录中其它节点注册的域名
+     */
+    @Override
+    public boolean isRegistered(String host) {
+        return HttpSocketManager.isExist(host) || node.locate(host) != null;
+    }
+
+    @Override
+    public void release(String host, SocketBean socketBean) {
+        if (socketBean instanceof ClusterNode.ForwardedSocketBean) {
+            socketBean.close();
+        } else {
+            localSource.release(host, socketBean);
+        }
+    }
+}
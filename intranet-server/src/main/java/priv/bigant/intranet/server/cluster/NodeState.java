@@ -0,0 +1,140 @@
+package priv.bigant.intranet.server.cluster;
+
+import com.alibaba.fastjson.annotation.JSONField;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 集群中一个节点的状态，只由节点自己修改，其他节点通过 gossip 得到副本
+ * <p>
+ * 版本按 (incarnation, heartbeat) 比较：节点重启后 incarnation 变大，旧副本自然失效
+ */
+public class NodeState {
+
+    private String id;
+    private String host;
+    private int port;
+    /**
+     * 节点启动时间，用于区分重启前后的状态
+     */
+    private long incarnation;
+    /**
+     * 节点每轮 gossip 自增
+     */
+    private long heartbeat;
+    /**
+     * 注册在该节点上的域名
+     */
+    private List<String> hosts = new ArrayList<>();
+    /**
+     * 发送方最后一次看到心跳变化距今的毫秒数，接收方据此推算 lastUpdate
+     */
+    private long age;
+
+    /**
+     * 本地最后一次看到心跳变化的时间，不参与传输
+     */
+    @JSONField(serialize = false, deserialize = false)
+    private long lastUpdate;
+
+    public NodeState() {
+    }
+
+    public NodeState(String id, String host, int port, long incarnation) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+        this.incarnation = incarnation;
+    }
+
+    /**
+     * 是否比 other 新
+     */
+    public boolean isNewerThan(NodeState other) {
+        if (incarnation != other.incarnation) {
+            return incarnation > other.incarnation;
+        }
+        return heartbeat > other.heartbeat;
+    }
+
+    /**
+     * 用于发送的副本，age 按本地时间填写
+     */
+    NodeState copy(long now) {
+        NodeState copy = new NodeState(id, host, port, incarnation);
+        copy.heartbeat = heartbeat;
+        copy.hosts = new ArrayList<>(hosts);
+        copy.age = Math.max(0, now - lastUpdate);
+        return copy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public void setIncarnation(long incarnation) {
+        this.incarnation = incarnation;
+    }
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(long heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<String> hosts) {
+        this.hosts = hosts;
+    }
+
+    public long getAge() {
+        return age;
+    }
+
+    public void setAge(long age) {
+        this.age = age;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public void setLastUpdate(long lastUpdate) {
+        this.lastUpdate = lastUpdate;
+    }
+
+    @Override
+    public String toString() {
+        return id + "#" + incarnation + "/" + heartbeat + hosts;
+    }
+}
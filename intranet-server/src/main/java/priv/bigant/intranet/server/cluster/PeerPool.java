@@ -0,0 +1,130 @@
+package priv.bigant.intranet.server.cluster;
+
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SocketProfile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * 到一个节点的预建连接池
+ * <p>
+ * 与客户端的穿透通道一样，转发连接只用一次：取走后立即在后台补充，请求不必等待建连
+ */
+public class PeerPool {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    private final InetSocketAddress address;
+    private final Executor executor;
+    private final SocketProfile socketProfile;
+    private final ConcurrentLinkedDeque<Idle> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean filling = new AtomicBoolean();
+    private volatile int size;
+    private volatile int connectTimeout;
+    private volatile long maxIdleTime;
+    private volatile boolean closed;
+
+    public PeerPool(InetSocketAddress address, Executor executor, int size, int connectTimeout, long maxIdleTime, SocketProfile socketProfile) {
+        this.address = address;
+        this.executor = executor;
+        this.socketProfile = socketProfile;
+        this.size = size;
+        this.connectTimeout = connectTimeout;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * 取一个连接（阻塞模式），没有空闲连接时同步新建；空闲连接可能已被对端关闭，调用方失败后应改用 connect 重试
+     */
+    public SocketChannel take() throws IOException {
+        long now = System.currentTimeMillis();
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (now - entry.since < maxIdleTime && entry.channel.isOpen()) {
+                fill();
+                return entry.channel;
+            }
+            close(entry.channel);
+        }
+        fill();
+        return connect();
+    }
+
+    public SocketChannel connect() throws IOException {
+        SocketChannel channel = socketProfile.open();
+        try {
+            channel.socket().connect(address, connectTimeout);
+        } catch (IOException e) {
+            close(channel);
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * 后台补充空闲连接到 size 个
+     */
+    private void fill() {
+        if (closed || idle.size() >= size || !filling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    while (!closed && idle.size() < size) {
+                        idle.addLast(new Idle(connect()));
+                    }
+                } catch (IOException e) {
+                    LOG.fine(() -> "集群连接建立失败 " + address + " " + e);
+                } finally {
+                    filling.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            filling.set(false);
+        }
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public void close() {
+        closed = true;
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            close(entry.channel);
+        }
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.fine("close cluster channel error " + e);
+        }
+    }
+
+    private static class Idle {
+        private final SocketChannel channel;
+        private final long since = System.currentTimeMillis();
+
+        Idle(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
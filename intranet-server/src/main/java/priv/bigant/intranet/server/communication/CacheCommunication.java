@@ -3,12 +3,14 @@ package priv.bigant.intranet.server.communication;
 import priv.bigant.intrance.common.SocketBean;
 import priv.bigant.intrance.common.communication.HttpCommunication;
 import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
 import priv.bigant.intranet.server.ServerConfig;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Stack;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CacheCommunication extends HttpCommunication {
@@ -30,23 +32,35 @@ public class CacheCommunication extends HttpCommunication {
      * @throws InterruptedException
      */
     public synchronized SocketBean getSocketBean() {
-        long time = System.currentTimeMillis();
-        while ((time + serverConfig.getWaitSocketTime()) > System.currentTimeMillis()) {
-            if (!socketStack.empty()) {
+        long deadline = System.currentTimeMillis() + serverConfig.getWaitSocketTime();
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            if (socketStack.empty()) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } else {
                 SocketBean pop = socketStack.pop();
                 if (pop != null) {
                     boolean b = pop.sendUrgentData();
                     if (!b) {
                         LOG.warning("http 连接器已关闭 。。。。。。。。。。。。。。。。。。。。。。。。");
+                        MetricsRegistry.host(getHost()).tunnelDiscarded();
                         continue;
                     }
-                    LOG.fine("获取到http连接 :" + pop.getId() + "剩余" + socketStack.size());
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.fine("获取到http连接 :" + pop.getId() + "剩余" + socketStack.size());
+                    }
                     return pop;
                 } else {
                     return null;
                 }
             }
         }
+        MetricsRegistry.host(getHost()).tunnelTimeout();
         return null;
     }
 
@@ -54,10 +68,14 @@ public class CacheCommunication extends HttpCommunication {
      * 获取socketBean 还回socketBean
      */
     public synchronized void putSocketBean(SocketBean socketBean) {
-        LOG.fine("归还http连接 :" + socketBean.getId());
-        LOG.fine("before num :" + socketStack.size());
         socketStack.push(socketBean);
-        LOG.fine("after num :" + socketStack.size());
+        notifyAll();
+        LOG.fine(() -> "归还http连接 :" + socketBean.getId() + " 剩余" + socketStack.size());
+    }
+
+    @Override
+    public synchronized int getIdleSocketBeans() {
+        return socketStack.size();
     }
 
     @Override
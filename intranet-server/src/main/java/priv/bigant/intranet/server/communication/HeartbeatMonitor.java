@@ -0,0 +1,96 @@
+package priv.bigant.intranet.server.communication;
+
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.cluster.ClusterNode;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * 与客户端的心跳：每个间隔向所有通信连接发送一次心跳，连续多个间隔收不到客户端任何数据的连接标记为断开并注销域名
+ * <p>
+ * 从未回应过心跳的客户端（旧版本）按 heartbeatLegacyTimeout 判断，兼容先升级服务端的情况
+ * <p>
+ * 存活状态只在这里维护，转发请求时读取 {@link HttpCommunication#isAlive()}，不再在请求路径上写探测数据
+ */
+public class HeartbeatMonitor extends Thread {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    private final Set<HttpCommunication> communications = ConcurrentHashMap.newKeySet();
+    private final ServerConfig serverConfig;
+    private volatile boolean isRun = true;
+
+    public HeartbeatMonitor(ServerConfig serverConfig) {
+        super("HeartbeatMonitor");
+        this.serverConfig = serverConfig;
+        setDaemon(true);
+    }
+
+    public void add(HttpCommunication communication) {
+        communications.add(communication);
+    }
+
+    public int size() {
+        return communications.size();
+    }
+
+    @Override
+    public void run() {
+        while (isRun) {
+            try {
+                check(System.nanoTime());
+            } catch (Exception e) {
+                LOG.severe("心跳检查失败" + e.getMessage());
+                e.printStackTrace();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(serverConfig.getHeartbeatInterval()));
+        }
+    }
+
+    /**
+     * 一轮检查：下线超时或已断开的连接，其余发送心跳
+     */
+    public void check(long now) {
+        long timeout = (long) serverConfig.getHeartbeatInterval() * serverConfig.getHeartbeatMissedBeats();
+        long legacyTimeout = Math.max(timeout, serverConfig.getHeartbeatLegacyTimeout());
+        for (HttpCommunication communication : communications) {
+            long limit = communication.hasRtt() ? timeout : legacyTimeout;
+            if (communication.isAlive() && communication.getSilentMillis(now) > limit) {
+                LOG.warning(communication.getHost() + " 心跳超时 " + communication.getSilentMillis(now) + "ms");
+                communication.markDead();
+            }
+            if (communication.isAlive()) {
+                communication.heartbeat();
+            }
+            if (!communication.isAlive()) {
+                expire(communication);
+            }
+        }
+    }
+
+    private void expire(HttpCommunication communication) {
+        communications.remove(communication);
+        communication.close();
+        String host = communication.getHost();
+        if (host != null && HttpSocketManager.get(host) == communication) {
+            HttpSocketManager.remove(host);
+            LOG.info(host + " 客户端已断开，注销域名");
+            ClusterNode clusterNode = ClusterNode.getInstance();
+            if (clusterNode != null) {
+                clusterNode.announce();
+            }
+        }
+    }
+
+    public void showdown() {
+        isRun = false;
+        LockSupport.unpark(this);
+    }
+}
@@ -3,12 +3,23 @@ package priv.bigant.intranet.server.communication;
 import priv.bigant.intrance.common.HttpSocketManager;
 import priv.bigant.intrance.common.SocketBean;
 import priv.bigant.intrance.common.communication.*;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intrance.common.util.threads.HashedWheelTimer;
 import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.admin.TunnelPool;
+import priv.bigant.intranet.server.cluster.ClusterNode;
+import priv.bigant.intranet.server.cluster.NodeState;
 
 import java.io.IOException;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -16,35 +27,66 @@ import java.util.logging.Logger;
  */
 public class ServerCommunication extends HttpCommunication {
     private static final Logger LOG = Logger.getLogger(ServerCommunication.class.getName());
-    public static final Map<String, SocketBean> MAP = new ConcurrentHashMap<>();
+    /**
+     * 正在等待客户端连上来的穿透通道，超时由时间轮以 null 完成；通道都是按需创建的，不在这里的 id 都是迟到的通道
+     */
+    private static final Map<String, CompletableFuture<SocketBean>> WAITING = new ConcurrentHashMap<>();
     private ServerConfig serverConfig;
+    /**
+     * 客户端的备用连接：只保持心跳，不接入流量
+     */
+    private volatile boolean standby;
 
     public ServerCommunication(SocketChannel socketChannel, ServerConfig serverConfig) throws IOException {
         super(socketChannel, ServerCommunicationDispose.getInstance(), serverConfig);
         this.serverConfig = serverConfig;
     }
 
+    /**
+     * @param channel 握手完成的 TLS 通道
+     */
+    public ServerCommunication(SocketChannel socketChannel, ByteChannel channel, ServerConfig serverConfig) {
+        super(socketChannel, channel, ServerCommunicationDispose.getInstance(), serverConfig);
+        this.serverConfig = serverConfig;
+    }
+
     @Override
     public SocketBean getSocketBean() {
         long time = System.currentTimeMillis();
-        String id = super.createSocketBean();
-        while ((time + serverConfig.getWaitSocketTime()) > System.currentTimeMillis()) {
-            SocketBean socketBean = MAP.get(id);
-            if (socketBean != null) {
-                MAP.remove(id);
-                return socketBean;
-            }
-
+        String id = UUID.randomUUID().toString();
+        CompletableFuture<SocketBean> future = new CompletableFuture<>();
+        WAITING.put(id, future);
+        HashedWheelTimer.Timeout timeout = HashedWheelTimer.getDefault().newTimeout(() -> future.complete(null), serverConfig.getWaitSocketTime(), TimeUnit.MILLISECONDS);
+        SocketBean socketBean = null;
+        try {
+            super.createSocketBean(id);
+            socketBean = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.fine("getSocketBean error " + e.getCause());
+        } finally {
+            WAITING.remove(id);
+            timeout.cancel();
         }
-        LOG.fine("getSocketBean TIMEOUT: createTime=" + time + "    endTime=" + System.currentTimeMillis());
-        return null;
+        if (socketBean == null) {
+            LOG.fine(() -> "getSocketBean TIMEOUT: createTime=" + time + "    endTime=" + System.currentTimeMillis());
+            MetricsRegistry.host(getHost()).tunnelTimeout();
+        }
+        return socketBean;
     }
 
     @Override
     public void putSocketBean(SocketBean socketBean) {
         String id = socketBean.getId();
-        MAP.put(id, socketBean);
-        LOG.fine("put socket id:" + id);
+        CompletableFuture<SocketBean> future = WAITING.remove(id);
+        if (future == null || !future.complete(socketBean)) {
+            //等待方已超时（已移除或已以 null 完成），迟到的通道直接关闭
+            LOG.fine(() -> "socket id:" + id + " 等待已超时");
+            socketBean.close();
+            return;
+        }
+        LOG.fine(() -> "put socket id:" + id);
     }
 
     @Override
@@ -52,6 +94,14 @@ public class ServerCommunication extends HttpCommunication {
         return null;
     }
 
+    public boolean isStandby() {
+        return standby;
+    }
+
+    public void setStandby(boolean standby) {
+        this.standby = standby;
+    }
+
     /**
      * 统一处理请求
      */
@@ -67,11 +117,6 @@ public class ServerCommunication extends HttpCommunication {
             //服务端没有这个类型请求
         }
 
-        @Override
-        protected void test(CommunicationRequest communicationRequest, Communication communication) {
-            //test数据暂时不管
-        }
-
         @Override
         protected void http(CommunicationRequest communicationRequest, Communication communication) {
             new ReadProcessThread((ServerCommunication) communication, communicationRequest).run();
@@ -105,23 +150,42 @@ public class ServerCommunication extends HttpCommunication {
             try {
                 //读取客户端配置信息
                 String host = communicationRequestHttpFirst.getHost();
+                boolean standby = communicationRequestHttpFirst.isStandby();
                 serverCommunication.setHost(host);
+                //备用连接上的注册被拒绝时保留连接，由客户端稍后重试
+                boolean keep = standby || serverCommunication.isStandby();
                 boolean exist = HttpSocketManager.isExist(host);
                 if (exist) {
-                    boolean b = HttpSocketManager.get(host).isClose();
+                    boolean b = !HttpSocketManager.get(host).isAlive();
                     if (b) {//上一个连接已失效
                         HttpSocketManager.get(host).close();
                         HttpSocketManager.remove(host);
                     } else {//域名已存在
-                        CommunicationRequest.CommunicationRequestHttpReturn communicationRequestHttpReturn = new CommunicationRequest.CommunicationRequestHttpReturn(CommunicationRequest.CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED);
-                        serverCommunication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpReturn));
-                        serverCommunication.close();
-                        LOG.info(host + CodeEnum.HOST_ALREADY_EXIST.getMsg());
+                        occupied(host + CodeEnum.HOST_ALREADY_EXIST.getMsg(), keep);
                         return;
                     }
                 }
+                //集群中其他节点已注册该域名，备用注册不参与集群目录
+                ClusterNode clusterNode = ClusterNode.getInstance();
+                NodeState owner = clusterNode == null || standby ? null : clusterNode.locate(host);
+                if (owner != null) {
+                    occupied(host + CodeEnum.HOST_ALREADY_EXIST.getMsg() + " 节点 " + owner.getId(), keep);
+                    return;
+                }
+                if (standby) {
+                    serverCommunication.setStandby(true);
+                    CommunicationRequest.CommunicationRequestHttpReturn communicationRequestHttpReturn = new CommunicationRequest.CommunicationRequestHttpReturn(CommunicationRequest.CommunicationRequestHttpReturn.Status.SUCCESS);
+                    serverCommunication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpReturn));
+                    LOG.info(host + " 备用连接成功");
+                    return;
+                }
+                serverCommunication.setStandby(false);
                 //连接成功
                 HttpSocketManager.add(host, serverCommunication);
+                if (clusterNode != null) {
+                    clusterNode.announce();
+                }
+                JmxUtil.register("TunnelPool", host, new TunnelPool(host));
                 CommunicationRequest.CommunicationRequestHttpReturn communicationRequestHttpReturn = new CommunicationRequest.CommunicationRequestHttpReturn(CommunicationRequest.CommunicationRequestHttpReturn.Status.SUCCESS);
                 serverCommunication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpReturn));
                 LOG.info(host + " 连接成功");
@@ -132,5 +196,14 @@ public class ServerCommunication extends HttpCommunication {
                 e.printStackTrace();
             }
         }
+
+        private void occupied(String message, boolean keep) throws IOException {
+            CommunicationRequest.CommunicationRequestHttpReturn communicationRequestHttpReturn = new CommunicationRequest.CommunicationRequestHttpReturn(CommunicationRequest.CommunicationRequestHttpReturn.Status.DOMAIN_OCCUPIED);
+            serverCommunication.writeN(CommunicationRequest.createCommunicationRequest(communicationRequestHttpReturn));
+            if (!keep) {
+                serverCommunication.close();
+            }
+            LOG.info(message);
+        }
     }
 }
@@ -0,0 +1,106 @@
+package priv.bigant.intranet.server.limit;
+
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个域名的限流：令牌桶限制请求速率，计数器限制同时转发中的请求数
+ */
+public class HostLimiter {
+
+    private final String host;
+    /**
+     * 为 null 表示不限速
+     */
+    private volatile TokenBucket tokenBucket;
+    private volatile double permitsPerSecond;
+    private volatile int burst;
+    /**
+     * 小于等于 0 表示不限并发
+     */
+    private volatile int maxInFlight;
+    /**
+     * 先自增再检查总数：并发时可能多拒绝，不会超过上限
+     */
+    private final StripedCounter inFlight = new StripedCounter();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rateRejected = new LongAdder();
+    private final LongAdder concurrencyRejected = new LongAdder();
+
+    public HostLimiter(String host, double permitsPerSecond, int burst, int maxInFlight) {
+        this.host = host;
+        configure(permitsPerSecond, burst, maxInFlight);
+    }
+
+    /**
+     * 修改限制，对新请求立即生效
+     */
+    public void configure(double permitsPerSecond, int burst, int maxInFlight) {
+        this.tokenBucket = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond, Math.max(1, burst)) : null;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 占用一个转发名额，成功后必须调用 {@link #release()}
+     *
+     * @throws RejectedRequestException 超过速率（429，带下一个令牌可用的 Retry-After）或并发上限（503）
+     */
+    public void acquire() throws RejectedRequestException {
+        TokenBucket tokenBucket = this.tokenBucket;
+        if (tokenBucket != null && !tokenBucket.tryAcquire()) {
+            rateRejected.increment();
+            int retryAfter = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(tokenBucket.getWaitMillis() + 999));
+            throw new RejectedRequestException(HttpResponseStatus.SC_TOO_MANY_REQUESTS, host + " 请求过于频繁", retryAfter);
+        }
+        inFlight.increment();
+        int maxInFlight = this.maxInFlight;
+        if (maxInFlight > 0 && inFlight.sum() > maxInFlight) {
+            inFlight.decrement();
+            concurrencyRejected.increment();
+            throw new RejectedRequestException(HttpResponseStatus.SC_SERVICE_UNAVAILABLE, host + " 并发请求过多");
+        }
+        accepted.increment();
+    }
+
+    public void release() {
+        inFlight.decrement();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getInFlight() {
+        return (int) inFlight.sum();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRateRejected() {
+        return rateRejected.sum();
+    }
+
+    public long getConcurrencyRejected() {
+        return concurrencyRejected.sum();
+    }
+}
@@ -0,0 +1,56 @@
+package priv.bigant.intranet.server.limit;
+
+import priv.bigant.intranet.server.ServerConfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按域名管理限流器，未单独配置的域名使用 ServerConfig 中的默认值
+ */
+public class HostLimiters {
+
+    private static final Map<String, HostLimiter> LIMITERS = new ConcurrentHashMap<>();
+    /**
+     * 单独设置过的域名，默认值变化时不受影响
+     */
+    private static final Set<String> CONFIGURED = ConcurrentHashMap.newKeySet();
+
+    public static HostLimiter get(String host) {
+        HostLimiter limiter = LIMITERS.get(host);
+        if (limiter == null) {
+            ServerConfig config = ServerConfig.getSeverConfig();
+            limiter = LIMITERS.computeIfAbsent(host, h -> new HostLimiter(h, config.getHostRateLimit(),
+                    config.getHostRateBurst(), config.getHostMaxInFlight()));
+        }
+        return limiter;
+    }
+
+    /**
+     * 单独设置某个域名的限制，对新请求立即生效
+     */
+    public static HostLimiter set(String host, double permitsPerSecond, int burst, int maxInFlight) {
+        HostLimiter limiter = get(host);
+        CONFIGURED.add(host);
+        limiter.configure(permitsPerSecond, burst, maxInFlight);
+        return limiter;
+    }
+
+    /**
+     * 默认值重新加载后应用到未单独设置过的域名
+     */
+    public static void applyDefaults() {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        for (HostLimiter limiter : LIMITERS.values()) {
+            if (!CONFIGURED.contains(limiter.getHost())) {
+                limiter.configure(config.getHostRateLimit(), config.getHostRateBurst(), config.getHostMaxInFlight());
+            }
+        }
+    }
+
+    public static Collection<HostLimiter> all() {
+        return LIMITERS.values();
+    }
+}
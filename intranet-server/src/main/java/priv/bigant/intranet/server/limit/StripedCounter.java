@@ -0,0 +1,47 @@
+package priv.bigant.intranet.server.limit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器：按线程分散到不同的槽，每个槽独占一个缓存行，热点域名的自增自减不再争用同一个缓存行；
+ * 读取时累加所有槽，并发修改时是近似值
+ */
+class StripedCounter {
+
+    /**
+     * 槽之间间隔 16 个 long（128 字节），避免相邻槽伪共享
+     */
+    private static final int PAD = 16;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StripedCounter() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+        this.cells = new AtomicLongArray(stripes * PAD);
+        this.mask = stripes - 1;
+    }
+
+    void increment() {
+        cells.getAndIncrement(index());
+    }
+
+    /**
+     * 可以在与自增不同的线程上调用，单个槽可能为负，总和仍然正确
+     */
+    void decrement() {
+        cells.getAndDecrement(index());
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    private int index() {
+        return ((int) Thread.currentThread().getId() & mask) * PAD;
+    }
+}
@@ -0,0 +1,57 @@
+package priv.bigant.intranet.server.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 实现）
+ * <p>
+ * 只保存一个"理论到达时间"，每次获取令牌把它向后推一个发放间隔，超过突发容量即拒绝，一次 CAS 完成
+ */
+public class TokenBucket {
+
+    /**
+     * 发放一个令牌的间隔（纳秒）
+     */
+    private final long interval;
+    /**
+     * 允许提前的最大时间，即突发容量
+     */
+    private final long tolerance;
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param permitsPerSecond 每秒发放令牌数
+     * @param burst            桶容量（允许的突发请求数）
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * burst;
+    }
+
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long start = tat - now > 0 ? tat : now;
+            long next = start + interval;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 距下一个令牌可用的毫秒数，用于 Retry-After
+     */
+    public long getWaitMillis() {
+        long wait = theoreticalArrival.get() + interval - tolerance - System.nanoTime();
+        return wait > 0 ? TimeUnit.NANOSECONDS.toMillis(wait) + 1 : 0;
+    }
+}
@@ -1,17 +1,24 @@
 package priv.bigant.intranet.server.process;
 
 import priv.bigant.intrance.common.ProcessBase;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ThreadPool;
 import priv.bigant.intrance.common.ServerConnector.ConnectorThread;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
+import priv.bigant.intrance.common.util.net.SslTunnel;
 import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.communication.HeartbeatMonitor;
 import priv.bigant.intranet.server.communication.ServerCommunication;
 
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 
 /**
@@ -19,12 +26,29 @@ import java.util.concurrent.TimeUnit;
  */
 public class CommunicationProcessor extends ProcessBase {
 
+    private static final Logger LOG = LogUtil.getLog();
     private ThreadPoolExecutor executor;
     private ServerConfig serverConfig;
+    private HeartbeatMonitor heartbeatMonitor;
+    /**
+     * 不为空时通信连接先完成 TLS 握手
+     */
+    private SslTunnel sslTunnel;
 
     public CommunicationProcessor(ServerConfig config) {
         this.serverConfig = config;
         this.executor = new ThreadPoolExecutor(serverConfig.getCorePoolSize(), serverConfig.getMaximumPoolSize(), serverConfig.getKeepAliveTime(), TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        JmxUtil.register("ThreadPool", getName(), new ThreadPool(executor));
+        this.heartbeatMonitor = new HeartbeatMonitor(config);
+        heartbeatMonitor.start();
+    }
+
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setSslTunnel(SslTunnel sslTunnel) {
+        this.sslTunnel = sslTunnel;
     }
 
     @Override
@@ -34,7 +58,7 @@ public class CommunicationProcessor extends ProcessBase {
 
     @Override
     public void showdown() {
-
+        heartbeatMonitor.showdown();
     }
 
     @Override
@@ -44,10 +68,37 @@ public class CommunicationProcessor extends ProcessBase {
     }
 
     @Override
-    public void accept(ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
-        SocketChannel socketChannel = ((ServerSocketChannel) selectionKey.channel()).accept();
-        socketChannel.configureBlocking(false);
-        connectorThread.register(socketChannel, SelectionKey.OP_READ, new ServerCommunication(socketChannel, serverConfig));
+    public void accept(ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException {
+        if (sslTunnel != null) {
+            try {
+                executor.execute(() -> acceptSecure(connectorThread, socketChannel));
+            } catch (RejectedExecutionException e) {
+                LOG.warning("通信连接握手线程已满 " + socketChannel);
+                socketChannel.close();
+            }
+            return;
+        }
+        ServerCommunication serverCommunication = new ServerCommunication(socketChannel, serverConfig);
+        heartbeatMonitor.add(serverCommunication);
+        connectorThread.register(socketChannel, SelectionKey.OP_READ, serverCommunication);
+    }
+
+    /**
+     * 握手在线程池中完成，避免慢速客户端阻塞 selector 线程
+     */
+    private void acceptSecure(ConnectorThread connectorThread, SocketChannel socketChannel) {
+        try {
+            SecureNioChannel channel = sslTunnel.handshake(socketChannel, null, 0);
+            ServerCommunication serverCommunication = new ServerCommunication(socketChannel, channel, serverConfig);
+            heartbeatMonitor.add(serverCommunication);
+            connectorThread.register(socketChannel, SelectionKey.OP_READ, serverCommunication);
+            //客户端在握手后立即发送注册，可能已随握手数据一起读出，不会再触发可读事件
+            if (channel.hasBufferedInput()) {
+                serverCommunication.disposeRequests();
+            }
+        } catch (IOException e) {
+            LOG.fine("通信连接 TLS 握手失败 " + socketChannel + " " + e);
+        }
     }
 
 
@@ -9,17 +9,20 @@ import priv.bigant.intranet.server.Http11ProcessorServer;
  * 用户创建新的http交互通道处理器
  */
 public class HttpProcessor extends HttpIntranetServiceProcessAbs {
+    private final Config config;
+
     public HttpProcessor(Config config) {
         super();
+        this.config = config;
     }
 
     @Override
     public Http11Processor createHttp11Processor() {
-        return new Http11ProcessorServer(8 * 1024, null, null);
+        return new Http11ProcessorServer(config.getMaxHttpHeaderSize(), null, null);
     }
 
     @Override
     public String getName() {
-        return null;
+        return "HttpProcess";
     }
 }
@@ -0,0 +1,22 @@
+package priv.bigant.intranet.server.process;
+
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.ssl.SslContextFactory;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * HTTPS 端口：握手完成后与 HttpProcessor 相同
+ */
+public class HttpsProcessor extends HttpProcessor {
+
+    public HttpsProcessor(ServerConfig config, SSLContext sslContext) {
+        super(config);
+        setSsl(sslContext, SslContextFactory.protocols(config), config.getSslHandshakeTimeout(), config.getSslBufferPoolSize());
+    }
+
+    @Override
+    public String getName() {
+        return "HttpsProcess";
+    }
+}
@@ -2,35 +2,56 @@ package priv.bigant.intranet.server.process;
 
 import priv.bigant.intrance.common.HttpSocketManager;
 import priv.bigant.intrance.common.ProcessBase;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.jmx.ThreadPool;
 import priv.bigant.intrance.common.ServerConnector;
 import priv.bigant.intrance.common.SocketBean;
 import priv.bigant.intrance.common.communication.Communication;
 import priv.bigant.intrance.common.communication.CommunicationRequest;
 import priv.bigant.intrance.common.communication.CommunicationRequest.CommunicationRequestHttpAdd;
 import priv.bigant.intrance.common.communication.HttpCommunication;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
+import priv.bigant.intrance.common.util.net.SslTunnel;
 import priv.bigant.intranet.server.ServerConfig;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * 客户端与服务端进行http信息交换器
  */
 public class IntranetProcessor extends ProcessBase {
 
+    private static final Logger LOG = LogUtil.getLog();
     private ThreadPoolExecutor executor;
     private ServerConfig serverConfig;
+    /**
+     * 不为空时数据连接先完成 TLS 握手
+     */
+    private SslTunnel sslTunnel;
 
     public IntranetProcessor(ServerConfig config) {
         this.serverConfig = config;
         this.executor = new ThreadPoolExecutor(serverConfig.getCorePoolSize(), serverConfig.getMaximumPoolSize(), serverConfig.getKeepAliveTime(), TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        JmxUtil.register("ThreadPool", getName(), new ThreadPool(executor));
     }
 
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setSslTunnel(SslTunnel sslTunnel) {
+        this.sslTunnel = sslTunnel;
+    }
 
     @Override
     public String getName() {
@@ -61,14 +82,81 @@ public class IntranetProcessor extends ProcessBase {
     }
 
     @Override
-    public void accept(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
-        SocketChannel socketChannel = ((ServerSocketChannel) selectionKey.channel()).accept();
-
-        socketChannel.configureBlocking(false);
+    public void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException {
+        if (sslTunnel != null) {
+            try {
+                executor.execute(new SecureAdd(socketChannel));
+            } catch (RejectedExecutionException e) {
+                LOG.warning("数据连接握手线程已满 " + socketChannel);
+                socketChannel.close();
+            }
+            return;
+        }
         connectorThread.register(socketChannel, SelectionKey.OP_READ);
 
     }
 
+    /**
+     * TLS 数据连接：握手与读取 HTTP_ADD 都在线程池中完成，不注册到 selector，
+     * 避免取消的 key 还未注销时处理线程把通道改为阻塞模式
+     */
+    class SecureAdd implements Runnable {
+
+        private final SocketChannel socketChannel;
+
+        SecureAdd(SocketChannel socketChannel) {
+            this.socketChannel = socketChannel;
+        }
+
+        @Override
+        public void run() {
+            SecureNioChannel channel;
+            try {
+                channel = sslTunnel.handshake(socketChannel, null, 0);
+            } catch (IOException e) {
+                LOG.fine("数据连接 TLS 握手失败 " + socketChannel + " " + e);
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(1024);
+                int end;
+                while ((end = messageEnd(buffer)) < 0) {
+                    if (!buffer.hasRemaining() || sslTunnel.read(channel, buffer) < 0) {
+                        throw new IOException("HTTP_ADD 不完整");
+                    }
+                }
+                CommunicationRequest communicationRequest = CommunicationRequest.createCommunicationRequest(new String(buffer.array(), 0, end, StandardCharsets.UTF_8));
+                CommunicationRequestHttpAdd communicationRequestHttpAdd = communicationRequest.toJavaObject(CommunicationRequestHttpAdd.class);
+                SocketBean socketBean = new SocketBean(socketChannel, channel, communicationRequestHttpAdd.getId());
+                HttpCommunication communication = HttpSocketManager.get(HttpSocketManager.getKey(communicationRequestHttpAdd.getId()));
+                communication.putSocketBean(socketBean);
+            } catch (Exception e) {
+                LOG.fine("读取 HTTP_ADD 失败 " + socketChannel + " " + e);
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    LOG.fine("关闭数据连接失败 " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 第一条完整消息（括号配对）的结束位置，不完整时返回 -1
+     */
+    private static int messageEnd(ByteBuffer buffer) {
+        int depth = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+            byte b = buffer.get(i);
+            if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
     /*class ReadProcessThread implements Runnable {
 
         private SocketChannel socketChannel;
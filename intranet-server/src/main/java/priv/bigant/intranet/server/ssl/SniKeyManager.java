@@ -0,0 +1,99 @@
+package priv.bigant.intranet.server.ssl;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 按 SNI 选证书：别名与域名相同的证书优先，其次是上级域名的通配符证书（别名 *.example.com），都没有时使用默认证书
+ * <p>
+ * JSSE 按密钥类型逐个询问，类型不符返回 null 让它换下一种类型，不能退回委托的选择，否则会选中其他域名的证书
+ */
+public class SniKeyManager extends X509ExtendedKeyManager {
+
+    private final X509ExtendedKeyManager delegate;
+    private final String defaultAlias;
+
+    public SniKeyManager(X509ExtendedKeyManager delegate, String defaultAlias) {
+        this.delegate = delegate;
+        this.defaultAlias = defaultAlias;
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        return choose(keyType, engine == null ? null : engine.getHandshakeSession());
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        SSLSession session = socket instanceof SSLSocket ? ((SSLSocket) socket).getHandshakeSession() : null;
+        return choose(keyType, session);
+    }
+
+    private String choose(String keyType, SSLSession session) {
+        if (session instanceof ExtendedSSLSession) {
+            List<SNIServerName> names = ((ExtendedSSLSession) session).getRequestedServerNames();
+            for (SNIServerName name : names) {
+                if (name instanceof SNIHostName) {
+                    String host = ((SNIHostName) name).getAsciiName().toLowerCase(Locale.ENGLISH);
+                    if (matches(host, keyType)) {
+                        return host;
+                    }
+                    int dot = host.indexOf('.');
+                    if (dot > 0 && matches("*" + host.substring(dot), keyType)) {
+                        return "*" + host.substring(dot);
+                    }
+                }
+            }
+        }
+        return matches(defaultAlias, keyType) ? defaultAlias : null;
+    }
+
+    private boolean matches(String alias, String keyType) {
+        if (alias == null) {
+            return false;
+        }
+        X509Certificate[] chain = delegate.getCertificateChain(alias);
+        if (chain == null || chain.length == 0) {
+            return false;
+        }
+        String algorithm = chain[0].getPublicKey().getAlgorithm();
+        //TLS 1.3 用 RSASSA-PSS 签名时仍可使用 RSA 证书
+        return keyType.equals(algorithm) || ("RSASSA-PSS".equals(keyType) && "RSA".equals(algorithm));
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+        return delegate.chooseClientAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        return delegate.getCertificateChain(alias);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        return delegate.getPrivateKey(alias);
+    }
+}
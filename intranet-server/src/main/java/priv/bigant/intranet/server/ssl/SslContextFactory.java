@@ -0,0 +1,131 @@
+package priv.bigant.intranet.server.ssl;
+
+import org.apache.commons.lang3.StringUtils;
+import priv.bigant.intrance.common.log.LogUtil;
+import priv.bigant.intranet.server.ServerConfig;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * 创建 HTTPS 使用的 SSLContext：默认证书 + 按域名的证书（SNI），并配置会话缓存与 session ticket
+ */
+public class SslContextFactory {
+
+    private static final Logger LOG = LogUtil.getLog();
+
+    private SslContextFactory() {
+    }
+
+    public static SSLContext create(ServerConfig config) throws GeneralSecurityException, IOException {
+        //JDK 只在第一次创建 SSLContext 前读取该属性
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(config.isSslSessionTickets()));
+
+        char[] password = config.getSslKeyStorePassword().toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        String defaultAlias = null;
+        if (StringUtils.isNotBlank(config.getSslKeyStore())) {
+            KeyStore source = load(new File(config.getSslKeyStore()), config.getSslKeyStoreType(), password);
+            defaultAlias = copy(source, null, keyStore, password);
+        }
+        if (StringUtils.isNotBlank(config.getSslCertDir())) {
+            File[] files = new File(config.getSslCertDir()).listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    int dot = name.lastIndexOf('.');
+                    String type = dot < 0 ? null : type(name.substring(dot + 1));
+                    if (type == null || !file.isFile()) {
+                        continue;
+                    }
+                    String host = name.substring(0, dot).toLowerCase(Locale.ENGLISH);
+                    copy(load(file, type, password), host, keyStore, password);
+                    LOG.info("加载证书 " + host + " " + file);
+                    if (defaultAlias == null) {
+                        defaultAlias = host;
+                    }
+                }
+            }
+        }
+        if (defaultAlias == null) {
+            throw new GeneralSecurityException("未配置证书 sslKeyStore / sslCertDir");
+        }
+
+        //SunX509 的别名就是密钥库里的别名，PKIX 会加上前缀，SNI 按别名选证书时不能用
+        KeyManagerFactory factory = KeyManagerFactory.getInstance("SunX509");
+        factory.init(keyStore, password);
+        X509ExtendedKeyManager keyManager = (X509ExtendedKeyManager) factory.getKeyManagers()[0];
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(new KeyManager[]{new SniKeyManager(keyManager, defaultAlias)}, null, null);
+        SSLSessionContext sessionContext = context.getServerSessionContext();
+        sessionContext.setSessionCacheSize(config.getSslSessionCacheSize());
+        sessionContext.setSessionTimeout(config.getSslSessionTimeout());
+        return context;
+    }
+
+    public static String[] protocols(ServerConfig config) {
+        return StringUtils.isBlank(config.getSslProtocols()) ? null : StringUtils.stripAll(config.getSslProtocols().split(","));
+    }
+
+    private static String type(String extension) {
+        switch (extension.toLowerCase(Locale.ENGLISH)) {
+            case "p12":
+            case "pfx":
+                return "PKCS12";
+            case "jks":
+                return "JKS";
+            default:
+                return null;
+        }
+    }
+
+    private static KeyStore load(File file, String type, char[] password) throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream inputStream = new FileInputStream(file)) {
+            keyStore.load(inputStream, password);
+        }
+        return keyStore;
+    }
+
+    /**
+     * 复制密钥条目，alias 不为空时只复制第一个并改名为 alias
+     *
+     * @return 第一个复制的别名
+     */
+    private static String copy(KeyStore source, String alias, KeyStore target, char[] password) throws GeneralSecurityException {
+        String first = null;
+        Enumeration<String> aliases = source.aliases();
+        while (aliases.hasMoreElements()) {
+            String name = aliases.nextElement();
+            if (!source.isKeyEntry(name)) {
+                continue;
+            }
+            Key key = source.getKey(name, password);
+            Certificate[] chain = source.getCertificateChain(name);
+            String targetAlias = alias == null ? name.toLowerCase(Locale.ENGLISH) : alias;
+            target.setKeyEntry(targetAlias, key, password, chain);
+            if (first == null) {
+                first = targetAlias;
+            }
+            if (alias != null) {
+                break;
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,57 @@
+package priv.bigant.test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.metrics.HostMetrics;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intranet.server.admin.AdminSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AdminSnapshotTest {
+
+    @Test
+    public void prometheusAndJson() {
+        HostMetrics metrics = MetricsRegistry.host("admin\"test");
+        metrics.status(200);
+        metrics.latency(3_000_000);
+        metrics.bytesOut(10);
+
+        AdminSnapshot snapshot = new AdminSnapshot();
+        snapshot.refresh();
+        String text = new String(snapshot.getPrometheus(), StandardCharsets.UTF_8);
+        Assert.assertTrue(text, text.contains("intranet_requests_total{host=\"admin\\\"test\",status=\"200\"} 1"));
+        Assert.assertTrue(text, text.contains("intranet_request_duration_seconds_bucket{host=\"admin\\\"test\",le=\"0.005\"} 1"));
+        Assert.assertTrue(text, text.contains("intranet_request_duration_seconds_bucket{host=\"admin\\\"test\",le=\"0.001\"} 0"));
+
+        // 同一指标的样本必须连续
+        Set<String> finished = new HashSet<>();
+        String current = null;
+        for (String line : text.split("\n")) {
+            String name = line.startsWith("# TYPE ") ? line.split(" ")[2] : family(line);
+            if (!name.equals(current)) {
+                Assert.assertTrue("指标不连续 " + name, finished.add(name));
+                current = name;
+            }
+        }
+
+        JSONObject json = JSON.parseObject(new String(snapshot.getJson(), StandardCharsets.UTF_8));
+        Assert.assertNotNull(json.getJSONArray("hosts"));
+        Assert.assertNotNull(json.getJSONArray("executors"));
+    }
+
+    private static String family(String line) {
+        int end = line.indexOf('{');
+        String name = end < 0 ? line.substring(0, line.indexOf(' ')) : line.substring(0, end);
+        for (String suffix : new String[]{"_bucket", "_sum", "_count"}) {
+            if (name.endsWith(suffix) && name.contains("_seconds")) {
+                return name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return name;
+    }
+}
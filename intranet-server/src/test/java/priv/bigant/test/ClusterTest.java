@@ -0,0 +1,170 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intranet.server.cluster.ClusterNode;
+import priv.bigant.intranet.server.cluster.NodeState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class ClusterTest {
+
+    private final List<ClusterNode> nodes = new ArrayList<>();
+    private ServerSocket origin;
+
+    @After
+    public void stop() throws IOException {
+        nodes.forEach(ClusterNode::stop);
+        if (origin != null) {
+            origin.close();
+        }
+    }
+
+    @Test
+    public void directoryConvergesAndExpires() throws Exception {
+        ClusterNode a = node(null, Collections.emptyList(), null);
+        ClusterNode b = node(a, Collections.singletonList("b.test"), null);
+        ClusterNode c = node(b, Arrays.asList("c1.test", "c2.test"), null);
+
+        await(() -> c.getId().equals(id(a.locate("c2.test"))) && b.getId().equals(id(a.locate("b.test")))
+                && c.getId().equals(id(b.locate("c1.test"))) && b.getId().equals(id(c.locate("b.test"))));
+        Assert.assertNull(a.locate("unknown.test"));
+        Assert.assertNull(c.locate("c1.test"));
+
+        c.stop();
+        nodes.remove(c);
+        await(() -> a.locate("c1.test") == null && b.locate("c1.test") == null);
+        Assert.assertEquals(b.getId(), id(a.locate("b.test")));
+    }
+
+    @Test
+    public void forwardsToOwningNode() throws Exception {
+        origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        InputStream in = socket.getInputStream();
+                        byte[] buffer = new byte[1024];
+                        int n = in.read(buffer);
+                        String requestLine = new String(buffer, 0, n, StandardCharsets.ISO_8859_1).split("\r\n")[0];
+                        String body = "echo " + requestLine;
+                        OutputStream out = socket.getOutputStream();
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1));
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        AtomicInteger released = new AtomicInteger();
+        TunnelSource local = new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                if ("busy.test".equals(host)) {
+                    throw new RejectedRequestException(HttpResponseStatus.SC_TOO_MANY_REQUESTS, host + " 请求过于频繁", 2);
+                }
+                if (!"app.test".equals(host)) {
+                    return null;
+                }
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                released.incrementAndGet();
+                socketBean.close();
+            }
+        };
+        ClusterNode owner = node(null, Arrays.asList("app.test", "busy.test", "gone.test"), local);
+        ClusterNode entry = node(owner, Collections.emptyList(), null);
+        await(() -> entry.locate("gone.test") != null);
+
+        for (int i = 0; i < 3; i++) {
+            SocketBean socketBean = entry.forward("app.test");
+            Assert.assertTrue(socketBean instanceof ClusterNode.ForwardedSocketBean);
+            SocketChannel channel = socketBean.getSocketChannel();
+            channel.configureBlocking(true);
+            channel.write(ByteBuffer.wrap(("GET /hello/" + i + " HTTP/1.1\r\nHost: app.test\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+            String response = readAll(channel);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            Assert.assertTrue(response, response.endsWith("echo GET /hello/" + i + " HTTP/1.1"));
+            socketBean.close();
+        }
+        await(() -> released.get() == 3);
+        Assert.assertEquals(3, entry.getForwarded());
+        Assert.assertEquals(3, owner.getServed());
+
+        Assert.assertNull(entry.forward("gone.test"));
+        Assert.assertNull(entry.forward("unknown.test"));
+        try {
+            entry.forward("busy.test");
+            Assert.fail();
+        } catch (RejectedRequestException e) {
+            Assert.assertEquals(HttpResponseStatus.SC_TOO_MANY_REQUESTS, e.getStatus());
+            Assert.assertEquals(2, e.getRetryAfterSeconds());
+        }
+    }
+
+    private ClusterNode node(ClusterNode seed, List<String> hosts, TunnelSource local) throws IOException {
+        ClusterNode node = new ClusterNode("127.0.0.1", 0, local, () -> hosts);
+        node.setGossipInterval(50);
+        node.setNodeTimeout(500);
+        node.setPoolSize(2);
+        if (seed != null) {
+            node.setSeeds("127.0.0.1:" + seed.getPort());
+        }
+        node.start();
+        nodes.add(node);
+        return node;
+    }
+
+    private static String id(NodeState state) {
+        return state == null ? null : state.getId();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static String readAll(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        channel.socket().setSoTimeout(5000);
+        InputStream in = channel.socket().getInputStream();
+        int n;
+        byte[] bytes = new byte[1024];
+        while ((n = in.read(bytes)) >= 0) {
+            buffer.put(bytes, 0, n);
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,118 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ConfigWatcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ConfigWatcherTest {
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("config-watcher");
+        file = dir.resolve("test.properties");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void reloadsChangedValues() throws IOException {
+        TestConfig config = new TestConfig();
+        write("poolSize=8\nname=a\n");
+        ConfigWatcher watcher = new ConfigWatcher(file, config, new Properties());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("poolSize", "name")), watcher.reload());
+        Assert.assertEquals(8, config.getPoolSize());
+
+        //无法转换的值整份不生效
+        write("poolSize=abc\nname=b\n");
+        Assert.assertTrue(watcher.reload().isEmpty());
+        Assert.assertEquals(8, config.getPoolSize());
+        Assert.assertEquals("a", config.getName());
+
+        //启动参数优先于文件
+        Properties overrides = new Properties();
+        overrides.setProperty("poolSize", "3");
+        watcher = new ConfigWatcher(file, config, overrides);
+        write("poolSize=16\nname=a\n");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("poolSize")), watcher.reload());
+        Assert.assertEquals(3, config.getPoolSize());
+    }
+
+    @Test
+    public void watchesFile() throws Exception {
+        TestConfig config = new TestConfig();
+        write("poolSize=1\n");
+        BlockingQueue<Set<String>> reloaded = new ArrayBlockingQueue<>(4);
+        ConfigWatcher watcher = new ConfigWatcher(file, config, new Properties());
+        watcher.addListener((previous, changed) -> {
+            Assert.assertEquals("1", previous.get("poolSize"));
+            reloaded.add(changed);
+        });
+        watcher.start();
+        try {
+            //等待监听注册完成
+            Thread.sleep(500);
+            write("poolSize=1\nratio=0.5\n");
+            Set<String> changed = reloaded.poll(10, TimeUnit.SECONDS);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("ratio")), changed);
+            Assert.assertEquals(0.5, config.getRatio(), 0);
+        } finally {
+            watcher.showdown();
+            watcher.join(5000);
+        }
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    public static class TestConfig {
+        private int poolSize = 1;
+        private double ratio;
+        private String name;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
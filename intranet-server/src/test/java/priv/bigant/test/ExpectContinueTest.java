@@ -0,0 +1,194 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExpectContinueTest {
+
+    private final AtomicInteger acquired = new AtomicInteger();
+    private final AtomicInteger bodyBytes = new AtomicInteger(-1);
+    private volatile boolean reject;
+    private ServerSocket origin;
+    private ServerConnector connector;
+    private int port;
+    private int expectContinueTimeout;
+    private long maxRequestBodySize;
+
+    @Before
+    public void start() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        expectContinueTimeout = config.getExpectContinueTimeout();
+        maxRequestBodySize = config.getMaxRequestBodySize();
+        //源站不答复时要等很久，测试中收到 100 一定来自源站
+        config.setExpectContinueTimeout(10000);
+        origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        serve(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                acquired.incrementAndGet();
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                socketBean.close();
+            }
+        });
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connector = new ServerConnector("ExpectContinueTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+    }
+
+    @After
+    public void stop() throws IOException {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        config.setExpectContinueTimeout(expectContinueTimeout);
+        config.setMaxRequestBodySize(maxRequestBodySize);
+        Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+        connector.showdown();
+        origin.close();
+    }
+
+    /**
+     * 源站读完请求头后回复 100 或 417，回复 100 时再读取 5 字节的请求体
+     */
+    private void serve(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        readHead(in);
+        if (reject) {
+            out.write("HTTP/1.1 417 Expectation Failed\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            bodyBytes.set(in.available());
+            return;
+        }
+        out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        byte[] body = new byte[5];
+        int n = 0;
+        while (n < body.length) {
+            n += in.read(body, n, body.length - n);
+        }
+        bodyBytes.set(n);
+        String echo = new String(body, StandardCharsets.ISO_8859_1);
+        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + echo.length() + "\r\n\r\n" + echo).getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    @Test
+    public void forwardsContinueFromOrigin() throws Exception {
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            OutputStream out = client.getOutputStream();
+            InputStream in = client.getInputStream();
+            long start = System.currentTimeMillis();
+            out.write(request(5).getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            Assert.assertEquals("HTTP/1.1 100 Continue", readHead(in).split("\r\n")[0]);
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            out.write("hello".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            String head = readHead(in);
+            Assert.assertTrue(head, head.startsWith("HTTP/1.1 200 OK"));
+            byte[] body = new byte[5];
+            Assert.assertEquals(5, in.read(body));
+            Assert.assertEquals("hello", new String(body, StandardCharsets.ISO_8859_1));
+            Assert.assertEquals(5, bodyBytes.get());
+        }
+    }
+
+    @Test
+    public void originRejectsBeforeBody() throws Exception {
+        reject = true;
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(request(1024 * 1024).getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            String response = readAll(client.getInputStream());
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 417"));
+            Assert.assertFalse(response, response.contains("100 Continue"));
+            //请求体没有进入穿透通道
+            Assert.assertEquals(0, bodyBytes.get());
+        }
+    }
+
+    @Test
+    public void rejectsLargeBodyAtEdge() throws Exception {
+        ServerConfig.getSeverConfig().setMaxRequestBodySize(1024);
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(request(1024 * 1024).getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            String response = readAll(client.getInputStream());
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 413"));
+            Assert.assertEquals(0, acquired.get());
+        }
+    }
+
+    private static String request(int contentLength) {
+        return "POST /upload HTTP/1.1\r\nHost: expect.test\r\nExpect: 100-continue\r\nContent-Length: " + contentLength + "\r\n\r\n";
+    }
+
+    /**
+     * 逐字节读到空行为止，不多读后面的数据
+     */
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            head.write(b);
+            String s = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        throw new IOException("连接已关闭 " + head);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            all.write(buffer, 0, n);
+        }
+        return new String(all.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
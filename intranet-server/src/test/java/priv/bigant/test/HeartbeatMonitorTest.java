@@ -0,0 +1,109 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.HttpSocketManager;
+import priv.bigant.intrance.common.communication.Communication;
+import priv.bigant.intrance.common.communication.CommunicationEnum;
+import priv.bigant.intrance.common.communication.CommunicationRequest;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.communication.HeartbeatMonitor;
+import priv.bigant.intranet.server.communication.ServerCommunication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+public class HeartbeatMonitorTest {
+
+    private static final String HOST = "heartbeat.test";
+
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private ServerCommunication communication;
+    private HeartbeatMonitor monitor;
+
+    @Before
+    public void connect() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        communication = new ServerCommunication(server.accept(), ServerConfig.getSeverConfig());
+        communication.setHost(HOST);
+        HttpSocketManager.add(HOST, communication);
+        monitor = new HeartbeatMonitor(ServerConfig.getSeverConfig());
+        monitor.add(communication);
+    }
+
+    @After
+    public void close() throws IOException {
+        HttpSocketManager.remove(HOST);
+        communication.close();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void echoMeasuresRtt() throws IOException {
+        monitor.check(System.nanoTime());
+        CommunicationRequest request = Communication.readRequest(client, "test");
+        Assert.assertEquals(CommunicationEnum.TEST, request.getType());
+        CommunicationRequest.CommunicationRequestTest test = request.toJavaObject(CommunicationRequest.CommunicationRequestTest.class);
+        Assert.assertFalse(test.isEcho());
+
+        test.setEcho(true);
+        Communication.writeN(CommunicationRequest.createCommunicationRequest(test), client, ServerConfig.getSeverConfig());
+        communication.disposeRequest();
+        Assert.assertTrue(communication.hasRtt());
+        Assert.assertTrue(communication.isAlive());
+        Assert.assertSame(communication, HttpSocketManager.get(HOST));
+    }
+
+    @Test
+    public void silentClientExpires() throws IOException {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        long timeout = TimeUnit.MILLISECONDS.toNanos((long) config.getHeartbeatInterval() * config.getHeartbeatMissedBeats());
+        monitor.check(System.nanoTime());
+        Assert.assertTrue(communication.isAlive());
+        Assert.assertEquals(1, monitor.size());
+        echo();
+
+        monitor.check(System.nanoTime() + timeout + TimeUnit.SECONDS.toNanos(1));
+        Assert.assertFalse(communication.isAlive());
+        Assert.assertNull(HttpSocketManager.get(HOST));
+        Assert.assertEquals(0, monitor.size());
+    }
+
+    /**
+     * 旧版本客户端不回应心跳，只每 5 秒探测一次，不能按心跳间隔下线
+     */
+    @Test
+    public void legacyClientUsesLongerTimeout() {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        long timeout = TimeUnit.MILLISECONDS.toNanos((long) config.getHeartbeatInterval() * config.getHeartbeatMissedBeats());
+        monitor.check(System.nanoTime() + timeout + TimeUnit.SECONDS.toNanos(1));
+        Assert.assertTrue(communication.isAlive());
+        Assert.assertSame(communication, HttpSocketManager.get(HOST));
+
+        monitor.check(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getHeartbeatLegacyTimeout()) + TimeUnit.SECONDS.toNanos(1));
+        Assert.assertFalse(communication.isAlive());
+        Assert.assertNull(HttpSocketManager.get(HOST));
+        Assert.assertEquals(0, monitor.size());
+    }
+
+    /**
+     * 客户端带回一次心跳
+     */
+    private void echo() throws IOException {
+        CommunicationRequest request = Communication.readRequest(client, "test");
+        CommunicationRequest.CommunicationRequestTest test = request.toJavaObject(CommunicationRequest.CommunicationRequestTest.class);
+        test.setEcho(true);
+        Communication.writeN(CommunicationRequest.createCommunicationRequest(test), client, ServerConfig.getSeverConfig());
+        communication.disposeRequest();
+        Assert.assertTrue(communication.hasRtt());
+    }
+}
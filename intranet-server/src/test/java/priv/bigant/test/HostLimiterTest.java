@@ -0,0 +1,147 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.coyote.HttpResponseStatus;
+import priv.bigant.intrance.common.exception.RejectedRequestException;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.limit.HostLimiter;
+import priv.bigant.intranet.server.limit.TokenBucket;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HostLimiterTest {
+
+    @Test
+    public void tokenBucketBurst() {
+        TokenBucket tokenBucket = new TokenBucket(1, 5);
+        int acquired = 0;
+        for (int i = 0; i < 10; i++) {
+            if (tokenBucket.tryAcquire()) {
+                acquired++;
+            }
+        }
+        Assert.assertEquals(5, acquired);
+        Assert.assertTrue(tokenBucket.getWaitMillis() > 0);
+    }
+
+    @Test
+    public void maxInFlight() throws RejectedRequestException {
+        HostLimiter limiter = new HostLimiter("a.bigant.club", 0, 0, 2);
+        limiter.acquire();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            Assert.fail();
+        } catch (RejectedRequestException e) {
+            Assert.assertEquals(HttpResponseStatus.SC_SERVICE_UNAVAILABLE, e.getStatus());
+        }
+        limiter.release();
+        limiter.acquire();
+        Assert.assertEquals(2, limiter.getInFlight());
+        Assert.assertEquals(1, limiter.getConcurrencyRejected());
+    }
+
+    @Test
+    public void rateLimited() throws RejectedRequestException {
+        HostLimiter limiter = new HostLimiter("b.bigant.club", 1, 1, 0);
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            Assert.fail();
+        } catch (RejectedRequestException e) {
+            Assert.assertEquals(HttpResponseStatus.SC_TOO_MANY_REQUESTS, e.getStatus());
+            Assert.assertEquals(1, e.getRetryAfterSeconds());
+        }
+    }
+
+    @Test
+    public void rateLimitedResponseHasRetryAfter() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        HostLimiter limiter = new HostLimiter("d.bigant.club", 1, 1, 0);
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                limiter.acquire();
+                return null;
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                socketBean.close();
+            }
+        });
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ServerConnector connector = new ServerConnector("HostLimiterTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        try {
+            connector.start();
+            Assert.assertTrue(request(port).startsWith("HTTP/1.1 404"));
+            String response = request(port);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 429"));
+            Assert.assertTrue(response, response.contains("\r\nRetry-After: 1\r\n"));
+        } finally {
+            connector.showdown();
+            Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+        }
+    }
+
+    private static String request(int port) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: d.bigant.club\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                response.write(buf, 0, n);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void maxInFlightUnderContention() throws Exception {
+        HostLimiter limiter = new HostLimiter("c.bigant.club", 0, 0, 3);
+        AtomicInteger holding = new AtomicInteger();
+        AtomicInteger exceeded = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    try {
+                        limiter.acquire();
+                    } catch (RejectedRequestException e) {
+                        continue;
+                    }
+                    if (holding.incrementAndGet() > 3) {
+                        exceeded.incrementAndGet();
+                    }
+                    holding.decrementAndGet();
+                    limiter.release();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, exceeded.get());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,253 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.coyote.http2.HpackEncoder;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static priv.bigant.intrance.common.coyote.http2.Http2Constants.*;
+
+public class Http2ProcessorTest {
+
+    private final List<String> originRequests = new CopyOnWriteArrayList<>();
+    private ServerSocket origin;
+    private ServerConnector connector;
+    private int port;
+    private Socket client;
+    private DataInputStream in;
+    private OutputStream out;
+
+    @Before
+    public void start() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // 请求被重置，连接已关闭
+                    }
+                }
+            } catch (Exception e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                socketBean.close();
+            }
+        });
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connector = new ServerConnector("Http2ProcessorTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+
+        client = new Socket("127.0.0.1", port);
+        client.setSoTimeout(5000);
+        in = new DataInputStream(client.getInputStream());
+        out = client.getOutputStream();
+        out.write(CLIENT_PREFACE);
+        writeFrame(TYPE_SETTINGS, 0, 0, new byte[0]);
+    }
+
+    @After
+    public void stop() throws IOException {
+        client.close();
+        Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+        connector.showdown();
+        origin.close();
+    }
+
+    /**
+     * 源站记录收到的请求头（含按 content-length 读到的请求体），回复 ok
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream origin = new DataInputStream(socket.getInputStream());
+        String head = readHead(origin);
+        int length = 0;
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        origin.readFully(body);
+        originRequests.add(head + new String(body, StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    @Test
+    public void relaysValidRequest() throws Exception {
+        writeHeaders(1, true, "x-test", "1");
+        int[] frame = awaitStreamFrame(1);
+        Assert.assertEquals(TYPE_HEADERS, frame[0]);
+        Assert.assertEquals(1, originRequests.size());
+        Assert.assertTrue(originRequests.get(0), originRequests.get(0).startsWith("GET /h2 HTTP/1.1\r\nHost: h2.test\r\n"));
+        Assert.assertTrue(originRequests.get(0), originRequests.get(0).contains("x-test: 1\r\n"));
+    }
+
+    @Test
+    public void rejectsMalformedHeaders() throws Exception {
+        //CRLF 注入第二个请求
+        writeHeaders(1, true, "x-test", "1\r\n\r\nGET /smuggle HTTP/1.1");
+        assertReset(1);
+        //大写名称
+        writeHeaders(3, true, "X-Test", "1");
+        assertReset(3);
+        //连接专用头部
+        writeHeaders(5, true, "transfer-encoding", "chunked");
+        assertReset(5);
+        //NUL
+        writeHeaders(7, true, "x-test", "a\0b");
+        assertReset(7);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":method", "GET");
+        HpackEncoder.encode(block, ":scheme", "http");
+        HpackEncoder.encode(block, ":path", "/h2 HTTP/1.1\r\nX-Injected: 1\r\n\r\nGET /x");
+        HpackEncoder.encode(block, ":authority", "h2.test");
+        writeFrame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 9, block.toByteArray());
+        assertReset(9);
+
+        //连接仍可用
+        writeHeaders(11, true);
+        Assert.assertEquals(TYPE_HEADERS, awaitStreamFrame(11)[0]);
+        Assert.assertEquals(1, originRequests.size());
+        Assert.assertFalse(originRequests.get(0), originRequests.get(0).contains("smuggle"));
+    }
+
+    @Test
+    public void rejectsBodyBeyondContentLength() throws Exception {
+        writeHeaders(1, false, "content-length", "4");
+        writeFrame(TYPE_DATA, FLAG_END_STREAM, 1, "okGET /smuggle HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertReset(1);
+
+        //少于 content-length 同样是畸形请求
+        writeHeaders(3, true, "content-length", "4");
+        assertReset(3);
+
+        writeHeaders(5, false, "content-length", "4");
+        writeFrame(TYPE_DATA, FLAG_END_STREAM, 5, "body".getBytes(StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(TYPE_HEADERS, awaitStreamFrame(5)[0]);
+        Assert.assertTrue(originRequests.toString(), originRequests.get(originRequests.size() - 1).endsWith("\r\n\r\nbody"));
+        for (String request : originRequests) {
+            Assert.assertFalse(request, request.contains("smuggle"));
+        }
+    }
+
+    @Test
+    public void recordsUpgradeRequest() throws Exception {
+        long before = upgrades();
+        try (Socket upgrade = new Socket("127.0.0.1", port)) {
+            upgrade.setSoTimeout(5000);
+            upgrade.getOutputStream().write(("GET /h2 HTTP/1.1\r\nHost: h2c-upgrade.test\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+                    "Upgrade: h2c\r\nHTTP2-Settings: AAMAAABkAAQAAP__\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            upgrade.getOutputStream().flush();
+            Assert.assertTrue(readHead(upgrade.getInputStream()).startsWith("HTTP/1.1 101 "));
+        }
+        Assert.assertEquals(before + 1, upgrades());
+    }
+
+    private static long upgrades() {
+        //测试的 TunnelSource 没有注册域名，记入 UNKNOWN
+        Long count = MetricsRegistry.host(MetricsRegistry.UNKNOWN).getStatusCounts().get(101);
+        return count == null ? 0 : count;
+    }
+
+    private void assertReset(int streamId) throws IOException {
+        int[] frame = awaitStreamFrame(streamId);
+        Assert.assertEquals(TYPE_RST_STREAM, frame[0]);
+        Assert.assertEquals(PROTOCOL_ERROR, frame[1]);
+    }
+
+    /**
+     * 跳过连接级帧，返回指定流的第一个帧 {类型, RST 错误码}
+     */
+    private int[] awaitStreamFrame(int streamId) throws IOException {
+        while (true) {
+            byte[] header = new byte[FRAME_HEADER_LENGTH];
+            in.readFully(header);
+            int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+            int type = header[3] & 0xFF;
+            int id = ByteBuffer.wrap(header, 5, 4).getInt() & 0x7FFFFFFF;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (id == streamId && type != TYPE_WINDOW_UPDATE) {
+                return new int[]{type, type == TYPE_RST_STREAM ? ByteBuffer.wrap(payload).getInt() : 0};
+            }
+        }
+    }
+
+    private void writeHeaders(int streamId, boolean endStream, String... extra) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        HpackEncoder.encode(block, ":method", "GET");
+        HpackEncoder.encode(block, ":scheme", "http");
+        HpackEncoder.encode(block, ":path", "/h2");
+        HpackEncoder.encode(block, ":authority", "h2.test");
+        for (int i = 0; i < extra.length; i += 2) {
+            HpackEncoder.encode(block, extra[i], extra[i + 1]);
+        }
+        writeFrame(TYPE_HEADERS, FLAG_END_HEADERS | (endStream ? FLAG_END_STREAM : 0), streamId, block.toByteArray());
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + payload.length);
+        frame.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length);
+        frame.put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+        out.write(frame.array());
+        out.flush();
+    }
+
+    /**
+     * 逐字节读到空行为止，不多读后面的数据
+     */
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            head.write(b);
+            String s = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        throw new IOException("连接已关闭 " + head);
+    }
+}
@@ -0,0 +1,51 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.jmx.JmxUtil;
+import priv.bigant.intrance.common.util.threads.FairScheduler;
+import priv.bigant.intranet.server.admin.TunnelPool;
+import priv.bigant.intranet.server.limit.HostLimiters;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+public class JmxTest {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    public void fairSchedulerResize() throws Exception {
+        FairScheduler scheduler = new FairScheduler("jmx-test", 1, 2, 1, TimeUnit.SECONDS, 10, 10, 1024);
+        ObjectName name = JmxUtil.register("FairScheduler", "jmx-test", scheduler);
+        Assert.assertNotNull(name);
+        try {
+            server.setAttribute(name, new Attribute("MaxSize", 8));
+            server.setAttribute(name, new Attribute("MaxQueued", 100));
+            Assert.assertEquals(8, scheduler.getMaxSize());
+            Assert.assertEquals(100, server.getAttribute(name, "MaxQueued"));
+        } finally {
+            JmxUtil.unregister(name);
+            scheduler.shutdown();
+        }
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void tunnelPoolLimits() throws Exception {
+        String host = "jmx.bigant.club";
+        ObjectName name = JmxUtil.register("TunnelPool", host, new TunnelPool(host));
+        try {
+            Assert.assertEquals(false, server.getAttribute(name, "Registered"));
+            server.setAttribute(name, new Attribute("MaxInFlight", 3));
+            server.setAttribute(name, new Attribute("RateLimit", 5.0));
+            Assert.assertEquals(3, HostLimiters.get(host).getMaxInFlight());
+            Assert.assertEquals(5.0, HostLimiters.get(host).getPermitsPerSecond(), 0);
+        } finally {
+            JmxUtil.unregister(name);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.Config;
+import priv.bigant.intrance.common.Process;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.metrics.LoopStats;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+public class LoopStatsTest {
+
+    @Test
+    public void stallIsDetected() throws Exception {
+        Config config = Config.getConfig();
+        int slow = config.getLoopSlowThreshold();
+        int stall = config.getLoopStallThreshold();
+        config.setLoopSlowThreshold(20);
+        config.setLoopStallThreshold(100);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ServerConnector connector = new ServerConnector("LoopStatsTest", new SlowProcess(), "127.0.0.1", port, config);
+        connector.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            LoopStats stats = connector.getConnectorThread().getStats();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (stats.getSlowest().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(1, stats.getStalls());
+            List<LoopStats.SlowIteration> slowest = stats.getSlowest();
+            Assert.assertEquals(1, slowest.size());
+            Assert.assertEquals(LoopStats.ACCEPT, slowest.get(0).getSlowestHandler());
+            Assert.assertTrue(slowest.get(0).getDurationMicros() >= 300_000);
+            Assert.assertTrue(slowest.get(0).getStack(), slowest.get(0).getStack().contains("SlowProcess.accept"));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("priv.bigant.intranet:type=Connector,name=\"LoopStatsTest\"");
+            CompositeData[] data = (CompositeData[]) server.getAttribute(name, "SlowestIterations");
+            Assert.assertEquals(LoopStats.ACCEPT, data[0].get("slowestHandler"));
+        } finally {
+            connector.showdown();
+            config.setLoopSlowThreshold(slow);
+            config.setLoopStallThreshold(stall);
+        }
+    }
+
+    private static class SlowProcess implements Process {
+
+        @Override
+        public void showdown() {
+        }
+
+        @Override
+        public void read(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) {
+        }
+
+        @Override
+        public void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel channel) throws IOException {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+
+        @Override
+        public String getName() {
+            return "SlowProcess";
+        }
+    }
+}
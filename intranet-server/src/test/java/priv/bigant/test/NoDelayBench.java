@@ -0,0 +1,96 @@
+package priv.bigant.test;
+
+import priv.bigant.intrance.common.util.net.SocketProfile;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP_NODELAY 对比：回环地址上按 写-写-读 的方式往返（先写请求头再写请求体，再等响应），
+ * Nagle 算法与对端的延迟确认叠加时第二次写要等一个确认超时
+ * <p>
+ * 用法：NoDelayBench [往返次数，默认 200]
+ */
+public class NoDelayBench {
+
+    private static final int HEAD = 16;
+    private static final int BODY = 16;
+    private static final int REPLY = 32;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        run(false, rounds);
+        run(true, rounds);
+    }
+
+    private static void run(boolean noDelay, int rounds) throws Exception {
+        SocketProfile profile = SocketProfile.tunnel();
+        profile.setTcpNoDelay(noDelay);
+        try (ServerSocketChannel server = profile.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            Thread echo = new Thread(() -> serve(server, profile, rounds), "NoDelayBench-server");
+            echo.setDaemon(true);
+            echo.start();
+
+            long[] nanos = new long[rounds];
+            try (SocketChannel channel = profile.open()) {
+                channel.connect(server.getLocalAddress());
+                ByteBuffer head = ByteBuffer.allocate(HEAD);
+                ByteBuffer body = ByteBuffer.allocate(BODY);
+                ByteBuffer reply = ByteBuffer.allocate(REPLY);
+                long begin = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    long start = System.nanoTime();
+                    head.clear();
+                    body.clear();
+                    reply.clear();
+                    writeFully(channel, head);
+                    writeFully(channel, body);
+                    readFully(channel, reply);
+                    nanos[i] = System.nanoTime() - start;
+                }
+                long total = System.nanoTime() - begin;
+                Arrays.sort(nanos);
+                System.out.printf("tcpNoDelay=%-5s rounds=%d p50=%.2fms p99=%.2fms %.0f req/s%n", noDelay, rounds,
+                        nanos[rounds / 2] / 1e6, nanos[Math.min(rounds - 1, rounds * 99 / 100)] / 1e6,
+                        rounds / (total / (double) TimeUnit.SECONDS.toNanos(1)));
+            }
+            echo.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static void serve(ServerSocketChannel server, SocketProfile profile, int rounds) {
+        try (SocketChannel channel = server.accept()) {
+            profile.configure(channel);
+            ByteBuffer request = ByteBuffer.allocate(HEAD + BODY);
+            ByteBuffer reply = ByteBuffer.allocate(REPLY);
+            for (int i = 0; i < rounds; i++) {
+                request.clear();
+                reply.clear();
+                readFully(channel, request);
+                writeFully(channel, reply);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("连接已关闭");
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package priv.bigant.test;
+
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.util.net.SslMetrics;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpsProcessor;
+import priv.bigant.intranet.server.ssl.SslContextFactory;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 公网 HTTPS 端口的握手与记录开销：客户端每个请求新建一条连接，分别为完整握手（每次换一个客户端上下文）和会话复用，
+ * 输出客户端看到的握手耗时、请求速率，以及服务端 {@link SslMetrics} 统计的单条记录加解密耗时
+ * <p>
+ * 用法：PublicSslBench [请求数，默认 1000]
+ */
+public class PublicSslBench {
+
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: bench.test\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        File dir = Files.createTempDirectory("public-ssl-bench").toFile();
+        File keyStore = new File(dir, "server.p12");
+        ServerConnector connector = null;
+        try {
+            keytool(keyStore);
+            ServerConfig config = ServerConfig.getSeverConfig();
+            config.setSslKeyStore(keyStore.getPath());
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            connector = new ServerConnector("PublicSslBench", new HttpsProcessor(config, SslContextFactory.create(config)), "127.0.0.1", port, config);
+            connector.start();
+
+            for (String protocol : new String[]{"TLSv1.2", "TLSv1.3"}) {
+                run(protocol + " full", requests, port, protocol, false);
+                run(protocol + " resumed", requests, port, protocol, true);
+            }
+        } finally {
+            if (connector != null) {
+                connector.showdown();
+            }
+            ServerConfig.getSeverConfig().setSslKeyStore(null);
+            keyStore.delete();
+            dir.delete();
+        }
+    }
+
+    private static void run(String name, int requests, int port, String protocol, boolean resume) throws Exception {
+        SSLContext shared = clientContext();
+        //预热
+        for (int i = 0; i < requests / 10; i++) {
+            request(resume ? shared : clientContext(), port, protocol, null);
+        }
+        long handshakes = SslMetrics.getHandshakes();
+        long resumed = SslMetrics.getResumed();
+        long wraps = SslMetrics.getWraps();
+        long wrapNanos = SslMetrics.getWrapNanos();
+        long unwraps = SslMetrics.getUnwraps();
+        long unwrapNanos = SslMetrics.getUnwrapNanos();
+        long[] nanos = new long[requests];
+        long begin = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            request(resume ? shared : clientContext(), port, protocol, nanos, i);
+        }
+        double seconds = (System.nanoTime() - begin) / (double) TimeUnit.SECONDS.toNanos(1);
+        Arrays.sort(nanos);
+        wraps = SslMetrics.getWraps() - wraps;
+        unwraps = SslMetrics.getUnwraps() - unwraps;
+        System.out.printf("%-16s requests=%d %.0f req/s handshake p50=%.2fms p99=%.2fms handshakes=%d resumed=%d wrap=%.1fus unwrap=%.1fus%n",
+                name, requests, requests / seconds, nanos[requests / 2] / 1e6, nanos[Math.min(requests - 1, requests * 99 / 100)] / 1e6,
+                SslMetrics.getHandshakes() - handshakes, SslMetrics.getResumed() - resumed,
+                wraps == 0 ? 0 : (SslMetrics.getWrapNanos() - wrapNanos) / 1e3 / wraps,
+                unwraps == 0 ? 0 : (SslMetrics.getUnwrapNanos() - unwrapNanos) / 1e3 / unwraps);
+    }
+
+    private static void request(SSLContext context, int port, String protocol, long[] nanos) throws IOException {
+        request(context, port, protocol, nanos, 0);
+    }
+
+    /**
+     * 完成一次请求，握手耗时记到 nanos[index]
+     */
+    private static void request(SSLContext context, int port, String protocol, long[] nanos, int index) throws IOException {
+        try (SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(5000);
+            socket.setEnabledProtocols(new String[]{protocol});
+            SSLParameters parameters = socket.getSSLParameters();
+            parameters.setServerNames(Collections.singletonList(new SNIHostName("bench.test")));
+            socket.setSSLParameters(parameters);
+            long start = System.nanoTime();
+            socket.startHandshake();
+            if (nanos != null) {
+                nanos[index] = System.nanoTime() - start;
+            }
+            socket.getOutputStream().write(REQUEST);
+            socket.getOutputStream().flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) > 0) {
+            }
+        }
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return context;
+    }
+
+    private static void keytool(File file) throws Exception {
+        String keytool = new File(System.getProperty("java.home"), "bin/keytool").getPath();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "key", "-keyalg", "RSA", "-dname", "CN=bench.test",
+                "-validity", "2", "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", "changeit", "-keypass", "changeit")
+                .redirectErrorStream(true).start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool 执行失败");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.communication.Communication;
+import priv.bigant.intrance.common.communication.CommunicationEnum;
+import priv.bigant.intrance.common.communication.CommunicationRequest;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.communication.ServerCommunication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class ServerCommunicationTest {
+
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private ServerCommunication communication;
+    private int waitSocketTime;
+
+    @Before
+    public void connect() throws IOException {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        waitSocketTime = config.getWaitSocketTime();
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        communication = new ServerCommunication(server.accept(), config);
+        communication.setHost("late.test");
+    }
+
+    @After
+    public void close() throws IOException {
+        ServerConfig.getSeverConfig().setWaitSocketTime(waitSocketTime);
+        communication.close();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void lateTunnelIsClosed() throws IOException {
+        ServerConfig.getSeverConfig().setWaitSocketTime(50);
+        Assert.assertNull(communication.getSocketBean());
+        CommunicationRequest request = Communication.readRequest(client, "test");
+        Assert.assertEquals(CommunicationEnum.HTTP_ADD, request.getType());
+        String id = request.toJavaObject(CommunicationRequest.CommunicationRequestHttpAdd.class).getId();
+
+        //等待超时后才连上来的通道不能留在服务端
+        try (SocketChannel tunnelClient = SocketChannel.open(server.getLocalAddress())) {
+            SocketChannel tunnel = server.accept();
+            communication.putSocketBean(new SocketBean(tunnel, id));
+            Assert.assertFalse(tunnel.isOpen());
+        }
+    }
+}
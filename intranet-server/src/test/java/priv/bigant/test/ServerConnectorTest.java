@@ -0,0 +1,84 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.ProcessBase;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intranet.server.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ServerConnectorTest {
+
+    @Test
+    public void acceptsWhileReadBlocks() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        BlockingProcess process = new BlockingProcess();
+        ServerConnector connector = new ServerConnector("ServerConnectorTest", process, "127.0.0.1", port, ServerConfig.getSeverConfig());
+        connector.start();
+        try (SocketChannel first = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            first.write(ByteBuffer.wrap(new byte[]{1}));
+            Assert.assertTrue(process.reading.await(5, TimeUnit.SECONDS));
+            //selector 线程阻塞在读处理中，acceptor 线程仍然接受新连接
+            try (SocketChannel second = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (connector.getAccepted() < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(2, connector.getAccepted());
+                Assert.assertEquals(1, process.accepted);
+                process.release.countDown();
+                deadline = System.currentTimeMillis() + 5000;
+                while (process.accepted < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(2, process.accepted);
+            }
+        } finally {
+            process.release.countDown();
+            connector.showdown();
+        }
+    }
+
+    private static class BlockingProcess extends ProcessBase {
+        private final CountDownLatch reading = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile int accepted;
+
+        @Override
+        public void showdown() {
+        }
+
+        @Override
+        public void read(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) throws IOException {
+            selectionKey.cancel();
+            reading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel socketChannel) throws IOException {
+            accepted++;
+            connectorThread.register(socketChannel, SelectionKey.OP_READ);
+        }
+
+        @Override
+        public String getName() {
+            return "BlockingProcess";
+        }
+    }
+}
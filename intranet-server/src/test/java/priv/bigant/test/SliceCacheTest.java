@@ -0,0 +1,290 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.cache.SliceCache;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SliceCacheTest {
+
+    private static final int SLICE = 64 * 1024;
+
+    private final List<String> originRanges = new CopyOnWriteArrayList<>();
+    private final byte[] content = new byte[300 * 1024];
+    private volatile String etag = "\"v1\"";
+    private volatile boolean rangeSupported = true;
+    private volatile String originHeaders = "";
+    private SliceCache cache;
+    private ServerSocket origin;
+    private ServerConnector connector;
+    private Path dir;
+    private int port;
+
+    @Before
+    public void start() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        new Random(3).nextBytes(content);
+        origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        serve(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                socketBean.close();
+            }
+        });
+        dir = Files.createTempDirectory("slice-test");
+        port = freePort();
+        connector = new ServerConnector("SliceCacheTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+    }
+
+    @After
+    public void stop() throws IOException {
+        Http11ProcessorServer.setSliceCache(null);
+        Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+        connector.showdown();
+        origin.close();
+    }
+
+    /**
+     * 支持单段 Range 与 If-Range 的源站，记录收到的 Range
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        String range = null;
+        String ifRange = null;
+        for (String line : readHead(in).split("\r\n")) {
+            String lower = line.toLowerCase();
+            if (lower.startsWith("range:")) {
+                range = line.substring(6).trim();
+            } else if (lower.startsWith("if-range:")) {
+                ifRange = line.substring(9).trim();
+            }
+        }
+        OutputStream out = socket.getOutputStream();
+        if (range != null && rangeSupported && (ifRange == null || ifRange.equals(etag))) {
+            originRanges.add(range);
+            String[] bounds = range.substring(6).split("-");
+            int from = Integer.parseInt(bounds[0]);
+            int to = bounds.length < 2 ? content.length - 1 : Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+            out.write(("HTTP/1.1 206 Partial Content\r\nETag: " + etag + "\r\nContent-Type: application/octet-stream\r\n" + originHeaders +
+                    "Content-Range: bytes " + from + "-" + to + "/" + content.length + "\r\nContent-Length: " + (to - from + 1) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.write(content, from, to - from + 1);
+        } else {
+            originRanges.add("full");
+            out.write(("HTTP/1.1 200 OK\r\nETag: " + etag + "\r\nContent-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(content);
+        }
+        out.flush();
+    }
+
+    private void enableCache(long ttl) throws IOException {
+        cache = SliceCache.open(dir.toString(), SLICE, 10L * 1024 * 1024, ttl);
+        Http11ProcessorServer.setSliceCache(cache);
+    }
+
+    @Test
+    public void fetchesMissingSlicesOnly() throws Exception {
+        enableCache(60000);
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            Response first = get(client, "bytes=100000-200000");
+            Assert.assertEquals(206, first.status);
+            Assert.assertTrue(first.head, first.head.contains("Content-Range: bytes 100000-200000/" + content.length));
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 100000, 200001), first.body);
+            //按分片对齐，一次取回 1~3 号分片
+            Assert.assertEquals(Arrays.asList("bytes=65536-262143"), originRanges);
+
+            //同一连接上的第二个请求完全命中缓存
+            Response second = get(client, "bytes=70000-80000");
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 70000, 80001), second.body);
+            Assert.assertEquals(1, originRanges.size());
+        }
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            //只取缺少的 4 号分片（最后一片不足 64K）
+            Response tail = get(client, "bytes=250000-");
+            Assert.assertEquals(206, tail.status);
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 250000, content.length), tail.body);
+            Assert.assertEquals(Arrays.asList("bytes=65536-262143", "bytes=262144-307199"), originRanges);
+
+            Response suffix = get(client, "bytes=-1000");
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, content.length - 1000, content.length), suffix.body);
+            Response beyond = get(client, "bytes=400000-");
+            Assert.assertEquals(416, beyond.status);
+            Assert.assertTrue(beyond.head, beyond.head.contains("Content-Range: bytes */" + content.length));
+            Assert.assertEquals(2, originRanges.size());
+        }
+    }
+
+    @Test
+    public void changedEtagFallsBackToOrigin() throws Exception {
+        //有效期为 0，每次都向源站校验
+        enableCache(0);
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            Response first = get(client, "bytes=0-99");
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 0, 100), first.body);
+        }
+        etag = "\"v2\"";
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            //If-Range 不匹配，源站返回完整内容
+            Response second = get(client, "bytes=0-99");
+            Assert.assertEquals(200, second.status);
+            Assert.assertArrayEquals(content, second.body);
+        }
+        Assert.assertEquals(Arrays.asList("bytes=0-65535", "full"), originRanges);
+    }
+
+    @Test
+    public void relaysOriginWithoutRangeSupport() throws Exception {
+        enableCache(60000);
+        rangeSupported = false;
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            Response response = get(client, "bytes=0-99");
+            Assert.assertEquals(200, response.status);
+            Assert.assertArrayEquals(content, response.body);
+        }
+    }
+
+    @Test
+    public void privateContentIsNotShared() throws Exception {
+        enableCache(60000);
+        //带身份信息的请求不经过缓存，源站收到原始 Range
+        for (String header : new String[]{"Cookie: sid=1\r\n", "Authorization: Basic dTpw\r\n"}) {
+            try (Socket client = new Socket("127.0.0.1", port)) {
+                Response response = get(client, "bytes=0-99", header);
+                Assert.assertArrayEquals(Arrays.copyOfRange(content, 0, 100), response.body);
+            }
+        }
+        Assert.assertEquals(Arrays.asList("bytes=0-99", "bytes=0-99"), originRanges);
+        Assert.assertEquals(0, cache.getEntryCount());
+
+        originHeaders = "Set-Cookie: sid=2\r\nCache-Control: private\r\n";
+        for (int i = 0; i < 2; i++) {
+            try (Socket client = new Socket("127.0.0.1", port)) {
+                Response response = get(client, "bytes=0-99");
+                Assert.assertArrayEquals(Arrays.copyOfRange(content, 0, 100), response.body);
+            }
+        }
+        //私有响应每次都回源，不留缓存
+        Assert.assertEquals(0, cache.getEntryCount());
+        Assert.assertEquals(6, originRanges.size());
+
+        originHeaders = "Vary: Accept-Language\r\n";
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            get(client, "bytes=0-99");
+        }
+        Assert.assertEquals(0, cache.getEntryCount());
+    }
+
+    private static final class Response {
+        private final String head;
+        private final int status;
+        private final byte[] body;
+
+        private Response(String head, byte[] body) {
+            this.head = head;
+            this.status = Integer.parseInt(head.substring(9, 12));
+            this.body = body;
+        }
+    }
+
+    /**
+     * 有 Content-Length 时按长度读取，否则读到连接关闭
+     */
+    private static Response get(Socket client, String range) throws IOException {
+        return get(client, range, "");
+    }
+
+    private static Response get(Socket client, String range, String headers) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(("GET /file.bin HTTP/1.1\r\nHost: slice.test\r\nRange: " + range + "\r\n" + headers + "Connection: keep-alive\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        String head = readHead(in);
+        int length = -1;
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        if (length >= 0) {
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return new Response(head, body);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            body.write(buffer, 0, n);
+        }
+        return new Response(head, body.toByteArray());
+    }
+
+    /**
+     * 逐字节读到空行为止，不多读后面的数据
+     */
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            head.write(b);
+            String s = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        throw new IOException("连接已关闭 " + head);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
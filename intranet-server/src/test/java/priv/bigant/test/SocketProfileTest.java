@@ -0,0 +1,136 @@
+package priv.bigant.test;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import priv.bigant.intrance.common.Config;
+import priv.bigant.intrance.common.ProcessBase;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.util.net.SocketProfile;
+import priv.bigant.intranet.server.ServerConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SocketProfileTest {
+
+    @Test
+    public void configuresAcceptedAndDialedChannels() throws Exception {
+        SocketProfile profile = SocketProfile.tunnel();
+        profile.setRxBufSize(256 * 1024);
+        try (ServerSocketChannel server = profile.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel dialed = profile.open()) {
+            dialed.connect(server.getLocalAddress());
+            try (SocketChannel accepted = server.accept()) {
+                profile.configure(accepted);
+                for (SocketChannel channel : new SocketChannel[]{dialed, accepted}) {
+                    Assert.assertTrue(channel.getOption(StandardSocketOptions.TCP_NODELAY));
+                    Assert.assertTrue(channel.getOption(StandardSocketOptions.SO_KEEPALIVE));
+                    //内核可能把设置的值翻倍
+                    Assert.assertTrue(channel.getOption(StandardSocketOptions.SO_RCVBUF) >= 256 * 1024);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void loadsFromProperties() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        SocketProfile tunnel = config.getTunnelSocket();
+        SocketProfile http = config.getHttpSocket();
+        try {
+            config.setTunnelSocket(SocketProfile.tunnel());
+            config.setHttpSocket(SocketProfile.http());
+            Properties properties = new Properties();
+            properties.setProperty("tunnelSocket.txBufSize", "1048576");
+            properties.setProperty("httpSocket.backlog", "4096");
+            properties.setProperty("httpSocket.tcpNoDelay", "false");
+            BeanUtils.copyProperties(config, properties);
+            Assert.assertEquals(Integer.valueOf(1048576), config.getTunnelSocket().getTxBufSize());
+            Assert.assertNull(config.getTunnelSocket().getRxBufSize());
+            Assert.assertEquals(4096, config.getHttpSocket().getBacklog());
+            Assert.assertFalse(config.getHttpSocket().getTcpNoDelay());
+        } finally {
+            config.setTunnelSocket(tunnel);
+            config.setHttpSocket(http);
+        }
+    }
+
+    @Test
+    public void acceptorsShareThePort() throws Exception {
+        Assume.assumeTrue(SocketProfile.isReusePortSupported());
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        SocketProfile profile = SocketProfile.http();
+        profile.setAcceptors(2);
+        profile.setPollers(2);
+        CountingProcess process = new CountingProcess();
+        ServerConnector connector = new ServerConnector("SocketProfileTest", process, "127.0.0.1", port, Config.getConfig());
+        connector.setSocketProfile(profile);
+        connector.start();
+        List<SocketChannel> clients = new ArrayList<>();
+        try {
+            Assert.assertEquals(2, connector.getAcceptors());
+            for (int i = 0; i < 40; i++) {
+                clients.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (process.total.get() < 40 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(40, process.total.get());
+            //内核按四元组散列分配，40 个连接落到同一个 socket 的概率可以忽略
+            for (ServerConnector.Acceptor acceptor : connector.getAcceptorThreads()) {
+                Assert.assertTrue(acceptor.getName(), acceptor.getAccepted() > 0);
+            }
+            Assert.assertEquals(40, connector.getAccepted());
+            //两个 selector 线程轮流处理新连接
+            Assert.assertEquals(process.perThread.toString(), 2, process.perThread.size());
+        } finally {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            connector.showdown();
+        }
+    }
+
+    private static class CountingProcess extends ProcessBase {
+        private final AtomicInteger total = new AtomicInteger();
+        private final Map<String, AtomicInteger> perThread = new ConcurrentHashMap<>();
+
+        @Override
+        public void showdown() {
+        }
+
+        @Override
+        public void read(ServerConnector.ConnectorThread connectorThread, SelectionKey selectionKey) {
+        }
+
+        @Override
+        public void accept(ServerConnector.ConnectorThread connectorThread, SocketChannel channel) throws IOException {
+            perThread.computeIfAbsent(connectorThread.getName(), k -> new AtomicInteger()).incrementAndGet();
+            total.incrementAndGet();
+            channel.close();
+        }
+
+        @Override
+        public String getName() {
+            return "CountingProcess";
+        }
+    }
+}
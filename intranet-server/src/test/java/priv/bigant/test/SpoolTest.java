@@ -0,0 +1,197 @@
+package priv.bigant.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.metrics.MetricsRegistry;
+import priv.bigant.intrance.common.util.buf.SpoolBuffer;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SpoolTest {
+
+    private final AtomicInteger acquired = new AtomicInteger();
+    private final AtomicReference<byte[]> received = new AtomicReference<>();
+    private ServerSocket origin;
+    private ServerConnector connector;
+    private int port;
+    private long spoolMaxBodySize;
+    private long spoolMemorySize;
+
+    @Before
+    public void start() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        spoolMaxBodySize = config.getSpoolMaxBodySize();
+        spoolMemorySize = config.getSpoolMemorySize();
+        origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        serve(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                acquired.incrementAndGet();
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                socketBean.close();
+            }
+
+            @Override
+            public boolean isRegistered(String host) {
+                return true;
+            }
+        });
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        connector = new ServerConnector("SpoolTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+    }
+
+    @After
+    public void stop() throws IOException {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        config.setSpoolMaxBodySize(spoolMaxBodySize);
+        config.setSpoolMemorySize(spoolMemorySize);
+        Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+        connector.showdown();
+        origin.close();
+    }
+
+    /**
+     * 源站按 Content-Length 读完请求体后回复收到的字节数
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        String head = readHead(in);
+        int length = 0;
+        for (String line : head.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        received.set(body);
+        OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    @Test
+    public void spoolsInMemoryAndFile() throws Exception {
+        long baseline = SpoolBuffer.getMemoryInUse();
+        byte[] data = new byte[300 * 1024];
+        new Random(1).nextBytes(data);
+        Path dir = Files.createTempDirectory("spool-test");
+        //128K 内存，其余写入临时文件
+        SpoolBuffer spool = new SpoolBuffer(data.length, 128 * 1024, Long.MAX_VALUE, dir.toString());
+        int offset = 0;
+        ByteBuffer buffer;
+        while ((buffer = spool.writeBuffer()) != null) {
+            //每次最多写 10000 字节，模拟分多次读到
+            int n = Math.min(Math.min(buffer.remaining(), 10000), data.length - offset);
+            buffer.put(data, offset, n);
+            offset += n;
+            spool.written(n);
+        }
+        Assert.assertEquals(data.length, spool.size());
+        Assert.assertTrue(spool.isOverflowed());
+        Assert.assertEquals(baseline + 128 * 1024, SpoolBuffer.getMemoryInUse());
+        Assert.assertEquals(1, dir.toFile().list().length);
+
+        ByteArrayOutputStream replay = new ByteArrayOutputStream();
+        for (ByteBuffer view : spool.buffers()) {
+            byte[] bytes = new byte[view.remaining()];
+            view.get(bytes);
+            replay.write(bytes);
+        }
+        Assert.assertArrayEquals(data, replay.toByteArray());
+
+        spool.close();
+        Assert.assertEquals(baseline, SpoolBuffer.getMemoryInUse());
+        Assert.assertEquals(0, dir.toFile().list().length);
+        Assert.assertTrue(new File(dir.toString()).delete());
+    }
+
+    @Test
+    public void bodyIsReadBeforeTunnel() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        config.setSpoolMaxBodySize(1024 * 1024);
+        config.setSpoolMemorySize(64 * 1024);
+        long spooled = MetricsRegistry.host("spool.test").getSpooled();
+        byte[] data = new byte[200 * 1024];
+        new Random(2).nextBytes(data);
+        try (Socket client = new Socket("127.0.0.1", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(("POST /upload HTTP/1.1\r\nHost: spool.test\r\nContent-Length: " + data.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(data, 0, 1000);
+            out.flush();
+            Thread.sleep(300);
+            //请求体没传完前不占用通道
+            Assert.assertEquals(0, acquired.get());
+            out.write(data, 1000, data.length - 1000);
+            out.flush();
+            String response = readHead(client.getInputStream());
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            Assert.assertEquals(1, acquired.get());
+            Assert.assertArrayEquals(data, received.get());
+            Assert.assertEquals(spooled + 1, MetricsRegistry.host("spool.test").getSpooled());
+        }
+    }
+
+    /**
+     * 逐字节读到空行为止，不多读后面的数据
+     */
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            head.write(b);
+            String s = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        throw new IOException("连接已关闭 " + head);
+    }
+}
@@ -0,0 +1,284 @@
+package priv.bigant.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.util.net.ByteBufferPool;
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
+import priv.bigant.intrance.common.util.net.SocketBufferHandler;
+import priv.bigant.intrance.common.util.net.SslMetrics;
+import priv.bigant.intrance.common.util.net.SslTunnel;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpsProcessor;
+import priv.bigant.intranet.server.ssl.SslContextFactory;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SslTest {
+
+    private static File dir;
+    private static SSLContext serverContext;
+
+    @BeforeClass
+    public static void certificates() throws Exception {
+        dir = Files.createTempDirectory("ssl-test").toFile();
+        File certs = new File(dir, "certs");
+        Assert.assertTrue(certs.mkdir());
+        keytool(new File(dir, "default.p12"), "default.test", "RSA");
+        keytool(new File(certs, "a.test.p12"), "a.test", "EC");
+        ServerConfig config = ServerConfig.getSeverConfig();
+        config.setSslKeyStore(new File(dir, "default.p12").getPath());
+        config.setSslCertDir(certs.getPath());
+        serverContext = SslContextFactory.create(config);
+    }
+
+    @AfterClass
+    public static void clean() {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        config.setSslKeyStore(null);
+        config.setSslCertDir(null);
+        delete(dir);
+    }
+
+    @Test
+    public void selectsCertificateBySniAndResumes() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(serverContext.createSSLEngine().getSession().getPacketBufferSize() + 1024, 16, true);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread thread = new Thread(() -> serve(server, pool, 3));
+            thread.setDaemon(true);
+            thread.start();
+
+            SSLContext client = clientContext();
+            long resumed = SslMetrics.getResumed();
+            SSLSocket first = connect(client, server, "a.test");
+            Assert.assertEquals("CN=a.test", ((X509Certificate) first.getSession().getPeerCertificates()[0]).getSubjectX500Principal().getName());
+            Assert.assertEquals("hello a.test", exchange(first, "a.test"));
+            byte[] id = first.getSession().getId();
+            first.close();
+
+            //客户端按地址缓存会话，换一个上下文避免复用 a.test 的会话
+            SSLSocket other = connect(clientContext(), server, "b.test");
+            Assert.assertEquals("CN=default.test", ((X509Certificate) other.getSession().getPeerCertificates()[0]).getSubjectX500Principal().getName());
+            Assert.assertEquals("hello b.test", exchange(other, "b.test"));
+            other.close();
+
+            SSLSocket again = connect(client, server, "a.test");
+            Assert.assertArrayEquals(id, again.getSession().getId());
+            Assert.assertEquals("hello a.test", exchange(again, "a.test"));
+            again.close();
+            thread.join(10000);
+            Assert.assertTrue(SslMetrics.getResumed() > resumed);
+        }
+    }
+
+    @Test
+    public void stalledHandshakeDoesNotHoldWorkers() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        int handshakeTimeout = config.getSslHandshakeTimeout();
+        config.setSslHandshakeTimeout(500);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        HttpsProcessor processor = new HttpsProcessor(config, serverContext);
+        ServerConnector connector = new ServerConnector("SslTest", processor, "127.0.0.1", port, config);
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            connector.start();
+            //只发 TLS 记录头后停住的连接
+            for (int i = 0; i < 8; i++) {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(new byte[]{0x16, 0x03, 0x01, 0x00, (byte) 0xC8});
+                stalled.add(socket);
+            }
+            SSLSocket socket = connect(clientContext(), new InetSocketAddress("127.0.0.1", port), "a.test");
+            Assert.assertEquals("CN=a.test", ((X509Certificate) socket.getSession().getPeerCertificates()[0]).getSubjectX500Principal().getName());
+            Assert.assertEquals(0, processor.getScheduler().getActiveWorkers());
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: none.test\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            socket.getOutputStream().flush();
+            byte[] status = new byte[9];
+            Assert.assertEquals(9, socket.getInputStream().read(status));
+            Assert.assertEquals("HTTP/1.1 ", new String(status, StandardCharsets.ISO_8859_1));
+            socket.close();
+
+            //握手超时后由时间轮关闭
+            for (Socket s : stalled) {
+                Assert.assertEquals(-1, s.getInputStream().read());
+            }
+        } finally {
+            for (Socket s : stalled) {
+                s.close();
+            }
+            connector.showdown();
+            config.setSslHandshakeTimeout(handshakeTimeout);
+        }
+    }
+
+    @Test
+    public void tunnelResumesSession() throws Exception {
+        SslTunnel server = new SslTunnel(serverContext, false, null, 5000, 16);
+        SslTunnel client = new SslTunnel(clientContext(), true, new String[]{"TLSv1.2"}, 5000, 16);
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            long resumed = SslMetrics.getResumed();
+            for (int i = 0; i < 3; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                channel.configureBlocking(false);
+                SocketChannel accepted = listener.accept();
+                accepted.configureBlocking(false);
+                Thread thread = new Thread(() -> {
+                    try {
+                        SecureNioChannel secure = server.handshake(accepted, null, 0);
+                        ByteBuffer line = ByteBuffer.allocate(64);
+                        while (line.position() < 5) {
+                            server.read(secure, line);
+                        }
+                        line.flip();
+                        while (line.hasRemaining() || !secure.flush(true, null, 5000)) {
+                            secure.write(line);
+                        }
+                        secure.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                thread.start();
+                SecureNioChannel secure = client.handshake(channel, "a.test", port);
+                ByteBuffer hello = ByteBuffer.wrap("hello".getBytes(StandardCharsets.ISO_8859_1));
+                while (hello.hasRemaining() || !secure.flush(true, null, 5000)) {
+                    secure.write(hello);
+                }
+                ByteBuffer echo = ByteBuffer.allocate(64);
+                while (echo.position() < 5) {
+                    Assert.assertTrue(client.read(secure, echo) > 0);
+                }
+                Assert.assertEquals("hello", new String(echo.array(), 0, echo.position(), StandardCharsets.ISO_8859_1));
+                secure.close();
+                thread.join(10000);
+            }
+            //第一次完整握手，之后两次两端都恢复会话
+            Assert.assertEquals(resumed + 4, SslMetrics.getResumed());
+        }
+    }
+
+    /**
+     * 握手后读一行，回写 hello + 这一行
+     */
+    private static void serve(ServerSocketChannel server, ByteBufferPool pool, int connections) {
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                SecureNioChannel secure = new SecureNioChannel(channel, new SocketBufferHandler(1024, 1024, false), serverContext.createSSLEngine(), pool, null);
+                secure.getEngine().setUseClientMode(false);
+                secure.handshake(selector, 5000);
+                ByteBuffer line = ByteBuffer.allocate(1024);
+                while (line.position() == 0 || line.get(line.position() - 1) != '\n') {
+                    if (secure.read(line) == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+                String text = new String(line.array(), 0, line.position() - 1, StandardCharsets.ISO_8859_1);
+                ByteBuffer reply = ByteBuffer.wrap(("hello " + text + "\n").getBytes(StandardCharsets.ISO_8859_1));
+                while (reply.hasRemaining() || !secure.flush(true, selector, 5000)) {
+                    secure.write(reply);
+                }
+                secure.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static SSLSocket connect(SSLContext context, ServerSocketChannel server, String host) throws IOException {
+        return connect(context, (InetSocketAddress) server.getLocalAddress(), host);
+    }
+
+    private static SSLSocket connect(SSLContext context, InetSocketAddress address, String host) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(address.getAddress(), address.getPort());
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setServerNames(Collections.singletonList(new SNIHostName(host)));
+        //TLS 1.2 下复用的会话 id 不变，便于断言
+        parameters.setProtocols(new String[]{"TLSv1.2"});
+        socket.setSSLParameters(parameters);
+        socket.setSoTimeout(5000);
+        socket.startHandshake();
+        return socket;
+    }
+
+    private static String exchange(SSLSocket socket, String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+        InputStream in = socket.getInputStream();
+        StringBuilder reply = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            reply.append((char) c);
+        }
+        return reply.toString();
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return context;
+    }
+
+    private static void keytool(File file, String cn, String algorithm) throws Exception {
+        String keytool = new File(System.getProperty("java.home"), "bin/keytool").getPath();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "key", "-keyalg", algorithm, "-dname", "CN=" + cn,
+                "-validity", "2", "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", "changeit", "-keypass", "changeit")
+                .redirectErrorStream(true).start();
+        Assert.assertEquals(0, process.waitFor());
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
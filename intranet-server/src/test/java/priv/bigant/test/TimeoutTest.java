@@ -0,0 +1,186 @@
+package priv.bigant.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import priv.bigant.intrance.common.ServerConnector;
+import priv.bigant.intrance.common.SocketBean;
+import priv.bigant.intrance.common.TunnelSource;
+import priv.bigant.intrance.common.util.threads.HashedWheelTimer;
+import priv.bigant.intranet.server.Http11ProcessorServer;
+import priv.bigant.intranet.server.HttpTunnelSource;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.process.HttpProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimeoutTest {
+
+    @Test
+    public void wheelExpiresInOrderAndCancels() throws Exception {
+        //10ms 一格，8 格一圈，150ms 的超时要转过一圈以上
+        HashedWheelTimer timer = new HashedWheelTimer("TimeoutTest", 10, TimeUnit.MILLISECONDS, 8);
+        try {
+            List<String> fired = new CopyOnWriteArrayList<>();
+            long start = System.nanoTime();
+            long[] elapsed = new long[2];
+            timer.newTimeout(() -> {
+                elapsed[1] = System.nanoTime() - start;
+                fired.add("150");
+            }, 150, TimeUnit.MILLISECONDS);
+            timer.newTimeout(() -> {
+                elapsed[0] = System.nanoTime() - start;
+                fired.add("30");
+            }, 30, TimeUnit.MILLISECONDS);
+            HashedWheelTimer.Timeout cancelled = timer.newTimeout(() -> fired.add("cancelled"), 60, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(cancelled.cancel());
+            Assert.assertFalse(cancelled.cancel());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (fired.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            Assert.assertEquals("[30, 150]", fired.toString());
+            Assert.assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(30));
+            Assert.assertTrue(elapsed[1] >= TimeUnit.MILLISECONDS.toNanos(150));
+            Assert.assertEquals(0, timer.getPending());
+            Assert.assertEquals(2, timer.getExpired());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void slowHeaderGets408() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        int headerTimeout = config.getRequestHeaderTimeout();
+        config.setRequestHeaderTimeout(300);
+        int port = freePort();
+        ServerConnector connector = new ServerConnector("TimeoutTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            long start = System.currentTimeMillis();
+            //请求头一直不发完
+            channel.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: slow.test\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+            String response = readAll(channel);
+            Assert.assertTrue(response, response.startsWith("HTTP/1.1 408"));
+            Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+        } finally {
+            config.setRequestHeaderTimeout(headerTimeout);
+            connector.showdown();
+        }
+    }
+
+    @Test
+    public void idleKeepAliveIsClosed() throws Exception {
+        ServerConfig config = ServerConfig.getSeverConfig();
+        int keepAliveTimeout = config.getKeepAliveTimeout();
+        config.setKeepAliveTimeout(300);
+        ServerSocket origin = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread server = new Thread(() -> {
+            try {
+                while (true) {
+                    try (Socket socket = origin.accept()) {
+                        InputStream in = socket.getInputStream();
+                        in.read(new byte[1024]);
+                        OutputStream out = socket.getOutputStream();
+                        out.write("HTTP/1.1 200 OK\r\nConnection: keep-alive\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // origin 关闭
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        AtomicInteger released = new AtomicInteger();
+        Http11ProcessorServer.setTunnelSource(new TunnelSource() {
+            @Override
+            public SocketBean acquire(String host) throws IOException {
+                SocketChannel channel = SocketChannel.open(origin.getLocalSocketAddress());
+                channel.configureBlocking(false);
+                return new SocketBean(channel);
+            }
+
+            @Override
+            public void release(String host, SocketBean socketBean) {
+                released.incrementAndGet();
+                socketBean.close();
+            }
+        });
+        int port = freePort();
+        ServerConnector connector = new ServerConnector("TimeoutTest", new HttpProcessor(config), "127.0.0.1", port, config);
+        connector.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            for (int i = 0; i < 2; i++) {
+                channel.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: idle.test\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+                String response = readResponse(channel);
+                Assert.assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+                //响应完成后通道归还，连接回到 selector 上等待
+                int expected = i + 1;
+                await(() -> released.get() == expected);
+            }
+            long start = System.currentTimeMillis();
+            Assert.assertEquals("", readAll(channel));
+            Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+        } finally {
+            config.setKeepAliveTimeout(keepAliveTimeout);
+            Http11ProcessorServer.setTunnelSource(HttpTunnelSource.INSTANCE);
+            connector.showdown();
+            origin.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String readAll(SocketChannel channel) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            builder.append(StandardCharsets.ISO_8859_1.decode(buffer));
+            buffer.clear();
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 读到 "ok" 结尾的完整响应，不等连接关闭
+     */
+    private static String readResponse(SocketChannel channel) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (!builder.toString().endsWith("\r\n\r\nok") && channel.read(buffer) >= 0) {
+            buffer.flip();
+            builder.append(StandardCharsets.ISO_8859_1.decode(buffer));
+            buffer.clear();
+        }
+        return builder.toString();
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,176 @@
+package priv.bigant.test;
+
+import priv.bigant.intrance.common.util.net.SecureNioChannel;
+import priv.bigant.intrance.common.util.net.SocketProfile;
+import priv.bigant.intrance.common.util.net.SslMetrics;
+import priv.bigant.intrance.common.util.net.SslTunnel;
+import priv.bigant.intranet.server.ServerConfig;
+import priv.bigant.intranet.server.ssl.SslContextFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 穿透数据连接的请求速率对比：每个请求新建一条连接（与 HTTP_ADD 的数据连接相同），
+ * 分别为明文、TLS 1.2（会话复用）、TLS 1.3（会话票据）；两端与实际的穿透连接一样使用 tunnelSocket 的默认参数
+ * <p>
+ * 用法：TunnelSslBench [请求数，默认 2000]
+ */
+public class TunnelSslBench {
+
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: bench.test\r\n\r\n".getBytes();
+    private static final int RESPONSE = 1024;
+    private static final SocketProfile PROFILE = SocketProfile.tunnel();
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        File dir = Files.createTempDirectory("tunnel-ssl-bench").toFile();
+        File keyStore = new File(dir, "server.p12");
+        try {
+            keytool(keyStore);
+            ServerConfig config = ServerConfig.getSeverConfig();
+            config.setSslKeyStore(keyStore.getPath());
+            SSLContext serverContext = SslContextFactory.create(config);
+
+            run("plaintext", requests, null, null);
+            for (String protocol : new String[]{"TLSv1.2", "TLSv1.3"}) {
+                SslTunnel server = new SslTunnel(serverContext, false, null, 5000, 64);
+                SslTunnel client = new SslTunnel(clientContext(), true, new String[]{protocol}, 5000, 64);
+                run(protocol, requests, server, client);
+            }
+        } finally {
+            keyStore.delete();
+            dir.delete();
+        }
+    }
+
+    private static void run(String name, int requests, SslTunnel server, SslTunnel client) throws Exception {
+        try (ServerSocketChannel listener = PROFILE.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            int total = requests + requests / 10;
+            Thread thread = new Thread(() -> serve(listener, server, total), "TunnelSslBench-server");
+            thread.setDaemon(true);
+            thread.start();
+
+            InetSocketAddress address = (InetSocketAddress) listener.getLocalAddress();
+            //预热，同时建立可复用的会话
+            for (int i = 0; i < requests / 10; i++) {
+                request(address, client);
+            }
+            long handshakes = SslMetrics.getHandshakes();
+            long resumed = SslMetrics.getResumed();
+            long begin = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                request(address, client);
+            }
+            double seconds = (System.nanoTime() - begin) / (double) TimeUnit.SECONDS.toNanos(1);
+            //两端各计一次握手
+            System.out.printf("%-9s requests=%d %.0f req/s handshakes=%d resumed=%d%n", name, requests, requests / seconds,
+                    (SslMetrics.getHandshakes() - handshakes) / 2, (SslMetrics.getResumed() - resumed) / 2);
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static void request(InetSocketAddress address, SslTunnel client) throws IOException {
+        SocketChannel socket = PROFILE.open();
+        ByteChannel channel = socket;
+        try {
+            socket.connect(address);
+            if (client != null) {
+                socket.configureBlocking(false);
+                channel = client.handshake(socket, "bench.test", address.getPort());
+                //握手后按转发时的方式改为阻塞读写
+                socket.configureBlocking(true);
+            }
+            writeFully(channel, ByteBuffer.wrap(REQUEST));
+            readFully(channel, ByteBuffer.allocate(RESPONSE));
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void serve(ServerSocketChannel listener, SslTunnel server, int requests) {
+        ByteBuffer response = ByteBuffer.allocate(RESPONSE);
+        for (int i = 0; i < requests; i++) {
+            ByteChannel channel = null;
+            try {
+                SocketChannel socket = listener.accept();
+                PROFILE.configure(socket);
+                channel = socket;
+                if (server != null) {
+                    socket.configureBlocking(false);
+                    SecureNioChannel secure = server.handshake(socket, null, 0);
+                    channel = secure;
+                    socket.configureBlocking(true);
+                }
+                readFully(channel, ByteBuffer.allocate(REQUEST.length));
+                response.clear();
+                writeFully(channel, response);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeFully(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(ByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("连接已关闭");
+            }
+        }
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return context;
+    }
+
+    private static void keytool(File file) throws Exception {
+        String keytool = new File(System.getProperty("java.home"), "bin/keytool").getPath();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "key", "-keyalg", "RSA", "-dname", "CN=bench.test",
+                "-validity", "2", "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", "changeit", "-keypass", "changeit")
+                .redirectErrorStream(true).start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool 执行失败");
+        }
+    }
+}
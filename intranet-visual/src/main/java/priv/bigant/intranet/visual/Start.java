@@ -7,7 +7,8 @@ import java.io.IOException;
 import java.util.logging.LogManager;
 
 public class Start {
-    final static String LOG_CONFIG = "handlers= priv.bigant.intranet.visual.win.ConsoleHandler\n" +
+    final static String LOG_CONFIG = "handlers= priv.bigant.intrance.common.log.AsyncHandler\n" +
+            "priv.bigant.intrance.common.log.AsyncHandler.target= priv.bigant.intranet.visual.win.ConsoleHandler\n" +
             ".level= INFO\n";
 
     public static void main(String[] args) throws IOException {
@@ -1,50 +1,106 @@
 package priv.bigant.intranet.visual.win;
 
 import org.apache.commons.lang3.ObjectUtils;
-import sun.security.action.GetPropertyAction;
 
 import javax.swing.*;
-import java.security.AccessController;
-import java.util.Objects;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
-
+import java.util.logging.SimpleFormatter;
+
+/**
+ * 日志输出到界面
+ * <p>
+ * publish 只把消息追加到待显示缓冲，由 EDT 批量写入文本框，同一时间最多只有一个待执行的刷新任务；
+ * 文本框只保留最近 MAX_LINES 行
+ */
 public class ConsoleHandler extends Handler {
+    private static final int MAX_LINES = 5000;
+    private static final int MAX_PENDING = 1024 * 1024;
+
     private static JTextArea console;
     private static JScrollPane scroll;
-    private static boolean flag = false;
-    String lineSeparator = AccessController.doPrivileged(
-            new GetPropertyAction("line.separator"));
+    private static volatile boolean flag = false;
+    private static final StringBuilder pending = new StringBuilder();
+    private static boolean scheduled = false;
+    private static int discarded = 0;
+    private final String lineSeparator = System.lineSeparator();
 
 
     public ConsoleHandler() {
-
+        // 只用来替换消息中的参数
+        setFormatter(new SimpleFormatter());
     }
 
     public ConsoleHandler(JTextArea console, JScrollPane scroll) {
-        this.console = console;
-        this.scroll = scroll;
+        this();
+        ConsoleHandler.console = console;
+        ConsoleHandler.scroll = scroll;
     }
 
     @Override
     public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        String message = getFormatter().formatMessage(record);
         if (flag) {
-            println(record.getMessage());
+            println(message);
         } else {
-            System.out.println(record.getMessage());
+            System.out.println(message);
         }
 
     }
 
     public void print(String message) {
-        console.append(message);
-        console.paintImmediately(console.getBounds());
+        append(message);
     }
 
     public void println(String message) {
-        console.append(message);
-        console.append(lineSeparator);
-        console.paintImmediately(console.getBounds());
+        append(message + lineSeparator);
+    }
+
+    private static void append(String message) {
+        synchronized (pending) {
+            if (pending.length() + message.length() > MAX_PENDING) {
+                discarded++;
+                return;
+            }
+            pending.append(message);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(ConsoleHandler::refresh);
+    }
+
+    /**
+     * 在 EDT 中执行
+     */
+    private static void refresh() {
+        String text;
+        int lost;
+        synchronized (pending) {
+            text = pending.toString();
+            pending.setLength(0);
+            lost = discarded;
+            discarded = 0;
+            scheduled = false;
+        }
+        if (lost > 0) {
+            text = text + "界面刷新过慢，丢弃 " + lost + " 条日志" + System.lineSeparator();
+        }
+        console.append(text);
+        Element root = console.getDocument().getDefaultRootElement();
+        int excess = root.getElementCount() - MAX_LINES;
+        if (excess > 0) {
+            try {
+                console.getDocument().remove(0, root.getElement(excess - 1).getEndOffset());
+            } catch (BadLocationException ignored) {
+            }
+        }
         JScrollBar bar = scroll.getVerticalScrollBar();
         bar.setValue(bar.getMaximum());
     }
@@ -67,4 +123,4 @@ public class ConsoleHandler extends Handler {
         scroll = s;
         flag = true;
     }
-}
\ No newline at end of file
+}